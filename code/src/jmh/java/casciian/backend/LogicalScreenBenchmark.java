@@ -0,0 +1,158 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import casciian.bits.CellAttributes;
+import casciian.bits.Color;
+
+/**
+ * Measures drawing to and flushing a 400x120 screen, the size of a
+ * maximized terminal on a large monitor.  The flush writes to a terminal
+ * whose output is discarded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LogicalScreenBenchmark {
+
+    /**
+     * Screen width.
+     */
+    private static final int WIDTH = 400;
+
+    /**
+     * Screen height.
+     */
+    private static final int HEIGHT = 120;
+
+    /**
+     * The screen.
+     */
+    private ECMA48Terminal terminal;
+
+    /**
+     * Two different lines of text, so that every flush has every cell to
+     * emit.
+     */
+    private String [] lines = new String[2];
+
+    /**
+     * Two different colors for the lines.
+     */
+    private CellAttributes [] colors = new CellAttributes[2];
+
+    /**
+     * Which line and color is drawn next.
+     */
+    private int frame = 0;
+
+    @Setup
+    public void setUp() throws Exception {
+        terminal = new ECMA48Terminal(null, null,
+            new ByteArrayInputStream(new byte[0]),
+            OutputStream.nullOutputStream());
+        // setDimensions() would also resize the terminal window.
+        terminal.setWidth(WIDTH);
+        terminal.setHeight(HEIGHT);
+
+        StringBuilder sb = new StringBuilder(WIDTH);
+        for (int i = 0; i < WIDTH; i++) {
+            sb.append((char) ('a' + (i % 26)));
+        }
+        lines[0] = sb.toString();
+        lines[1] = sb.reverse().toString();
+        colors[0] = new CellAttributes();
+        colors[0].setForeColor(Color.YELLOW);
+        colors[0].setBackColor(Color.BLUE);
+        colors[1] = new CellAttributes();
+        colors[1].setForeColorRGB(0x80C0FF);
+        colors[1].setBackColorRGB(0x202020);
+
+        draw();
+        terminal.flushPhysical();
+    }
+
+    @TearDown
+    public void tearDown() {
+        terminal.closeTerminal();
+    }
+
+    /**
+     * Draw every row of the screen.
+     */
+    private void draw() {
+        frame = 1 - frame;
+        for (int y = 0; y < HEIGHT; y++) {
+            terminal.putStringXY(0, y, lines[frame], colors[frame]);
+        }
+    }
+
+    @Benchmark
+    public void putStringXY() {
+        draw();
+    }
+
+    @Benchmark
+    public void clear() {
+        terminal.clear();
+    }
+
+    /**
+     * isDirty() on a clean screen, which has to look at every cell.
+     */
+    @Benchmark
+    public boolean isDirty() {
+        return terminal.isDirty();
+    }
+
+    @Benchmark
+    public void flush() {
+        draw();
+        terminal.flushPhysical();
+    }
+
+    /**
+     * An otherwise idle screen with a clock in the corner.
+     */
+    @Benchmark
+    public void flushClock() {
+        frame = 1 - frame;
+        terminal.putStringXY(WIDTH - 8, 0, (frame == 0 ? "12:00:00" :
+                "12:00:01"), colors[frame]);
+        if (terminal.isDirty()) {
+            terminal.flushPhysical();
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.bits;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures alpha-blending a 200x60 region, the size of a large
+ * translucent window.  alphaBlendRow() is compared against the per-channel
+ * double blend over a column-major int[x][y] that LogicalScreen used
+ * before.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ImageUtilsBenchmark {
+
+    /**
+     * Region width.
+     */
+    private static final int WIDTH = 200;
+
+    /**
+     * Region height.
+     */
+    private static final int HEIGHT = 60;
+
+    /**
+     * The alpha to blend at, a typical translucent window.
+     */
+    private static final int ALPHA = 200;
+
+    /**
+     * The colors underneath, one row per array.
+     */
+    private int [][] underRows = new int[HEIGHT][WIDTH];
+
+    /**
+     * The colors on top, one row per array.
+     */
+    private int [][] overRows = new int[HEIGHT][WIDTH];
+
+    /**
+     * The blended colors, one row per array.
+     */
+    private int [][] destRows = new int[HEIGHT][WIDTH];
+
+    /**
+     * The colors underneath, one column per array.
+     */
+    private int [][] underColumns = new int[WIDTH][HEIGHT];
+
+    /**
+     * The colors on top, one column per array.
+     */
+    private int [][] overColumns = new int[WIDTH][HEIGHT];
+
+    /**
+     * The blended colors, one column per array.
+     */
+    private int [][] destColumns = new int[WIDTH][HEIGHT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                underRows[y][x] = random.nextInt(0x1000000);
+                overRows[y][x] = random.nextInt(0x1000000);
+                underColumns[x][y] = underRows[y][x];
+                overColumns[x][y] = overRows[y][x];
+            }
+        }
+    }
+
+    /**
+     * The blend as it was done in LogicalScreen.BufferedImage.
+     *
+     * @return the blended image
+     */
+    @Benchmark
+    public int [][] alphaBlendOver() {
+        double alpha = (float) (ALPHA / 255.0);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int underRGB = underColumns[x][y];
+                int overRGB = overColumns[x][y];
+                int underRed   = (underRGB >>> 16) & 0xFF;
+                int underGreen = (underRGB >>>  8) & 0xFF;
+                int underBlue  =  underRGB         & 0xFF;
+                int overRed    = (overRGB >>> 16) & 0xFF;
+                int overGreen  = (overRGB >>>  8) & 0xFF;
+                int overBlue   =  overRGB         & 0xFF;
+                int red   = (int) ((  underRed * (1.0 - alpha)) + (  overRed * alpha));
+                int green = (int) ((underGreen * (1.0 - alpha)) + (overGreen * alpha));
+                int blue  = (int) (( underBlue * (1.0 - alpha)) + ( overBlue * alpha));
+                destColumns[x][y] = (red << 16) | (green << 8) | blue;
+            }
+        }
+        return destColumns;
+    }
+
+    @Benchmark
+    public int [][] alphaBlendRow() {
+        for (int y = 0; y < HEIGHT; y++) {
+            ImageUtils.alphaBlendRow(underRows[y], overRows[y], destRows[y],
+                WIDTH, ALPHA);
+        }
+        return destRows;
+    }
+
+}
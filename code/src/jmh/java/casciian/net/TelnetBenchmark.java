@@ -0,0 +1,127 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the telnet encoding and decoding of one full-screen repaint of a
+ * 200x60 terminal: cursor positioning, color changes, box drawing, and
+ * text.  One operation is one frame.  Decoding reads the frame through
+ * TelnetInputStream.read(), the way a terminal reads from a telnet
+ * connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TelnetBenchmark {
+
+    /**
+     * The negotiated telnet mode.
+     */
+    @Param({"binary", "ascii"})
+    public String mode;
+
+    /**
+     * The frame, encoded as UTF-8.
+     */
+    private byte [] frame;
+
+    /**
+     * The stream that encodes the frame.
+     */
+    private TelnetOutputStream output;
+
+    /**
+     * The bytes arriving from the other end: one frame, rewound for each
+     * operation.
+     */
+    private ByteArrayInputStream socketInput;
+
+    /**
+     * The stream that decodes the frame.
+     */
+    private TelnetInputStream input;
+
+    /**
+     * The buffer the decoded frame is read into.
+     */
+    private byte [] decoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int y = 0; y < 60; y++) {
+            sb.append("\033[").append(y + 1).append(";1H");
+            sb.append("\033[0;37;44m│");
+            for (int x = 1; x < 199; x++) {
+                if (random.nextInt(20) == 0) {
+                    sb.append("\033[3").append(random.nextInt(8)).append('m');
+                }
+                sb.append((char) (random.nextInt(5) == 0 ? ' ' :
+                        'a' + random.nextInt(26)));
+            }
+            sb.append("│");
+        }
+        sb.append("\r\n");
+        frame = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        TelnetSocket socket = new TelnetSocket();
+        socket.binaryMode = mode.equals("binary");
+        output = new TelnetOutputStream(socket,
+            OutputStream.nullOutputStream());
+        socketInput = new ByteArrayInputStream(frame);
+        input = new TelnetInputStream(socket, socketInput, output);
+        decoded = new byte[8192];
+    }
+
+    @Benchmark
+    public TelnetOutputStream encode() throws Exception {
+        output.write(frame, 0, frame.length);
+        return output;
+    }
+
+    @Benchmark
+    public int read() throws Exception {
+        socketInput.reset();
+        int total = 0;
+        int n;
+        while ((n = input.read(decoded, 0, decoded.length)) > 0) {
+            total += n;
+        }
+        return total;
+    }
+
+}
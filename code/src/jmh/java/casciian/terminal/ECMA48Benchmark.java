@@ -0,0 +1,101 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.terminal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures emulator throughput for the equivalent of "cat" of a large text
+ * file.  One operation is one megabyte, so the score is in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ECMA48Benchmark {
+
+    /**
+     * The size of the file in megabytes.
+     */
+    private static final int MEGABYTES = 16;
+
+    /**
+     * Text with occasional SGR color changes, like "ls --color" or a
+     * compiler log.
+     */
+    @Param({"plain", "colored"})
+    public String content;
+
+    /**
+     * The file contents.
+     */
+    private byte [] data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder(MEGABYTES * 1024 * 1024);
+        while (sb.length() < MEGABYTES * 1024 * 1024) {
+            int words = 1 + random.nextInt(14);
+            for (int i = 0; i < words; i++) {
+                if (content.equals("colored") && (random.nextInt(8) == 0)) {
+                    sb.append("\033[3").append(random.nextInt(8)).append('m');
+                }
+                int letters = 1 + random.nextInt(9);
+                for (int j = 0; j < letters; j++) {
+                    sb.append((char) ('a' + random.nextInt(26)));
+                }
+                sb.append(' ');
+            }
+            if (content.equals("colored")) {
+                sb.append("\033[0m");
+            }
+            sb.append("\r\n");
+        }
+        data = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEGABYTES)
+    public ECMA48 cat() throws Exception {
+        ECMA48 emulator = new ECMA48(ECMA48.DeviceType.XTERM,
+            new ByteArrayInputStream(data), new ByteArrayOutputStream(),
+            null, null);
+        while (emulator.isReading()) {
+            Thread.sleep(1);
+        }
+        return emulator;
+    }
+
+}
@@ -24,6 +24,7 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -35,6 +36,7 @@ import java.util.ResourceBundle;
 
 import casciian.backend.Backend;
 import casciian.backend.ECMA48Backend;
+import casciian.backend.LayerPool;
 import casciian.backend.MultiBackend;
 import casciian.backend.Screen;
 import casciian.backend.TWindowBackend;
@@ -86,6 +88,11 @@ public class TApplication implements Runnable {
      */
     private static final boolean debugEvents = false;
 
+    /**
+     * The most damaged rectangles to keep before merging them into one.
+     */
+    private static final int MAX_DAMAGE = 16;
+
     /**
      * If true, do "smart placement" on new windows that are not specified to
      * be centered.
@@ -254,9 +261,32 @@ public class TApplication implements Runnable {
     private volatile boolean quit = false;
 
     /**
-     * When true, repaint the entire screen.
+     * When true, repaint the entire screen.  Note package private access.
+     */
+    volatile boolean repaint = true;
+
+    /**
+     * The parts of the screen to redraw when repaint is not set, each {x,
+     * y, width, height} in absolute coordinates.
+     */
+    private List<int []> damage = new ArrayList<int []>();
+
+    /**
+     * The parts of widgets to redraw, not yet converted to absolute
+     * coordinates.  Guarded by damage.
      */
-    private volatile boolean repaint = true;
+    private List<WidgetDamage> widgetDamage = new ArrayList<WidgetDamage>();
+
+    /**
+     * The window that the event being dispatched was passed to, or null if
+     * it went anywhere else.
+     */
+    private TWindow inputWindow = null;
+
+    /**
+     * The offscreen layers used to draw translucent windows and menus.
+     */
+    private LayerPool layers = new LayerPool();
 
     /**
      * Y coordinate of the top edge of the desktop.  For now this is a
@@ -408,6 +438,11 @@ public class TApplication implements Runnable {
      */
     private boolean needToRunScreenEffects = false;
 
+    /**
+     * The value of hasAnimations() at the last animation tick.
+     */
+    private boolean animationsShown = false;
+
     /**
      * WidgetEventHandler is the main event consumer loop.  There are at most
      * two such threads in existence: the primary for normal case and a
@@ -530,21 +565,14 @@ public class TApplication implements Runnable {
                         event = application.drainEventQueue.remove(0);
                     }
 
-                    // We will have an event to process, so repaint the
-                    // screen at the end.
-                    application.repaint = true;
-
                     if ((event instanceof TMouseEvent)
                         || (event instanceof TKeypressEvent)
                     ) {
                         lastUserInputTime = event.getTime().getTime();
                     }
 
-                    if (primary) {
-                        primaryHandleEvent(event);
-                    } else {
-                        secondaryHandleEvent(event);
-                    }
+                    // Dispatch it, and redraw what it changed at the end.
+                    application.dispatchInput(event, primary);
                     if ((!primary)
                         && (application.secondaryEventReceiver == null)
                     ) {
@@ -701,6 +729,32 @@ public class TApplication implements Runnable {
 
     }
 
+    /**
+     * WidgetDamage is a rectangle of a widget to redraw.
+     */
+    private static class WidgetDamage {
+        /**
+         * The widget.
+         */
+        private TWidget widget;
+
+        /**
+         * The rectangle relative to the widget, {x, y, width, height}.
+         */
+        private int [] rectangle;
+
+        /**
+         * Public constructor.
+         *
+         * @param widget the widget
+         * @param rectangle the rectangle relative to the widget
+         */
+        public WidgetDamage(final TWidget widget, final int [] rectangle) {
+            this.widget = widget;
+            this.rectangle = rectangle;
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -883,10 +937,19 @@ public class TApplication implements Runnable {
             TTimer animationTimer = addTimer(1000 / ANIMATION_FPS, true,
                 new TAction() {
                     public void DO() {
-                        doRepaint();
+                        boolean shown = hasAnimations();
+                        if ((shown != animationsShown) || hasEffects()) {
+                            // Widgets start or stop pulsing, or an effect
+                            // is drawing over the screen.
+                            animationsShown = shown;
+                            doRepaint();
+                        } else {
+                            invalidateAnimated();
+                        }
                     }
                 }
             );
+            animationTimer.setRepaint(false);
 
         } else {
             // If animations are disabled, we need additional timers.
@@ -907,25 +970,27 @@ public class TApplication implements Runnable {
 
             // All the backends need to have a timer to drive blink state,
             // but MultiBackend specifically also needs to do idle checks.
+            TTimer blinkTimer;
             if (backend instanceof MultiBackend) {
-                addTimer(millis, true,
+                blinkTimer = addTimer(millis, true,
                     new TAction() {
                         public void DO() {
                             // Update idle checks.
                             getBackend().hasEvents();
-                            doRepaint();
+                            invalidateAnimated();
                         }
                     }
                 );
             } else {
-                addTimer(millis, true,
+                blinkTimer = addTimer(millis, true,
                     new TAction() {
                         public void DO() {
-                            doRepaint();
+                            invalidateAnimated();
                         }
                     }
                 );
             }
+            blinkTimer.setRepaint(false);
         }
 
         // Load the help system
@@ -1137,6 +1202,7 @@ public class TApplication implements Runnable {
                             } else {
                                 tempEffectTimer.setRecurring(false);
                             }
+                            doRepaint();
                         }
                     });
             }
@@ -1276,6 +1342,7 @@ public class TApplication implements Runnable {
                             } else {
                                 tempEffectTimer.setRecurring(false);
                             }
+                            doRepaint();
                         }
                     });
             }
@@ -1509,6 +1576,75 @@ public class TApplication implements Runnable {
         }
     }
 
+    /**
+     * Dispatch one event, and arrange to redraw what it could have changed.
+     * Keyboard and mouse input that only the active window saw, and that
+     * did not move, open, or close anything, only redraws that window and
+     * the status bar.  Note package private access.
+     *
+     * @param event the input event to consume
+     * @param primary if true, this is the primary event handler thread
+     */
+    void dispatchInput(final TInputEvent event, final boolean primary) {
+        if (!primary) {
+            secondaryHandleEvent(event);
+            repaint = true;
+            return;
+        }
+
+        List<Object> layout = captureLayout();
+        primaryHandleEvent(event);
+
+        TWindow window = inputWindow;
+        inputWindow = null;
+        if ((window == null)
+            || !((event instanceof TKeypressEvent)
+                || (event instanceof TMouseEvent))
+            || !layout.equals(captureLayout())
+        ) {
+            repaint = true;
+            return;
+        }
+        window.invalidate();
+        if (!hideStatusBar) {
+            // The window can change its status bar text.
+            invalidate(0, desktopBottom, getScreen().getWidth(), 1);
+        }
+    }
+
+    /**
+     * Describe everything on the screen that is not drawn by a single
+     * window: where the windows are and which is active, the menus, the
+     * bars, and the screen selection.
+     *
+     * @return a list that equals() another one if nothing but window
+     * contents changed between them
+     */
+    private List<Object> captureLayout() {
+        List<Object> layout = new ArrayList<Object>();
+        for (TWindow window: windows) {
+            layout.add(window);
+            layout.add(window.getX());
+            layout.add(window.getY());
+            layout.add(window.getWidth());
+            layout.add(window.getHeight());
+            layout.add(window.getZ());
+            layout.add(window.isShown());
+            layout.add(window.isActive());
+        }
+        layout.add(activeMenu);
+        layout.add(menus.size());
+        layout.add(subMenus.size());
+        layout.add(desktop);
+        layout.add(inScreenSelection);
+        layout.add(menuTrayText);
+        layout.add(hideMenuBar);
+        layout.add(hideStatusBar);
+        layout.add(getScreen().getWidth());
+        layout.add(getScreen().getHeight());
+        return layout;
+    }
+
     /**
      * Dispatch one event to the appropriate widget or application-level
      * event handler.  This is the primary event handler, it has the normal
@@ -1525,6 +1661,7 @@ public class TApplication implements Runnable {
                 Thread.currentThread(), event);
         }
         TMouseEvent doubleClick = null;
+        inputWindow = null;
 
         // Special application-wide events -----------------------------------
 
@@ -1725,6 +1862,7 @@ public class TApplication implements Runnable {
                 System.err.printf("   Routed to: %s\n", window);
                 System.err.flush();
             }
+            inputWindow = window;
             window.handleEvent(event);
             if (doubleClick != null) {
                 if (debugEvents) {
@@ -1744,6 +1882,7 @@ public class TApplication implements Runnable {
         if (dispatchToDesktop) {
             // This event is fair game for the desktop to process.
             if (desktop != null) {
+                inputWindow = null;
                 desktop.handleEvent(event);
                 if (doubleClick != null) {
                     desktop.handleEvent(doubleClick);
@@ -1921,6 +2060,48 @@ public class TApplication implements Runnable {
         }
     }
 
+    /**
+     * Check if any window or screen effects are still running.
+     *
+     * @return true if there are effects to draw
+     */
+    private boolean hasEffects() {
+        synchronized (windowEffects) {
+            if (windowEffects.size() > 0) {
+                return true;
+            }
+        }
+        synchronized (screenEffects) {
+            return (screenEffects.size() > 0);
+        }
+    }
+
+    /**
+     * Redraw the cells that blink or pulse, so that the backend shows their
+     * next step.  Only the widgets under those cells are drawn again, and
+     * nothing is drawn if there are none.  Note package private access.
+     */
+    void invalidateAnimated() {
+        Screen screen = getScreen();
+        int width = screen.getWidth();
+        int height = screen.getHeight();
+        for (int y = 0; y < height; y++) {
+            int left = -1;
+            int right = -1;
+            for (int x = 0; x < width; x++) {
+                if (screen.isAnimated(x, y)) {
+                    if (left == -1) {
+                        left = x;
+                    }
+                    right = x + 1;
+                }
+            }
+            if (left != -1) {
+                invalidate(left, y, right - left, 1);
+            }
+        }
+    }
+
     /**
      * Do stuff when there is no user input.
      */
@@ -1942,8 +2123,10 @@ public class TApplication implements Runnable {
             List<TTimer> keepTimers = new LinkedList<TTimer>();
             for (TTimer timer: timers) {
                 if (timer.getNextTick().getTime() <= now.getTime()) {
-                    // Something might change, so repaint the screen.
-                    repaint = true;
+                    if (timer.isRepaint()) {
+                        // Something might change, so repaint the screen.
+                        repaint = true;
+                    }
                     timer.tick();
                     if (timer.recurring) {
                         keepTimers.add(timer);
@@ -1979,7 +2162,9 @@ public class TApplication implements Runnable {
         for (Runnable invoke: invokes) {
             invoke.run();
         }
-        doRepaint();
+        if (invokes.size() > 0) {
+            doRepaint();
+        }
 
         if (debugThreads) {
             System.err.printf(System.currentTimeMillis() + " " +
@@ -2206,6 +2391,133 @@ public class TApplication implements Runnable {
      */
     public void doRepaint() {
         repaint = true;
+        wakeForRepaint();
+    }
+
+    /**
+     * Redraw a rectangle of the screen on the next update.  Only the
+     * windows and widgets inside the rectangle are drawn again, unless
+     * something else needs the entire screen to be repainted.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public void invalidate(final int x, final int y, final int width,
+        final int height) {
+
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+        synchronized (damage) {
+            addDamage(x, y, width, height);
+        }
+        wakeForRepaint();
+    }
+
+    /**
+     * Redraw a rectangle of a widget on the next update.  The widget's
+     * position is looked up when the screen is drawn, on the thread that
+     * moves widgets, so this can be called from any thread.  Note package
+     * private access.
+     *
+     * @param widget the widget to redraw
+     * @param x left column of the rectangle, relative to the widget
+     * @param y top row of the rectangle, relative to the widget
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    void invalidate(final TWidget widget, final int x, final int y,
+        final int width, final int height) {
+
+        if ((width <= 0) || (height <= 0)) {
+            return;
+        }
+        int [] rectangle = new int[] { x, y, width, height };
+        synchronized (damage) {
+            for (WidgetDamage pending: widgetDamage) {
+                if ((pending.widget == widget)
+                    && Arrays.equals(pending.rectangle, rectangle)
+                ) {
+                    // Already waiting to be drawn.
+                    return;
+                }
+            }
+            if (widgetDamage.size() == MAX_DAMAGE) {
+                // Too many pieces, redraw everything instead.
+                widgetDamage.clear();
+                repaint = true;
+            } else {
+                widgetDamage.add(new WidgetDamage(widget, rectangle));
+            }
+        }
+        wakeForRepaint();
+    }
+
+    /**
+     * Add a rectangle to the damage list, merging it with the others if the
+     * list is full.  The caller must hold the damage lock.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    private void addDamage(final int x, final int y, final int width,
+        final int height) {
+
+        if (damage.size() == MAX_DAMAGE) {
+            // Too many pieces, redraw their bounding box instead.
+            int left = x;
+            int top = y;
+            int right = x + width;
+            int bottom = y + height;
+            for (int [] rect: damage) {
+                left = Math.min(left, rect[0]);
+                top = Math.min(top, rect[1]);
+                right = Math.max(right, rect[0] + rect[2]);
+                bottom = Math.max(bottom, rect[1] + rect[3]);
+            }
+            damage.clear();
+            damage.add(new int[] { left, top, right - left, bottom - top });
+        } else {
+            damage.add(new int[] { x, y, width, height });
+        }
+    }
+
+    /**
+     * Take the damage collected since the last update, converting widget
+     * rectangles to absolute coordinates.  Note package private access.
+     *
+     * @return the damaged rectangles, each {x, y, width, height} in
+     * absolute coordinates, or null if there are none
+     */
+    List<int []> takeDamage() {
+        synchronized (damage) {
+            for (WidgetDamage pending: widgetDamage) {
+                int [] rect = pending.widget.getDamageRectangle(
+                    pending.rectangle[0], pending.rectangle[1],
+                    pending.rectangle[2], pending.rectangle[3]);
+                if (rect != null) {
+                    addDamage(rect[0], rect[1], rect[2], rect[3]);
+                }
+            }
+            widgetDamage.clear();
+            if (damage.size() == 0) {
+                return null;
+            }
+            List<int []> rectangles = new ArrayList<int []>(damage);
+            damage.clear();
+            return rectangles;
+        }
+    }
+
+    /**
+     * Wake up the event handler if it is waiting for input, so that the
+     * screen is drawn on the next update.  Note package private access.
+     */
+    void wakeForRepaint() {
         boolean wakeAndReturn = false;
         synchronized (drainEventQueue) {
             if (fillEventQueue.size() > 0) {
@@ -2578,16 +2890,20 @@ public class TApplication implements Runnable {
         final TWindow window) {
 
         // Alpha blending: have the window draw to a snapshot of the screen
-        // without alpha, and then merge it on the screen with alpha.
+        // without alpha, and then merge it on the screen with alpha.  The
+        // snapshots are the window's own layers, so they are only
+        // allocated again when the window changes size.
         int windowX = window.getX();
         int windowY = window.getY();
         int windowWidth = window.getWidth();
         int windowHeight = window.getHeight();
         Screen oldSnapshot = screen.snapshot(windowX, windowY,
-            windowWidth, windowHeight);
+            windowWidth, windowHeight,
+            layers.getLayer(window, 0, windowWidth, windowHeight));
         window.drawChildren();
         Screen newSnapshot = screen.snapshot(windowX, windowY,
-            windowWidth, windowHeight);
+            windowWidth, windowHeight,
+            layers.getLayer(window, 1, windowWidth, windowHeight));
         screen.copyScreen(oldSnapshot, windowX, windowY,
             windowWidth, windowHeight);
         screen.blendScreen(newSnapshot, windowX, windowY,
@@ -2613,13 +2929,36 @@ public class TApplication implements Runnable {
      * Draw everything.
      */
     private void drawAll() {
-        boolean menuIsActive = false;
-
         if (debugThreads) {
             System.err.printf("%d %s drawAll() enter\n",
                 System.currentTimeMillis(), Thread.currentThread());
         }
 
+        // Take the damage.  A full repaint covers all of it.
+        List<int []> rectangles = takeDamage();
+        if ((rectangles != null) && !repaint) {
+            // The screen selection inverts cells in place, and screen
+            // effects draw over anything, so neither can be redrawn in
+            // pieces.
+            boolean effectsPending = false;
+            synchronized (screenEffects) {
+                effectsPending = needToRunScreenEffects;
+            }
+            if (inScreenSelection || effectsPending) {
+                repaint = true;
+            }
+        }
+
+        if (!repaint && (rectangles != null)) {
+            if (debugThreads) {
+                System.err.printf("%d %s drawAll() DAMAGE %d\n",
+                    System.currentTimeMillis(), Thread.currentThread(),
+                    rectangles.size());
+            }
+            drawDamage(rectangles);
+            return;
+        }
+
         // I don't think this does anything useful anymore...
         if (!repaint) {
             if (debugThreads) {
@@ -2675,14 +3014,111 @@ public class TApplication implements Runnable {
                 System.currentTimeMillis(), Thread.currentThread());
         }
 
-        // If true, the cursor is not visible
-        boolean cursor = false;
-
         // Start with a clean screen
         getScreen().clear();
 
+        boolean menuIsActive = drawScene();
+
+        // Draw the mouse pointer
+        if (debugThreads) {
+            System.err.printf("%d %s restoreImage() %d %d\n",
+                System.currentTimeMillis(), Thread.currentThread(),
+                oldDrawnMouseX, oldDrawnMouseY);
+        }
+        oldDrawnMouseCell = getScreen().getCharXY(mouseX, mouseY);
+
+        if (inScreenSelection) {
+            getScreen().setSelection(screenSelectionX0, screenSelectionY0,
+                screenSelectionX1, screenSelectionY1, screenSelectionRectangle);
+        }
+
+        placeCursor(menuIsActive);
+
+        // Draw the mouse.
+        getScreen().resetClipping();
+        if ((textMouse == true) && (typingHidMouse == false)) {
+            drawTextMouse(mouseX, mouseY);
+        }
+        oldDrawnMouseX = mouseX;
+        oldDrawnMouseY = mouseY;
+
+        if (getScreen().isDirty()) {
+            // Give subclass TApplications a chance to update the
+            // post-rendered screen.
+            onPostDraw();
+
+            screenHandler.setDirty();
+        }
+        repaint = false;
+    }
+
+    /**
+     * Redraw only the damaged parts of the screen.  Everything else on the
+     * screen is still what the last drawAll() put there.
+     *
+     * @param rectangles the damaged rectangles, each {x, y, width, height}
+     * in absolute coordinates
+     */
+    private void drawDamage(final List<int []> rectangles) {
+        Screen screen = getScreen();
+
+        // Put back the cell under the old mouse pointer.  If it is damaged
+        // it will be drawn over again.
+        screen.putCharXY(oldDrawnMouseX, oldDrawnMouseY, oldDrawnMouseCell);
+
+        int left = screen.getWidth();
+        int top = screen.getHeight();
+        int right = 0;
+        int bottom = 0;
+        boolean menuIsActive = false;
+        for (int [] rect: rectangles) {
+            screen.setDamageClip(rect[0], rect[1], rect[2], rect[3]);
+            screen.clear();
+            menuIsActive = drawScene();
+            left = Math.min(left, rect[0]);
+            top = Math.min(top, rect[1]);
+            right = Math.max(right, rect[0] + rect[2]);
+            bottom = Math.max(bottom, rect[1] + rect[3]);
+        }
+        screen.resetDamageClip();
+
+        oldDrawnMouseCell = screen.getCharXY(mouseX, mouseY);
+
+        placeCursor(menuIsActive);
+
+        // Draw the mouse.
+        screen.resetClipping();
+        if ((textMouse == true) && (typingHidMouse == false)) {
+            drawTextMouse(mouseX, mouseY);
+        }
+        oldDrawnMouseX = mouseX;
+        oldDrawnMouseY = mouseY;
+
+        if (screen.isDirty()) {
+            // Give subclass TApplications a chance to update the
+            // post-rendered screen, but only where it was damaged.
+            screen.setDamageClip(left, top, right - left, bottom - top);
+            onPostDraw();
+            screen.resetDamageClip();
+
+            screenHandler.setDirty();
+        }
+    }
+
+    /**
+     * Draw the desktop, windows, menus, and status bar.  Anything outside
+     * the screen's damage clip is not drawn.
+     *
+     * @return true if a menu is active
+     */
+    private boolean drawScene() {
+        boolean menuIsActive = false;
+
         // Draw the desktop
-        if (desktop != null) {
+        if ((desktop != null)
+            && getScreen().intersectsDamageClip(desktop.getX(),
+                desktop.getY(), desktop.getWidth(), desktop.getHeight())
+        ) {
             desktop.drawChildren();
         }
 
@@ -2695,7 +3131,7 @@ public class TApplication implements Runnable {
         }
         Collections.reverse(sorted);
         for (TWindow window: sorted) {
-            if (window.isShown()) {
+            if (window.isShown() && intersectsDamageClip(window)) {
                 // Reset the screen clipping so we can draw the next window.
                 getScreen().resetClipping();
 
@@ -2746,7 +3182,7 @@ public class TApplication implements Runnable {
                     0, menu.getMnemonic().getShortcut(), menuMnemonicColor);
             }
 
-            if (menu.isActive()) {
+            if (menu.isActive() && intersectsDamageClip(menu)) {
                 if (translucence) {
                     drawTranslucentWindow(getScreen(), menu);
                 } else {
@@ -2760,6 +3196,9 @@ public class TApplication implements Runnable {
         }
 
         for (TMenu menu: subMenus) {
+            if (!intersectsDamageClip(menu)) {
+                continue;
+            }
             // Reset the screen clipping so we can draw the next sub-menu.
             getScreen().resetClipping();
             if (translucence) {
@@ -2810,24 +3249,38 @@ public class TApplication implements Runnable {
             }
         }
 
-        // Draw the mouse pointer
-        if (debugThreads) {
-            System.err.printf("%d %s restoreImage() %d %d\n",
-                System.currentTimeMillis(), Thread.currentThread(),
-                oldDrawnMouseX, oldDrawnMouseY);
-        }
-        oldDrawnMouseCell = getScreen().getCharXY(mouseX, mouseY);
+        return menuIsActive;
+    }
 
-        if (inScreenSelection) {
-            getScreen().setSelection(screenSelectionX0, screenSelectionY0,
-                screenSelectionX1, screenSelectionY1, screenSelectionRectangle);
-        }
+    /**
+     * Check if any part of a window, including its shadow, is inside the
+     * screen's damage clip.
+     *
+     * @param window the window
+     * @return true if drawing the window could change the screen
+     */
+    private boolean intersectsDamageClip(final TWindow window) {
+        return getScreen().intersectsDamageClip(window.getX(), window.getY(),
+            window.getWidth() + 2, window.getHeight() + 1);
+    }
+
+    /**
+     * Place the cursor where the active widget wants it, or hide it.
+     *
+     * @param menuIsActive if true, a menu is active and the cursor is hidden
+     */
+    private void placeCursor(final boolean menuIsActive) {
+        // If true, the cursor is not visible
+        boolean cursor = false;
 
         // The active widget
         TWidget activeWidget = null;
 
         // Place the cursor if it is visible
         if (!menuIsActive) {
+            List<TWindow> sorted = new ArrayList<TWindow>(windows);
+            Collections.sort(sorted);
+            Collections.reverse(sorted);
 
             int visibleWindowCount = 0;
             for (TWindow window: sorted) {
@@ -2873,23 +3326,6 @@ public class TApplication implements Runnable {
         if (!cursor) {
             getScreen().hideCursor();
         }
-
-        // Draw the mouse.
-        getScreen().resetClipping();
-        if ((textMouse == true) && (typingHidMouse == false)) {
-            drawTextMouse(mouseX, mouseY);
-        }
-        oldDrawnMouseX = mouseX;
-        oldDrawnMouseY = mouseY;
-
-        if (getScreen().isDirty()) {
-            // Give subclass TApplications a chance to update the
-            // post-rendered screen.
-            onPostDraw();
-
-            screenHandler.setDirty();
-        }
-        repaint = false;
     }
 
     /**
@@ -3188,6 +3624,7 @@ public class TApplication implements Runnable {
             window.stopMovements();
             window.onUnfocus();
             windows.remove(window);
+            layers.release(window);
             Collections.sort(windows);
 
             TWindow nextWindow = null;
@@ -3943,6 +4380,7 @@ public class TApplication implements Runnable {
         }
         closeMenu();
         menus.remove(menu);
+        layers.release(menu);
 
         // Remove keyboard accelerators, recursively.
         for (TWidget w: menu.getChildren()) {
@@ -4375,7 +4813,9 @@ public class TApplication implements Runnable {
     }
 
     /**
-     * Convenience function to add a timer.
+     * Convenience function to add a timer.  The entire screen is repainted
+     * after every tick, unless TTimer.setRepaint(false) is called on the
+     * timer.
      *
      * @param duration number of milliseconds to wait between ticks
      * @param recurring if true, re-schedule this timer after every tick
@@ -14,9 +14,9 @@
  */
 package casciian;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.UncheckedIOException;
 
 import casciian.bits.CellAttributes;
 import casciian.bits.StringUtils;
@@ -94,16 +94,6 @@ public class TEditor extends TWidget implements EditMenuUser {
      */
     private int selectionLine1;
 
-    /**
-     * The list of undo/redo states.
-     */
-    private List<SavedState> undoList = new ArrayList<SavedState>();
-
-    /**
-     * The position in undoList for undo/redo.
-     */
-    private int undoListI = 0;
-
     /**
      * The maximum size of the undo list.
      */
@@ -119,27 +109,6 @@ public class TEditor extends TWidget implements EditMenuUser {
      */
     private boolean autoWrap = false;
 
-    /**
-     * The saved state for an undo/redo operation.
-     */
-    private class SavedState {
-        /**
-         * The Document state.
-         */
-        public Document document;
-
-        /**
-         * The topmost line number in the visible area.  0-based.
-         */
-        public int topLine = 0;
-
-        /**
-         * The leftmost column number in the visible area.  0-based.
-         */
-        public int leftColumn = 0;
-
-    }
-
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -482,7 +451,6 @@ public class TEditor extends TWidget implements EditMenuUser {
                 deleteSelection();
                 alignCursor();
             } else {
-                saveUndo();
                 document.del();
                 alignCursor();
             }
@@ -493,23 +461,19 @@ public class TEditor extends TWidget implements EditMenuUser {
                 deleteSelection();
                 alignTopLine(false);
             } else {
-                saveUndo();
                 document.backspace();
                 alignTopLine(false);
             }
         } else if (keypress.equals(kbTab)) {
             deleteSelection();
-            saveUndo();
             document.tab();
             alignCursor();
         } else if (keypress.equals(kbShiftTab)) {
             deleteSelection();
-            saveUndo();
             document.backTab();
             alignCursor();
         } else if (keypress.equals(kbEnter)) {
             deleteSelection();
-            saveUndo();
             document.enter();
             alignTopLine(true);
         } else if (!keypress.getKey().isFnKey()
@@ -518,7 +482,6 @@ public class TEditor extends TWidget implements EditMenuUser {
         ) {
             // Plain old keystroke, process it
             deleteSelection();
-            saveUndo();
             document.addChar(keypress.getKey().getChar());
             alignCursor();
         } else {
@@ -581,7 +544,9 @@ public class TEditor extends TWidget implements EditMenuUser {
         }
 
         if (command.equals(cmPaste)) {
-            // Delete selected text, then paste text from clipboard.
+            // Delete selected text, then paste text from clipboard.  This is
+            // undone as one edit.
+            document.beginEdit(document.getLineNumber(), 1);
             deleteSelection();
 
             String text = getClipboard().pasteText();
@@ -608,6 +573,7 @@ public class TEditor extends TWidget implements EditMenuUser {
                     i += Character.charCount(ch);
                 }
             }
+            document.endEdit();
             return;
         }
 
@@ -623,6 +589,15 @@ public class TEditor extends TWidget implements EditMenuUser {
     // TWidget ----------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Stop reading a file into the document.
+     */
+    @Override
+    public void close() {
+        document.close();
+        super.close();
+    }
+
     /**
      * Draw the text box.
      */
@@ -658,8 +633,11 @@ public class TEditor extends TWidget implements EditMenuUser {
             getScreen().hLineXY(0, i, getWidth(), ' ', defaultColor);
 
             // Now draw document's line
+            Line line = null;
             if (topLine + i < document.getLineCount()) {
-                Line line = document.getLine(topLine + i);
+                line = getDrawnLine(topLine + i);
+            }
+            if (line != null) {
                 int x = 0;
                 for (Word word: line.getWords()) {
                     // For now, we are cheating: draw outside the left region
@@ -710,6 +688,22 @@ public class TEditor extends TWidget implements EditMenuUser {
     // TEditor ----------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Get a line to draw.
+     *
+     * @param lineNumber the line number
+     * @return the line, or null if its text was lost from a truncated
+     * memory-mapped file
+     */
+    private Line getDrawnLine(final int lineNumber) {
+        try {
+            return document.getLine(lineNumber);
+        } catch (UncheckedIOException e) {
+            // The line is drawn blank until the file is reloaded.
+            return null;
+        }
+    }
+
     /**
      * Get the wrapping behavior.
      *
@@ -736,6 +730,7 @@ public class TEditor extends TWidget implements EditMenuUser {
      */
     public void setUndoLevel(final int undoLevel) {
         this.undoLevel = undoLevel;
+        document.setUndoLevel(undoLevel);
     }
 
     /**
@@ -948,6 +943,35 @@ public class TEditor extends TWidget implements EditMenuUser {
         return document.getLineCount() + 1;
     }
 
+    /**
+     * See if a file set by setFile() has been read all the way through.
+     * Until then, getMaximumRowNumber() grows as more lines are found.
+     *
+     * @return true if the row count is final
+     */
+    public boolean isIndexed() {
+        return document.isIndexed();
+    }
+
+    /**
+     * See if the text is read from a memory-mapped file set by setFile().
+     *
+     * @return true if the document is memory-mapped
+     */
+    public boolean isMapped() {
+        return document.isMapped();
+    }
+
+    /**
+     * See if the memory-mapped file has been truncated since setFile().
+     * The text past its new end can no longer be read or saved.
+     *
+     * @return true if the file was truncated
+     */
+    public boolean isTruncated() {
+        return document.isTruncated();
+    }
+
     /**
      * Get the maximum possible column number.  1-based.
      *
@@ -1021,8 +1045,6 @@ public class TEditor extends TWidget implements EditMenuUser {
             return;
         }
 
-        saveUndo();
-
         inSelection = false;
 
         int startCol = selectionColumn0;
@@ -1087,6 +1109,7 @@ public class TEditor extends TWidget implements EditMenuUser {
             endRow + " " + endCol + " " +
             document.getLineNumber() + " " + document.getCursor());
          */
+        document.beginEdit(startRow, endRow - startRow + 1);
         document.setLineNumber(endRow);
         document.setCursor(endCol + 1);
         while (!((document.getLineNumber() == startRow)
@@ -1100,6 +1123,7 @@ public class TEditor extends TWidget implements EditMenuUser {
 
             document.backspace();
         }
+        document.endEdit();
         alignTopLine(true);
     }
 
@@ -1363,7 +1387,9 @@ public class TEditor extends TWidget implements EditMenuUser {
             return;
         }
 
-        // Delete selected text, then paste text from clipboard.
+        // Delete selected text, then paste text from clipboard.  This is
+        // undone as one edit.
+        document.beginEdit(document.getLineNumber(), 1);
         deleteSelection();
 
         for (int i = 0; i < text.length(); ) {
@@ -1384,6 +1410,7 @@ public class TEditor extends TWidget implements EditMenuUser {
             }
             i += Character.charCount(ch);
         }
+        document.endEdit();
     }
 
     /**
@@ -1410,7 +1437,25 @@ public class TEditor extends TWidget implements EditMenuUser {
      * @param text the new contents
      */
     public void setText(final String text) {
+        document.close();
         document = new Document(text, defaultColor);
+        document.setUndoLevel(undoLevel);
+        unsetSelection();
+        topLine = 0;
+        leftColumn = 0;
+    }
+
+    /**
+     * Set the entire contents of the editor from a file.  The file is read
+     * lazily, so this returns before a large file has been read.
+     *
+     * @param file the file, encoded as UTF-8
+     * @throws IOException if a java.io operation throws
+     */
+    public void setFile(final File file) throws IOException {
+        document.close();
+        document = new Document(file, defaultColor);
+        document.setUndoLevel(undoLevel);
         unsetSelection();
         topLine = 0;
         leftColumn = 0;
@@ -1456,36 +1501,13 @@ public class TEditor extends TWidget implements EditMenuUser {
         return true;
     }
 
-    /**
-     * Save undo state.
-     */
-    private void saveUndo() {
-        SavedState state = new SavedState();
-        state.document = document.dup();
-        state.topLine = topLine;
-        state.leftColumn = leftColumn;
-        if (undoLevel > 0) {
-            while (undoList.size() > undoLevel) {
-                undoList.remove(0);
-            }
-        }
-        undoList.add(state);
-        undoListI = undoList.size() - 1;
-    }
-
     /**
      * Undo an edit.
      */
     public void undo() {
         inSelection = false;
-        if ((undoListI >= 0) && (undoListI < undoList.size())) {
-            SavedState state = undoList.get(undoListI);
-            document = state.document.dup();
-            topLine = state.topLine;
-            leftColumn = state.leftColumn;
-            undoListI--;
-            setCursorY(document.getLineNumber() - topLine);
-            alignCursor();
+        if (document.undo()) {
+            alignTopLine(false);
         }
     }
 
@@ -1494,14 +1516,8 @@ public class TEditor extends TWidget implements EditMenuUser {
      */
     public void redo() {
         inSelection = false;
-        if ((undoListI >= 0) && (undoListI < undoList.size())) {
-            SavedState state = undoList.get(undoListI);
-            document = state.document.dup();
-            topLine = state.topLine;
-            leftColumn = state.leftColumn;
-            undoListI++;
-            setCursorY(document.getLineNumber() - topLine);
-            alignCursor();
+        if (document.redo()) {
+            alignTopLine(false);
         }
     }
 
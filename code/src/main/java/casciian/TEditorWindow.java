@@ -36,6 +36,20 @@ import static casciian.TKeypress.*;
  */
 public class TEditorWindow extends TScrollableWindow {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Files at least this large are memory-mapped and read lazily.
+     */
+    private static final long LAZY_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * How often to look at a memory-mapped file, in millis.
+     */
+    private static final long MAPPED_FILE_MILLIS = 250;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -55,6 +69,18 @@ public class TEditorWindow extends TScrollableWindow {
      */
     private String filename = "";
 
+    /**
+     * Timer that follows a memory-mapped file: it updates the scrollbar as
+     * lines are found, and reloads the file if it is truncated.
+     */
+    private TTimer mappedFileTimer = null;
+
+    /**
+     * If true, the user was told that the memory-mapped file could not be
+     * reloaded.
+     */
+    private boolean truncatedWarned = false;
+
     /**
      * If true, hide the mouse after typing a keystroke.
      */
@@ -126,9 +152,9 @@ public class TEditorWindow extends TScrollableWindow {
             getLocale());
 
         filename = file.getName();
-        String contents = readFileData(file);
-        editField = addEditor(contents, 0, 0, getWidth() - 2, getHeight() - 2);
+        editField = addEditor("", 0, 0, getWidth() - 2, getHeight() - 2);
         setupAfterEditor();
+        loadFile(file);
     }
 
     /**
@@ -312,8 +338,21 @@ public class TEditorWindow extends TScrollableWindow {
                 String filename = fileOpenBox(".");
                 if (filename != null) {
                     try {
-                        String contents = readFileData(filename);
-                        new TEditorWindow(getApplication(), filename, contents);
+                        File file = new File(filename);
+                        if (file.length() >= LAZY_FILE_SIZE) {
+                            TEditorWindow window = new TEditorWindow(
+                                getApplication(), filename, "");
+                            try {
+                                window.loadFile(file);
+                            } catch (IOException e) {
+                                window.close();
+                                throw e;
+                            }
+                        } else {
+                            String contents = readFileData(filename);
+                            new TEditorWindow(getApplication(), filename,
+                                contents);
+                        }
                     } catch (IOException e) {
                         messageBox(i18n.getString("errorDialogTitle"),
                             MessageFormat.format(i18n.
@@ -397,6 +436,19 @@ public class TEditorWindow extends TScrollableWindow {
     // TWindow ----------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Called by application.closeWindow().  Closing the editor stops
+     * reading a memory-mapped file.
+     */
+    @Override
+    protected void onClose() {
+        if (mappedFileTimer != null) {
+            getApplication().removeTimer(mappedFileTimer);
+            mappedFileTimer = null;
+        }
+        super.onClose();
+    }
+
     /**
      * Draw the window.
      */
@@ -501,6 +553,108 @@ public class TEditorWindow extends TScrollableWindow {
         }
     }
 
+    /**
+     * Load a file into the editor.  Large files are memory-mapped, so that
+     * the first screen appears before the whole file has been read.
+     *
+     * @param file the file to open
+     * @throws IOException if a java.io operation throws
+     */
+    private void loadFile(final File file) throws IOException {
+        if (file.length() >= LAZY_FILE_SIZE) {
+            editField.setFile(file);
+            if (mappedFileTimer == null) {
+                mappedFileTimer = getApplication().addTimer(
+                    MAPPED_FILE_MILLIS, true,
+                    new TAction() {
+                        public void DO() {
+                            checkMappedFile();
+                        }
+                    }
+                );
+                mappedFileTimer.setRepaint(false);
+            }
+        } else {
+            editField.setText(readFileData(file));
+        }
+        setBottomValue(editField.getMaximumRowNumber());
+        setRightValue(editField.getMaximumColumnNumber());
+    }
+
+    /**
+     * Follow a memory-mapped file.  The scrollbar grows as the background
+     * thread finds more lines.  If the file was truncated, for example by
+     * log rotation, the text past its new end is gone from the mapping, so
+     * the file is read again.  A document with unsaved changes is never
+     * reloaded: the user is told instead.
+     */
+    private void checkMappedFile() {
+        if (!editField.isMapped()) {
+            if (mappedFileTimer != null) {
+                mappedFileTimer.setRecurring(false);
+                mappedFileTimer = null;
+            }
+            return;
+        }
+
+        // The document watches the file it mapped, not the name, so saving
+        // it, which replaces the file, is not a truncation.
+        if (editField.isTruncated()) {
+            if (editField.isDirty()) {
+                warnTruncated(MessageFormat.format(i18n.
+                        getString("fileTruncated"), filename));
+            } else {
+                reloadMappedFile();
+            }
+        }
+
+        int bottom = editField.getMaximumRowNumber();
+        if (bottom != getBottomValue()) {
+            setBottomValue(bottom);
+            invalidate();
+        }
+    }
+
+    /**
+     * Read a truncated memory-mapped file again, keeping the editing
+     * position where it still exists.
+     */
+    private void reloadMappedFile() {
+        int row = editField.getEditingRowNumber();
+        int column = editField.getEditingColumnNumber();
+        try {
+            loadFile(new File(filename));
+        } catch (IOException e) {
+            warnTruncated(MessageFormat.format(i18n.
+                    getString("errorReadingFile"), e.getMessage()));
+            return;
+        }
+        truncatedWarned = false;
+        editField.setEditingRowNumber(Math.min(row,
+                editField.getMaximumRowNumber()));
+        editField.setEditingColumnNumber(column);
+        invalidate();
+    }
+
+    /**
+     * Tell the user once that the memory-mapped file could not be
+     * reloaded.  Timers cannot open modal boxes, so this is shown after the
+     * timers have run.
+     *
+     * @param message the message
+     */
+    private void warnTruncated(final String message) {
+        if (truncatedWarned) {
+            return;
+        }
+        truncatedWarned = true;
+        getApplication().invokeLater(new Runnable() {
+            public void run() {
+                messageBox(i18n.getString("errorDialogTitle"), message);
+            }
+        });
+    }
+
     /**
      * Read file data into a string.
      *
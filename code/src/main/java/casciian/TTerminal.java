@@ -22,12 +22,12 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 
-import casciian.bits.Cell;
 import casciian.bits.Clipboard;
 import casciian.bits.ComplexCell;
 import casciian.event.TCommandEvent;
@@ -90,6 +90,27 @@ public class TTerminal extends TScrollable
      */
     private TerminalState terminalState;
 
+    /**
+     * The terminal state that the screen was last invalidated for.
+     */
+    private TerminalState drawnState;
+
+    /**
+     * The vertical scroll value that the screen was last invalidated for.
+     */
+    private int drawnVerticalValue = 0;
+
+    /**
+     * If true, the emulator has posted an update that onIdle() has not
+     * invalidated yet.
+     */
+    private volatile boolean updatePending = false;
+
+    /**
+     * Scratch cell used by draw() for every cell of the display.
+     */
+    private final ComplexCell drawCell = new ComplexCell();
+
     /**
      * Update(s) from the terminal.
      */
@@ -421,6 +442,21 @@ public class TTerminal extends TScrollable
         } // synchronized (emulator)
     }
 
+    /**
+     * Method that subclasses can override to do processing when the UI is
+     * idle.  Here the rows the emulator changed are invalidated, so that
+     * only they are drawn again.
+     */
+    @Override
+    public void onIdle() {
+        super.onIdle();
+
+        if (updatePending) {
+            updatePending = false;
+            invalidateChangedRows();
+        }
+    }
+
     /**
      * Handle keystrokes.
      *
@@ -608,8 +644,11 @@ public class TTerminal extends TScrollable
         List<DisplayLine> display = currentDisplay;
 
         int width = getDisplayWidth();
+        int absoluteX = getAbsoluteX();
+        int absoluteY = getAbsoluteY();
 
-        // Draw the emulator screen.
+        // Draw the emulator screen.  When only some rows were invalidated,
+        // the rest are outside the damage clip and still on the screen.
         int row = 0;
         for (DisplayLine line: display) {
             int widthMax = width;
@@ -619,28 +658,10 @@ public class TTerminal extends TScrollable
             if (widthMax > getWidth()) {
                 widthMax = getWidth();
             }
-            for (int i = 0; i < widthMax; i++) {
-                ComplexCell ch = line.charAt(i);
-                ComplexCell newCell = new ComplexCell(ch);
-                boolean reverse = line.isReverseColor() ^ ch.isReverse();
-                newCell.setReverse(false);
-                if (reverse) {
-                    if (ch.getForeColorRGB() < 0) {
-                        newCell.setBackColor(ch.getForeColor());
-                    } else {
-                        newCell.setBackColorRGB(ch.getForeColorRGB());
-                    }
-                    if (ch.getBackColorRGB() < 0) {
-                        newCell.setForeColor(ch.getBackColor());
-                    } else {
-                        newCell.setForeColorRGB(ch.getBackColorRGB());
-                    }
-                }
-                if (line.isDoubleWidth()) {
-                    putDoubleWidthCharXY(line, (i * 2), row, newCell);
-                } else {
-                    putCharXY(i, row, newCell);
-                }
+            if (getScreen().intersectsDamageClip(absoluteX, absoluteY + row,
+                    widthMax, 1)
+            ) {
+                line.drawTo(getScreen(), row, 0, widthMax, drawCell);
             }
             row++;
         }
@@ -677,9 +698,7 @@ public class TTerminal extends TScrollable
         }
 
         // Vertical scrollbar
-        setTopValue(getHeight()
-            - (terminalState.getScrollbackBuffer().size()
-                + terminalState.getDisplayBuffer().size()));
+        setTopValue(getHeight() - terminalState.getLineCount());
         setVerticalBigChange(getHeight());
 
     }
@@ -698,7 +717,7 @@ public class TTerminal extends TScrollable
                 terminalState = emulator.captureState();
             }
         } else {
-            // If the emulator posted updated, sync.
+            // If a state was posted directly, sync.
             synchronized (dirtyQueue) {
                 if (dirtyQueue.size() > 0) {
                     // We will be dropping frames to keep up.
@@ -706,6 +725,66 @@ public class TTerminal extends TScrollable
                     dirtyQueue.clear();
                 }
             }
+            // Capture at most once per frame, no matter how many updates
+            // the emulator posted since the last one.
+            if (terminalState.getGeneration() != emulator.getGeneration()) {
+                synchronized (emulator) {
+                    terminalState = emulator.captureState();
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate the rows that the emulator changed since the last time
+     * this was called, or the whole window if the view moved.
+     */
+    private void invalidateChangedRows() {
+        if (emulator == null) {
+            return;
+        }
+        TerminalState previous = drawnState;
+        int previousVerticalValue = drawnVerticalValue;
+        checkTerminalState();
+
+        if ((previous == null)
+            || !emulator.isReading()
+            || (getVerticalValue() != 0)
+            || (previousVerticalValue != 0)
+            || (previous.getLineCount() != terminalState.getLineCount())
+            || !previous.getScreenTitle().equals(
+                terminalState.getScreenTitle())
+        ) {
+            // Scrollback moved under the view, the title or scrollbar
+            // changed, or the shell is gone: draw everything.  The window
+            // draws its title before draw() would update it.
+            if ((shell != null)
+                && (terminalState.getScreenTitle().length() > 0)
+            ) {
+                title = terminalState.getScreenTitle();
+            }
+            drawnState = terminalState;
+            drawnVerticalValue = getVerticalValue();
+            doRepaint();
+            return;
+        }
+
+        // Each run of changed rows is one rectangle.  Display row 0 is
+        // drawn below any blank rows that pad out a taller widget.
+        BitSet dirtyRows = terminalState.getDirtyRows(previous);
+        int offset = getHeight() - terminalState.getHeight();
+        int row = dirtyRows.nextSetBit(0);
+        while (row >= 0) {
+            int end = dirtyRows.nextClearBit(row);
+            invalidate(0, row + offset, getWidth(), end - row);
+            row = dirtyRows.nextSetBit(end);
+        }
+
+        if (!terminalState.isWithinSynchronizedUpdate()) {
+            // During a synchronized update draw() may still show the rows
+            // from before it, so compare against the old state again
+            // until it is over.
+            drawnState = terminalState;
         }
     }
 
@@ -912,6 +991,19 @@ public class TTerminal extends TScrollable
             // SQUASH
         }
 
+        // Spill scrollback past scrollbackMax to disk option
+        if (System.getProperty("casciian.TTerminal.scrollbackSpill",
+                "false").equals("true")) {
+
+            try {
+                if (emulator != null) {
+                    emulator.setScrollbackSpill(true);
+                }
+            } catch (IOException e) {
+                // SQUASH
+            }
+        }
+
     }
 
     /**
@@ -1174,22 +1266,6 @@ public class TTerminal extends TScrollable
         return false;
     }
 
-    /**
-     * Draw glyphs for a double-width or double-height VT100 cell to two
-     * screen cells.
-     *
-     * @param line the line this VT100 cell is in
-     * @param x the X position to draw the left half to
-     * @param y the Y position to draw to
-     * @param cell the cell to draw
-     */
-    private void putDoubleWidthCharXY(final DisplayLine line, final int x,
-        final int y, final ComplexCell cell) {
-
-        putCharXY(x, y, cell);
-        putCharXY(x + 1, y, ' ', cell);
-    }
-
     /**
      * Get the exit value for the emulator.
      *
@@ -1208,19 +1284,16 @@ public class TTerminal extends TScrollable
      */
     public void writeSessionAsText(final Writer writer) throws IOException {
         checkTerminalState();
-        for (DisplayLine line: terminalState.getScrollbackBuffer()) {
+        StringBuilder sb = new StringBuilder(getDisplayWidth() + 1);
+        int lineCount = terminalState.getLineCount();
+        for (int row = 0; row < lineCount; row++) {
+            DisplayLine line = terminalState.getLine(row);
+            sb.setLength(0);
             for (int i = 0; i < line.length(); i++) {
-                writer.write(new String(Character.toChars(
-                        line.charAt(i).getChar())));
+                sb.appendCodePoint(line.getChar(i));
             }
-            writer.write("\n");
-        }
-        for (DisplayLine line: terminalState.getDisplayBuffer()) {
-            for (int i = 0; i < line.length(); i++) {
-                writer.write(new String(Character.toChars(
-                        line.charAt(i).getChar())));
-            }
-            writer.write("\n");
+            sb.append('\n');
+            writer.append(sb);
         }
     }
 
@@ -1234,15 +1307,12 @@ public class TTerminal extends TScrollable
      */
     public void writeSessionAsHtml(final Writer writer) throws IOException {
         checkTerminalState();
-        for (DisplayLine line: terminalState.getScrollbackBuffer()) {
+        ComplexCell cell = new ComplexCell();
+        int lineCount = terminalState.getLineCount();
+        for (int row = 0; row < lineCount; row++) {
+            DisplayLine line = terminalState.getLine(row);
             for (int i = 0; i < line.length(); i++) {
-                writer.write(line.charAt(i).toHtml());
-            }
-            writer.write("\n");
-        }
-        for (DisplayLine line: terminalState.getDisplayBuffer()) {
-            for (int i = 0; i < line.length(); i++) {
-                writer.write(line.charAt(i).toHtml());
+                writer.write(line.readCell(i, cell).toHtml());
             }
             writer.write("\n");
         }
@@ -1261,9 +1331,27 @@ public class TTerminal extends TScrollable
         synchronized (dirtyQueue) {
             dirtyQueue.add(terminalState);
         }
+        updatePending = true;
         TApplication app = getApplication();
         if (app != null) {
-            app.doRepaint();
+            app.wakeForRepaint();
+        }
+    }
+
+    /**
+     * Called by emulator when fresh data has come in.  The state is not
+     * captured here: draw() captures it at most once per frame.
+     *
+     * @param emulator the emulator that was updated
+     * @param generation the emulator generation after the update
+     */
+    @Override
+    public void postUpdate(final ECMA48 emulator, final long generation) {
+        // onIdle() works out which rows changed.
+        updatePending = true;
+        TApplication app = getApplication();
+        if (app != null) {
+            app.wakeForRepaint();
         }
     }
 
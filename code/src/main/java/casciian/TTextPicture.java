@@ -21,7 +21,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 
-import casciian.bits.Cell;
+import casciian.bits.ComplexCell;
 import casciian.event.TKeypressEvent;
 import casciian.event.TMouseEvent;
 import casciian.event.TResizeEvent;
@@ -61,6 +61,11 @@ public class TTextPicture extends TScrollable implements TerminalListener {
      */
     private TerminalState terminalState;
 
+    /**
+     * Scratch cell used by draw() for every cell of the display.
+     */
+    private final ComplexCell drawCell = new ComplexCell();
+
     /**
      * Update(s) from the terminal.
      */
@@ -232,9 +237,7 @@ public class TTextPicture extends TScrollable implements TerminalListener {
         }
 
         // Vertical scrollbar
-        setTopValue(getHeight()
-            - (terminalState.getScrollbackBuffer().size()
-                + terminalState.getDisplayBuffer().size()));
+        setTopValue(getHeight() - terminalState.getLineCount());
         setVerticalBigChange(getHeight());
     }
 
@@ -252,7 +255,7 @@ public class TTextPicture extends TScrollable implements TerminalListener {
                 terminalState = terminal.captureState();
             }
         } else {
-            // If the emulator posted updated, sync.
+            // If a state was posted directly, sync.
             synchronized (dirtyQueue) {
                 if (dirtyQueue.size() > 0) {
                     // We will be dropping frames to keep up.
@@ -260,6 +263,13 @@ public class TTextPicture extends TScrollable implements TerminalListener {
                     dirtyQueue.clear();
                 }
             }
+            // Capture at most once per frame, no matter how many updates
+            // the emulator posted since the last one.
+            if (terminalState.getGeneration() != terminal.getGeneration()) {
+                synchronized (terminal) {
+                    terminalState = terminal.captureState();
+                }
+            }
         }
     }
 
@@ -274,7 +284,22 @@ public class TTextPicture extends TScrollable implements TerminalListener {
         }
         TApplication app = getApplication();
         if (app != null) {
-            app.doRepaint();
+            doRepaint();
+        }
+    }
+
+    /**
+     * Called by emulator when fresh data has come in.  The state is not
+     * captured here: draw() captures it at most once per frame.
+     *
+     * @param emulator the emulator that was updated
+     * @param generation the emulator generation after the update
+     */
+    @Override
+    public void postUpdate(final ECMA48 emulator, final long generation) {
+        TApplication app = getApplication();
+        if (app != null) {
+            doRepaint();
         }
     }
 
@@ -342,48 +367,9 @@ public class TTextPicture extends TScrollable implements TerminalListener {
             if (widthMax > getWidth()) {
                 widthMax = getWidth();
             }
-            for (int i = 0; i < widthMax; i++) {
-                Cell ch = line.charAt(i + left);
-
-                Cell newCell = new Cell(ch);
-                boolean reverse = line.isReverseColor() ^ ch.isReverse();
-                newCell.setReverse(false);
-                if (reverse) {
-                    if (ch.getForeColorRGB() < 0) {
-                        newCell.setBackColor(ch.getForeColor());
-                    } else {
-                        newCell.setBackColorRGB(ch.getForeColorRGB());
-                    }
-                    if (ch.getBackColorRGB() < 0) {
-                        newCell.setForeColor(ch.getBackColor());
-                    } else {
-                        newCell.setForeColorRGB(ch.getBackColorRGB());
-                    }
-                }
-                if (line.isDoubleWidth()) {
-                    putDoubleWidthCharXY(line, (i * 2), row, newCell);
-                } else {
-                    putCharXY(i, row, newCell);
-                }
-            }
+            line.drawTo(getScreen(), row, left, widthMax, drawCell);
             row++;
         }
     }
 
-    /**
-     * Draw glyphs for a double-width or double-height VT100 cell to two
-     * screen cells.
-     *
-     * @param line the line this VT100 cell is in
-     * @param x the X position to draw the left half to
-     * @param y the Y position to draw to
-     * @param cell the cell to draw
-     */
-    private void putDoubleWidthCharXY(final DisplayLine line, final int x,
-        final int y, final Cell cell) {
-
-        putCharXY(x, y, cell);
-        putCharXY(x + 1, y, ' ', cell);
-    }
-
 }
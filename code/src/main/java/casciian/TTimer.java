@@ -45,6 +45,11 @@ public class TTimer {
      */
     private TAction action;
 
+    /**
+     * If true, repaint the entire screen after every tick.
+     */
+    private boolean repaint = true;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -89,6 +94,27 @@ public class TTimer {
         this.recurring = recurring;
     }
 
+    /**
+     * Get the repaint flag.
+     *
+     * @return if true, the entire screen is repainted after every tick
+     */
+    public boolean isRepaint() {
+        return repaint;
+    }
+
+    /**
+     * Set the repaint flag.  By default the entire screen is repainted
+     * after every tick.  A timer whose action calls TWidget.invalidate() on
+     * what it changes can turn this off, so that only that is redrawn.
+     *
+     * @param repaint if false, the screen is only redrawn where the action
+     * asks for it
+     */
+    public void setRepaint(final boolean repaint) {
+        this.repaint = repaint;
+    }
+
     /**
      * Tick this timer.  Note package private access.
      */
@@ -1542,7 +1542,11 @@ public abstract class TWidget implements Comparable<TWidget> {
         // middle of drawing when the widget or window is closed.
         List<TWidget> children2 = new ArrayList<TWidget>(children);
         for (TWidget widget: children2) {
-            if (widget.isVisible() && (widget != activeChild)) {
+            if (widget.isVisible()
+                && (widget != activeChild)
+                && screen.intersectsDamageClip(widget.getAbsoluteX(),
+                    widget.getAbsoluteY(), widget.width, widget.height)
+            ) {
                 widget.drawChildren();
                 if (!isDrawable()) {
                     // An action taken by a draw method unhooked me from the UI.
@@ -1572,10 +1576,80 @@ public abstract class TWidget implements Comparable<TWidget> {
     }
 
     /**
-     * Repaint the screen on the next update.
+     * Repaint the screen on the next update.  Only this widget's window is
+     * drawn again, unless something else needs the entire screen to be
+     * repainted.
      */
     protected final void doRepaint() {
-        window.getApplication().doRepaint();
+        window.invalidate();
+    }
+
+    /**
+     * Redraw this widget on the next update.  A window is redrawn with its
+     * shadow.
+     */
+    public final void invalidate() {
+        // Trimmed to the widget, or to the window and its shadow.
+        invalidate(0, 0, width + 2, height + 1);
+    }
+
+    /**
+     * Redraw a rectangle of this widget on the next update.  Only the
+     * windows and widgets inside the rectangle are drawn again, unless
+     * something else needs the entire screen to be repainted.
+     *
+     * @param x left column of the rectangle, relative to this widget
+     * @param y top row of the rectangle, relative to this widget
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public final void invalidate(final int x, final int y, final int width,
+        final int height) {
+
+        TApplication application = getApplication();
+        if (application == null) {
+            return;
+        }
+        // This may be called from another thread, such as an emulator
+        // reader, so the position is looked up later by getDamageRectangle()
+        // on the thread that moves widgets.
+        application.invalidate(this, x, y, width, height);
+    }
+
+    /**
+     * Find where a rectangle of this widget is on the screen.  A window
+     * includes its shadow.  Note package private access.
+     *
+     * @param x left column of the rectangle, relative to this widget
+     * @param y top row of the rectangle, relative to this widget
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     * @return {x, y, width, height} in absolute coordinates, or null if
+     * none of the rectangle is on this widget
+     */
+    int [] getDamageRectangle(final int x, final int y, final int width,
+        final int height) {
+
+        if ((getApplication() == null) || (parent == null)) {
+            return null;
+        }
+
+        int right = this.width;
+        int bottom = this.height;
+        if (this instanceof TWindow) {
+            // Include the shadow.
+            right += 2;
+            bottom += 1;
+        }
+        int left = Math.max(0, x);
+        int top = Math.max(0, y);
+        right = Math.min(right, x + width);
+        bottom = Math.min(bottom, y + height);
+        if ((right <= left) || (bottom <= top)) {
+            return null;
+        }
+        return new int[] { getAbsoluteX() + left, getAbsoluteY() + top,
+                           right - left, bottom - top };
     }
 
     /**
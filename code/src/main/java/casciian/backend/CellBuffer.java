@@ -0,0 +1,875 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.backend;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import casciian.bits.Cell;
+import casciian.bits.CellAttributes;
+import casciian.bits.Color;
+import casciian.bits.ComplexCell;
+
+/**
+ * CellBuffer is a grid of cells stored in primitive arrays, one row after
+ * another, in place of one ComplexCell object per cell.  Walking a row
+ * touches consecutive array elements, and comparing two cells does not
+ * follow any pointers.
+ *
+ * Each cell has a codepoint, attributes packed into a long (see
+ * CellAttributes.getPackedAttributes(), plus the Cell.Width), and two RGB
+ * colors.  Grapheme clusters with more than one codepoint are kept in a
+ * separate table.
+ *
+ * Every write marks its columns dirty on its row, so that a flush only
+ * has to look at the dirty span of each dirty row.  Every write also
+ * advances a generation counter, and each row remembers the generation it
+ * was last written at, so that a copy of the buffer can be brought up to
+ * date by copying only the rows written since.
+ */
+public final class CellBuffer {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Bit position of the Cell.Width in a packed attributes value.  Bits
+     * below this belong to CellAttributes.getPackedAttributes().
+     */
+    private static final int WIDTH_SHIFT = 48;
+
+    /**
+     * Mask of the Cell.Width bits in a packed attributes value.
+     */
+    private static final long WIDTH_MASK = 0x03L << WIDTH_SHIFT;
+
+    /**
+     * Bit position of the foreground palette color in a packed attributes
+     * value.
+     */
+    private static final int FORE_COLOR_SHIFT = 32;
+
+    /**
+     * Mask of the foreground palette color in a packed attributes value.
+     */
+    private static final long FORE_COLOR_MASK = 0x07L << FORE_COLOR_SHIFT;
+
+    /**
+     * Bit position of the background palette color in a packed attributes
+     * value.
+     */
+    private static final int BACK_COLOR_SHIFT = 35;
+
+    /**
+     * Mask of the background palette color in a packed attributes value.
+     */
+    private static final long BACK_COLOR_MASK = 0x07L << BACK_COLOR_SHIFT;
+
+    /**
+     * The Cell.Width values, indexed by ordinal.
+     */
+    private static final Cell.Width [] WIDTHS = Cell.Width.values();
+
+    /**
+     * The codepoint of a cell that holds a grapheme cluster.
+     */
+    private static final int CLUSTER = -1;
+
+    /**
+     * The codepoint of an unset cell, the same as Cell's unset value.  An
+     * unset cell is not equal to any other cell.
+     */
+    private static final int UNSET = 0xFFFF;
+
+    /**
+     * Packed attributes of a blank (reset) cell.
+     */
+    private static final long BLANK = pack(new Cell());
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The number of columns.
+     */
+    private final int width;
+
+    /**
+     * The number of rows.
+     */
+    private final int height;
+
+    /**
+     * The codepoint of each cell, or CLUSTER.
+     */
+    private final int [] codePoints;
+
+    /**
+     * The attributes and Cell.Width of each cell, see pack().
+     */
+    private final long [] attrs;
+
+    /**
+     * The foreground RGB of each cell, negative means unset.
+     */
+    private final int [] foreColorRGB;
+
+    /**
+     * The background RGB of each cell, negative means unset.
+     */
+    private final int [] backColorRGB;
+
+    /**
+     * Multi-codepoint grapheme clusters, by cell index.  These arrays are
+     * never modified, so they can be shared between buffers.
+     */
+    private HashMap<Integer, int []> clusters = null;
+
+    /**
+     * The first dirty column of each row, or width if the row is clean.
+     */
+    private final int [] dirtyLeft;
+
+    /**
+     * The column after the last dirty column of each row, or 0 if the row
+     * is clean.
+     */
+    private final int [] dirtyRight;
+
+    /**
+     * The number of dirty rows.
+     */
+    private int dirtyRows = 0;
+
+    /**
+     * The number of writes to this buffer.
+     */
+    private long generation = 0;
+
+    /**
+     * The generation at which each row was last written.
+     */
+    private final long [] rowGenerations;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.  All cells are blank.
+     *
+     * @param width number of columns
+     * @param height number of rows
+     */
+    public CellBuffer(final int width, final int height) {
+        this.width = width;
+        this.height = height;
+        int n = width * height;
+        codePoints = new int[n];
+        attrs = new long[n];
+        foreColorRGB = new int[n];
+        backColorRGB = new int[n];
+        dirtyLeft = new int[height];
+        dirtyRight = new int[height];
+        Arrays.fill(dirtyLeft, width);
+        rowGenerations = new long[height];
+        reset(0, 0, width, height);
+    }
+
+    // ------------------------------------------------------------------------
+    // CellBuffer -------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of columns.
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Copy one cell into an existing cell.  This does not allocate, except
+     * for a grapheme cluster.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param cell the cell to overwrite
+     * @return cell
+     */
+    public ComplexCell readCell(final int x, final int y,
+        final ComplexCell cell) {
+
+        int idx = (y * width) + x;
+        int ch = codePoints[idx];
+        if (ch == CLUSTER) {
+            int [] cluster = clusters.get(idx);
+            cell.setChar(cluster[0]);
+            cell.setCodePoints(cluster);
+        } else {
+            cell.setChar(ch);
+        }
+        long packed = attrs[idx];
+        cell.setPackedAttributes(packed, foreColorRGB[idx], backColorRGB[idx]);
+        cell.setWidth(WIDTHS[(int) ((packed & WIDTH_MASK) >>> WIDTH_SHIFT)]);
+        return cell;
+    }
+
+    /**
+     * Copy the attributes of one cell into an existing CellAttributes.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param attr the attributes to overwrite
+     * @return attr
+     */
+    public CellAttributes readAttr(final int x, final int y,
+        final CellAttributes attr) {
+
+        int idx = (y * width) + x;
+        attr.setPackedAttributes(attrs[idx], foreColorRGB[idx],
+            backColorRGB[idx]);
+        return attr;
+    }
+
+    /**
+     * Get the Cell.Width of one cell.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the width
+     */
+    public Cell.Width getCellWidth(final int x, final int y) {
+        long packed = attrs[(y * width) + x];
+        return WIDTHS[(int) ((packed & WIDTH_MASK) >>> WIDTH_SHIFT)];
+    }
+
+    /**
+     * Get the foreground RGB of one cell.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the RGB, negative means unset
+     */
+    public int getForeColorRGB(final int x, final int y) {
+        return foreColorRGB[(y * width) + x];
+    }
+
+    /**
+     * Get the background palette color of one cell.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the color
+     */
+    public Color getBackColor(final int x, final int y) {
+        long packed = attrs[(y * width) + x];
+        return Color.getSgrColor((int) ((packed & BACK_COLOR_MASK)
+                >>> BACK_COLOR_SHIFT));
+    }
+
+    /**
+     * Get the background RGB of one cell.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the RGB, negative means unset
+     */
+    public int getBackColorRGB(final int x, final int y) {
+        return backColorRGB[(y * width) + x];
+    }
+
+    /**
+     * Set one cell to the character, attributes, and width of another, as
+     * ComplexCell.setTo() does.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param cell the cell to copy
+     */
+    public void setCell(final int x, final int y, final Cell cell) {
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        attrs[idx] = pack(cell);
+        foreColorRGB[idx] = cell.getForeColorRGB();
+        backColorRGB[idx] = cell.getBackColorRGB();
+        if ((cell instanceof ComplexCell)
+            && (((ComplexCell) cell).getCodePointCount() > 1)
+        ) {
+            if (clusters == null) {
+                clusters = new HashMap<Integer, int []>();
+            }
+            clusters.put(idx, ((ComplexCell) cell).getCodePoints());
+            codePoints[idx] = CLUSTER;
+        } else {
+            setCodePoint(idx, cell.getChar());
+        }
+    }
+
+    /**
+     * Set one cell to a character and attributes, as ComplexCell.setTo()
+     * and then setChar() do: if attr is a Cell, its width is also used.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param ch the character
+     * @param attr the attributes
+     */
+    public void setCell(final int x, final int y, final int ch,
+        final CellAttributes attr) {
+
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        if (attr instanceof Cell) {
+            attrs[idx] = pack((Cell) attr);
+        } else {
+            attrs[idx] = attr.getPackedAttributes()
+                | ((long) Cell.Width.SINGLE.ordinal() << WIDTH_SHIFT);
+        }
+        foreColorRGB[idx] = attr.getForeColorRGB();
+        backColorRGB[idx] = attr.getBackColorRGB();
+        setCodePoint(idx, ch);
+    }
+
+    /**
+     * Set the attributes of one cell, keeping its character and width.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param attr the attributes
+     */
+    public void setAttr(final int x, final int y, final CellAttributes attr) {
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        attrs[idx] = (attrs[idx] & WIDTH_MASK) | attr.getPackedAttributes();
+        foreColorRGB[idx] = attr.getForeColorRGB();
+        backColorRGB[idx] = attr.getBackColorRGB();
+    }
+
+    /**
+     * Set the background color of one cell to the background of attr: its
+     * RGB if it has one, else its palette color.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param attr the attributes with the background color
+     */
+    public void setBackColor(final int x, final int y,
+        final CellAttributes attr) {
+
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        Color color = Color.BLACK;
+        if (attr.getBackColorRGB() != -1) {
+            backColorRGB[idx] = attr.getBackColorRGB() & 0xFFFFFF;
+        } else {
+            color = attr.getBackColor();
+            backColorRGB[idx] = -1;
+        }
+        attrs[idx] = (attrs[idx] & ~BACK_COLOR_MASK)
+            | ((long) color.getValue() << BACK_COLOR_SHIFT);
+    }
+
+    /**
+     * Set both RGB colors of one cell and clear its DEFAULT (SGR 39/49)
+     * color flags, as setForeColorRGB(), setBackColorRGB(), and
+     * setDefaultColor() on a CellAttributes would.  The character, width,
+     * and other attributes are kept.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param foreColorRGB the foreground RGB
+     * @param backColorRGB the background RGB
+     */
+    public void setColorRGB(final int x, final int y, final int foreColorRGB,
+        final int backColorRGB) {
+
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        long packed = CellAttributes.clearPackedDefaultColor(attrs[idx]);
+        attrs[idx] = (packed & ~(FORE_COLOR_MASK | BACK_COLOR_MASK))
+            | ((long) Color.WHITE.getValue() << FORE_COLOR_SHIFT)
+            | ((long) Color.BLACK.getValue() << BACK_COLOR_SHIFT);
+        this.foreColorRGB[idx] = foreColorRGB & 0xFFFFFF;
+        this.backColorRGB[idx] = backColorRGB & 0xFFFFFF;
+    }
+
+    /**
+     * Set the character of one cell, keeping its attributes and width.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param ch the character
+     */
+    public void setChar(final int x, final int y, final int ch) {
+        touch(x, x + 1, y);
+        setCodePoint((y * width) + x, ch);
+    }
+
+    /**
+     * Clear the DEFAULT (SGR 39/49) color flags of one cell.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    public void clearDefaultColor(final int x, final int y) {
+        int idx = (y * width) + x;
+        touch(x, x + 1, y);
+        attrs[idx] = CellAttributes.clearPackedDefaultColor(attrs[idx]);
+    }
+
+    /**
+     * Reset one cell to a blank.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    public void reset(final int x, final int y) {
+        reset(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * Reset a rectangle of cells to blanks.
+     *
+     * @param left the left-most column
+     * @param top the top-most row
+     * @param right the column after the right-most column
+     * @param bottom the row after the bottom-most row
+     */
+    public void reset(final int left, final int top, final int right,
+        final int bottom) {
+
+        fill(left, top, right, bottom, ' ');
+    }
+
+    /**
+     * Unset one cell, so that it is not equal to any other cell until it
+     * has been assigned a character.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    public void unset(final int x, final int y) {
+        fill(x, y, x + 1, y + 1, UNSET);
+    }
+
+    /**
+     * Unset every cell.
+     */
+    public void unsetAll() {
+        fill(0, 0, width, height, UNSET);
+    }
+
+    /**
+     * Check if one cell is equal to the cell at the same position in
+     * another buffer of the same width, as ComplexCell.equals() would.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param other the other buffer
+     * @return true if the cells are equal
+     */
+    public boolean equals(final int x, final int y, final CellBuffer other) {
+        int idx = (y * width) + x;
+        int ch = codePoints[idx];
+        if ((ch == UNSET)
+            || (ch != other.codePoints[idx])
+            || (attrs[idx] != other.attrs[idx])
+            || (foreColorRGB[idx] != other.foreColorRGB[idx])
+            || (backColorRGB[idx] != other.backColorRGB[idx])
+        ) {
+            return false;
+        }
+        if (ch == CLUSTER) {
+            return Arrays.equals(clusters.get(idx), other.clusters.get(idx));
+        }
+        return true;
+    }
+
+    /**
+     * Check if any cell in the dirty span of a row differs from the same
+     * cell in another buffer of the same width, or blinks.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @param other the other buffer
+     * @return true if the row needs to be flushed
+     */
+    public boolean isSpanChanged(final int y, final CellBuffer other) {
+        int start = y * width;
+        for (int x = dirtyLeft[y]; x < dirtyRight[y]; x++) {
+            if (CellAttributes.isPackedBlink(attrs[start + x])) {
+                // Blinking screens are always dirty.  There is
+                // opportunity for a Netscape blink tag joke here...
+                return true;
+            }
+        }
+        for (int x = dirtyLeft[y]; x < dirtyRight[y]; x++) {
+            if (!equals(x, y, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if any cell in the dirty span of a row blinks or pulses, and so
+     * must be flushed again even if it has not changed.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the row has an animated cell
+     */
+    public boolean isSpanAnimated(final int y) {
+        int start = y * width;
+        for (int x = dirtyLeft[y]; x < dirtyRight[y]; x++) {
+            long packed = attrs[start + x];
+            if (CellAttributes.isPackedBlink(packed)
+                || CellAttributes.isPackedPulse(packed)
+            ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if any row has been written to since it was last cleaned.
+     *
+     * @return true if there is a dirty row
+     */
+    public boolean isDirty() {
+        return (dirtyRows > 0);
+    }
+
+    /**
+     * Check if a row has been written to since it was last cleaned.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the row is dirty
+     */
+    public boolean isRowDirty(final int y) {
+        return (dirtyRight[y] > 0);
+    }
+
+    /**
+     * Get the first dirty column of a row.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the first dirty column, or width if the row is clean
+     */
+    public int getDirtyLeft(final int y) {
+        return dirtyLeft[y];
+    }
+
+    /**
+     * Get the column after the last dirty column of a row.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the column after the last dirty column, or 0 if the row is
+     * clean
+     */
+    public int getDirtyRight(final int y) {
+        return dirtyRight[y];
+    }
+
+    /**
+     * Mark a rectangle dirty without writing to it.
+     *
+     * @param left the left-most column
+     * @param top the top-most row
+     * @param right the column after the right-most column
+     * @param bottom the row after the bottom-most row
+     */
+    public void markDirty(final int left, final int top, final int right,
+        final int bottom) {
+
+        for (int row = top; row < bottom; row++) {
+            markDirty(left, right, row);
+        }
+    }
+
+    /**
+     * Mark every cell dirty.
+     */
+    public void markAllDirty() {
+        markDirty(0, 0, width, height);
+    }
+
+    /**
+     * Mark a row clean.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    public void clearDirty(final int y) {
+        if (dirtyRight[y] > 0) {
+            dirtyRows--;
+            dirtyLeft[y] = width;
+            dirtyRight[y] = 0;
+        }
+    }
+
+    /**
+     * Mark every row clean.
+     */
+    public void clearAllDirty() {
+        Arrays.fill(dirtyLeft, width);
+        Arrays.fill(dirtyRight, 0);
+        dirtyRows = 0;
+    }
+
+    /**
+     * Get the generation, which advances on every write.
+     *
+     * @return the number of writes so far
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Get the generation at which a row was last written.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return the generation, or 0 if the row has never been written
+     */
+    public long getRowGeneration(final int y) {
+        return rowGenerations[y];
+    }
+
+    /**
+     * Check if one cell is a single codepoint, as
+     * ComplexCell.isCodePoint() would.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @param codePoint the codepoint to look for
+     * @return true if the cell is exactly that codepoint
+     */
+    public boolean isCodePoint(final int x, final int y,
+        final int codePoint) {
+
+        return (codePoints[(y * width) + x] == codePoint);
+    }
+
+    /**
+     * Check if one cell is blank, as Cell.isBlank() would.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the cell is a white-on-black space
+     */
+    public boolean isBlank(final int x, final int y) {
+        int idx = (y * width) + x;
+        long packed = attrs[idx];
+        return ((codePoints[idx] == ' ')
+            && (foreColorRGB[idx] < 0)
+            && (backColorRGB[idx] < 0)
+            && ((packed & WIDTH_MASK) == (BLANK & WIDTH_MASK))
+            && CellAttributes.isPackedPlain(packed));
+    }
+
+    /**
+     * Check if one cell uses a DEFAULT (SGR 39/49) color.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the foreground or background is the default color
+     */
+    public boolean isDefaultColor(final int x, final int y) {
+        return CellAttributes.isPackedDefaultColor(attrs[(y * width) + x]);
+    }
+
+    /**
+     * Check if one cell blinks.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the cell blinks
+     */
+    public boolean isBlink(final int x, final int y) {
+        return CellAttributes.isPackedBlink(attrs[(y * width) + x]);
+    }
+
+    /**
+     * Check if one cell is pulse-animated.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the cell pulses
+     */
+    public boolean isPulse(final int x, final int y) {
+        return CellAttributes.isPackedPulse(attrs[(y * width) + x]);
+    }
+
+    /**
+     * Copy a rectangle of cells from another buffer.  The rectangle must
+     * be inside both buffers.
+     *
+     * @param other the buffer to copy from, which may be this one if the
+     * rectangles do not overlap
+     * @param otherX left column of the rectangle in the other buffer
+     * @param otherY top row of the rectangle in the other buffer
+     * @param x left column of the rectangle in this buffer
+     * @param y top row of the rectangle in this buffer
+     * @param columns number of columns to copy
+     * @param rows number of rows to copy
+     */
+    public void copy(final CellBuffer other, final int otherX,
+        final int otherY, final int x, final int y, final int columns,
+        final int rows) {
+
+        if (columns <= 0) {
+            return;
+        }
+        for (int row = 0; row < rows; row++) {
+            int src = ((otherY + row) * other.width) + otherX;
+            int dst = ((y + row) * width) + x;
+            touch(x, x + columns, y + row);
+            releaseClusters(dst, dst + columns);
+            System.arraycopy(other.codePoints, src, codePoints, dst, columns);
+            System.arraycopy(other.attrs, src, attrs, dst, columns);
+            System.arraycopy(other.foreColorRGB, src, foreColorRGB, dst,
+                columns);
+            System.arraycopy(other.backColorRGB, src, backColorRGB, dst,
+                columns);
+            if ((other.clusters == null) || other.clusters.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < columns; i++) {
+                if (codePoints[dst + i] == CLUSTER) {
+                    if (clusters == null) {
+                        clusters = new HashMap<Integer, int []>();
+                    }
+                    clusters.put(dst + i, other.clusters.get(src + i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Pack a cell's attributes and width into a long.
+     *
+     * @param cell the cell
+     * @return the packed attributes
+     */
+    private static long pack(final Cell cell) {
+        return cell.getPackedAttributes()
+            | ((long) cell.getWidth().ordinal() << WIDTH_SHIFT);
+    }
+
+    /**
+     * Mark a span of a row dirty.
+     *
+     * @param left the left-most column
+     * @param right the column after the right-most column
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    private void markDirty(final int left, final int right, final int y) {
+        if (right <= left) {
+            return;
+        }
+        if (dirtyRight[y] == 0) {
+            dirtyRows++;
+        }
+        if (left < dirtyLeft[y]) {
+            dirtyLeft[y] = left;
+        }
+        if (right > dirtyRight[y]) {
+            dirtyRight[y] = right;
+        }
+    }
+
+    /**
+     * Mark a span of a row dirty because it is being written to.
+     *
+     * @param left the left-most column
+     * @param right the column after the right-most column
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    private void touch(final int left, final int right, final int y) {
+        markDirty(left, right, y);
+        generation++;
+        rowGenerations[y] = generation;
+    }
+
+    /**
+     * Set the codepoint of one cell, releasing any grapheme cluster.
+     *
+     * @param idx the cell index
+     * @param ch the codepoint
+     */
+    private void setCodePoint(final int idx, final int ch) {
+        if (codePoints[idx] == CLUSTER) {
+            clusters.remove(idx);
+        }
+        codePoints[idx] = ch;
+    }
+
+    /**
+     * Forget the grapheme clusters of a range of cells.
+     *
+     * @param start the first cell index
+     * @param end the cell index after the last cell
+     */
+    private void releaseClusters(final int start, final int end) {
+        if ((clusters == null) || clusters.isEmpty()) {
+            return;
+        }
+        for (int idx = start; idx < end; idx++) {
+            if (codePoints[idx] == CLUSTER) {
+                clusters.remove(idx);
+            }
+        }
+    }
+
+    /**
+     * Set a rectangle of cells to a codepoint with blank attributes.
+     *
+     * @param left the left-most column
+     * @param top the top-most row
+     * @param right the column after the right-most column
+     * @param bottom the row after the bottom-most row
+     * @param ch the codepoint
+     */
+    private void fill(final int left, final int top, final int right,
+        final int bottom, final int ch) {
+
+        if (right <= left) {
+            return;
+        }
+        for (int row = top; row < bottom; row++) {
+            int start = (row * width) + left;
+            int end = (row * width) + right;
+            touch(left, right, row);
+            releaseClusters(start, end);
+            Arrays.fill(codePoints, start, end, ch);
+            Arrays.fill(attrs, start, end, BLANK);
+            Arrays.fill(foreColorRGB, start, end, -1);
+            Arrays.fill(backColorRGB, start, end, -1);
+        }
+    }
+
+}
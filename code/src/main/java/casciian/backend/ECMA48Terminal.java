@@ -79,6 +79,24 @@ public class ECMA48Terminal extends LogicalScreen
         AUTO,
     }
 
+    /**
+     * SGR sequences to select the foreground color, indexed by
+     * Color.getValue().
+     */
+    private static final String [] SGR_FOREGROUND = {
+        "\033[30m", "\033[31m", "\033[32m", "\033[33m",
+        "\033[34m", "\033[35m", "\033[36m", "\033[37m",
+    };
+
+    /**
+     * SGR sequences to select the background color, indexed by
+     * Color.getValue().
+     */
+    private static final String [] SGR_BACKGROUND = {
+        "\033[40m", "\033[41m", "\033[42m", "\033[43m",
+        "\033[44m", "\033[45m", "\033[46m", "\033[47m",
+    };
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -164,6 +182,43 @@ public class ECMA48Terminal extends LogicalScreen
      */
     private boolean cursorOn = true;
 
+    /**
+     * The buffer flushPhysical() builds the screen update in.  It is kept
+     * between calls so that repainting does not allocate.
+     */
+    private final StringBuilder flushBuffer = new StringBuilder(8192);
+
+    /**
+     * The characters of flushBuffer, for writing to output.
+     */
+    private char [] flushChars = new char[8192];
+
+    /**
+     * The last attributes emitted by flushString() after a full clear.
+     */
+    private final CellAttributes flushAttr = new CellAttributes();
+
+    /**
+     * The last attributes emitted by flushLine() for the current line.
+     */
+    private final CellAttributes flushLineAttr = new CellAttributes();
+
+    /**
+     * A scratch cell for blinking text that is not drawn with the
+     * terminal's own blink.
+     */
+    private final ComplexCell blinkCell = new ComplexCell();
+
+    /**
+     * A scratch cell for flushLine() to read the logical screen into.
+     */
+    private final ComplexCell flushLogicalCell = new ComplexCell();
+
+    /**
+     * A scratch cell for flushLine() to read the physical screen into.
+     */
+    private final ComplexCell flushPhysicalCell = new ComplexCell();
+
     /**
      * Cache the last window size to figure out if a TResizeEvent needs to be
      * generated.
@@ -281,6 +336,11 @@ public class ECMA48Terminal extends LogicalScreen
      */
     private int lastBytesPerSecond;
 
+    /**
+     * The total bytes written by flushPhysical(), as encoded in UTF-8.
+     */
+    private volatile long bytesWritten;
+
     /**
      * The terminal's input.  If an InputStream is not specified in the
      * constructor, then this InputStreamReader will be bound to System.in
@@ -484,8 +544,7 @@ public class ECMA48Terminal extends LogicalScreen
 
         // Spin up the input reader
         eventQueue = new ArrayList<TInputEvent>();
-        readerThread = new Thread(this);
-        readerThread.start();
+        readerThread = Thread.ofVirtual().name("ECMA48Terminal").start(this);
 
         // Clear the screen
         this.output.write(clearAll());
@@ -596,8 +655,7 @@ public class ECMA48Terminal extends LogicalScreen
 
         // Spin up the input reader
         eventQueue = new ArrayList<TInputEvent>();
-        readerThread = new Thread(this);
-        readerThread.start();
+        readerThread = Thread.ofVirtual().name("ECMA48Terminal").start(this);
 
         // Clear the screen
         this.output.write(clearAll());
@@ -645,7 +703,25 @@ public class ECMA48Terminal extends LogicalScreen
      */
     @Override
     public void flushPhysical() {
-        StringBuilder sb = new StringBuilder();
+        encodeFlushBuffer();
+        if (output != null) {
+            StringBuilder sb = flushBuffer;
+            int n = sb.length();
+            if (flushChars.length < n) {
+                flushChars = new char[Math.max(n, flushChars.length * 2)];
+            }
+            sb.getChars(0, n, flushChars, 0);
+            writeOutput(flushChars, n);
+        }
+    }
+
+    /**
+     * Diff the logical screen against the physical screen into
+     * flushBuffer, and bring the physical screen up to date.
+     */
+    private void encodeFlushBuffer() {
+        StringBuilder sb = flushBuffer;
+        sb.setLength(0);
         if ((cursorVisible)
             && (cursorY >= 0)
             && (cursorX >= 0)
@@ -654,7 +730,7 @@ public class ECMA48Terminal extends LogicalScreen
         ) {
             flushString(sb);
             sb.append(cursor(true));
-            sb.append(gotoXY(cursorX, cursorY));
+            appendGotoXY(sb, cursorX, cursorY);
         } else {
             sb.append(cursor(false));
             flushString(sb);
@@ -670,44 +746,6 @@ public class ECMA48Terminal extends LogicalScreen
         } else if (blinkMillis <= 0) {
             textBlinkVisible = true;
         }
-
-        if (output != null) {
-            if (hasSynchronizedOutput) {
-                if (sb.length() > 0) {
-                    // Begin Synchronized Update (BSU)
-                    output.write("\033[?2026h");
-                    if (debugToStderr) {
-                        System.err.printf("Writing %d bytes to terminal (sync)\n",
-                            sb.length());
-                    }
-                    output.write(sb.toString());
-                    // End Synchronized Update (ESU)
-                    output.write("\033[?2026l");
-                }
-                if (debugToStderr) {
-                    System.err.printf("flushPhysical() \033[?2026h%s\033[?2026l\n",
-                        sb.toString());
-                }
-            } else {
-                if (sb.length() > 0) {
-                    if (debugToStderr) {
-                        System.err.printf("Writing %d bytes to terminal\n",
-                            sb.length());
-                    }
-                    output.write(sb.toString());
-                }
-            }
-            output.flush();
-
-            long now = System.currentTimeMillis();
-            if ((int) (now / 1000) == (int) (lastFlushTime / 1000)) {
-                bytesPerSecond += sb.length();
-            } else {
-                lastBytesPerSecond = sb.length();
-                bytesPerSecond = 0;
-            }
-            lastFlushTime = now;
-        }
     }
 
     /**
@@ -1125,6 +1163,78 @@ public class ECMA48Terminal extends LogicalScreen
         return lastBytesPerSecond;
     }
 
+    /**
+     * Get the total bytes written to the terminal by screen updates.
+     *
+     * @return the number of bytes
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Get a key that is the same for all terminals that encode a screen
+     * update to the same escape sequences.
+     *
+     * @return the key, or null if this terminal's updates depend on its own
+     * blink timing and so cannot be shared
+     */
+    String getFrameProfile() {
+        if (textBlinkOption == TextBlinkOption.SOFT) {
+            return null;
+        }
+        return width + "x" + height + " " + textBlinkOption
+            + (doRgbColor ? " rgb" : "");
+    }
+
+    /**
+     * Encode the screen update that flushPhysical() would write, without
+     * writing it.  The physical screen is brought up to date, so the
+     * update must be passed to writeFrame() next.
+     *
+     * @return the screen update, which may be empty
+     */
+    char [] encodeFrame() {
+        encodeFlushBuffer();
+        char [] chars = new char[flushBuffer.length()];
+        flushBuffer.getChars(0, chars.length, chars, 0);
+        return chars;
+    }
+
+    /**
+     * Check if the terminal's cursor is currently shown.
+     *
+     * @return true if the cursor is visible
+     */
+    boolean isCursorOn() {
+        return cursorOn;
+    }
+
+    /**
+     * Check if the next flushPhysical() will repaint the whole screen.
+     *
+     * @return true if the physical screen was cleared
+     */
+    boolean isReallyCleared() {
+        return reallyCleared;
+    }
+
+    /**
+     * Write a screen update from encodeFrame().  If another terminal with
+     * the same frame profile encoded it, the physical screen is not
+     * updated, so it no longer matches the terminal until the next full
+     * repaint.
+     *
+     * @param chars the screen update from encodeFrame()
+     * @param cursorOn the other terminal's isCursorOn() after the update
+     */
+    void writeFrame(final char [] chars, final boolean cursorOn) {
+        this.cursorOn = cursorOn;
+        if (output != null) {
+            writeOutput(chars, chars.length);
+        }
+    }
+
     /**
      * Getter for sessionInfo.
      *
@@ -1233,7 +1343,87 @@ public class ECMA48Terminal extends LogicalScreen
     }
 
     /**
-     * Perform a somewhat-optimal rendering of a line.
+     * Write a screen update to output, and count the bytes written.
+     *
+     * @param chars the escape sequences and text
+     * @param length the number of characters in chars to write
+     */
+    private void writeOutput(final char [] chars, final int length) {
+        int bytes = utf8Length(chars, length);
+        if (hasSynchronizedOutput) {
+            if (length > 0) {
+                // Begin Synchronized Update (BSU)
+                output.write("\033[?2026h");
+                if (debugToStderr) {
+                    System.err.printf("Writing %d bytes to terminal (sync)\n",
+                        length);
+                }
+                output.write(chars, 0, length);
+                // End Synchronized Update (ESU)
+                output.write("\033[?2026l");
+                bytes += 16;
+            }
+            if (debugToStderr) {
+                System.err.printf("flushPhysical() \033[?2026h%s\033[?2026l\n",
+                    new String(chars, 0, length));
+            }
+        } else {
+            if (length > 0) {
+                if (debugToStderr) {
+                    System.err.printf("Writing %d bytes to terminal\n",
+                        length);
+                }
+                output.write(chars, 0, length);
+            }
+        }
+        output.flush();
+
+        bytesWritten += bytes;
+        long now = System.currentTimeMillis();
+        if ((int) (now / 1000) == (int) (lastFlushTime / 1000)) {
+            bytesPerSecond += bytes;
+        } else {
+            lastBytesPerSecond = bytes;
+            bytesPerSecond = 0;
+        }
+        lastFlushTime = now;
+    }
+
+    /**
+     * Count the bytes that characters take when encoded as UTF-8, which is
+     * how output is written.
+     *
+     * @param chars the characters
+     * @param length the number of characters in chars to count
+     * @return the number of bytes
+     */
+    private static int utf8Length(final char [] chars, final int length) {
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char ch = chars[i];
+            if (ch < 0x80) {
+                bytes++;
+            } else if (ch < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(ch)
+                && (i + 1 < length)
+                && Character.isLowSurrogate(chars[i + 1])
+            ) {
+                bytes += 4;
+                i++;
+            } else {
+                // Unpaired surrogates are written as '?'.
+                bytes += (Character.isSurrogate(ch) ? 1 : 3);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Perform a somewhat-optimal rendering of a line.  Only the dirty span
+     * of the line is visited, unless the screen was cleared.  Afterwards
+     * the line is clean, except for any blinking or pulsing cells, which
+     * stay dirty so that the next flush animates them.
      *
      * @param y row coordinate.  0 is the top-most row.
      * @param sb StringBuilder to write escape sequences to
@@ -1244,13 +1434,10 @@ public class ECMA48Terminal extends LogicalScreen
 
         int lastX = -1;
         int textEnd = 0;
-        for (int x = 0; x < width; x++) {
-            Cell lCell = logical[x][y];
-            if (!lCell.isBlank()
-                || lCell.isDefaultColor(true)
-                || lCell.isDefaultColor(false)
-            ) {
+        for (int x = width - 1; x > 0; x--) {
+            if (!logical.isBlank(x, y) || logical.isDefaultColor(x, y)) {
                 textEnd = x;
+                break;
             }
         }
         // Push textEnd to first column beyond the text area
@@ -1261,19 +1448,45 @@ public class ECMA48Terminal extends LogicalScreen
 
         final boolean reallyDebug = false;
 
-        for (int x = 0; x < width; x++) {
-            ComplexCell lCell = logical[x][y];
-            ComplexCell pCell = physical[x][y];
+        int left = 0;
+        int right = width;
+        if (!reallyCleared) {
+            left = logical.getDirtyLeft(y);
+            right = logical.getDirtyRight(y);
+        }
+        int animatedLeft = width;
+        int animatedRight = 0;
+
+        for (int x = left; x < right; x++) {
+            boolean blink = logical.isBlink(x, y);
+            boolean pulse = logical.isPulse(x, y);
+            if (blink || pulse) {
+                animatedLeft = Math.min(animatedLeft, x);
+                animatedRight = x + 1;
+            }
+            if (!reallyCleared
+                && !blink
+                && !pulse
+                && logical.equals(x, y, physical)
+            ) {
+                // Unchanged, skip reading the cell.
+                continue;
+            }
+
+            ComplexCell lCell = logical.readCell(x, y, flushLogicalCell);
+            ComplexCell pCell = physical.readCell(x, y, flushPhysicalCell);
 
-            if (lCell.isBlink()) {
+            if (blink) {
                 switch (textBlinkOption) {
                 case OFF:
-                    lCell = new ComplexCell(logical[x][y]);
+                    blinkCell.setTo(lCell);
+                    lCell = blinkCell;
                     lCell.setBlink(false);
                     break;
 
                 case SOFT:
-                    lCell = new ComplexCell(logical[x][y]);
+                    blinkCell.setTo(lCell);
+                    lCell = blinkCell;
                     lCell.setBlink(false);
                     if (!textBlinkVisible) {
                         lCell.setDimmedForeColor(backend, blinkDimPercent);
@@ -1300,8 +1513,9 @@ public class ECMA48Terminal extends LogicalScreen
                 }
 
                 if (lastAttr == null) {
-                    lastAttr = new CellAttributes();
-                    sb.append(normal());
+                    lastAttr = flushLineAttr;
+                    lastAttr.reset();
+                    appendNormal(sb);
                 }
 
                 // Place the cell
@@ -1311,7 +1525,7 @@ public class ECMA48Terminal extends LogicalScreen
                             " lastX " + lastX);
                     }
                     // Advancing at least one cell, or the first gotoXY
-                    sb.append(gotoXY(x, y));
+                    appendGotoXY(sb, x, y);
                 }
 
                 assert (lastAttr != null);
@@ -1320,9 +1534,9 @@ public class ECMA48Terminal extends LogicalScreen
                     assert (lCell.isBlank());
 
                     for (int i = x; i < width; i++) {
-                        assert (logical[i][y].isBlank());
+                        assert (logical.isBlank(i, y));
                         // Physical is always updated
-                        physical[i][y].reset();
+                        physical.reset(i, y);
                     }
 
                     // Clear remaining line
@@ -1331,10 +1545,10 @@ public class ECMA48Terminal extends LogicalScreen
                             " lastX " + lastX);
                         System.err.println("X: " + x + " clearRemainingLine()");
                     }
-                    sb.append(gotoXY(x, y));
+                    appendGotoXY(sb, x, y);
                     sb.append(clearRemainingLine());
                     lastAttr.reset();
-                    return;
+                    break;
                 }
 
                 if (debugToStderr && reallyDebug) {
@@ -1342,46 +1556,49 @@ public class ECMA48Terminal extends LogicalScreen
                         " lastX " + lastX);
                 }
                 if (lastX != (x - 1)) {
-                    sb.append(gotoXY(x, y));
+                    appendGotoXY(sb, x, y);
                 }
 
-                // Now emit only the modified attributes
-                StringBuilder attrSgr = new StringBuilder(8);
+                // Now emit only the modified attributes.  Each one is
+                // appended with a leading ';', and the first ';' becomes
+                // the CSI.
+                int sgrStart = sb.length();
                 if (lCell.isBold() != lastAttr.isBold()) {
                     if (lCell.isBold()) {
-                        attrSgr.append(";1");
+                        sb.append(";1");
                     } else {
-                        attrSgr.append(";22");
+                        sb.append(";22");
                     }
                 }
                 if (lCell.isUnderline() != lastAttr.isUnderline()) {
                     if (lCell.isUnderline()) {
-                        attrSgr.append(";4");
+                        sb.append(";4");
                     } else {
-                        attrSgr.append(";24");
+                        sb.append(";24");
                     }
                 }
                 if (lCell.isBlink() != lastAttr.isBlink()) {
                     if (lCell.isBlink()) {
-                        attrSgr.append(";5");
+                        sb.append(";5");
                     } else {
-                        attrSgr.append(";25");
+                        sb.append(";25");
                     }
                 }
                 if (lCell.isReverse() != lastAttr.isReverse()) {
                     if (lCell.isReverse()) {
-                        attrSgr.append(";7");
+                        sb.append(";7");
                     } else {
-                        attrSgr.append(";27");
+                        sb.append(";27");
                     }
                 }
-                if (attrSgr.length() > 0) {
+                if (sb.length() > sgrStart) {
                     if (debugToStderr && reallyDebug) {
-                        System.err.println("2 attr: " + attrSgr.substring(1));
+                        System.err.println("2 attr: "
+                            + sb.substring(sgrStart + 1));
                     }
-                    sb.append("\033[");
-                    sb.append(attrSgr.substring(1));
-                    sb.append("m");
+                    sb.setCharAt(sgrStart, '[');
+                    sb.insert(sgrStart, '\033');
+                    sb.append('m');
                 }
 
                 boolean doForeColorRGB = false;
@@ -1408,7 +1625,7 @@ public class ECMA48Terminal extends LogicalScreen
                     if (debugToStderr && reallyDebug) {
                         System.err.println("3a set foreColorRGB");
                     }
-                    sb.append(colorRGB(foreColorRGB, true));
+                    appendColorRGB(sb, foreColorRGB, true);
                 } else if (lCell.isDefaultColor(true)) {
                     if (!lastAttr.isDefaultColor(true)) {
                         if (debugToStderr && reallyDebug) {
@@ -1425,7 +1642,7 @@ public class ECMA48Terminal extends LogicalScreen
                         if (debugToStderr && reallyDebug) {
                             System.err.println("4 set foreColor");
                         }
-                        sb.append(color(lCell.getForeColor(), true, true));
+                        appendColor(sb, lCell.getForeColor(), true);
                     }
                 }
 
@@ -1437,7 +1654,7 @@ public class ECMA48Terminal extends LogicalScreen
                     if (debugToStderr && reallyDebug) {
                         System.err.println("5 set backColorRGB");
                     }
-                    sb.append(colorRGB(lCell.getBackColorRGB(), false));
+                    appendColorRGB(sb, lCell.getBackColorRGB(), false);
                 } else if (lCell.isDefaultColor(false)) {
                     if (!lastAttr.isDefaultColor(false)) {
                         if (debugToStderr && reallyDebug) {
@@ -1454,14 +1671,14 @@ public class ECMA48Terminal extends LogicalScreen
                         if (debugToStderr && reallyDebug) {
                             System.err.println("6 set backColor");
                         }
-                        sb.append(color(lCell.getBackColor(), false, true));
+                        appendColor(sb, lCell.getBackColor(), false);
                     }
                 }
 
                 // Emit the character
                 if (lCell.getWidth() != Cell.Width.RIGHT) {
                     // Don't emit the right-half of full-width chars.
-                    sb.append(lCell.toCharArray());
+                    lCell.appendTo(sb);
                 }
 
                 // Save the last rendered cell
@@ -1469,43 +1686,46 @@ public class ECMA48Terminal extends LogicalScreen
                 lastAttr.setTo(lCell);
 
                 // Text cell: update, done.
-                physical[x][y].setTo(lCell);
+                physical.setCell(x, y, lCell);
 
             } // if (!lCell.equals(pCell) || (reallyCleared == true))
 
-        } // for (int x = 0; x < width; x++)
+        } // for (int x = left; x < right; x++)
+
+        logical.clearDirty(y);
+        logical.markDirty(animatedLeft, y, animatedRight, y + 1);
     }
 
     /**
-     * Render the screen to a string that can be emitted to something that
-     * knows how to process ECMA-48/ANSI X3.64 escape sequences.
+     * Render the screen to escape sequences that can be emitted to something
+     * that knows how to process ECMA-48/ANSI X3.64 escape sequences.
      *
      * @param sb StringBuilder to write escape sequences to
-     * @return escape sequences string that provides the updates to the
-     * physical screen
      */
-    private String flushString(final StringBuilder sb) {
+    private void flushString(final StringBuilder sb) {
         final boolean reallyDebug = false;
 
         CellAttributes attr = null;
 
         if (reallyCleared) {
-            attr = new CellAttributes();
+            attr = flushAttr;
+            attr.reset();
             sb.append(clearAll());
         }
 
-        // Draw the text part now.
+        // Draw the text part now.  Rows that were not drawn to since the
+        // last flush cannot have changed.
         for (int y = 0; y < height; y++) {
-            flushLine(y, sb, attr);
+            if (reallyCleared || isRowDirty(y)) {
+                flushLine(y, sb, attr);
+            }
         }
 
         reallyCleared = false;
 
-        String result = sb.toString();
         if (debugToStderr && !hasSynchronizedOutput) {
-            System.err.printf("flushString(): %s\n", result);
+            System.err.printf("flushString(): %s\n", sb);
         }
-        return result;
     }
 
     /**
@@ -3010,6 +3230,93 @@ public class ECMA48Terminal extends LogicalScreen
         return sb.toString();
     }
 
+    /**
+     * Append a T.416 RGB parameter sequence for a single color change.
+     *
+     * @param sb the StringBuilder to append to
+     * @param colorRGB a 24-bit RGB value
+     * @param foreground if true, this is a foreground color
+     */
+    private void appendColorRGB(final StringBuilder sb, final int colorRGB,
+        final boolean foreground) {
+
+        if (foreground) {
+            sb.append("\033[38;2;");
+        } else {
+            sb.append("\033[48;2;");
+        }
+        sb.append((colorRGB >>> 16) & 0xFF).append(';');
+        sb.append((colorRGB >>>  8) & 0xFF).append(';');
+        sb.append( colorRGB         & 0xFF).append('m');
+    }
+
+    /**
+     * Append a SGR parameter sequence for a single color change.
+     *
+     * @param sb the StringBuilder to append to
+     * @param color one of the Color.WHITE, Color.BLUE, etc. constants
+     * @param foreground if true, this is a foreground color
+     */
+    private void appendColor(final StringBuilder sb, final Color color,
+        final boolean foreground) {
+
+        if (foreground) {
+            sb.append(SGR_FOREGROUND[color.getValue()]);
+        } else {
+            sb.append(SGR_BACKGROUND[color.getValue()]);
+        }
+    }
+
+    /**
+     * Append the T.416 RGB parameter sequence for one of the system colors,
+     * as rgbColor() would create it.
+     *
+     * @param sb the StringBuilder to append to
+     * @param bold if true, use the bold color, which is always a foreground
+     * color
+     * @param color one of the Color.WHITE, Color.BLUE, etc. constants
+     * @param foreground if true, this is a foreground color
+     */
+    private void appendRgbColor(final StringBuilder sb, final boolean bold,
+        final Color color, final boolean foreground) {
+
+        if (bold || foreground) {
+            sb.append("\033[38;2;");
+        } else {
+            sb.append("\033[48;2;");
+        }
+        int colorRGB;
+        switch (color.getValue()) {
+        case 0:
+            colorRGB = bold ? MYBOLD_BLACK : MYBLACK;
+            break;
+        case 1:
+            colorRGB = bold ? MYBOLD_RED : MYRED;
+            break;
+        case 2:
+            colorRGB = bold ? MYBOLD_GREEN : MYGREEN;
+            break;
+        case 3:
+            colorRGB = bold ? MYBOLD_YELLOW : MYYELLOW;
+            break;
+        case 4:
+            colorRGB = bold ? MYBOLD_BLUE : MYBLUE;
+            break;
+        case 5:
+            colorRGB = bold ? MYBOLD_MAGENTA : MYMAGENTA;
+            break;
+        case 6:
+            colorRGB = bold ? MYBOLD_CYAN : MYCYAN;
+            break;
+        default:
+            colorRGB = bold ? MYBOLD_WHITE : MYWHITE;
+            break;
+        }
+        sb.append((colorRGB >>> 16) & 0xFF).append(';');
+        sb.append((colorRGB >>>  8) & 0xFF).append(';');
+        sb.append( colorRGB         & 0xFF).append('m');
+    }
+
     /**
      * Create a T.416 RGB parameter sequence for both foreground and
      * background color change.
@@ -3390,6 +3697,19 @@ public class ECMA48Terminal extends LogicalScreen
         return normal(true) + rgbColor(false, Color.WHITE, Color.BLACK);
     }
 
+    /**
+     * Append the same sequence as normal().
+     *
+     * @param sb the StringBuilder to append to
+     */
+    private void appendNormal(final StringBuilder sb) {
+        sb.append(normal(true));
+        if (doRgbColor) {
+            appendRgbColor(sb, false, Color.WHITE, true);
+            appendRgbColor(sb, false, Color.BLACK, false);
+        }
+    }
+
     /**
      * Create a SGR parameter sequence to reset to ECMA-48 default
      * foreground/background.
@@ -3478,6 +3798,20 @@ public class ECMA48Terminal extends LogicalScreen
         return String.format("\033[%d;%dH", y + 1, x + 1);
     }
 
+    /**
+     * Append the same sequence as gotoXY().
+     *
+     * @param sb the StringBuilder to append to
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     */
+    private void appendGotoXY(final StringBuilder sb, final int x,
+        final int y) {
+
+        sb.append("\033[").append(y + 1).append(';').append(x + 1)
+            .append('H');
+    }
+
     /**
      * Move the cursor to (x, y).
      *
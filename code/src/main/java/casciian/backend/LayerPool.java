@@ -0,0 +1,156 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.WeakHashMap;
+
+/**
+ * LayerPool hands out offscreen LogicalScreens, called layers, for
+ * composing part of the screen before it is blended onto it, such as a
+ * translucent window.
+ *
+ * Each owner (usually a window) keeps its layers from one frame to the
+ * next, sized to the owner, so that drawing it again does not allocate
+ * anything until it changes size.  When an owner is released, its layers
+ * go back to the pool for the next owner.  Owners that are never released
+ * are only weakly held.
+ */
+public final class LayerPool {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The most released layers to keep for reuse.
+     */
+    private static final int MAX_FREE_LAYERS = 8;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The layers of each owner.
+     */
+    private WeakHashMap<Object, LogicalScreen []> layers;
+
+    /**
+     * Released layers waiting for a new owner.
+     */
+    private List<LogicalScreen> freeLayers;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     */
+    public LayerPool() {
+        layers = new WeakHashMap<Object, LogicalScreen []>();
+        freeLayers = new ArrayList<LogicalScreen>();
+    }
+
+    // ------------------------------------------------------------------------
+    // LayerPool --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get one of an owner's layers, resized if the owner has changed size.
+     * The layer's contents are whatever was last drawn to it.
+     *
+     * @param owner the object that the layer is kept for
+     * @param index which of the owner's layers, starting at 0
+     * @param width the number of columns needed
+     * @param height the number of rows needed
+     * @return the layer
+     */
+    public synchronized LogicalScreen getLayer(final Object owner,
+        final int index, final int width, final int height) {
+
+        LogicalScreen [] owned = layers.get(owner);
+        if (owned == null) {
+            owned = new LogicalScreen[index + 1];
+            layers.put(owner, owned);
+        } else if (owned.length <= index) {
+            LogicalScreen [] grown = new LogicalScreen[index + 1];
+            System.arraycopy(owned, 0, grown, 0, owned.length);
+            owned = grown;
+            layers.put(owner, owned);
+        }
+
+        LogicalScreen layer = owned[index];
+        if (layer == null) {
+            layer = takeFreeLayer(width, height);
+            owned[index] = layer;
+        } else {
+            layer.setDimensions(width, height);
+        }
+        return layer;
+    }
+
+    /**
+     * Return all of an owner's layers to the pool.
+     *
+     * @param owner the object that the layers were kept for
+     */
+    public synchronized void release(final Object owner) {
+        LogicalScreen [] owned = layers.remove(owner);
+        if (owned == null) {
+            return;
+        }
+        for (int i = 0; i < owned.length; i++) {
+            if ((owned[i] != null) && (freeLayers.size() < MAX_FREE_LAYERS)) {
+                freeLayers.add(owned[i]);
+            }
+        }
+    }
+
+    /**
+     * Get the number of released layers waiting for a new owner.
+     *
+     * @return the number of free layers
+     */
+    public synchronized int getFreeLayerCount() {
+        return freeLayers.size();
+    }
+
+    /**
+     * Take a free layer, preferring one that is already the right size, or
+     * create a new one.
+     *
+     * @param width the number of columns needed
+     * @param height the number of rows needed
+     * @return the layer
+     */
+    private LogicalScreen takeFreeLayer(final int width, final int height) {
+        if (freeLayers.size() == 0) {
+            return new LogicalScreen(width, height);
+        }
+        for (int i = 0; i < freeLayers.size(); i++) {
+            LogicalScreen layer = freeLayers.get(i);
+            if ((layer.getWidth() == width) && (layer.getHeight() == height)) {
+                return freeLayers.remove(i);
+            }
+        }
+        LogicalScreen layer = freeLayers.remove(freeLayers.size() - 1);
+        layer.setDimensions(width, height);
+        return layer;
+    }
+
+}
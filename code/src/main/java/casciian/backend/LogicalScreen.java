@@ -26,115 +26,10 @@ import casciian.bits.ImageUtils;
 import casciian.bits.StringUtils;
 
 /**
- * A logical screen composed of a 2D array of Cells.
+ * A logical screen composed of a grid of Cells, stored in a CellBuffer.
  */
 public class LogicalScreen implements Screen {
 
-    // ------------------------------------------------------------------------
-    // Constants --------------------------------------------------------------
-    // ------------------------------------------------------------------------
-
-    /**
-     * A simple 2D RGB array.
-     */
-    private class BufferedImage {
-
-        /**
-         * The 24-bit RGB data.
-         */
-        private int [][] rgb;
-
-        /**
-         * The width of this image.
-         */
-        private int width;
-
-        /**
-         * The height of this image.
-         */
-        private int height;
-
-        /**
-         * Public constructor.
-         *
-         * @param width the number of pixels in width
-         * @param height the number of pixels in height
-         */
-        public BufferedImage(final int width, final int height) {
-            this.width = width;
-            this.height = height;
-            rgb = new int[width][height];
-        }
-
-        /**
-         * Public constructor.
-         *
-         * @param image another BufferedImage that the RGB data will be
-         * copied from
-         */
-        public BufferedImage(final BufferedImage image) {
-            width = image.width;
-            height = image.height;
-            rgb = new int[width][height];
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    this.rgb[x][y] = image.rgb[x][y];
-                }
-            }
-        }
-
-        /**
-         * Get an RGB value.
-         *
-         * @param x the column location
-         * @param y the row location
-         * @return the RGB value
-         */
-        public int getRGB(final int x, final int y) {
-            return rgb[x][y];
-        }
-
-        /**
-         * Set an RGB value.
-         *
-         * @param x the column location
-         * @param y the row location
-         * @param rgb the new RGB value
-         */
-        public void setRGB(final int x, final int y, final int rgb) {
-            this.rgb[x][y] = rgb;
-        }
-
-        /**
-         * Alpha-blend another image over this one.
-         *
-         * @param image the other image
-         * @param alpha a number between 0 and 1
-         */
-        public void alphaBlendOver(final BufferedImage image,
-            final double alpha) {
-
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int underRGB = rgb[x][y];
-                    int overRGB = image.rgb[x][y];
-                    int underRed   = (underRGB >>> 16) & 0xFF;
-                    int underGreen = (underRGB >>>  8) & 0xFF;
-                    int underBlue  =  underRGB         & 0xFF;
-                    int overRed    = (overRGB >>> 16) & 0xFF;
-                    int overGreen  = (overRGB >>>  8) & 0xFF;
-                    int overBlue   =  overRGB         & 0xFF;
-                    int red   = (int) ((  underRed * (1.0 - alpha)) + (  overRed * alpha));
-                    int green = (int) ((underGreen * (1.0 - alpha)) + (overGreen * alpha));
-                    int blue  = (int) (( underBlue * (1.0 - alpha)) + ( overBlue * alpha));
-                    int newRgb = (red << 16) | (green << 8) | blue;
-                    this.rgb[x][y] = newRgb;
-                }
-            }
-        }
-
-    }
-
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -194,15 +89,87 @@ public class LogicalScreen implements Screen {
      */
     private int relativeClipTop;
 
+    /**
+     * Ignore anything drawn left of damageLeft, in absolute coordinates.
+     */
+    private int damageLeft;
+
+    /**
+     * Ignore anything drawn above damageTop, in absolute coordinates.
+     */
+    private int damageTop;
+
+    /**
+     * Ignore anything drawn right of damageRight, in absolute coordinates.
+     */
+    private int damageRight;
+
+    /**
+     * Ignore anything drawn below damageBottom, in absolute coordinates.
+     */
+    private int damageBottom;
+
     /**
      * The physical screen last sent out on flush().
      */
-    protected ComplexCell [][] physical;
+    protected CellBuffer physical;
 
     /**
      * The logical screen being rendered to.
      */
-    protected ComplexCell [][] logical;
+    protected CellBuffer logical;
+
+    /**
+     * The buffer of the screen last copied by copyScreen(), or null.
+     */
+    private CellBuffer copiedFrom = null;
+
+    /**
+     * The generation of copiedFrom when it was copied.
+     */
+    private long copiedFromGeneration;
+
+    /**
+     * The generation of logical after copiedFrom was copied to it.
+     */
+    private long copiedToGeneration;
+
+    /**
+     * The foreground RGB of each cell of a row of this screen being blended.
+     */
+    private int [] blendForeground;
+
+    /**
+     * The background RGB of each cell of a row of this screen being blended.
+     */
+    private int [] blendBackground;
+
+    /**
+     * The foreground RGB of each cell of a row of the screen being blended
+     * over this one.
+     */
+    private int [] blendOverForeground;
+
+    /**
+     * The background RGB of each cell of a row of the screen being blended
+     * over this one.
+     */
+    private int [] blendOverBackground;
+
+    /**
+     * Scratch cell of this screen for blending.
+     */
+    private ComplexCell blendCell = new ComplexCell();
+
+    /**
+     * Scratch cell of the screen being blended over this one.
+     */
+    private ComplexCell blendOverCell = new ComplexCell();
+
+    /**
+     * Scratch attributes for blending.
+     */
+    private CellAttributes blendAttr = new CellAttributes();
 
     /**
      * Set if the user explicitly wants to redraw everything starting with a
@@ -404,27 +371,91 @@ public class LogicalScreen implements Screen {
     }
 
     /**
-     * Get dirty flag.
+     * Limit all drawing to a rectangle.  Unlike the other clipping
+     * boundaries, the damage clip is in absolute coordinates, applies to
+     * unclipped writes too, and is not changed by resetClipping().
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public final synchronized void setDamageClip(final int x, final int y,
+        final int width, final int height) {
+
+        damageLeft   = Math.max(0, x);
+        damageTop    = Math.max(0, y);
+        damageRight  = Math.max(damageLeft, Math.min(this.width, x + width));
+        damageBottom = Math.max(damageTop, Math.min(this.height, y + height));
+    }
+
+    /**
+     * Remove the damage clip, so that the entire screen can be drawn to.
+     */
+    public final synchronized void resetDamageClip() {
+        damageLeft   = 0;
+        damageTop    = 0;
+        damageRight  = width;
+        damageBottom = height;
+    }
+
+    /**
+     * Check if any part of a rectangle is inside the damage clip.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     * @return true if drawing to the rectangle could change the screen
+     */
+    public final boolean intersectsDamageClip(final int x, final int y,
+        final int width, final int height) {
+
+        return ((x < damageRight) && (x + width > damageLeft)
+            && (y < damageBottom) && (y + height > damageTop));
+    }
+
+    /**
+     * Mark a rectangle as damaged, so that the next flush will look at it.
+     * Everything drawn to the screen is marked as it is drawn, so this is
+     * only needed when something other than drawing changes what the
+     * rectangle should look like.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public final synchronized void addDamage(final int x, final int y,
+        final int width, final int height) {
+
+        logical.markDirty(Math.max(0, x), Math.max(0, y),
+            Math.min(this.width, x + width), Math.min(this.height, y + height));
+    }
+
+    /**
+     * Get dirty flag.  Only the cells drawn to since the last flush are
+     * compared to the physical screen, and those that turn out to be
+     * unchanged are marked clean, so an idle screen answers immediately.
      *
      * @return if true, the logical screen is not in sync with the physical
      * screen
      */
-    public final boolean isDirty() {
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (logical[x][y].isBlink()) {
-                    // Blinking screens are always dirty.  There is
-                    // opportunity for a Netscape blink tag joke here...
-                    return true;
-                }
-                synchronized (this) {
-                    if (!logical[x][y].equals(physical[x][y])) {
-                        return true;
-                    }
-                }
+    public final synchronized boolean isDirty() {
+        if (!logical.isDirty()) {
+            return false;
+        }
+        for (int y = 0; y < height; y++) {
+            if (!logical.isRowDirty(y)) {
+                continue;
+            }
+            if (logical.isSpanChanged(y, physical)) {
+                return true;
+            }
+            if (!logical.isSpanAnimated(y)) {
+                logical.clearDirty(y);
             }
         }
-
         return false;
     }
 
@@ -438,11 +469,26 @@ public class LogicalScreen implements Screen {
     public final CellAttributes getAttrXY(final int x, final int y) {
         CellAttributes attr = new CellAttributes();
         if ((x >= 0) && (x < width) && (y >= 0) && (y < height)) {
-            attr.setTo(logical[x][y]);
+            logical.readAttr(x, y, attr);
         }
         return attr;
     }
 
+    /**
+     * Check if the cell at one location blinks or pulses, and so changes
+     * on the physical screen without being drawn again.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the cell at (x, y) is animated
+     */
+    public final boolean isAnimated(final int x, final int y) {
+        if ((x >= 0) && (x < width) && (y >= 0) && (y < height)) {
+            return (logical.isBlink(x, y) || logical.isPulse(x, y));
+        }
+        return false;
+    }
+
     /**
      * Get the cell at one location in absolute coordinates.
      *
@@ -453,7 +499,7 @@ public class LogicalScreen implements Screen {
     public Cell getCharXY(final int x, final int y) {
         ComplexCell cell = new ComplexCell();
         if ((x >= 0) && (x < width) && (y >= 0) && (y < height)) {
-            cell.setTo(logical[x][y]);
+            logical.readCell(x, y, cell);
         }
         return cell;
     }
@@ -489,7 +535,7 @@ public class LogicalScreen implements Screen {
 
         if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
             ComplexCell cell = new ComplexCell();
-            cell.setTo(logical[X][Y]);
+            logical.readCell(X, Y, cell);
             return cell;
         }
         return null;
@@ -536,14 +582,14 @@ public class LogicalScreen implements Screen {
             Y += offsetY;
         }
 
-        if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
-            logical[X][Y].setAttr(attr);
+        if (isInDamageClip(X, Y)) {
+            logical.setAttr(X, Y, attr);
 
             // If this happens to be the cursor position, make the position
             // dirty.
             if ((cursorX == X) && (cursorY == Y)) {
                 synchronized (this) {
-                    physical[cursorX][cursorY].unset();
+                    unsetPhysical(cursorX, cursorY);
                 }
             }
         }
@@ -609,18 +655,14 @@ public class LogicalScreen implements Screen {
             Y += offsetY;
         }
 
-        if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
-            if (attr.getBackColorRGB() != -1) {
-                logical[X][Y].setBackColorRGB(attr.getBackColorRGB());
-            } else {
-                logical[X][Y].setBackColor(attr.getBackColor());
-            }
+        if (isInDamageClip(X, Y)) {
+            logical.setBackColor(X, Y, attr);
 
             // If this happens to be the cursor position, make the position
             // dirty.
             if ((cursorX == X) && (cursorY == Y)) {
                 synchronized (this) {
-                    physical[cursorX][cursorY].unset();
+                    unsetPhysical(cursorX, cursorY);
                 }
             }
         }
@@ -691,12 +733,11 @@ public class LogicalScreen implements Screen {
 
         if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
             Cell cell = new Cell(ch, attr);
-            CellAttributes backAttr = logical[X][Y];
 
-            if (backAttr.getBackColorRGB() >= 0) {
-                cell.setBackColorRGB(backAttr.getBackColorRGB());
+            if (logical.getBackColorRGB(X, Y) >= 0) {
+                cell.setBackColorRGB(logical.getBackColorRGB(X, Y));
             } else {
-                cell.setBackColor(backAttr.getBackColor());
+                cell.setBackColor(logical.getBackColor(X, Y));
             }
             putCharXY(x, y, cell, false);
         }
@@ -736,18 +777,18 @@ public class LogicalScreen implements Screen {
 
         // System.err.printf("putCharXY: %d, %d, %c\n", X, Y, ch);
 
-        if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
+        if (isInDamageClip(X, Y)) {
 
             // Do not put control characters on the display
             assert (ch.getChar() >= 0x20);
             assert (ch.getChar() != 0x7F);
-            logical[X][Y].setTo(ch);
+            logical.setCell(X, Y, ch);
 
             // If this happens to be the cursor position, make the position
             // dirty.
             if ((cursorX == X) && (cursorY == Y)) {
                 synchronized (this) {
-                    physical[cursorX][cursorY].unset();
+                    unsetPhysical(cursorX, cursorY);
                 }
             }
         }
@@ -784,20 +825,19 @@ public class LogicalScreen implements Screen {
 
         // System.err.printf("putCharXY: %d, %d, %c\n", X, Y, ch);
 
-        if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
+        if (isInDamageClip(X, Y)) {
 
             // Do not put control characters on the display
             assert (ch >= 0x20);
             assert (ch != 0x7F);
 
-            logical[X][Y].setTo(attr);
-            logical[X][Y].setChar(ch);
+            logical.setCell(X, Y, ch, attr);
 
             // If this happens to be the cursor position, make the position
             // dirty.
             if ((cursorX == X) && (cursorY == Y)) {
                 synchronized (this) {
-                    physical[cursorX][cursorY].unset();
+                    unsetPhysical(cursorX, cursorY);
                 }
             }
         }
@@ -831,14 +871,14 @@ public class LogicalScreen implements Screen {
 
         // System.err.printf("putCharXY: %d, %d, %c\n", X, Y, ch);
 
-        if ((X >= 0) && (X < width) && (Y >= 0) && (Y < height)) {
-            logical[X][Y].setChar(ch);
+        if (isInDamageClip(X, Y)) {
+            logical.setChar(X, Y, ch);
 
             // If this happens to be the cursor position, make the position
             // dirty.
             if ((cursorX == X) && (cursorY == Y)) {
                 synchronized (this) {
-                    physical[cursorX][cursorY].unset();
+                    unsetPhysical(cursorX, cursorY);
                 }
             }
         }
@@ -1079,14 +1119,10 @@ public class LogicalScreen implements Screen {
 
     /**
      * Reset screen to not-bold, white-on-black.  Also flushes the offset and
-     * clip variables.
+     * clip variables.  Only the damage clip is reset, if one is set.
      */
     public final synchronized void reset() {
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                logical[col][row].reset();
-            }
-        }
+        logical.reset(damageLeft, damageTop, damageRight, damageBottom);
         resetClipping();
     }
 
@@ -1242,16 +1278,16 @@ public class LogicalScreen implements Screen {
         clipBottom = height - offsetY;
 
         for (int i = 0; i < boxHeight; i++) {
-            Cell cell = getCharXY(offsetX + boxLeft + boxWidth,
-                offsetY + boxTop + 1 + i);
-            if (cell.getWidth() == Cell.Width.SINGLE) {
+            if (isSingleWidth(offsetX + boxLeft + boxWidth,
+                    offsetY + boxTop + 1 + i)
+            ) {
                 putAttrXY(boxLeft + boxWidth, boxTop + 1 + i, shadowAttr);
             } else {
                 putCharXY(boxLeft + boxWidth, boxTop + 1 + i, ' ', shadowAttr);
             }
-            cell = getCharXY(offsetX + boxLeft + boxWidth + 1,
-                offsetY + boxTop + 1 + i);
-            if (cell.getWidth() == Cell.Width.SINGLE) {
+            if (isSingleWidth(offsetX + boxLeft + boxWidth + 1,
+                    offsetY + boxTop + 1 + i)
+            ) {
                 putAttrXY(boxLeft + boxWidth + 1, boxTop + 1 + i, shadowAttr);
             } else {
                 putCharXY(boxLeft + boxWidth + 1, boxTop + 1 + i, ' ',
@@ -1259,9 +1295,9 @@ public class LogicalScreen implements Screen {
             }
         }
         for (int i = 0; i < boxWidth; i++) {
-            Cell cell = getCharXY(offsetX + boxLeft + 2 + i,
-                offsetY + boxTop + boxHeight);
-            if (cell.getWidth() == Cell.Width.SINGLE) {
+            if (isSingleWidth(offsetX + boxLeft + 2 + i,
+                    offsetY + boxTop + boxHeight)
+            ) {
                 putAttrXY(boxLeft + 2 + i, boxTop + boxHeight, shadowAttr);
             } else {
                 putCharXY(boxLeft + 2 + i, boxTop + boxHeight, ' ', shadowAttr);
@@ -1291,7 +1327,7 @@ public class LogicalScreen implements Screen {
         ) {
             // Make the current cursor position dirty
             synchronized (this) {
-                physical[cursorX][cursorY].unset();
+                unsetPhysical(cursorX, cursorY);
             }
         }
 
@@ -1352,31 +1388,8 @@ public class LogicalScreen implements Screen {
      * @param height new height
      */
     private synchronized void reallocate(final int width, final int height) {
-        if (logical != null) {
-            for (int row = 0; row < this.height; row++) {
-                for (int col = 0; col < this.width; col++) {
-                    logical[col][row] = null;
-                }
-            }
-            logical = null;
-        }
-        logical = new ComplexCell[width][height];
-        if (physical != null) {
-            for (int row = 0; row < this.height; row++) {
-                for (int col = 0; col < this.width; col++) {
-                    physical[col][row] = null;
-                }
-            }
-            physical = null;
-        }
-        physical = new ComplexCell[width][height];
-
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                physical[col][row] = new ComplexCell();
-                logical[col][row] = new ComplexCell();
-            }
-        }
+        logical = new CellBuffer(width, height);
+        physical = new CellBuffer(width, height);
 
         this.width = width;
         this.height = height;
@@ -1387,6 +1400,8 @@ public class LogicalScreen implements Screen {
         clipBottom = height;
         relativeClipLeft = 0;
         relativeClipTop = 0;
+        resetDamageClip();
+        copiedFrom = null;
 
         reallyCleared = true;
     }
@@ -1395,13 +1410,303 @@ public class LogicalScreen implements Screen {
      * Clear the physical screen.
      */
     public synchronized void clearPhysical() {
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                physical[col][row].unset();
+        physical.unsetAll();
+        logical.markAllDirty();
+    }
+
+    /**
+     * Check if a row needs to be flushed.
+     *
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the row has been drawn to since the last flush
+     */
+    protected final boolean isRowDirty(final int y) {
+        return logical.isRowDirty(y);
+    }
+
+    /**
+     * Mark every row clean, called after the screen has been flushed.
+     */
+    protected final void clearDirty() {
+        logical.clearAllDirty();
+    }
+
+    /**
+     * Unset a cell of the physical screen, so that the next flush will
+     * emit it.
+     *
+     * @param x column coordinate, in absolute coordinates
+     * @param y row coordinate, in absolute coordinates
+     */
+    private void unsetPhysical(final int x, final int y) {
+        physical.unset(x, y);
+        logical.markDirty(x, y, x + 1, y + 1);
+    }
+
+    /**
+     * Check if a position can be drawn to: it must be on the screen and
+     * inside the damage clip.
+     *
+     * @param x column coordinate, in absolute coordinates
+     * @param y row coordinate, in absolute coordinates
+     * @return true if the position can be drawn to
+     */
+    private boolean isInDamageClip(final int x, final int y) {
+        return ((x >= damageLeft) && (x < damageRight)
+            && (y >= damageTop) && (y < damageBottom));
+    }
+
+    /**
+     * Check if the cell at a position is neither half of a fullwidth
+     * glyph.
+     *
+     * @param x column coordinate, in absolute coordinates
+     * @param y row coordinate, in absolute coordinates
+     * @return true if the cell is single-width or off the screen
+     */
+    private boolean isSingleWidth(final int x, final int y) {
+        if ((x >= 0) && (x < width) && (y >= 0) && (y < height)) {
+            return (logical.getCellWidth(x, y) == Cell.Width.SINGLE);
+        }
+        return true;
+    }
+
+    /**
+     * Copy the part of a rectangle that is inside a buffer to the top-left
+     * corner of another buffer.
+     *
+     * @param from the buffer to copy from
+     * @param to the buffer to copy to, at least width x height
+     * @param x left column of rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns to copy
+     * @param height number of rows to copy
+     */
+    private static void copyRectangle(final CellBuffer from,
+        final CellBuffer to, final int x, final int y, final int width,
+        final int height) {
+
+        int left = Math.max(x, 0);
+        int top = Math.max(y, 0);
+        int right = Math.min(x + width, from.getWidth());
+        int bottom = Math.min(y + height, from.getHeight());
+        if ((bottom > top) && (right > left)) {
+            to.copy(from, left, top, left - x, top - y, right - left,
+                bottom - top);
+        }
+    }
+
+    /**
+     * Alpha-blend another screen, or a rectangle of blank cells of one
+     * color, onto this screen.  For each row, the colors of both screens
+     * are gathered into the blend rows, blended there in place, and then
+     * written back to the cells.  Nothing is allocated once the blend rows
+     * are as wide as the rectangle.  The caller must hold the lock on this
+     * screen.
+     *
+     * @param otherScreen the other screen, or null to blend blank cells
+     * @param color the background RGB of the blank cells, used if
+     * otherScreen is null
+     * @param x left column of rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns to blend
+     * @param height number of rows to blend
+     * @param alpha the alpha transparency level (0 - 255) to use for cells
+     * from the other screen
+     * @param filterHatch if true, prevent hatch-like characters from
+     * showing through
+     */
+    private void blendCells(final Screen otherScreen, final int color,
+        final int x, final int y, final int width, final int height,
+        final int alpha, final boolean filterHatch) {
+
+        int left = Math.max(x, damageLeft);
+        int top = Math.max(y, damageTop);
+        int right = Math.min(x + width, damageRight);
+        int bottom = Math.min(y + height, damageBottom);
+        int columns = right - left;
+        if ((columns <= 0) || (bottom <= top)) {
+            return;
+        }
+        if ((blendForeground == null) || (blendForeground.length < columns)) {
+            blendForeground = new int[columns];
+            blendBackground = new int[columns];
+            blendOverForeground = new int[columns];
+            blendOverBackground = new int[columns];
+        }
+
+        // Cells of another LogicalScreen can be read straight out of its
+        // buffer when all of them are inside it.
+        CellBuffer over = null;
+        if ((otherScreen instanceof LogicalScreen)
+            && (right - x <= otherScreen.getWidth())
+            && (bottom - y <= otherScreen.getHeight())
+        ) {
+            over = ((LogicalScreen) otherScreen).logical;
+        }
+        ComplexCell overCell = blendOverCell;
+        if (otherScreen == null) {
+            overCell.reset();
+            overCell.setBackColorRGB(color);
+        }
+
+        long now = System.currentTimeMillis();
+
+        for (int row = top; row < bottom; row++) {
+            for (int i = 0; i < columns; i++) {
+                int col = left + i;
+                int thisFg = logical.getForeColorRGB(col, row);
+                int thisBg = logical.getBackColorRGB(col, row);
+                if ((thisFg < 0) || (thisBg < 0)) {
+                    logical.readAttr(col, row, blendAttr);
+                    if (thisFg < 0) {
+                        thisFg = attrToForegroundColor(blendAttr);
+                    }
+                    if (thisBg < 0) {
+                        thisBg = attrToBackgroundColor(blendAttr);
+                    }
+                }
+                blendForeground[i] = thisFg;
+                blendBackground[i] = thisBg;
+
+                if (otherScreen != null) {
+                    readOverCell(otherScreen, over, col - x, row - y);
+                }
+                int overFg = overCell.getForeColorRGB();
+                if (overCell.isPulse()) {
+                    overFg = overCell.getForeColorPulseRGB(backend, now);
+                } else if (overFg < 0) {
+                    overFg = attrToForegroundColor(overCell);
+                }
+                int overBg = overCell.getBackColorRGB();
+                if (overBg < 0) {
+                    overBg = attrToBackgroundColor(overCell);
+                }
+                blendOverForeground[i] = overFg;
+                blendOverBackground[i] = overBg;
+            }
+
+            // Blend the other background over both of our colors, and then
+            // the other foreground over our new background to handle the
+            // new layer's glyph opacity.
+            ImageUtils.alphaBlendRow(blendForeground, blendOverBackground,
+                blendForeground, columns, alpha);
+            ImageUtils.alphaBlendRow(blendBackground, blendOverBackground,
+                blendBackground, columns, alpha);
+            ImageUtils.alphaBlendRow(blendBackground, blendOverForeground,
+                blendOverForeground, columns, alpha);
+
+            for (int i = 0; i < columns; i++) {
+                int col = left + i;
+                int thisFg = blendForeground[i];
+                int thisBg = blendBackground[i];
+                int overFg = blendOverForeground[i];
+                if (otherScreen != null) {
+                    readOverCell(otherScreen, over, col - x, row - y);
+                }
+
+                if (overCell.isSpaceChar() && !overCell.isUnderline()) {
+                    // The overlaying cell is invisible.
+
+                    // Our character will show through.  If the contrast
+                    // between our foreground and background is small, then
+                    // drop the character.
+                    boolean dropChar = (ImageUtils.rgbDistance(thisFg,
+                            thisBg) < 5);
+
+                    if (filterHatch) {
+                        // Special case: the hatch characters are not
+                        // allowed to show through.
+                        if (logical.isCodePoint(col, row, 0x2591)
+                            || logical.isCodePoint(col, row, 0x2592)
+                            || logical.isCodePoint(col, row, 0x2593)
+                        ) {
+                            dropChar = true;
+                        }
+                    }
+                    if (cursorVisible && (col == cursorX) && (row == cursorY)) {
+                        // Don't surface the character behind the cursor.
+                        thisFg = overFg;
+                        dropChar = true;
+                    }
+
+                    // Overlapped cells will not have DEFAULT (SGR 39/49)
+                    // colors set.
+                    logical.setColorRGB(col, row, thisFg, thisBg);
+                    if (dropChar) {
+                        logical.setCell(col, row, ' ',
+                            logical.readAttr(col, row, blendAttr));
+                    }
+                    continue;
+                }
+
+                // The overlaying cell has a character, use it.
+                ComplexCell thisCell = logical.readCell(col, row, blendCell);
+                thisCell.setBackColorRGB(thisBg);
+                thisCell.setDefaultColor(true, false);
+                thisCell.setDefaultColor(false, false);
+                thisCell.setChar(overCell);
+                thisCell.setForeColorRGB(overFg);
+                thisCell.setBold(overCell.isBold());
+                thisCell.setBlink(overCell.isBlink());
+                thisCell.setUnderline(overCell.isUnderline());
+                thisCell.setProtect(overCell.isProtect());
+                thisCell.setAnimations(overCell.getAnimations());
+                thisCell.setPulse(false, false, 0);
+                thisCell.setWidth(overCell.getWidth());
+                logical.setCell(col, row, thisCell);
             }
         }
     }
 
+    /**
+     * Read one cell of the screen being blended over this one into
+     * blendOverCell.
+     *
+     * @param otherScreen the other screen
+     * @param over the other screen's buffer, or null if the cell has to be
+     * obtained with getCharXY()
+     * @param x column coordinate on the other screen
+     * @param y row coordinate on the other screen
+     */
+    private void readOverCell(final Screen otherScreen, final CellBuffer over,
+        final int x, final int y) {
+
+        if (over != null) {
+            over.readCell(x, y, blendOverCell);
+        } else {
+            blendOverCell.setTo(otherScreen.getCharXY(x, y));
+        }
+    }
+
+    /**
+     * Get the foreground RGB of a palette color, from the backend if there
+     * is one.
+     *
+     * @param attr the attributes
+     * @return the RGB
+     */
+    private int attrToForegroundColor(final CellAttributes attr) {
+        if (backend != null) {
+            return backend.attrToForegroundColor(attr);
+        }
+        return ECMA48Terminal.attrToForegroundColor(attr);
+    }
+
+    /**
+     * Get the background RGB of a palette color, from the backend if there
+     * is one.
+     *
+     * @param attr the attributes
+     * @return the RGB
+     */
+    private int attrToBackgroundColor(final CellAttributes attr) {
+        if (backend != null) {
+            return backend.attrToBackgroundColor(attr);
+        }
+        return ECMA48Terminal.attrToBackgroundColor(attr);
+    }
+
     /**
      * Render one fullwidth cell.
      *
@@ -1641,11 +1946,7 @@ public class LogicalScreen implements Screen {
         LogicalScreen other = null;
         synchronized (this) {
             other = new LogicalScreen(width, height);
-            for (int row = 0; row < height; row++) {
-                for (int col = 0; col < width; col++) {
-                    other.logical[col][row] = new ComplexCell(logical[col][row]);
-                }
-            }
+            other.logical.copy(logical, 0, 0, 0, 0, width, height);
         }
         return other;
     }
@@ -1666,17 +1967,43 @@ public class LogicalScreen implements Screen {
         LogicalScreen other = null;
         synchronized (this) {
             other = new LogicalScreen(width, height);
-            for (int row = y; (row < y + height) && (row < this.height); row++) {
-                if (row < 0) {
-                    continue;
-                }
-                for (int col = x; (col < x + width) && (col < this.width); col++) {
-                    if (col < 0) {
-                        continue;
-                    }
-                    other.logical[col - x][row - y] = new ComplexCell(logical[col][row]);
-                }
+            copyRectangle(logical, other.logical, x, y, width, height);
+        }
+        return other;
+    }
+
+    /**
+     * Copy a rectangular portion of the screen into another screen, such as
+     * a layer from a LayerPool, resizing it to the rectangle.  Unlike
+     * snapshot(), this does not allocate a new screen.
+     *
+     * @param x left column of rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns to copy
+     * @param height number of rows to copy
+     * @param screen the screen to copy to.  Any of its cells outside the
+     * actual screen dimensions will be blank.
+     * @return screen
+     */
+    public Screen snapshot(final int x, final int y, final int width,
+        final int height, final Screen screen) {
+
+        if (!(screen instanceof LogicalScreen)) {
+            screen.copyScreen(snapshot(x, y, width, height));
+            return screen;
+        }
+
+        LogicalScreen other = (LogicalScreen) screen;
+        other.setDimensions(width, height);
+        synchronized (this) {
+            if ((x < 0)
+                || (y < 0)
+                || (x + width > this.width)
+                || (y + height > this.height)
+            ) {
+                other.logical.reset(0, 0, width, height);
             }
+            copyRectangle(logical, other.logical, x, y, width, height);
         }
         return other;
     }
@@ -1698,17 +2025,7 @@ public class LogicalScreen implements Screen {
         LogicalScreen other = null;
         synchronized (this) {
             other = new LogicalScreen(width, height);
-            for (int row = y; (row < y + height) && (row < this.height); row++) {
-                if (row < 0) {
-                    continue;
-                }
-                for (int col = x; (col < x + width) && (col < this.width); col++) {
-                    if (col < 0) {
-                        continue;
-                    }
-                    other.logical[col - x][row - y] = new ComplexCell(physical[col][row]);
-                }
-            }
+            copyRectangle(physical, other.logical, x, y, width, height);
         }
         return other;
     }
@@ -1723,9 +2040,29 @@ public class LogicalScreen implements Screen {
             if ((other.getWidth() != width) || (other.getHeight() != height)) {
                 setDimensions(other.getWidth(), other.getHeight());
             }
-            for (int row = 0; row < height; row++) {
-                for (int col = 0; col < width; col++) {
-                    logical[col][row] = new ComplexCell(other.getCharXY(col, row));
+            if (other instanceof LogicalScreen) {
+                CellBuffer from = ((LogicalScreen) other).logical;
+                if ((from == copiedFrom)
+                    && (logical.getGeneration() == copiedToGeneration)
+                ) {
+                    // Neither screen has been reallocated, and this one has
+                    // not been drawn to: only copy the rows drawn to since.
+                    for (int row = 0; row < height; row++) {
+                        if (from.getRowGeneration(row) > copiedFromGeneration) {
+                            logical.copy(from, 0, row, 0, row, width, 1);
+                        }
+                    }
+                } else {
+                    logical.copy(from, 0, 0, 0, 0, width, height);
+                }
+                copiedFrom = from;
+                copiedFromGeneration = from.getGeneration();
+                copiedToGeneration = logical.getGeneration();
+            } else {
+                for (int row = 0; row < height; row++) {
+                    for (int col = 0; col < width; col++) {
+                        logical.setCell(col, row, other.getCharXY(col, row));
+                    }
                 }
             }
         }
@@ -1745,15 +2082,23 @@ public class LogicalScreen implements Screen {
         final int width, final int height) {
 
         synchronized (this) {
-            for (int row = y; (row < y + height) && (row < this.height); row++) {
-                if (row < 0) {
-                    continue;
-                }
-                for (int col = x; (col < x + width) && (col < this.width); col++) {
-                    if (col < 0) {
-                        continue;
-                    }
-                    logical[col][row] = new ComplexCell(other.getCharXY(col - x, row - y));
+            int left = Math.max(x, damageLeft);
+            int top = Math.max(y, damageTop);
+            int right = Math.min(x + width, damageRight);
+            int bottom = Math.min(y + height, damageBottom);
+            if ((other instanceof LogicalScreen)
+                && (right - x <= other.getWidth())
+                && (bottom - y <= other.getHeight())
+            ) {
+                // Every cell comes from inside the other screen.
+                logical.copy(((LogicalScreen) other).logical, left - x,
+                    top - y, left, top, right - left, bottom - top);
+                return;
+            }
+            for (int row = top; row < bottom; row++) {
+                for (int col = left; col < right; col++) {
+                    logical.setCell(col, row,
+                        other.getCharXY(col - x, row - y));
                 }
             }
         }
@@ -1792,15 +2137,24 @@ public class LogicalScreen implements Screen {
     public void blendRectangle(final int x, final int y,
         final int width, final int height, final int color, final int alpha) {
 
-        // We just create a new blank screen and blend it.
-        LogicalScreen rectangle = new LogicalScreen(width, height);
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                rectangle.logical[col][row].setBackColorRGB(color);
+        synchronized (this) {
+            if (alpha == 255) {
+                // This is a raw copy of blank cells.
+                int left = Math.max(x, damageLeft);
+                int top = Math.max(y, damageTop);
+                int right = Math.min(x + width, damageRight);
+                int bottom = Math.min(y + height, damageBottom);
+                blendAttr.reset();
+                blendAttr.setBackColorRGB(color);
+                for (int row = top; row < bottom; row++) {
+                    for (int col = left; col < right; col++) {
+                        logical.setCell(col, row, ' ', blendAttr);
+                    }
+                }
+                return;
             }
+            blendCells(null, color, x, y, width, height, alpha, false);
         }
-
-        blendScreen(rectangle, x, y, width, height, alpha, false);
     }
 
     /**
@@ -1825,185 +2179,26 @@ public class LogicalScreen implements Screen {
             // This is a raw copy.
             copyScreen(otherScreen, x, y, width, height);
             synchronized (this) {
-                for (int row = y; (row < y + height) && (row < this.height); row++) {
-                    if (row < 0) {
+                for (int row = y; (row < y + height) && (row < damageBottom); row++) {
+                    if (row < damageTop) {
                         continue;
                     }
-                    for (int col = x; (col < x + width) && (col < this.width); col++) {
-                        if (col < 0) {
+                    for (int col = x; (col < x + width) && (col < damageRight); col++) {
+                        if (col < damageLeft) {
                             continue;
                         }
-                        Cell thisCell = logical[col][row];
                         // Overlapped cells will not have DEFAULT (SGR 39/49)
                         // colors set.
-                        thisCell.setDefaultColor(true, false);
-                        thisCell.setDefaultColor(false, false);
+                        logical.clearDefaultColor(col, row);
                     }
                 }
             }
             return;
         }
 
-        long now = System.currentTimeMillis();
-
-        /*
-         * We need to blend the background colors of other's cells over the
-         * cells of this screen (foreground and background), honoring our
-         * alpha.  We will create a bitmap of one pixel per cell, blend that
-         * via AWT, and then set the cell RGBs and char's.
-         */
         synchronized (this) {
-
-            BufferedImage thisForeground = new BufferedImage(width, height);
-            BufferedImage thisBackground = new BufferedImage(width, height);
-            BufferedImage overForeground = new BufferedImage(width, height);
-            BufferedImage overBackground = new BufferedImage(width, height);
-            BufferedImage thisOldBackground = new BufferedImage(width, height);
-
-            final int OPAQUE = 0xFF000000;
-
-            for (int row = y; (row < y + height) && (row < this.height); row++) {
-                if (row < 0) {
-                    continue;
-                }
-                for (int col = x; (col < x + width) && (col < this.width); col++) {
-                    if (col < 0) {
-                        continue;
-                    }
-
-                    Cell cell = logical[col][row];
-                    int thisBg = cell.getBackColorRGB();
-                    if (thisBg < 0) {
-                        if (backend != null) {
-                            thisBg = backend.attrToBackgroundColor(cell);
-                        } else {
-                            thisBg = ECMA48Terminal.attrToBackgroundColor(cell);
-                        }
-                    }
-                    int thisFg = cell.getForeColorRGB();
-                    if (thisFg < 0) {
-                        if (backend != null) {
-                            thisFg = backend.attrToForegroundColor(cell);
-                        } else {
-                            thisFg = ECMA48Terminal.attrToForegroundColor(cell);
-                        }
-                    }
-
-                    Cell over = otherScreen.getCharXY(col - x, row - y);
-                    int overFg = over.getForeColorRGB();
-                    if (over.isPulse()) {
-                        overFg = over.getForeColorPulseRGB(backend, now);
-                    } else if (overFg < 0) {
-                        if (backend != null) {
-                            overFg = backend.attrToForegroundColor(over);
-                        } else {
-                            overFg = ECMA48Terminal.attrToForegroundColor(over);
-                        }
-                    }
-                    int overBg = over.getBackColorRGB();
-                    if (overBg < 0) {
-                        if (backend != null) {
-                            overBg = backend.attrToBackgroundColor(over);
-                        } else {
-                            overBg = ECMA48Terminal.attrToBackgroundColor(over);
-                        }
-                    }
-                    thisFg |= OPAQUE;
-                    thisBg |= OPAQUE;
-                    overBg |= OPAQUE;
-                    overFg |= OPAQUE;
-
-                    thisForeground.setRGB(col - x, row - y, thisFg);
-                    thisBackground.setRGB(col - x, row - y, thisBg);
-                    thisOldBackground.setRGB(col - x, row - y, thisBg);
-                    overForeground.setRGB(col - x, row - y, overFg);
-                    overBackground.setRGB(col - x, row - y, overBg);
-                }
-            }
-
-            // The four bitmaps are ready.  We have skipped over cells/pixels
-            // that cannot overlap.  Now blit overBackground over both
-            // thisForeground and thisBackground, and then assign cell colors
-            // and cell chars/images.
-            //
-            // Also blit overForeground over thisBackground to handle the new
-            // layer's glyph opacity.
-            float fAlpha = (float) (alpha / 255.0);
-            thisForeground.alphaBlendOver(overBackground, fAlpha);
-            thisBackground.alphaBlendOver(overBackground, fAlpha);
-            BufferedImage glyphForeground = new BufferedImage(thisBackground);
-            glyphForeground.alphaBlendOver(overForeground, fAlpha);
-
-            for (int row = y; (row < y + height) && (row < this.height); row++) {
-                if (row < 0) {
-                    continue;
-                }
-                for (int col = x; (col < x + width) && (col < this.width); col++) {
-                    if (col < 0) {
-                        continue;
-                    }
-                    Cell thisCell = logical[col][row];
-                    Cell overCell = otherScreen.getCharXY(col - x, row - y);
-                    int thisFg = thisForeground.getRGB(col - x, row - y);
-                    int thisBg = thisBackground.getRGB(col - x, row - y);
-                    int thisOldBg = thisOldBackground.getRGB(col - x, row - y);
-                    int overBg = overBackground.getRGB(col - x, row - y);
-                    int overFg = glyphForeground.getRGB(col - x, row - y);
-
-                    thisCell.setBackColorRGB(thisBg | OPAQUE);
-                    thisCell.setForeColorRGB(thisFg | OPAQUE);
-
-                    // Overlapped cells will not have DEFAULT (SGR 39/49)
-                    // colors set.
-                    thisCell.setDefaultColor(true, false);
-                    thisCell.setDefaultColor(false, false);
-
-                    if (overCell.isSpaceChar() && !overCell.isUnderline()) {
-                        // The overlaying cell is invisible.
-
-                        // Our character will show through.  If the contrast
-                        // between our foreground and background is small,
-                        // then drop the character.
-                        if (ImageUtils.rgbDistance(thisFg, thisBg) < 5) {
-                            thisCell.setChar(' ');
-                            thisCell.setWidth(Cell.Width.SINGLE);
-                        }
-
-                        if (filterHatch) {
-                            // Special case: the hatch characters are not
-                            // allowed to show through.
-                            if (thisCell.isCodePoint(0x2591)
-                                || thisCell.isCodePoint(0x2592)
-                                || thisCell.isCodePoint(0x2593)
-                            ) {
-                                thisCell.setChar(' ');
-                                thisCell.setWidth(Cell.Width.SINGLE);
-                            }
-                        }
-                        if (cursorVisible &&
-                            (col == cursorX) &&
-                            (row == cursorY)
-                        ) {
-                            // Don't surface the character behind the cursor.
-                            thisCell.setForeColorRGB(overFg);
-                            thisCell.setChar(' ');
-                            thisCell.setWidth(Cell.Width.SINGLE);
-                        }
-                        continue;
-                    }
-
-                    // The overlaying cell has a character, use it.
-                    thisCell.setChar(overCell);
-                    thisCell.setForeColorRGB(overFg);
-                    thisCell.setBold(overCell.isBold());
-                    thisCell.setBlink(overCell.isBlink());
-                    thisCell.setUnderline(overCell.isUnderline());
-                    thisCell.setProtect(overCell.isProtect());
-                    thisCell.setAnimations(overCell.getAnimations());
-                    thisCell.setPulse(false, false, 0);
-                    thisCell.setWidth(overCell.getWidth());
-                }
-            }
+            blendCells(otherScreen, 0, x, y, width, height, alpha,
+                filterHatch);
         }
     }
 
@@ -2029,6 +2224,7 @@ public class LogicalScreen implements Screen {
         assert (cellTransform != null);
 
         cellTransform.prepareTransform(backend, widget);
+        ComplexCell cell = new ComplexCell();
         for (int row = y; row < y + height; row++) {
             for (int col = x; col < x + width; col++) {
 
@@ -2046,16 +2242,15 @@ public class LogicalScreen implements Screen {
                 X += offsetX;
                 Y += offsetY;
 
-                if ((X >= 0) && (X < this.width)
-                    && (Y >= 0) && (Y < this.height)
-                ) {
-                    ComplexCell cell = logical[X][Y];
+                if (isInDamageClip(X, Y)) {
+                    logical.readCell(X, Y, cell);
                     if (widget == null) {
                         cellTransform.applyTransform(backend, cell, X, Y, null);
                     } else {
                         cellTransform.applyTransform(backend, cell, col - x,
                             row - y, widget);
                     }
+                    logical.setCell(X, Y, cell);
                 }
             }
         }
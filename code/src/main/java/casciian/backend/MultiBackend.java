@@ -15,7 +15,9 @@
 package casciian.backend;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import casciian.bits.CellAttributes;
 import casciian.event.TCommandEvent;
@@ -24,13 +26,41 @@ import static casciian.TCommand.*;
 
 /**
  * MultiBackend mirrors its I/O to several backends.
+ *
+ * <p>
+ * Each backend has its own long-lived flush thread, so a slow client only
+ * delays itself.  A client that is still writing one frame when newer
+ * frames are ready skips to the latest one.
+ *
+ * <p>
+ * Terminals that would encode a frame to the same escape sequences (same
+ * size and color options) share the work: one of them diffs and encodes
+ * each frame, and the others write its output.  A terminal that falls too
+ * far behind, joins late, or is cleared gets one full repaint of its own
+ * and then follows again.
  */
 public class MultiBackend implements Backend {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The number of shared frames a terminal may fall behind before it is
+     * repainted instead of catching up.  Each group keeps only this many
+     * frames.
+     */
+    private static final int MAX_FRAMES_BEHIND = 16;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Emit debugging to stderr.
+     */
+    private boolean debugToStderr = false;
+
     /**
      * The screen to use.
      */
@@ -41,6 +71,17 @@ public class MultiBackend implements Backend {
      */
     private List<Backend> backends = new ArrayList<Backend>();
 
+    /**
+     * The flush workers, one per backend.  Guarded by itself.
+     */
+    private List<FlushWorker> flushWorkers = new ArrayList<FlushWorker>();
+
+    /**
+     * The terminals that share encoded frames, by frame profile.  Guarded
+     * by itself.
+     */
+    private Map<String, ShareGroup> shareGroups;
+
     /**
      * The SessionInfo to return.
      */
@@ -58,6 +99,7 @@ public class MultiBackend implements Backend {
      */
     @SuppressWarnings("this-escape")
     public MultiBackend(final Backend backend) {
+        shareGroups = new HashMap<String, ShareGroup>();
         backends.add(backend);
         if (backend instanceof TWindowBackend) {
             multiScreen = new MultiScreen(((TWindowBackend) backend).getOtherScreen());
@@ -69,6 +111,7 @@ public class MultiBackend implements Backend {
             ((GenericBackend) backend).abortOnDisconnect = false;
         }
         sessionInfo = backend.getSessionInfo();
+        startFlushWorker(backend);
     }
 
     // ------------------------------------------------------------------------
@@ -98,19 +141,20 @@ public class MultiBackend implements Backend {
      * screen to the physical device.
      */
     public void flushScreen() {
-        multiScreen.flushPhysical();
-        int n = backends.size();
-        for (int i = 0; i < n; i++) {
-            final Backend backend = backends.get(Math.min(i, backends.size()));
-            // Flush to the physical device on another thread.
-            (new Thread(new Runnable() {
-                public void run() {
-                    synchronized (backend.getScreen()) {
-                        backend.flushScreen();
-                    }
+        // Each worker copies the latest frame and flushes it to the
+        // physical device on its own thread.
+        synchronized (flushWorkers) {
+            for (FlushWorker worker: flushWorkers) {
+                if (!worker.following) {
+                    worker.offerFrame();
                 }
-            })).start();
+            }
         }
+
+        // The workers copy by row generation rather than by dirty span, so
+        // the MultiScreen can be marked clean as soon as the frame is
+        // offered.
+        multiScreen.markFlushed();
     }
 
     /**
@@ -126,6 +170,11 @@ public class MultiBackend implements Backend {
             if (backend.hasEvents()) {
                 return true;
             }
+            FlushWorker worker = getFlushWorker(backend);
+            if ((worker != null) && worker.failed) {
+                // getEvents() will remove it.
+                return true;
+            }
         }
         return false;
     }
@@ -139,6 +188,16 @@ public class MultiBackend implements Backend {
     public void getEvents(List<TInputEvent> queue) {
         List<Backend> backendsToRemove = null;
         for (Backend backend: backends) {
+            FlushWorker worker = getFlushWorker(backend);
+            if ((worker != null) && worker.failed) {
+                // This backend could not be written to, treat it as
+                // disconnected.
+                if (backendsToRemove == null) {
+                    backendsToRemove = new ArrayList<Backend>();
+                }
+                backendsToRemove.add(backend);
+                continue;
+            }
             if (backend.hasEvents()) {
                 backend.getEvents(queue);
 
@@ -163,6 +222,7 @@ public class MultiBackend implements Backend {
             for (Backend backend: backendsToRemove) {
                 multiScreen.removeScreen(backend.getScreen());
                 backends.remove(backend);
+                stopFlushWorker(backend);
                 backend.shutdown();
             }
         }
@@ -176,6 +236,12 @@ public class MultiBackend implements Backend {
      * restores console, etc.
      */
     public void shutdown() {
+        synchronized (flushWorkers) {
+            for (FlushWorker worker: flushWorkers) {
+                worker.stop();
+            }
+            flushWorkers.clear();
+        }
         for (Backend backend: backends) {
             backend.shutdown();
         }
@@ -243,6 +309,7 @@ public class MultiBackend implements Backend {
         if (backend instanceof GenericBackend) {
             ((GenericBackend) backend).abortOnDisconnect = false;
         }
+        startFlushWorker(backend);
 
         boolean allReadOnly = true;
         for (Backend b: backends) {
@@ -279,7 +346,54 @@ public class MultiBackend implements Backend {
                 multiScreen.removeScreen(backend.getScreen());
             }
             backends.remove(backend);
+            stopFlushWorker(backend);
+        }
+    }
+
+    /**
+     * Get the number of frames a backend skipped because it was still
+     * writing an earlier frame.
+     *
+     * @param backend the backend
+     * @return the number of frames dropped, or 0 if backend is not in the
+     * list
+     */
+    public long getFramesDropped(final Backend backend) {
+        FlushWorker worker = getFlushWorker(backend);
+        if (worker == null) {
+            return 0;
         }
+        return worker.framesDropped;
+    }
+
+    /**
+     * Get the number of bytes written to a backend by screen updates.  This
+     * is only known for backends whose screen is an ECMA48Terminal.
+     *
+     * @param backend the backend
+     * @return the number of bytes sent, or 0 if backend is not in the list
+     */
+    public long getBytesSent(final Backend backend) {
+        FlushWorker worker = getFlushWorker(backend);
+        if (worker == null) {
+            return 0;
+        }
+        return worker.bytesSent;
+    }
+
+    /**
+     * Check if a backend writes frames encoded by another backend in its
+     * share group.  Note package private access.
+     *
+     * @param backend the backend
+     * @return true if backend follows a group leader
+     */
+    boolean isFollowing(final Backend backend) {
+        FlushWorker worker = getFlushWorker(backend);
+        if (worker == null) {
+            return false;
+        }
+        return worker.following;
     }
 
     /**
@@ -385,5 +499,560 @@ public class MultiBackend implements Backend {
         return false;
     }
 
+    /**
+     * Start a flush worker for a backend.
+     *
+     * @param backend the backend
+     */
+    private void startFlushWorker(final Backend backend) {
+        Screen screen = backend.getScreen();
+        if (backend instanceof TWindowBackend) {
+            screen = ((TWindowBackend) backend).getOtherScreen();
+        }
+        FlushWorker worker = new FlushWorker(backend, screen);
+        synchronized (flushWorkers) {
+            flushWorkers.add(worker);
+        }
+        worker.start();
+    }
+
+    /**
+     * Stop the flush worker for a backend.
+     *
+     * @param backend the backend
+     */
+    private void stopFlushWorker(final Backend backend) {
+        FlushWorker worker = getFlushWorker(backend);
+        if (worker != null) {
+            worker.stop();
+            synchronized (flushWorkers) {
+                flushWorkers.remove(worker);
+            }
+        }
+    }
+
+    /**
+     * Find the flush worker for a backend.
+     *
+     * @param backend the backend
+     * @return the worker, or null if backend is not in the list
+     */
+    private FlushWorker getFlushWorker(final Backend backend) {
+        synchronized (flushWorkers) {
+            for (FlushWorker worker: flushWorkers) {
+                if (worker.backend == backend) {
+                    return worker;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * SharedFrame is one encoded screen update for a share group.
+     */
+    private static final class SharedFrame {
+
+        /**
+         * The frame number within its group.
+         */
+        private final long serial;
+
+        /**
+         * The escape sequences and text.
+         */
+        private final char [] chars;
+
+        /**
+         * Whether the cursor is shown after this update.
+         */
+        private final boolean cursorOn;
+
+        /**
+         * Public constructor.
+         *
+         * @param serial the frame number
+         * @param chars the escape sequences and text
+         * @param cursorOn whether the cursor is shown after this update
+         */
+        public SharedFrame(final long serial, final char [] chars,
+            final boolean cursorOn) {
+
+            this.serial   = serial;
+            this.chars    = chars;
+            this.cursorOn = cursorOn;
+        }
+    }
+
+    /**
+     * ShareGroup is a set of terminals with the same frame profile.  The
+     * leader encodes every frame; the followers write the leader's output.
+     */
+    private static final class ShareGroup {
+
+        /**
+         * The frame profile.
+         */
+        private final String profile;
+
+        /**
+         * The worker that encodes frames, or null once it has left.
+         */
+        private FlushWorker leader;
+
+        /**
+         * The workers that write the leader's frames.
+         */
+        private final List<FlushWorker> followers;
+
+        /**
+         * The latest frame, or null before the first one.
+         */
+        private volatile SharedFrame latest;
+
+        /**
+         * The most recent frames, indexed by serial.  A follower that needs
+         * an older frame than these is repainted instead.  Guarded by this.
+         */
+        private final SharedFrame [] frames;
+
+        /**
+         * Public constructor.
+         *
+         * @param profile the frame profile
+         * @param leader the worker that will encode frames
+         */
+        public ShareGroup(final String profile, final FlushWorker leader) {
+            this.profile   = profile;
+            this.leader    = leader;
+            this.followers = new ArrayList<FlushWorker>();
+            this.frames    = new SharedFrame[MAX_FRAMES_BEHIND];
+        }
+
+        /**
+         * Add a frame after the latest one, forgetting the oldest frame
+         * kept.
+         *
+         * @param chars the escape sequences and text
+         * @param cursorOn whether the cursor is shown after this update
+         * @return the new frame
+         */
+        public synchronized SharedFrame addFrame(final char [] chars,
+            final boolean cursorOn) {
+
+            long serial = (latest == null ? 0 : latest.serial + 1);
+            SharedFrame frame = new SharedFrame(serial, chars, cursorOn);
+            frames[(int) (serial % frames.length)] = frame;
+            latest = frame;
+            return frame;
+        }
+
+        /**
+         * Get a frame by serial.
+         *
+         * @param serial the frame number
+         * @return the frame, or null if it is no longer kept
+         */
+        public synchronized SharedFrame getFrame(final long serial) {
+            SharedFrame frame = frames[(int) (serial % frames.length)];
+            if ((frame != null) && (frame.serial == serial)) {
+                return frame;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * FlushWorker copies frames from the MultiScreen to one backend's screen
+     * and flushes them, on its own thread.  It holds at most one pending
+     * frame: a frame that arrives while another is pending replaces it.
+     */
+    private final class FlushWorker implements Runnable {
+
+        /**
+         * The backend to flush.
+         */
+        private final Backend backend;
+
+        /**
+         * The screen the MultiScreen mirrors to for this backend.
+         */
+        private final Screen screen;
+
+        /**
+         * If true, a frame is waiting to be flushed.  Guarded by this.
+         */
+        private boolean framePending = false;
+
+        /**
+         * If true, the worker should exit.  Guarded by this.
+         */
+        private boolean stopped = false;
+
+        /**
+         * The share group this worker is in, or null.  Guarded by
+         * shareGroups.
+         */
+        private ShareGroup group;
+
+        /**
+         * If true, this worker follows a group leader, and is offered
+         * frames by the leader rather than by flushScreen().
+         */
+        private volatile boolean following = false;
+
+        /**
+         * The serial of the last shared frame written by a follower, or -1
+         * if it must be repainted.  Only the serial is kept, so a follower
+         * stuck in a slow write does not hold on to the frames after it.
+         */
+        private long lastSerial = -1;
+
+        /**
+         * If true, the physical screen does not match the terminal because
+         * this worker wrote shared frames to it.
+         */
+        private boolean physicalStale = false;
+
+        /**
+         * For a leader, the serial of the published frame that the logical
+         * screen holds, or -1 while it holds a newer frame.  Guarded by
+         * screen.
+         */
+        private long contentSerial = -1;
+
+        /**
+         * The number of frames replaced before they were flushed, or for a
+         * follower, skipped by a repaint.
+         */
+        private volatile long framesDropped = 0;
+
+        /**
+         * The number of bytes written by flushes.
+         */
+        private volatile long bytesSent = 0;
+
+        /**
+         * If true, a flush threw and this worker has stopped.  The backend
+         * is removed by getEvents().
+         */
+        private volatile boolean failed = false;
+
+        /**
+         * Public constructor.
+         *
+         * @param backend the backend to flush
+         * @param screen the screen the MultiScreen mirrors to
+         */
+        public FlushWorker(final Backend backend, final Screen screen) {
+            this.backend = backend;
+            this.screen  = screen;
+        }
+
+        /**
+         * Start the worker thread.
+         */
+        public void start() {
+            Thread.ofVirtual().name("MultiBackend flush").start(this);
+        }
+
+        /**
+         * Stop the worker thread after the frame it is writing, if any.
+         */
+        public synchronized void stop() {
+            stopped = true;
+            notifyAll();
+        }
+
+        /**
+         * Make the current MultiScreen contents the next frame to flush.
+         */
+        public synchronized void offerFrame() {
+            if (stopped) {
+                return;
+            }
+            if (framePending && !following) {
+                // A follower writes every frame it has missed, or counts
+                // them when it repaints.
+                framesDropped++;
+            }
+            framePending = true;
+            notifyAll();
+        }
+
+        /**
+         * Flush frames until stopped.
+         */
+        public void run() {
+            while (true) {
+                synchronized (this) {
+                    while (!framePending && !stopped) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            // SQUASH
+                        }
+                    }
+                    if (stopped) {
+                        break;
+                    }
+                    framePending = false;
+                }
+
+                try {
+                    ShareGroup shareGroup = joinGroup();
+                    if ((shareGroup == null) || (shareGroup.leader == this)) {
+                        copyFrame();
+                        if (physicalStale) {
+                            // This was a follower, so repaint everything.
+                            synchronized (screen) {
+                                screen.clearPhysical();
+                            }
+                            physicalStale = false;
+                        }
+                        flushFrame(shareGroup);
+                    } else {
+                        followFrame(shareGroup);
+                    }
+                } catch (RuntimeException e) {
+                    if (debugToStderr) {
+                        System.err.println("MultiBackend flush failed for " +
+                            backend + ": " + e);
+                        e.printStackTrace();
+                    }
+                    failed = true;
+                    stop();
+                    break;
+                }
+            }
+            synchronized (shareGroups) {
+                leaveGroup();
+            }
+        }
+
+        /**
+         * Take the latest frame.  The application holds the MultiScreen's
+         * lock while drawing, so this is always a complete frame.
+         */
+        private void copyFrame() {
+            synchronized (multiScreen) {
+                synchronized (screen) {
+                    screen.copyScreen(multiScreen);
+                    contentSerial = -1;
+                }
+            }
+        }
+
+        /**
+         * Diff and encode the frame, and write it out.  Only this backend's
+         * screen is locked while the client is written to.
+         *
+         * @param shareGroup if not null, publish the encoded frame to this
+         * group's followers before writing it
+         */
+        private void flushFrame(final ShareGroup shareGroup) {
+            if (shareGroup == null) {
+                synchronized (screen) {
+                    long before = getBytesWritten();
+                    backend.flushScreen();
+                    bytesSent += getBytesWritten() - before;
+                }
+                return;
+            }
+
+            // Publish before writing, so that the followers are not held
+            // up by this client.  The screen is not locked while writing,
+            // so that followers can repaint from it.
+            ECMA48Terminal terminal = (ECMA48Terminal) screen;
+            char [] chars;
+            boolean cursorOn;
+            synchronized (screen) {
+                chars = terminal.encodeFrame();
+                cursorOn = terminal.isCursorOn();
+                SharedFrame frame = shareGroup.latest;
+                if (chars.length > 0) {
+                    frame = publishFrame(shareGroup, chars, cursorOn);
+                }
+                // With no changes, the screen still shows the latest
+                // frame.
+                contentSerial = (frame == null ? -1 : frame.serial);
+            }
+            long before = terminal.getBytesWritten();
+            terminal.writeFrame(chars, cursorOn);
+            bytesSent += terminal.getBytesWritten() - before;
+        }
+
+        /**
+         * Write the group leader's frames since the last one written, or
+         * repaint if that is not possible.
+         *
+         * @param shareGroup the group
+         */
+        private void followFrame(final ShareGroup shareGroup) {
+            SharedFrame latest = shareGroup.latest;
+            if (latest == null) {
+                // The leader has not encoded anything yet.
+                return;
+            }
+            ECMA48Terminal terminal = (ECMA48Terminal) screen;
+            if ((lastSerial >= 0)
+                && (latest.serial - lastSerial <= MAX_FRAMES_BEHIND)
+            ) {
+                synchronized (screen) {
+                    if (!terminal.isReallyCleared()) {
+                        long before = terminal.getBytesWritten();
+                        boolean caughtUp = true;
+                        while (lastSerial < latest.serial) {
+                            // The leader may have moved on during the last
+                            // write and forgotten this frame.
+                            SharedFrame frame;
+                            frame = shareGroup.getFrame(lastSerial + 1);
+                            if (frame == null) {
+                                caughtUp = false;
+                                break;
+                            }
+                            terminal.writeFrame(frame.chars, frame.cursorOn);
+                            lastSerial = frame.serial;
+                        }
+                        bytesSent += terminal.getBytesWritten() - before;
+                        physicalStale = true;
+                        if (caughtUp) {
+                            return;
+                        }
+                    }
+                }
+            }
+
+            // Repaint everything, from the frame the leader last published.
+            // If the leader is busy with a newer frame, it will offer that
+            // one when it is done.
+            FlushWorker leader = shareGroup.leader;
+            if (leader == null) {
+                return;
+            }
+            SharedFrame repaint = null;
+            synchronized (leader.screen) {
+                latest = shareGroup.latest;
+                if (leader.contentSerial == latest.serial) {
+                    synchronized (screen) {
+                        screen.copyScreen(leader.screen);
+                        screen.clearPhysical();
+                    }
+                    repaint = latest;
+                }
+            }
+            if (repaint != null) {
+                flushFrame(null);
+                if (lastSerial >= 0) {
+                    framesDropped += Math.max(0,
+                        repaint.serial - lastSerial - 1);
+                }
+                lastSerial = repaint.serial;
+                physicalStale = false;
+            }
+        }
+
+        /**
+         * Add a frame to the group, and offer it to the followers.
+         *
+         * @param shareGroup the group
+         * @param chars the escape sequences and text
+         * @param cursorOn whether the cursor is shown after this update
+         * @return the new frame, or null if this worker is no longer the
+         * group's leader
+         */
+        private SharedFrame publishFrame(final ShareGroup shareGroup,
+            final char [] chars, final boolean cursorOn) {
+
+            List<FlushWorker> followers;
+            SharedFrame frame;
+            synchronized (shareGroups) {
+                if (shareGroup.leader != this) {
+                    return null;
+                }
+                frame = shareGroup.addFrame(chars, cursorOn);
+                followers = new ArrayList<FlushWorker>(shareGroup.followers);
+            }
+            for (FlushWorker follower: followers) {
+                follower.offerFrame();
+            }
+            return frame;
+        }
+
+        /**
+         * Put this worker in the share group for its terminal's current
+         * frame profile, leaving its old group if that has changed.
+         *
+         * @return the group, or null if this backend cannot share frames
+         */
+        private ShareGroup joinGroup() {
+            String profile = null;
+            if ((screen == backend.getScreen())
+                && (screen instanceof ECMA48Terminal)
+            ) {
+                synchronized (screen) {
+                    profile = ((ECMA48Terminal) screen).getFrameProfile();
+                }
+            }
+            synchronized (shareGroups) {
+                ShareGroup shareGroup = null;
+                if (profile != null) {
+                    shareGroup = shareGroups.get(profile);
+                    if (shareGroup == null) {
+                        shareGroup = new ShareGroup(profile, this);
+                        shareGroups.put(profile, shareGroup);
+                    }
+                }
+                if (shareGroup != group) {
+                    leaveGroup();
+                    group = shareGroup;
+                    lastSerial = -1;
+                    if ((shareGroup != null) && (shareGroup.leader != this)) {
+                        shareGroup.followers.add(this);
+                    }
+                }
+                following = ((group != null) && (group.leader != this));
+                return group;
+            }
+        }
+
+        /**
+         * Leave the current share group.  If this worker was its leader,
+         * the group is disbanded and its followers will find a new one.
+         * The caller must hold the shareGroups lock.
+         */
+        private void leaveGroup() {
+            if (group == null) {
+                return;
+            }
+            if (group.leader == this) {
+                if (shareGroups.get(group.profile) == group) {
+                    shareGroups.remove(group.profile);
+                }
+                group.leader = null;
+                for (FlushWorker follower: group.followers) {
+                    follower.following = false;
+                    follower.offerFrame();
+                }
+                group.followers.clear();
+            } else {
+                group.followers.remove(this);
+            }
+            group = null;
+            following = false;
+        }
+
+        /**
+         * Get the total bytes the backend's terminal has written.
+         *
+         * @return the number of bytes, or 0 if it is not known
+         */
+        private long getBytesWritten() {
+            if (backend.getScreen() instanceof ECMA48Terminal) {
+                return ((ECMA48Terminal) backend.getScreen()).getBytesWritten();
+            }
+            return 0;
+        }
+    }
 
 }
@@ -153,6 +153,7 @@ public class MultiScreen extends LogicalScreen implements Screen {
                 screen.copyScreen(this);
             }
         }
+        markFlushed();
     }
 
     /**
@@ -174,6 +175,29 @@ public class MultiScreen extends LogicalScreen implements Screen {
     // MultiScreen ------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Record that the logical screen has been handed to the other screens,
+     * either by flushPhysical() or by MultiBackend's flush workers.  Later
+     * drawing is compared against this frame, so isDirty() only reports
+     * what has changed since.  Rows with blinking or pulsing cells stay
+     * dirty, because they must be flushed again.
+     */
+    public synchronized void markFlushed() {
+        for (int y = 0; y < height; y++) {
+            if (!logical.isRowDirty(y)) {
+                continue;
+            }
+            int left = logical.getDirtyLeft(y);
+            int right = logical.getDirtyRight(y);
+            boolean animated = logical.isSpanAnimated(y);
+            physical.copy(logical, left, y, left, y, right - left, 1);
+            logical.clearDirty(y);
+            if (animated) {
+                logical.markDirty(left, y, right, y + 1);
+            }
+        }
+    }
+
     /**
      * Add a screen to the list.
      *
@@ -124,6 +124,50 @@ public interface Screen {
      */
     public void setRelativeClipTop(final int relativeClipTop);
 
+    /**
+     * Limit all drawing to a rectangle.  Unlike the other clipping
+     * boundaries, the damage clip is in absolute coordinates, applies to
+     * unclipped writes too, and is not changed by resetClipping().
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public void setDamageClip(final int x, final int y, final int width,
+        final int height);
+
+    /**
+     * Remove the damage clip, so that the entire screen can be drawn to.
+     */
+    public void resetDamageClip();
+
+    /**
+     * Check if any part of a rectangle is inside the damage clip.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     * @return true if drawing to the rectangle could change the screen
+     */
+    public boolean intersectsDamageClip(final int x, final int y,
+        final int width, final int height);
+
+    /**
+     * Mark a rectangle as damaged, so that the next flush will look at it.
+     * Everything drawn to the screen is marked as it is drawn, so this is
+     * only needed when something other than drawing changes what the
+     * rectangle should look like.
+     *
+     * @param x left column of the rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns in the rectangle
+     * @param height number of rows in the rectangle
+     */
+    public void addDamage(final int x, final int y, final int width,
+        final int height);
+
     /**
      * Get dirty flag.
      *
@@ -141,6 +185,16 @@ public interface Screen {
      */
     public CellAttributes getAttrXY(final int x, final int y);
 
+    /**
+     * Check if the cell at one location blinks or pulses, and so changes
+     * on the physical screen without being drawn again.
+     *
+     * @param x column coordinate.  0 is the left-most column.
+     * @param y row coordinate.  0 is the top-most row.
+     * @return true if the cell at (x, y) is animated
+     */
+    public boolean isAnimated(final int x, final int y);
+
     /**
      * Get the cell at one location in absolute coordinates.
      *
@@ -614,6 +668,22 @@ public interface Screen {
     public Screen snapshot(final int x, final int y, final int width,
         final int height);
 
+    /**
+     * Copy a rectangular portion of the screen into another screen, such as
+     * a layer from a LayerPool, resizing it to the rectangle.  Unlike
+     * snapshot(), this does not allocate a new screen.
+     *
+     * @param x left column of rectangle.  0 is the left-most column.
+     * @param y top row of the rectangle.  0 is the top-most row.
+     * @param width number of columns to copy
+     * @param height number of rows to copy
+     * @param screen the screen to copy to.  Any of its cells outside the
+     * actual screen dimensions will be blank.
+     * @return screen
+     */
+    public Screen snapshot(final int x, final int y, final int width,
+        final int height, final Screen screen);
+
     /**
      * Copy all of screen's data to this screen.
      *
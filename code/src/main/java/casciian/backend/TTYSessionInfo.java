@@ -24,6 +24,10 @@ import java.util.StringTokenizer;
  * TTYSessionInfo queries environment variables and the tty window size for
  * the session information.  The username is taken from user.name, language
  * is taken from user.language, and text window size from 'stty size'.
+ *
+ * <p>Where SIGWINCH can be caught, the window size is only queried again
+ * after the window has changed size, so that 'stty size' is not spawned
+ * every second.
  */
 public class TTYSessionInfo implements SessionInfo {
 
@@ -31,6 +35,23 @@ public class TTYSessionInfo implements SessionInfo {
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * The number of SIGWINCH signals this process has seen, or -1 if
+     * SIGWINCH cannot be caught on this platform.  Note package private
+     * access.
+     */
+    static volatile int windowChanges = -1;
+
+    /**
+     * If true, an attempt to catch SIGWINCH was made.
+     */
+    private static boolean windowChangesCaught = false;
+
+    /**
+     * The value of windowChanges the last time the window size was queried.
+     */
+    private int lastWindowChanges;
+
     /**
      * User name.
      */
@@ -54,9 +75,10 @@ public class TTYSessionInfo implements SessionInfo {
     int windowHeight = 24;
 
     /**
-     * Time at which the window size was refreshed.
+     * Time at which the window size was refreshed.  Note package private
+     * access.
      */
-    private long lastQueryWindowTime;
+    long lastQueryWindowTime;
 
     /**
      * The time this session was started.
@@ -87,6 +109,7 @@ public class TTYSessionInfo implements SessionInfo {
         // Populate lang and user from the environment
         username = System.getProperty("user.name");
         language = System.getProperty("user.language");
+        catchWindowChanges();
         queryWindowSize();
     }
 
@@ -189,6 +212,14 @@ public class TTYSessionInfo implements SessionInfo {
      * Re-query the text window size.
      */
     public void queryWindowSize() {
+        if ((lastQueryWindowTime != 0)
+            && (windowChanges >= 0)
+            && (windowChanges == lastWindowChanges)
+        ) {
+            // No SIGWINCH since the last time, so the size is the same.
+            return;
+        }
+
         if (lastQueryWindowTime == 0) {
             lastQueryWindowTime = System.currentTimeMillis();
         } else {
@@ -200,6 +231,7 @@ public class TTYSessionInfo implements SessionInfo {
             }
             lastQueryWindowTime = nowTime;
         }
+        lastWindowChanges = windowChanges;
 
         if (output != null) {
             // System.err.println("Using CSI 18 t for window size");
@@ -225,6 +257,28 @@ public class TTYSessionInfo implements SessionInfo {
     // TTYSessionInfo ---------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Count SIGWINCH signals in windowChanges.  This is done once per
+     * process, and any SIGWINCH handler installed before is still called.
+     * If the platform has no SIGWINCH, windowChanges stays at -1 and the
+     * window size is polled instead.
+     */
+    private static synchronized void catchWindowChanges() {
+        if (windowChangesCaught) {
+            return;
+        }
+        windowChangesCaught = true;
+
+        if (WindowChangeSignal.install(new Runnable() {
+            public void run() {
+                // Signals are delivered on one thread.
+                windowChanges++;
+            }
+        })) {
+            windowChanges = 0;
+        }
+    }
+
     /**
      * Call 'stty size' to obtain the tty window size.  windowWidth and
      * windowHeight are set automatically.
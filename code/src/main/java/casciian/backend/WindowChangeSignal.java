@@ -0,0 +1,151 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.backend;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * WindowChangeSignal catches SIGWINCH through sun.misc.Signal, which is
+ * only reached by reflection so that it is optional and the build does not
+ * warn about internal API.  Any handler that was already installed, for
+ * example by an application embedding this library, is still called.
+ */
+final class WindowChangeSignal {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The signal class.
+     */
+    private static final String SIGNAL_CLASS = "sun.misc.Signal";
+
+    /**
+     * The signal handler interface.
+     */
+    private static final String HANDLER_CLASS = "sun.misc.SignalHandler";
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Private constructor prevents accidental creation of this class.
+     */
+    private WindowChangeSignal() {}
+
+    // ------------------------------------------------------------------------
+    // WindowChangeSignal -----------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Install a SIGWINCH handler that runs an action and then chains to the
+     * previous handler.
+     *
+     * @param action the action to run on each SIGWINCH, on the signal
+     * dispatch thread
+     * @return true if the handler was installed, false if this platform
+     * has no SIGWINCH or no sun.misc.Signal
+     */
+    static boolean install(final Runnable action) {
+        try {
+            final Class<?> signalClass = Class.forName(SIGNAL_CLASS);
+            final Class<?> handlerClass = Class.forName(HANDLER_CLASS);
+            final Object defaultHandler = handlerClass.getField("SIG_DFL").
+                get(null);
+            final Object ignoreHandler = handlerClass.getField("SIG_IGN").
+                get(null);
+            final Method handleMethod = handlerClass.getMethod("handle",
+                signalClass);
+            final Object [] previous = new Object[1];
+
+            Object handler = Proxy.newProxyInstance(
+                handlerClass.getClassLoader(), new Class<?> [] { handlerClass },
+                new InvocationHandler() {
+                    public Object invoke(final Object proxy,
+                        final Method method,
+                        final Object [] args) throws Throwable {
+
+                        if (method.getName().equals("equals")) {
+                            return (proxy == args[0]);
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if (method.getName().equals("toString")) {
+                            return "WindowChangeSignal";
+                        }
+
+                        action.run();
+                        Object next = previous[0];
+                        if ((next != null)
+                            && (next != defaultHandler)
+                            && (next != ignoreHandler)
+                        ) {
+                            // The default and ignore handlers are native
+                            // and cannot be called.
+                            try {
+                                handleMethod.invoke(next, args[0]);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                        return null;
+                    }
+                });
+
+            Object signal = signalClass.getConstructor(String.class).
+                newInstance("WINCH");
+            previous[0] = signalClass.getMethod("handle", signalClass,
+                handlerClass).invoke(null, signal, handler);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            // SQUASH: no sun.misc.Signal or no SIGWINCH here.
+            return false;
+        } catch (LinkageError e) {
+            // SQUASH: no sun.misc.Signal here.
+            return false;
+        } catch (SecurityException e) {
+            // SQUASH: not allowed to catch signals.
+            return false;
+        }
+    }
+
+    /**
+     * Raise SIGWINCH in this process.  Note package private access.
+     *
+     * @return true if the signal was raised
+     */
+    static boolean raise() {
+        try {
+            Class<?> signalClass = Class.forName(SIGNAL_CLASS);
+            Object signal = signalClass.getConstructor(String.class).
+                newInstance("WINCH");
+            signalClass.getMethod("raise", signalClass).invoke(null, signal);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            // SQUASH
+            return false;
+        } catch (LinkageError e) {
+            // SQUASH
+            return false;
+        }
+    }
+
+}
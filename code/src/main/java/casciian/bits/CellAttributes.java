@@ -442,6 +442,96 @@ public class CellAttributes {
         return (foreColorRGB >= 0) || (backColorRGB >= 0);
     }
 
+    /**
+     * Get the flags and palette colors packed into the low 38 bits of a
+     * long: flags in bits 0-31, foreColor in bits 32-34, and backColor in
+     * bits 35-37.  The RGB colors are not included.  This is used by
+     * compact cell storage such as DisplayLine.
+     *
+     * @return the packed attributes
+     */
+    public final long getPackedAttributes() {
+        return (flags & 0xFFFFFFFFL)
+            | ((long) foreColor.getValue() << 32)
+            | ((long) backColor.getValue() << 35);
+    }
+
+    /**
+     * Set all fields from a value returned by getPackedAttributes() plus the
+     * two RGB colors.
+     *
+     * @param packed the packed attributes
+     * @param foreColorRGB foreColor RGB value, negative means unset
+     * @param backColorRGB backColor RGB value, negative means unset
+     */
+    public final void setPackedAttributes(final long packed,
+        final int foreColorRGB, final int backColorRGB) {
+
+        this.flags        = (int) packed;
+        this.foreColor    = Color.getSgrColor((int) ((packed >>> 32) & 0x07));
+        this.backColor    = Color.getSgrColor((int) ((packed >>> 35) & 0x07));
+        this.foreColorRGB = foreColorRGB;
+        this.backColorRGB = backColorRGB;
+    }
+
+    /**
+     * Check the blink flag of a value returned by getPackedAttributes().
+     *
+     * @param packed the packed attributes
+     * @return true if blink is set
+     */
+    public static boolean isPackedBlink(final long packed) {
+        return ((packed & BLINK) != 0);
+    }
+
+    /**
+     * Check the pulse animation flags of a value returned by
+     * getPackedAttributes().
+     *
+     * @param packed the packed attributes
+     * @return true if either pulse animation is set
+     */
+    public static boolean isPackedPulse(final long packed) {
+        return ((packed & (ANIMATION_PULSE | ANIMATION_PULSE_FAST)) != 0);
+    }
+
+    /**
+     * Check the default color flags of a value returned by
+     * getPackedAttributes().
+     *
+     * @param packed the packed attributes
+     * @return true if either the foreground or background is the default
+     * color
+     */
+    public static boolean isPackedDefaultColor(final long packed) {
+        return ((packed & (DEFAULT_FORECOLOR | DEFAULT_BACKCOLOR)) != 0);
+    }
+
+    /**
+     * Clear the default color flags of a value returned by
+     * getPackedAttributes().
+     *
+     * @param packed the packed attributes
+     * @return the packed attributes without default colors
+     */
+    public static long clearPackedDefaultColor(final long packed) {
+        return (packed & ~((long) (DEFAULT_FORECOLOR | DEFAULT_BACKCOLOR)));
+    }
+
+    /**
+     * Check if a value returned by getPackedAttributes() is white-on-black
+     * with no bold/blink/reverse/underline/protect, as Cell.isBlank()
+     * requires.
+     *
+     * @param packed the packed attributes
+     * @return true if the attributes are plain
+     */
+    public static boolean isPackedPlain(final long packed) {
+        return (((packed & (BOLD | BLINK | REVERSE | UNDERLINE | PROTECT)) == 0)
+            && (((packed >>> 32) & 0x07) == Color.WHITE.getValue())
+            && (((packed >>> 35) & 0x07) == Color.BLACK.getValue()));
+    }
+
     /**
      * Set to default: white foreground on black background, no
      * bold/underline/blink/rever/protect.
@@ -148,8 +148,7 @@ public class ComplexCell extends Cell {
     @Override
     public void setChar(final int ch) {
         super.setChar(ch);
-        codePoints = new int[1];
-        codePoints[0] = ch;
+        setSingleCodePoint(ch);
     }
 
     /**
@@ -161,14 +160,10 @@ public class ComplexCell extends Cell {
     public void setChar(final Cell other) {
         super.setChar(other);
 
-        codePoints = new int[1];
-        codePoints[0] = other.getChar();
-
         if (other instanceof ComplexCell) {
-            int [] otherCodePoints = ((ComplexCell) other).codePoints;
-            codePoints = new int[otherCodePoints.length];
-            System.arraycopy(otherCodePoints, 0, codePoints, 0,
-                otherCodePoints.length);
+            copyCodePoints(((ComplexCell) other).codePoints);
+        } else {
+            setSingleCodePoint(other.getChar());
         }
     }
 
@@ -178,8 +173,7 @@ public class ComplexCell extends Cell {
     @Override
     public void reset() {
         super.reset();
-        codePoints = new int[1];
-        codePoints[0] = ' ';
+        setSingleCodePoint(' ');
     }
 
     /**
@@ -188,9 +182,8 @@ public class ComplexCell extends Cell {
      */
     @Override
     public void unset() {
-        super.reset();
-        codePoints = new int[1];
-        codePoints[0] = super.getChar();
+        super.unset();
+        setSingleCodePoint(super.getChar());
     }
 
     /**
@@ -244,17 +237,10 @@ public class ComplexCell extends Cell {
     public void setTo(final Object rhs) {
         super.setTo(rhs);
 
-        if (rhs instanceof Cell) {
-            Cell that = (Cell) rhs;
-            codePoints = new int[1];
-            codePoints[0] = that.getChar();
-        }
-
         if (rhs instanceof ComplexCell) {
-            ComplexCell that = (ComplexCell) rhs;
-            this.codePoints = new int[that.codePoints.length];
-            System.arraycopy(that.codePoints, 0, this.codePoints, 0,
-                codePoints.length);
+            copyCodePoints(((ComplexCell) rhs).codePoints);
+        } else if (rhs instanceof Cell) {
+            setSingleCodePoint(((Cell) rhs).getChar());
         }
     }
 
@@ -347,8 +333,40 @@ public class ComplexCell extends Cell {
      * @param codePoints the codepoints to set to
      */
     public void setCodePoints(final int [] codePoints) {
-        this.codePoints = new int[codePoints.length];
-        System.arraycopy(codePoints, 0, this.codePoints, 0, codePoints.length);
+        copyCodePoints(codePoints);
+    }
+
+    /**
+     * Set the codepoints to a single codepoint.  The existing array is
+     * reused when it has one element, so that cells which are repeatedly
+     * overwritten (e.g. a screen's logical grid) do not allocate.  This is
+     * safe because the array is never shared with another object.
+     *
+     * @param codePoint the codepoint
+     */
+    private void setSingleCodePoint(final int codePoint) {
+        // Note that codePoints can be null here when Cell's constructor
+        // calls setTo() before this class's fields are initialized.
+        if ((codePoints == null) || (codePoints.length != 1)) {
+            codePoints = new int[1];
+        }
+        codePoints[0] = codePoint;
+    }
+
+    /**
+     * Copy the codepoints from an array, reusing the existing array if it
+     * is the same length.
+     *
+     * @param otherCodePoints the codepoints to copy
+     */
+    private void copyCodePoints(final int [] otherCodePoints) {
+        if ((codePoints == null)
+            || (codePoints.length != otherCodePoints.length)
+        ) {
+            codePoints = new int[otherCodePoints.length];
+        }
+        System.arraycopy(otherCodePoints, 0, codePoints, 0,
+            otherCodePoints.length);
     }
 
     /**
@@ -401,4 +419,16 @@ public class ComplexCell extends Cell {
         return result;
     }
 
+    /**
+     * Append the codepoints to a StringBuilder, without making a character
+     * array first.
+     *
+     * @param sb the StringBuilder to append to
+     */
+    public void appendTo(final StringBuilder sb) {
+        for (int i = 0; i < codePoints.length; i++) {
+            sb.appendCodePoint(codePoints[i]);
+        }
+    }
+
 }
@@ -22,6 +22,8 @@ package casciian.bits;
  *    - Compute the distance between two colors in RGB space.
  *
  *    - Compute the partial movement between two colors in RGB space.
+ *
+ *    - Alpha-blend a row of colors over another.
  */
 public class ImageUtils {
 
@@ -99,4 +101,35 @@ public class ImageUtils {
         return (rgbRed << 16) | (rgbGreen << 8) | rgbBlue;
     }
 
+    /**
+     * Alpha-blend a row of RGB colors over another, in fixed point.  alpha
+     * is scaled to 0-256 so that each channel is a multiply and a shift,
+     * and red and blue are blended together in the same int.  A channel
+     * may differ by one from a floating point blend.
+     *
+     * @param under the colors underneath
+     * @param over the colors on top
+     * @param dest where to put the blended colors.  This may be under or
+     * over.
+     * @param count the number of colors
+     * @param alpha the alpha transparency level (0 - 255) of the colors on
+     * top
+     */
+    public static void alphaBlendRow(final int [] under, final int [] over,
+        final int [] dest, final int count, final int alpha) {
+
+        // 255 becomes 256, so that it is entirely the colors on top.
+        final int overAlpha = alpha + (alpha >>> 7);
+        final int underAlpha = 256 - overAlpha;
+        for (int i = 0; i < count; i++) {
+            int underRGB = under[i];
+            int overRGB = over[i];
+            int redBlue = (((underRGB & 0xFF00FF) * underAlpha)
+                + ((overRGB & 0xFF00FF) * overAlpha)) >>> 8;
+            int green = (((underRGB & 0x00FF00) * underAlpha)
+                + ((overRGB & 0x00FF00) * overAlpha)) >>> 8;
+            dest[i] = (redBlue & 0xFF00FF) | (green & 0x00FF00);
+        }
+    }
+
 }
@@ -16,7 +16,7 @@ package casciian.net;
 
 import java.io.InputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -52,14 +52,15 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
     private TelnetOutputStream output;
 
     /**
-     * Persistent read buffer.  In practice this will only be used if the
-     * single-byte read() is called sometime.
+     * Persistent read buffer of decoded bytes.  In practice this will only
+     * be used if the single-byte read() is called sometime.  It is only
+     * refilled once it is empty, so it never wraps around.
      */
     private byte [] readBuffer;
 
     /**
-     * Current writing position in readBuffer - what is passed into
-     * input.read().
+     * Current writing position in readBuffer - the end of what readImpl()
+     * decoded into it.
      */
     private int readBufferEnd;
 
@@ -69,6 +70,19 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
      */
     private int readBufferStart;
 
+    /**
+     * Bytes read from the raw socket that have not been run through the
+     * telnet protocol yet.  This is large enough that a paste burst needs
+     * only a few reads from the socket.
+     */
+    private ByteBuffer rawBuffer;
+
+    /**
+     * The second of two data bytes that decode() produced from one byte on
+     * the wire when the caller's buffer had room for only the first, or -1.
+     */
+    private int pendingByte = -1;
+
     /**
      * User name.
      */
@@ -118,7 +132,17 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
     /**
      * The subnegotiation buffer.
      */
-    private ArrayList<Byte> subnegBuffer;
+    private byte [] subnegBuffer;
+
+    /**
+     * The number of bytes in subnegBuffer.
+     */
+    private int subnegBufferN = 0;
+
+    /**
+     * Reusable buffer for DO/DON'T/WILL/WON'T responses.
+     */
+    private byte [] respondBuffer = new byte[3];
 
     /**
      * The time this session was started.
@@ -153,7 +177,9 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
         readBuffer      = new byte[1024];
         readBufferStart = 0;
         readBufferEnd   = 0;
-        subnegBuffer    = new ArrayList<Byte>();
+        rawBuffer       = ByteBuffer.allocate(8192);
+        rawBuffer.flip();
+        subnegBuffer    = new byte[64];
     }
 
     // ------------------------------------------------------------------------
@@ -281,6 +307,12 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
         if (readBufferEnd - readBufferStart > 0) {
             return (readBufferEnd - readBufferStart);
         }
+        if (pendingByte != -1) {
+            return rawBuffer.remaining() + 1;
+        }
+        if (rawBuffer.hasRemaining()) {
+            return rawBuffer.remaining();
+        }
         return input.available();
     }
 
@@ -329,32 +361,30 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
      */
     @Override
     public int read() throws IOException {
-
-        // If the post-processed buffer has bytes, use that.
-        if (readBufferEnd - readBufferStart > 0) {
-            readBufferStart++;
-            return readBuffer[readBufferStart - 1];
+        if (readBuffer == null) {
+            throw new IOException("InputStream is closed");
         }
 
-        // The buffer is empty, so reset the indexes to 0.
-        readBufferStart = 0;
-        readBufferEnd   = 0;
+        // If the post-processed buffer is empty, read some fresh data and
+        // run it through the telnet protocol.
+        if (readBufferEnd - readBufferStart == 0) {
+            readBufferStart = 0;
+            readBufferEnd   = 0;
+            int rc = readImpl(readBuffer, 0, readBuffer.length);
 
-        // Read some fresh data and run it through the telnet protocol.
-        int rc = readImpl(readBuffer, readBufferEnd,
-            readBuffer.length - readBufferEnd);
+            // If we read 0, I screwed up big time.
+            assert (rc != 0);
 
-        // If we got something, return it.
-        if (rc > 0) {
-            readBufferEnd += rc;
-            readBufferStart++;
-            return readBuffer[readBufferStart - 1];
+            if (rc < 0) {
+                // We read -1 (EOF).
+                return rc;
+            }
+            readBufferEnd = rc;
         }
-        // If we read 0, I screwed up big time.
-        assert (rc != 0);
 
-        // We read -1 (EOF).
-        return rc;
+        // Return the byte as 0-255, so that 0xFF is not mistaken for EOF.
+        readBufferStart++;
+        return readBuffer[readBufferStart - 1] & 0xFF;
     }
 
     /**
@@ -373,7 +403,9 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
 
     /**
      * Reads up to len bytes of data from the input stream into an array of
-     * bytes.
+     * bytes.  Bytes that were already decoded, and then bytes that were
+     * already read from the socket, are returned together without
+     * blocking.  This only blocks if neither one has anything.
      *
      * @param b the buffer into which the data is read.
      * @param off the start offset in array b at which the data is written.
@@ -386,40 +418,40 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
     public int read(final byte[] b, final int off,
         final int len) throws IOException {
 
+        if (readBuffer == null) {
+            throw new IOException("InputStream is closed");
+        }
+
         // The only time we can return 0 is if len is 0, as per the
         // InputStream contract.
         if (len == 0) {
             return 0;
         }
 
-        // If the post-processed buffer has bytes, use that.
-        if (readBufferEnd - readBufferStart > 0) {
-            int n = Math.min(len, readBufferEnd - readBufferStart);
-            System.arraycopy(b, off, readBuffer, readBufferStart, n);
+        // Drain the post-processed buffer first.
+        int n = Math.min(len, readBufferEnd - readBufferStart);
+        if (n > 0) {
+            System.arraycopy(readBuffer, readBufferStart, b, off, n);
             readBufferStart += n;
-            return n;
         }
 
-        // The buffer is empty, so reset the indexes to 0.
-        readBufferStart = 0;
-        readBufferEnd   = 0;
-
-        // The maximum number of bytes we will ask for will definitely be
-        // within the bounds of what we can return in a single call.
-        int n = Math.min(len, readBuffer.length);
+        // Then decode whatever already came in from the other end.
+        if (n < len) {
+            n += decode(rawBuffer, b, off + n, len - n);
+        }
+        if (n > 0) {
+            return n;
+        }
 
-        // Read some fresh data and run it through the telnet protocol.
-        int rc = readImpl(readBuffer, readBufferEnd, n);
+        // Nothing is buffered, so wait for fresh data and run it through
+        // the telnet protocol, straight into the caller's buffer.  decode()
+        // never writes more than len bytes.
+        int rc = readImpl(b, off, len);
 
-        // If we got something, return it.
-        if (rc > 0) {
-            System.arraycopy(readBuffer, 0, b, off, rc);
-            return rc;
-        }
         // If we read 0, I screwed up big time.
         assert (rc != 0);
 
-        // We read -1 (EOF).
+        // Return what we got, or -1 (EOF).
         return rc;
     }
 
@@ -548,12 +580,11 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
     private void respond(final int response,
         final int option) throws IOException {
 
-        byte [] buffer = new byte[3];
-        buffer[0] = (byte) TELNET_IAC;
-        buffer[1] = (byte) response;
-        buffer[2] = (byte) option;
+        respondBuffer[0] = (byte) TELNET_IAC;
+        respondBuffer[1] = (byte) response;
+        respondBuffer[2] = (byte) option;
 
-        output.rawWrite(buffer);
+        output.rawWrite(respondBuffer);
     }
 
     /**
@@ -796,13 +827,13 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
 
         /*
         System.err.printf("handleNewEnvironment() %d bytes\n",
-            subnegBuffer.size());
+            subnegBufferN);
          */
 
-        for (int i = 1; i < subnegBuffer.size(); i++) {
-            Byte b = subnegBuffer.get(i);
+        for (int i = 1; i < subnegBufferN; i++) {
+            byte b = subnegBuffer[i];
             /*
-            System.err.printf("   b: %c %d 0x%02x\n", (char)b.byteValue(),
+            System.err.printf("   b: %c %d 0x%02x\n", (char) b,
                 b, b);
              */
 
@@ -842,7 +873,7 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
                     value = new StringBuilder();
                 } else {
                     // Take it as an environment variable name/key byte
-                    name.append((char)b.byteValue());
+                    name.append((char) b);
                 }
 
                 break;
@@ -873,7 +904,7 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
                     name = new StringBuilder();
                 } else {
                     // Take it as an environment variable value byte
-                    value.append((char)b.byteValue());
+                    value.append((char) b);
                 }
                 break;
 
@@ -903,36 +934,49 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
         }
     }
 
+    /**
+     * Append one byte to the subnegotiation buffer.
+     *
+     * @param b the byte
+     */
+    private void addSubneg(final byte b) {
+        if (subnegBufferN == subnegBuffer.length) {
+            byte [] newBuffer = new byte[subnegBuffer.length * 2];
+            System.arraycopy(subnegBuffer, 0, newBuffer, 0, subnegBufferN);
+            subnegBuffer = newBuffer;
+        }
+        subnegBuffer[subnegBufferN++] = b;
+    }
+
     /**
      * Handle an option sub-negotiation.
      *
      * @throws IOException if an I/O error occurs
      */
     private void handleSubneg() throws IOException {
-        Byte option;
+        byte option;
 
         // Sanity check: there must be at least 1 byte in subnegBuffer
-        if (subnegBuffer.size() < 1) {
+        if (subnegBufferN < 1) {
             // Buffer too small: the other side is a broken telnetd, it did
             // not send the right sub-negotiation data.  Bail out now.
             return;
         }
-        option = subnegBuffer.get(0);
+        option = subnegBuffer[0];
 
         switch (option) {
 
         case 24:
             // Terminal Type
-            if ((subnegBuffer.size() > 1) && (subnegBuffer.get(1) == 1)) {
+            if ((subnegBufferN > 1) && (subnegBuffer[1] == 1)) {
                 // Server sent "SEND", we say "IS"
                 telnetSendTerminalType();
             }
-            if ((subnegBuffer.size() > 1) && (subnegBuffer.get(1) == 0)) {
+            if ((subnegBufferN > 1) && (subnegBuffer[1] == 0)) {
                 // Client sent "IS", record it
                 StringBuilder terminalString = new StringBuilder();
-                for (int i = 2; i < subnegBuffer.size(); i++) {
-                    terminalString.append((char)subnegBuffer.
-                        get(i).byteValue());
+                for (int i = 2; i < subnegBufferN; i++) {
+                    terminalString.append((char) subnegBuffer[i]);
                 }
                 master.terminalType = terminalString.toString();
                 /*
@@ -944,15 +988,15 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
 
         case 32:
             // Terminal Speed
-            if ((subnegBuffer.size() > 1) && (subnegBuffer.get(1) == 1)) {
+            if ((subnegBufferN > 1) && (subnegBuffer[1] == 1)) {
                 // Server sent "SEND", we say "IS"
                 telnetSendTerminalSpeed();
             }
-            if ((subnegBuffer.size() > 1) && (subnegBuffer.get(1) == 0)) {
+            if ((subnegBufferN > 1) && (subnegBuffer[1] == 0)) {
                 // Client sent "IS", record it
                 StringBuilder speedString = new StringBuilder();
-                for (int i = 2; i < subnegBuffer.size(); i++) {
-                    speedString.append((char)subnegBuffer.get(i).byteValue());
+                for (int i = 2; i < subnegBufferN; i++) {
+                    speedString.append((char) subnegBuffer[i]);
                 }
                 master.terminalSpeed = speedString.toString();
                 /*
@@ -964,44 +1008,44 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
 
         case 31:
             // NAWS
-            if (subnegBuffer.size() >= 5) {
+            if (subnegBufferN >= 5) {
                 int i = 0;
 
                 i++;
-                if (subnegBuffer.get(i) == (byte) TELNET_IAC) {
+                if (subnegBuffer[i] == (byte) TELNET_IAC) {
                     i++;
                 }
-                int width = subnegBuffer.get(i);
+                int width = subnegBuffer[i];
                 if (width < 0) {
                     width += 256;
                 }
                 windowWidth = width * 256;
 
                 i++;
-                if (subnegBuffer.get(i) == (byte) TELNET_IAC) {
+                if (subnegBuffer[i] == (byte) TELNET_IAC) {
                     i++;
                 }
-                width = subnegBuffer.get(i);
+                width = subnegBuffer[i];
                 windowWidth += width;
                 if (width < 0) {
                     windowWidth += 256;
                 }
 
                 i++;
-                if (subnegBuffer.get(i) == (byte) TELNET_IAC) {
+                if (subnegBuffer[i] == (byte) TELNET_IAC) {
                     i++;
                 }
-                int height = subnegBuffer.get(i);
+                int height = subnegBuffer[i];
                 if (height < 0) {
                     height += 256;
                 }
                 windowHeight = height * 256;
 
                 i++;
-                if (subnegBuffer.get(i) == (byte) TELNET_IAC) {
+                if (subnegBuffer[i] == (byte) TELNET_IAC) {
                     i++;
                 }
-                height = subnegBuffer.get(i);
+                height = subnegBuffer[i];
                 windowHeight += height;
                 if (height < 0) {
                     windowHeight += 256;
@@ -1036,399 +1080,423 @@ public class TelnetInputStream extends InputStream implements SessionInfo {
 
         assert (len > 0);
 
-        // The current writing position in buf.
-        int bufN = off;
-
         // We will keep trying to read() until we have something to return.
+        int n = 0;
         do {
-
-            byte [] buffer = null;
-            if (master.binaryMode) {
-                // Binary mode: read up to len bytes.  There will never be
-                // more bytes to pass upstream than there are bytes on the
-                // wire.
-                buffer = new byte[len];
-            } else {
-                // ASCII mode: read up to len - 2 bytes.  There may have been
-                // some combination of IAC, CR, and NUL from a previous
-                // readImpl() that could result in more bytes to pass up than
-                // are on the wire.
-                buffer = new byte[len - 2];
+            if (!rawBuffer.hasRemaining() && (pendingByte == -1)) {
+                // Read some data from the other end
+                int rc = input.read(rawBuffer.array(), 0,
+                    rawBuffer.capacity());
+                if (rc <= 0) {
+                    // EOF, just return it.
+                    return rc;
+                }
+                rawBuffer.position(0);
+                rawBuffer.limit(rc);
             }
+            n = decode(rawBuffer, buf, off, len);
+        } while (n == 0);
 
-            int bufferN = 0;
+        // Return bytes read
+        return n;
+    }
 
-            // Read some data from the other end
-            int rc = input.read(buffer);
+    /**
+     * Run bytes from the remote side through the telnet protocol.  This is
+     * a byte-at-a-time state machine: any partial IAC, DO/DON'T/WILL/WON'T,
+     * or sub-negotiation sequence is kept in this stream's fields, so
+     * decoding can stop at any byte and resume whenever more bytes arrive.
+     * Replies to negotiations are written to the output stream as they are
+     * seen.  Bytes that do not fit in buf are left in raw.
+     *
+     * @param raw the bytes from the remote side
+     * @param buf the buffer into which the data is written
+     * @param off the start offset in array buf at which the data is written
+     * @param len the maximum number of bytes to write
+     * @return the number of data bytes written to buf, which is 0 if raw
+     * only had telnet commands in it
+     * @throws IOException if an I/O error occurs
+     */
+    int decode(final ByteBuffer raw, final byte[] buf, final int off,
+        final int len) throws IOException {
 
-            // Check for EOF or error
-            if (rc > 0) {
-                // More data came in
-                bufferN = rc;
-            } else {
-                // EOF, just return it.
-                return rc;
+        // The current writing position in buf.
+        int bufN = off;
+        int end = off + len;
+
+        if ((pendingByte != -1) && (bufN < end)) {
+            buf[bufN++] = (byte) pendingByte;
+            pendingByte = -1;
+        }
+
+        // Loop through the raw bytes
+        while (raw.hasRemaining() && (bufN < end)) {
+            byte b = raw.get();
+
+            if (subnegEnd == true) {
+                // Looking for IAC SE to end this subnegotiation
+                if (b == (byte) TELNET_SE) {
+                    if (iac == true) {
+                        iac = false;
+                        subnegEnd = false;
+                        handleSubneg();
+                    }
+                } else if (b == (byte) TELNET_IAC) {
+                    if (iac == true) {
+                        // An argument to the subnegotiation option
+                        addSubneg((byte) TELNET_IAC);
+                    } else {
+                        iac = true;
+                    }
+                } else {
+                    // An argument to the subnegotiation option
+                    addSubneg(b);
+                }
+                continue;
             }
 
-            // Loop through the read bytes
-            for (int i = 0; i < bufferN; i++) {
-                byte b = buffer[i];
-
-                if (subnegEnd == true) {
-                    // Looking for IAC SE to end this subnegotiation
-                    if (b == (byte) TELNET_SE) {
-                        if (iac == true) {
-                            iac = false;
-                            subnegEnd = false;
-                            handleSubneg();
+            // Look for DO/DON'T/WILL/WON'T option
+            if (dowill == true) {
+
+                // Look for option/
+                switch (b) {
+
+                case 0:
+                    // Binary Transmission
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use binary transmission, yay.
+                        master.binaryMode = true;
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for binary transmission.
+                        WILL(b);
+                        master.binaryMode = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // We're screwed, server won't do binary
+                        // transmission.
+                        master.binaryMode = false;
+                    } else {
+                        // Server demands NVT ASCII mode.
+                        master.binaryMode = false;
+                    }
+                    break;
+
+                case 1:
+                    // Echo
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use echo, yay.
+                        master.echoMode = true;
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for echo.
+                        WILL(b);
+                        master.echoMode = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // We're screwed, server won't do echo.
+                        master.echoMode = false;
+                    } else {
+                        // Server demands no echo.
+                        master.echoMode = false;
+                    }
+                    break;
+
+                case 3:
+                    // Suppress Go Ahead
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use suppress go-ahead, yay.
+                        master.goAhead = false;
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for suppress go-ahead.
+                        WILL(b);
+                        master.goAhead = false;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // We're screwed, server won't do suppress
+                        // go-ahead.
+                        master.goAhead = true;
+                    } else {
+                        // Server demands Go-Ahead mode.
+                        master.goAhead = true;
+                    }
+                    break;
+
+                case 24:
+                    // Terminal Type - send what's in TERM
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use terminal type, yay.
+                        if (master.isServer
+                            && master.doTermType
+                        ) {
+                            requestTerminalType();
+                            master.doTermType = false;
+                        } else if (!master.isServer) {
+                            master.doTermType = true;
+                        }
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for terminal type.
+                        WILL(b);
+                        master.doTermType = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // We're screwed, server won't do terminal type.
+                        master.doTermType = false;
+                    } else {
+                        // Server will not listen to terminal type.
+                        master.doTermType = false;
+                    }
+                    break;
+
+                case 31:
+                    // NAWS
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use NAWS, yay.
+                        master.doNAWS = true;
+                        // NAWS cannot be requested by the server, it is
+                        // only sent by the client.
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for NAWS.
+                        WILL(b);
+                        master.doNAWS = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // Server won't do NAWS.
+                        master.doNAWS = false;
+                    } else {
+                        // Server will not listen to NAWS.
+                        master.doNAWS = false;
+                    }
+                    break;
+
+                case 32:
+                    // Terminal Speed
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use terminal speed, yay.
+                        if (master.isServer
+                            && master.doTermSpeed
+                        ) {
+                            requestTerminalSpeed();
+                            master.doTermSpeed = false;
+                        } else if (!master.isServer) {
+                            master.doTermSpeed = true;
                         }
-                    } else if (b == (byte) TELNET_IAC) {
-                        if (iac == true) {
-                            // An argument to the subnegotiation option
-                            subnegBuffer.add((byte) TELNET_IAC);
-                        } else {
-                            iac = true;
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for terminal speed.
+                        WILL(b);
+                        master.doTermSpeed = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // We're screwed, server won't do terminal speed.
+                        master.doTermSpeed = false;
+                    } else {
+                        // Server will not listen to terminal speed.
+                        master.doTermSpeed = false;
+                    }
+                    break;
+
+                case 39:
+                    // New Environment
+                    if (dowillType == (byte) TELNET_WILL) {
+                        // Server will use NewEnvironment, yay.
+                        if (master.isServer
+                            && master.doEnvironment
+                        ) {
+                            requestEnvironment();
+                            master.doEnvironment = false;
+                        } else if (!master.isServer) {
+                            master.doEnvironment = true;
                         }
+                    } else if (dowillType == (byte) TELNET_DO) {
+                        // Server asks for NewEnvironment.
+                        WILL(b);
+                        master.doEnvironment = true;
+                    } else if (dowillType == (byte) TELNET_WONT) {
+                        // Server won't do NewEnvironment.
+                        master.doEnvironment = false;
                     } else {
-                        // An argument to the subnegotiation option
-                        subnegBuffer.add(b);
+                        // Server will not listen to New Environment.
+                        master.doEnvironment = false;
                     }
-                    continue;
+                    break;
+
+
+                default:
+                    // Other side asked for something we don't
+                    // understand.  Tell them we will not do this option.
+                    refuse(dowillType, b);
+                    break;
                 }
 
-                // Look for DO/DON'T/WILL/WON'T option
-                if (dowill == true) {
+                dowill = false;
+                continue;
+            } // if (dowill == true)
+
+            // Perform read processing
+            if (b == (byte) TELNET_IAC) {
+
+                // Telnet command
+                if (iac == true) {
+                    // IAC IAC -> IAC
+                    buf[bufN++] = (byte) TELNET_IAC;
+                    iac = false;
+                } else {
+                    iac = true;
+                }
+                continue;
+            } else {
+                if (iac == true) {
 
-                    // Look for option/
                     switch (b) {
 
-                    case 0:
-                        // Binary Transmission
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use binary transmission, yay.
-                            master.binaryMode = true;
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for binary transmission.
-                            WILL(b);
-                            master.binaryMode = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // We're screwed, server won't do binary
-                            // transmission.
-                            master.binaryMode = false;
-                        } else {
-                            // Server demands NVT ASCII mode.
-                            master.binaryMode = false;
-                        }
+                    case (byte) TELNET_SE:
+                        // END Sub-Negotiation
                         break;
-
-                    case 1:
-                        // Echo
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use echo, yay.
-                            master.echoMode = true;
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for echo.
-                            WILL(b);
-                            master.echoMode = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // We're screwed, server won't do echo.
-                            master.echoMode = false;
-                        } else {
-                            // Server demands no echo.
-                            master.echoMode = false;
-                        }
+                    case (byte) TELNET_NOP:
+                        // NOP
                         break;
-
-                    case 3:
-                        // Suppress Go Ahead
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use suppress go-ahead, yay.
-                            master.goAhead = false;
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for suppress go-ahead.
-                            WILL(b);
-                            master.goAhead = false;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // We're screwed, server won't do suppress
-                            // go-ahead.
-                            master.goAhead = true;
-                        } else {
-                            // Server demands Go-Ahead mode.
-                            master.goAhead = true;
-                        }
+                    case (byte) TELNET_DM:
+                        // Data Mark
                         break;
-
-                    case 24:
-                        // Terminal Type - send what's in TERM
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use terminal type, yay.
-                            if (master.isServer
-                                && master.doTermType
-                            ) {
-                                requestTerminalType();
-                                master.doTermType = false;
-                            } else if (!master.isServer) {
-                                master.doTermType = true;
-                            }
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for terminal type.
-                            WILL(b);
-                            master.doTermType = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // We're screwed, server won't do terminal type.
-                            master.doTermType = false;
-                        } else {
-                            // Server will not listen to terminal type.
-                            master.doTermType = false;
-                        }
+                    case (byte) TELNET_BRK:
+                        // Break
                         break;
-
-                    case 31:
-                        // NAWS
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use NAWS, yay.
-                            master.doNAWS = true;
-                            // NAWS cannot be requested by the server, it is
-                            // only sent by the client.
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for NAWS.
-                            WILL(b);
-                            master.doNAWS = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // Server won't do NAWS.
-                            master.doNAWS = false;
-                        } else {
-                            // Server will not listen to NAWS.
-                            master.doNAWS = false;
-                        }
+                    case (byte) TELNET_IP:
+                        // Interrupt Process
                         break;
-
-                    case 32:
-                        // Terminal Speed
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use terminal speed, yay.
-                            if (master.isServer
-                                && master.doTermSpeed
-                            ) {
-                                requestTerminalSpeed();
-                                master.doTermSpeed = false;
-                            } else if (!master.isServer) {
-                                master.doTermSpeed = true;
-                            }
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for terminal speed.
-                            WILL(b);
-                            master.doTermSpeed = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // We're screwed, server won't do terminal speed.
-                            master.doTermSpeed = false;
-                        } else {
-                            // Server will not listen to terminal speed.
-                            master.doTermSpeed = false;
-                        }
+                    case (byte) TELNET_AO:
+                        // Abort Output
                         break;
-
-                    case 39:
-                        // New Environment
-                        if (dowillType == (byte) TELNET_WILL) {
-                            // Server will use NewEnvironment, yay.
-                            if (master.isServer
-                                && master.doEnvironment
-                            ) {
-                                requestEnvironment();
-                                master.doEnvironment = false;
-                            } else if (!master.isServer) {
-                                master.doEnvironment = true;
-                            }
-                        } else if (dowillType == (byte) TELNET_DO) {
-                            // Server asks for NewEnvironment.
-                            WILL(b);
-                            master.doEnvironment = true;
-                        } else if (dowillType == (byte) TELNET_WONT) {
-                            // Server won't do NewEnvironment.
-                            master.doEnvironment = false;
-                        } else {
-                            // Server will not listen to New Environment.
-                            master.doEnvironment = false;
-                        }
+                    case (byte) TELNET_AYT:
+                        // Are You There?
+                        break;
+                    case (byte) TELNET_EC:
+                        // Erase Character
+                        break;
+                    case (byte) TELNET_EL:
+                        // Erase Line
+                        break;
+                    case (byte) TELNET_GA:
+                        // Go Ahead
+                        break;
+                    case (byte) TELNET_SB:
+                        // START Sub-Negotiation
+                        // From here we wait for the IAC SE
+                        subnegEnd = true;
+                        subnegBufferN = 0;
+                        break;
+                    case (byte) TELNET_WILL:
+                        // WILL
+                        dowill = true;
+                        dowillType = b;
+                        break;
+                    case (byte) TELNET_WONT:
+                        // WON'T
+                        dowill = true;
+                        dowillType = b;
+                        break;
+                    case (byte) TELNET_DO:
+                        // DO
+                        dowill = true;
+                        dowillType = b;
+                        break;
+                    case (byte) TELNET_DONT:
+                        // DON'T
+                        dowill = true;
+                        dowillType = b;
                         break;
-
-
                     default:
-                        // Other side asked for something we don't
-                        // understand.  Tell them we will not do this option.
-                        refuse(dowillType, b);
+                        // This should be equivalent to IAC NOP
                         break;
                     }
-
-                    dowill = false;
+                    iac = false;
                     continue;
-                } // if (dowill == true)
 
-                // Perform read processing
-                if (b == (byte) TELNET_IAC) {
+                } // if (iac == true)
 
-                    // Telnet command
-                    if (iac == true) {
-                        // IAC IAC -> IAC
-                        buf[bufN++] = (byte) TELNET_IAC;
-                        iac = false;
-                    } else {
-                        iac = true;
-                    }
-                    continue;
-                } else {
-                    if (iac == true) {
-
-                        switch (b) {
-
-                        case (byte) TELNET_SE:
-                            // END Sub-Negotiation
-                            break;
-                        case (byte) TELNET_NOP:
-                            // NOP
-                            break;
-                        case (byte) TELNET_DM:
-                            // Data Mark
-                            break;
-                        case (byte) TELNET_BRK:
-                            // Break
-                            break;
-                        case (byte) TELNET_IP:
-                            // Interrupt Process
-                            break;
-                        case (byte) TELNET_AO:
-                            // Abort Output
-                            break;
-                        case (byte) TELNET_AYT:
-                            // Are You There?
-                            break;
-                        case (byte) TELNET_EC:
-                            // Erase Character
-                            break;
-                        case (byte) TELNET_EL:
-                            // Erase Line
-                            break;
-                        case (byte) TELNET_GA:
-                            // Go Ahead
-                            break;
-                        case (byte) TELNET_SB:
-                            // START Sub-Negotiation
-                            // From here we wait for the IAC SE
-                            subnegEnd = true;
-                            subnegBuffer.clear();
-                            break;
-                        case (byte) TELNET_WILL:
-                            // WILL
-                            dowill = true;
-                            dowillType = b;
-                            break;
-                        case (byte) TELNET_WONT:
-                            // WON'T
-                            dowill = true;
-                            dowillType = b;
-                            break;
-                        case (byte) TELNET_DO:
-                            // DO
-                            dowill = true;
-                            dowillType = b;
-                            break;
-                        case (byte) TELNET_DONT:
-                            // DON'T
-                            dowill = true;
-                            dowillType = b;
-                            break;
-                        default:
-                            // This should be equivalent to IAC NOP
-                            break;
-                        }
-                        iac = false;
-                        continue;
+                /*
+                 * All of the regular IAC processing is completed at this
+                 * point.  Now we need to handle the CR and CR LF cases.
+                 *
+                 * According to RFC 854, in NVT ASCII mode:
+                 *     Bare CR -> CR NUL
+                 *     CR LF -> CR LF
+                 *
+                 */
+                if (master.binaryMode == false) {
 
-                    } // if (iac == true)
-
-                    /*
-                     * All of the regular IAC processing is completed at this
-                     * point.  Now we need to handle the CR and CR LF cases.
-                     *
-                     * According to RFC 854, in NVT ASCII mode:
-                     *     Bare CR -> CR NUL
-                     *     CR LF -> CR LF
-                     *
-                     */
-                    if (master.binaryMode == false) {
-
-                        if (b == C_LF) {
-                            if (readCR == true) {
-                                // This is CR LF.  Send CR LF and turn the cr
-                                // flag off.
-                                buf[bufN++] = C_CR;
+                    if (b == C_LF) {
+                        if (readCR == true) {
+                            // This is CR LF.  Send CR LF and turn the cr
+                            // flag off.
+                            buf[bufN++] = C_CR;
+                            if (bufN < end) {
                                 buf[bufN++] = C_LF;
-                                readCR = false;
-                                continue;
+                            } else {
+                                pendingByte = C_LF;
                             }
-                            // This is bare LF.  Send LF.
-                            buf[bufN++] = C_LF;
+                            readCR = false;
                             continue;
                         }
+                        // This is bare LF.  Send LF.
+                        buf[bufN++] = C_LF;
+                        continue;
+                    }
 
-                        if (b == C_NUL) {
-                            if (readCR == true) {
-                                // This is CR NUL.  Send CR and turn the cr
-                                // flag off.
-                                buf[bufN++] = C_CR;
-                                readCR = false;
-                                continue;
-                            }
-                            // This is bare NUL.  Send NUL.
-                            buf[bufN++] = C_NUL;
+                    if (b == C_NUL) {
+                        if (readCR == true) {
+                            // This is CR NUL.  Send CR and turn the cr
+                            // flag off.
+                            buf[bufN++] = C_CR;
+                            readCR = false;
                             continue;
                         }
+                        // This is bare NUL.  Send NUL.
+                        buf[bufN++] = C_NUL;
+                        continue;
+                    }
 
-                        if (b == C_CR) {
-                            if (readCR == true) {
-                                // This is CR CR.  Send a CR NUL and leave
-                                // the cr flag on.
-                                buf[bufN++] = C_CR;
+                    if (b == C_CR) {
+                        if (readCR == true) {
+                            // This is CR CR.  Send a CR NUL and leave
+                            // the cr flag on.
+                            buf[bufN++] = C_CR;
+                            if (bufN < end) {
                                 buf[bufN++] = C_NUL;
-                                continue;
+                            } else {
+                                pendingByte = C_NUL;
                             }
-                            // This is the first CR.  Set the cr flag.
-                            readCR = true;
                             continue;
                         }
+                        // This is the first CR.  Set the cr flag.
+                        readCR = true;
+                        continue;
+                    }
 
-                        if (readCR == true) {
-                            // This was a bare CR in the stream.
-                            buf[bufN++] = C_CR;
-                            readCR = false;
+                    if (readCR == true) {
+                        // This was a bare CR in the stream.
+                        buf[bufN++] = C_CR;
+                        readCR = false;
+                        if (bufN == end) {
+                            pendingByte = b & 0xFF;
+                            continue;
                         }
-
-                        // This is a regular character.  Pass it on.
-                        buf[bufN++] = b;
-                        continue;
                     }
 
-                    /*
-                     * This is the case for any of:
-                     *
-                     *     1) A NVT ASCII character that isn't CR, LF, or
-                     *        NUL.
-                     *
-                     *     2) A NVT binary character.
-                     *
-                     * For all of these cases, we just pass the character on.
-                     */
+                    // This is a regular character.  Pass it on.
                     buf[bufN++] = b;
+                    continue;
+                }
 
-                } // if (b == TELNET_IAC)
+                /*
+                 * This is the case for any of:
+                 *
+                 *     1) A NVT ASCII character that isn't CR, LF, or
+                 *        NUL.
+                 *
+                 *     2) A NVT binary character.
+                 *
+                 * For all of these cases, we just pass the character on.
+                 */
+                buf[bufN++] = b;
 
-            } // for (int i = 0; i < bufferN; i++)
+            } // if (b == TELNET_IAC)
 
-        } while (bufN == 0);
+        } // while (raw.hasRemaining() && (bufN < end))
 
-        // Return bytes read
-        return bufN;
+        return bufN - off;
     }
 
 }
@@ -43,6 +43,16 @@ public class TelnetOutputStream extends OutputStream {
      */
     private boolean writeCR = false;
 
+    /**
+     * Reusable buffer for the NVT ASCII encoding.
+     */
+    private byte [] writeBuffer = new byte[1024];
+
+    /**
+     * Reusable buffer for write(int).
+     */
+    private byte [] oneByte = new byte[1];
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -131,9 +141,8 @@ public class TelnetOutputStream extends OutputStream {
      */
     @Override
     public void write(final int b) throws IOException {
-        byte [] bytes = new byte[1];
-        bytes[0] = (byte) b;
-        writeImpl(bytes, 0, 1);
+        oneByte[0] = (byte) b;
+        writeImpl(oneByte, 0, 1);
     }
 
     // ------------------------------------------------------------------------
@@ -163,7 +172,25 @@ public class TelnetOutputStream extends OutputStream {
     private void writeImpl(final byte[] b, final int off,
         final int len) throws IOException {
 
-        byte [] writeBuffer = new byte[Math.max(len, 4)];
+        if (master.binaryMode == true) {
+            // Binary mode: IAC -> IAC IAC, anything else is sent as-is.
+            // Runs without IAC are passed through without copying.  Each
+            // IAC ends one run and also starts the next, so that it is sent
+            // twice.
+            int start = off;
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                if (b[i] == (byte) TELNET_IAC) {
+                    output.write(b, start, i + 1 - start);
+                    start = i;
+                }
+            }
+            if (end > start) {
+                output.write(b, start, end - start);
+            }
+            return;
+        }
+
         int writeBufferI = 0;
 
         for (int i = 0; i < len; i++) {
@@ -178,19 +205,6 @@ public class TelnetOutputStream extends OutputStream {
             // Pull the next byte
             byte ch = b[i + off];
 
-            if (master.binaryMode == true) {
-
-                if (ch == TELNET_IAC) {
-                    // IAC -> IAC IAC
-                    writeBuffer[writeBufferI++] = (byte) TELNET_IAC;
-                    writeBuffer[writeBufferI++] = (byte) TELNET_IAC;
-                } else {
-                    // Anything else -> just send
-                    writeBuffer[writeBufferI++] = ch;
-                }
-                continue;
-            }
-
             // Non-binary mode: more complicated.  We use writeCR to handle
             // the case that the last byte of b was a CR.
 
@@ -213,29 +227,22 @@ public class TelnetOutputStream extends OutputStream {
                     // Bare LF -> LF
                     writeBuffer[writeBufferI++] = ch;
                 }
-            } else if (ch == TELNET_IAC) {
-                if (writeCR == true) {
-                    // CR <anything> -> CR NULL
-                    writeBuffer[writeBufferI++] = (byte) C_CR;
-                    writeBuffer[writeBufferI++] = (byte) C_NUL;
-                    writeCR = false;
-                }
-                // IAC -> IAC IAC
-                writeBuffer[writeBufferI++] = (byte) TELNET_IAC;
-                writeBuffer[writeBufferI++] = (byte) TELNET_IAC;
             } else {
                 if (writeCR == true) {
                     // CR <anything> -> CR NULL
                     writeBuffer[writeBufferI++] = (byte) C_CR;
                     writeBuffer[writeBufferI++] = (byte) C_NUL;
                     writeCR = false;
-                } else {
-                    // Normal character */
-                    writeBuffer[writeBufferI++] = ch;
                 }
+                if (ch == (byte) TELNET_IAC) {
+                    // IAC -> IAC IAC
+                    writeBuffer[writeBufferI++] = (byte) TELNET_IAC;
+                }
+                // Normal character
+                writeBuffer[writeBufferI++] = ch;
             }
 
-        } // while (i < userbuf.length)
+        } // for (int i = 0; i < len; i++)
 
         if (writeBufferI > 0) {
             // Flush what we have generated so far and reset the buffer.
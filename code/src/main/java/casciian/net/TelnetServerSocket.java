@@ -19,9 +19,12 @@ import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.function.Consumer;
 
 /**
  * This class provides a ServerSocket that return TelnetSocket's in accept().
+ * serve() can be used instead of accept() to run each connection on its own
+ * virtual thread.
  */
 public class TelnetServerSocket extends ServerSocket {
 
@@ -112,4 +115,52 @@ public class TelnetServerSocket extends ServerSocket {
         return socket;
     }
 
+    // ------------------------------------------------------------------------
+    // TelnetServerSocket -----------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Accept connections until this socket is closed, and pass each one to
+     * handler on a new virtual thread.  The telnet options are sent before
+     * handler is called.  A virtual thread blocked on a socket read does not
+     * hold an operating system thread, so one server can keep many mostly
+     * idle sessions.  Note that the telnet protocol is decoded by the
+     * session's TelnetInputStream, not here, so that a slow client never
+     * delays the accept loop.
+     *
+     * @param handler the code to run for each connection
+     * @throws IOException if an I/O error occurs, other than this socket
+     * being closed
+     */
+    public void serve(final Consumer<Socket> handler) throws IOException {
+        while (!isClosed()) {
+            final Socket socket;
+            try {
+                socket = accept();
+            } catch (SocketException e) {
+                if (isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+
+            Thread.ofVirtual().name("Telnet session").start(new Runnable() {
+                public void run() {
+                    try {
+                        // This sends the telnet options.
+                        socket.getInputStream();
+                    } catch (IOException e) {
+                        try {
+                            socket.close();
+                        } catch (IOException e2) {
+                            // SQUASH
+                        }
+                        return;
+                    }
+                    handler.accept(socket);
+                }
+            });
+        }
+    }
+
 }
@@ -14,13 +14,29 @@
  */
 package casciian.terminal;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
+import casciian.backend.Screen;
+import casciian.bits.Cell;
 import casciian.bits.CellAttributes;
+import casciian.bits.Color;
 import casciian.bits.ComplexCell;
 
 /**
  * This represents a single line of the display buffer.
+ *
+ * <p>
+ * A line can be frozen, after which it may be shared between the emulator
+ * and any number of TerminalState snapshots.  A frozen line cannot be
+ * changed; the emulator makes a new copy of it before writing to it again.
+ *
+ * <p>
+ * Cells are stored as parallel primitive arrays rather than as ComplexCell
+ * objects: one int codepoint and one packed long of attributes per cell.
+ * RGB colors are only allocated once a cell on the line uses one, and
+ * multi-codepoint grapheme clusters are kept in a small side table.
  */
 public class DisplayLine {
 
@@ -28,14 +44,69 @@ public class DisplayLine {
     // Constants --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
+    /**
+     * Bit position of the Cell.Width in a packed attributes value.  Bits
+     * below this belong to CellAttributes.getPackedAttributes().
+     */
+    private static final int WIDTH_SHIFT = 48;
+
+    /**
+     * Mask of the Cell.Width bits in a packed attributes value.
+     */
+    private static final long WIDTH_MASK = 0x03L << WIDTH_SHIFT;
+
+    /**
+     * The Cell.Width values, indexed by ordinal.
+     */
+    private static final Cell.Width [] WIDTHS = Cell.Width.values();
+
+    /**
+     * Packed attributes of a blank (reset) cell.
+     */
+    private static final long BLANK_ATTR = pack(new Cell());
+
+    /**
+     * The smallest number of cells to allocate.
+     */
+    private static final int MIN_CAPACITY = 16;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-     * The characters/attributes of the line.
+     * The number of cells in the line.
      */
-    private ArrayList<ComplexCell> chars = new ArrayList<ComplexCell>();
+    private int length = 0;
+
+    /**
+     * The codepoint of each cell.  A negative value -(n + 1) means the cell
+     * holds the grapheme cluster clusters.get(n).
+     */
+    private int [] codePoints = new int[0];
+
+    /**
+     * The attributes and Cell.Width of each cell, see pack().
+     */
+    private long [] attrs = new long[0];
+
+    /**
+     * The foreground RGB of each cell, or null if no cell on this line has
+     * ever had one.
+     */
+    private int [] foreColorRGB = null;
+
+    /**
+     * The background RGB of each cell, or null if no cell on this line has
+     * ever had one.
+     */
+    private int [] backColorRGB = null;
+
+    /**
+     * Multi-codepoint grapheme clusters.  These arrays are never modified,
+     * so they can be shared between copies of the line.
+     */
+    private ArrayList<int []> clusters = null;
 
     /**
      * Double-width line flag.
@@ -64,20 +135,48 @@ public class DisplayLine {
      */
     private CellAttributes attr;
 
+    /**
+     * The initial attributes for this line, packed.
+     */
+    private long packedAttr;
+
+    /**
+     * If true, this line is shared and cannot be changed.
+     */
+    private boolean frozen = false;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-     * Public constructor makes a duplicate (deep copy).
+     * Public constructor makes a duplicate (deep copy).  The duplicate is
+     * not frozen.
      *
      * @param line the line to duplicate
      */
     public DisplayLine(final DisplayLine line) {
-        for (ComplexCell cell: line.chars) {
-            chars.add(new ComplexCell(cell));
+        length = line.length;
+        codePoints = Arrays.copyOf(line.codePoints, length);
+        attrs = Arrays.copyOf(line.attrs, length);
+        if (line.foreColorRGB != null) {
+            foreColorRGB = Arrays.copyOf(line.foreColorRGB, length);
+            backColorRGB = Arrays.copyOf(line.backColorRGB, length);
+        }
+        if (line.clusters != null) {
+            // Only carry over the clusters that are still on the line.
+            for (int i = 0; i < length; i++) {
+                if (codePoints[i] < 0) {
+                    if (clusters == null) {
+                        clusters = new ArrayList<int []>();
+                    }
+                    clusters.add(line.clusters.get(-codePoints[i] - 1));
+                    codePoints[i] = -clusters.size();
+                }
+            }
         }
         attr = new CellAttributes(line.attr);
+        packedAttr = line.packedAttr;
         doubleWidth = line.doubleWidth;
         doubleHeight = line.doubleHeight;
         reverseColor = line.reverseColor;
@@ -90,6 +189,7 @@ public class DisplayLine {
      */
     public DisplayLine(final CellAttributes attr) {
         this.attr = new CellAttributes(attr);
+        packedAttr = attr.getPackedAttributes();
     }
 
     // ------------------------------------------------------------------------
@@ -103,10 +203,205 @@ public class DisplayLine {
      * @return the Cell
      */
     public ComplexCell charAt(final int idx) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
+        if (frozen && (idx >= length)) {
+            return new ComplexCell(attr);
+        }
+        grow(idx, attr);
+
+        ComplexCell cell = new ComplexCell();
+        readCell(idx, cell);
+        return cell;
+    }
+
+    /**
+     * Copy the cell at a specific column into an existing cell.  Unlike
+     * charAt(), this does not allocate (except for a grapheme cluster) and
+     * never extends the line: columns past the end read as blanks in the
+     * line's initial attributes.
+     *
+     * @param idx the character index
+     * @param cell the cell to overwrite
+     * @return cell
+     */
+    public ComplexCell readCell(final int idx, final ComplexCell cell) {
+        if (idx >= length) {
+            cell.setTo(attr);
+            cell.setChar(' ');
+            return cell;
+        }
+        int ch = codePoints[idx];
+        if (ch < 0) {
+            cell.setCodePoints(clusters.get(-ch - 1));
+        } else {
+            cell.setChar(ch);
+        }
+        long packed = attrs[idx];
+        if (foreColorRGB != null) {
+            cell.setPackedAttributes(packed, foreColorRGB[idx],
+                backColorRGB[idx]);
+        } else {
+            cell.setPackedAttributes(packed, -1, -1);
+        }
+        cell.setWidth(WIDTHS[(int) ((packed & WIDTH_MASK) >>> WIDTH_SHIFT)]);
+        return cell;
+    }
+
+    /**
+     * Get the character at a specific column.  For a grapheme cluster this
+     * is the first codepoint.  This does not extend the line.
+     *
+     * @param idx the character index
+     * @return the codepoint, or ' ' if idx is past the end of the line
+     */
+    public int getChar(final int idx) {
+        if (idx >= length) {
+            return ' ';
+        }
+        int ch = codePoints[idx];
+        if (ch < 0) {
+            return clusters.get(-ch - 1)[0];
+        }
+        return ch;
+    }
+
+    /**
+     * Get the text of this line, one codepoint per glyph.  Grapheme
+     * clusters contribute their first codepoint, and the right half of a
+     * wide glyph contributes nothing, so that the text reads as it does on
+     * screen.  getColumn() and getTextIndex() convert between codepoints of
+     * the result and columns.
+     *
+     * @return the text
+     */
+    public String getText() {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (!isRightHalf(i)) {
+                sb.appendCodePoint(getChar(i));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Find the column of a codepoint of getText().
+     *
+     * @param textIndex the codepoint index into getText()
+     * @return the column that codepoint is drawn at, or the first column
+     * after the text if textIndex is past its end
+     */
+    public int getColumn(final int textIndex) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (isRightHalf(i)) {
+                continue;
+            }
+            if (count == textIndex) {
+                return i;
+            }
+            count++;
+        }
+        return length + (textIndex - count);
+    }
+
+    /**
+     * Find the codepoint of getText() at a column.
+     *
+     * @param column the column
+     * @return the number of codepoints of getText() that start before the
+     * column
+     */
+    public int getTextIndex(final int column) {
+        int count = 0;
+        for (int i = 0; (i < column) && (i < length); i++) {
+            if (!isRightHalf(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check if a column holds the right half of a wide glyph.
+     *
+     * @param idx the character index
+     * @return true if the cell is Cell.Width.RIGHT
+     */
+    private boolean isRightHalf(final int idx) {
+        return (((attrs[idx] & WIDTH_MASK) >>> WIDTH_SHIFT)
+            == Cell.Width.RIGHT.ordinal());
+    }
+
+    /**
+     * Draw part of this line to one row of a screen.  The line and cell
+     * reverse flags are resolved into swapped colors, and a double-width
+     * line is drawn two screen columns per cell.  Every cell is passed
+     * through the one scratch cell, so this does not allocate per cell.
+     *
+     * @param screen the screen to draw to
+     * @param y the screen row
+     * @param left the first column of this line to draw
+     * @param count the number of columns of this line to draw
+     * @param scratch a cell to reuse for each column
+     */
+    public void drawTo(final Screen screen, final int y, final int left,
+        final int count, final ComplexCell scratch) {
+
+        for (int i = 0; i < count; i++) {
+            readCell(i + left, scratch);
+            boolean reverse = reverseColor ^ scratch.isReverse();
+            scratch.setReverse(false);
+            if (reverse) {
+                Color fore = scratch.getForeColor();
+                Color back = scratch.getBackColor();
+                int foreRGB = scratch.getForeColorRGB();
+                int backRGB = scratch.getBackColorRGB();
+                if (foreRGB < 0) {
+                    scratch.setBackColor(fore);
+                } else {
+                    scratch.setBackColorRGB(foreRGB);
+                }
+                if (backRGB < 0) {
+                    scratch.setForeColor(back);
+                } else {
+                    scratch.setForeColorRGB(backRGB);
+                }
+            }
+            if (doubleWidth) {
+                screen.putCharXY(i * 2, y, scratch);
+                screen.putCharXY((i * 2) + 1, y, ' ', scratch);
+            } else {
+                screen.putCharXY(i, y, scratch);
+            }
+        }
+    }
+
+    /**
+     * Freeze this line so that it can be shared.  Once frozen, a line cannot
+     * be changed.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Get frozen flag.
+     *
+     * @return if true, this line is shared and cannot be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Throw an exception if this line cannot be changed.
+     *
+     * @throws IllegalStateException if this line is frozen
+     */
+    private void checkFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("DisplayLine is frozen");
         }
-        return new ComplexCell(chars.get(idx));
     }
 
     /**
@@ -115,7 +410,7 @@ public class DisplayLine {
      * @return line length
      */
     public int length() {
-        return chars.size();
+        return length;
     }
 
     /**
@@ -133,6 +428,7 @@ public class DisplayLine {
      * @param doubleWidth new value for double width flag
      */
     public void setDoubleWidth(final boolean doubleWidth) {
+        checkFrozen();
         this.doubleWidth = doubleWidth;
     }
 
@@ -151,6 +447,7 @@ public class DisplayLine {
      * @param doubleHeight new value for double height flag
      */
     public void setDoubleHeight(final int doubleHeight) {
+        checkFrozen();
         this.doubleHeight = doubleHeight;
     }
 
@@ -169,6 +466,7 @@ public class DisplayLine {
      * @param reverseColor new value for reverse video flag
      */
     public void setReverseColor(final boolean reverseColor) {
+        checkFrozen();
         this.reverseColor = reverseColor;
     }
 
@@ -179,10 +477,19 @@ public class DisplayLine {
      * @param newCell the new ComplexCell
      */
     public void insert(final int idx, final ComplexCell newCell) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
+        checkFrozen();
+        grow(idx, attr);
+        ensureCapacity(length + 1);
+        int n = length - idx;
+        System.arraycopy(codePoints, idx, codePoints, idx + 1, n);
+        System.arraycopy(attrs, idx, attrs, idx + 1, n);
+        if (foreColorRGB != null) {
+            System.arraycopy(foreColorRGB, idx, foreColorRGB, idx + 1, n);
+            System.arraycopy(backColorRGB, idx, backColorRGB, idx + 1, n);
         }
-        chars.add(idx, new ComplexCell(newCell));
+        length++;
+        codePoints[idx] = 0;
+        set(idx, newCell);
     }
 
     /**
@@ -192,10 +499,51 @@ public class DisplayLine {
      * @param newCell the new ComplexCell
      */
     public void replace(final int idx, final ComplexCell newCell) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
+        checkFrozen();
+        grow(idx, attr);
+        set(idx, newCell);
+    }
+
+    /**
+     * Replace a run of cells with single-width characters that all have
+     * the same attributes.  This is the same as calling replace() for each
+     * character, but fills the arrays in bulk.
+     *
+     * @param idx the index of the first cell to replace
+     * @param chars the characters, which must not be surrogates
+     * @param start the index in chars of the first character
+     * @param count the number of characters
+     * @param cellAttr the attributes for every cell
+     */
+    public void replace(final int idx, final char [] chars, final int start,
+        final int count, final CellAttributes cellAttr) {
+
+        checkFrozen();
+        if (count == 0) {
+            return;
+        }
+        grow(idx + count - 1, attr);
+        if (clusters != null) {
+            for (int i = idx; i < idx + count; i++) {
+                if (codePoints[i] < 0) {
+                    releaseCluster(i);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            codePoints[idx + i] = chars[start + i];
+        }
+        Arrays.fill(attrs, idx, idx + count, cellAttr.getPackedAttributes()
+            | ((long) Cell.Width.SINGLE.ordinal() << WIDTH_SHIFT));
+        int fore = cellAttr.getForeColorRGB();
+        int back = cellAttr.getBackColorRGB();
+        if ((foreColorRGB == null) && ((fore >= 0) || (back >= 0))) {
+            allocateRGB();
+        }
+        if (foreColorRGB != null) {
+            Arrays.fill(foreColorRGB, idx, idx + count, fore);
+            Arrays.fill(backColorRGB, idx, idx + count, back);
         }
-        chars.get(idx).setTo(newCell);
     }
 
     /**
@@ -204,10 +552,11 @@ public class DisplayLine {
      * @param idx the character index
      */
     public void setBlank(final int idx) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
-        }
-        chars.get(idx).reset();
+        checkFrozen();
+        grow(idx, attr);
+        setCodePoint(idx, ' ');
+        attrs[idx] = BLANK_ATTR;
+        setRGB(idx, -1, -1);
     }
 
     /**
@@ -218,10 +567,9 @@ public class DisplayLine {
      * @param ch the new char
      */
     public void setChar(final int idx, final int ch) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
-        }
-        chars.get(idx).setChar(ch);
+        checkFrozen();
+        grow(idx, attr);
+        setCodePoint(idx, ch);
     }
 
     /**
@@ -232,10 +580,10 @@ public class DisplayLine {
      * @param attr the new attributes
      */
     public void setAttr(final int idx, final CellAttributes attr) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
-        }
-        chars.get(idx).setAttr(attr);
+        checkFrozen();
+        grow(idx, attr);
+        attrs[idx] = (attrs[idx] & WIDTH_MASK) | attr.getPackedAttributes();
+        setRGB(idx, attr.getForeColorRGB(), attr.getBackColorRGB());
     }
 
     /**
@@ -246,10 +594,318 @@ public class DisplayLine {
      * @param newCell the new ComplexCell
      */
     public void delete(final int idx, final ComplexCell newCell) {
-        while (idx >= chars.size()) {
-            chars.add(new ComplexCell(attr));
+        checkFrozen();
+        grow(idx, attr);
+        int n = length - idx - 1;
+        System.arraycopy(codePoints, idx + 1, codePoints, idx, n);
+        System.arraycopy(attrs, idx + 1, attrs, idx, n);
+        if (foreColorRGB != null) {
+            System.arraycopy(foreColorRGB, idx + 1, foreColorRGB, idx, n);
+            System.arraycopy(backColorRGB, idx + 1, backColorRGB, idx, n);
+        }
+        length--;
+    }
+
+    /**
+     * Get an upper bound on the number of bytes write() will use.
+     *
+     * @return the maximum encoded size
+     */
+    int getEncodedSizeLimit() {
+        // Header: 24 bytes.  Each cell: a codepoint varint, and at worst a
+        // run of its own of 23 bytes.
+        int size = 24 + (length * 28);
+        if (clusters != null) {
+            for (int [] cluster: clusters) {
+                size += 5 + (cluster.length * 5);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Write this line to a buffer in a compact binary form: the header,
+     * the codepoints as varints, then runs of identical attributes.
+     * read() restores it.
+     *
+     * @param buf the buffer, with at least getEncodedSizeLimit() bytes
+     * remaining
+     */
+    void write(final ByteBuffer buf) {
+        putVarInt(buf, length);
+        buf.put((byte) ((doubleWidth ? 0x01 : 0) | (reverseColor ? 0x02 : 0)
+                | (foreColorRGB != null ? 0x04 : 0) | (doubleHeight << 3)));
+        buf.putLong(packedAttr);
+        putVarInt(buf, attr.getForeColorRGB() + 1);
+        putVarInt(buf, attr.getBackColorRGB() + 1);
+
+        // Codepoints are stored + 1, so that 0 can introduce a cluster.
+        for (int i = 0; i < length; i++) {
+            int ch = codePoints[i];
+            if (ch >= 0) {
+                putVarInt(buf, ch + 1);
+            } else {
+                int [] cluster = clusters.get(-ch - 1);
+                putVarInt(buf, 0);
+                putVarInt(buf, cluster.length);
+                for (int j = 0; j < cluster.length; j++) {
+                    putVarInt(buf, cluster[j]);
+                }
+            }
+        }
+
+        for (int i = 0; i < length;) {
+            int j = i + 1;
+            while ((j < length) && (attrs[j] == attrs[i])
+                && ((foreColorRGB == null)
+                    || ((foreColorRGB[j] == foreColorRGB[i])
+                        && (backColorRGB[j] == backColorRGB[i])))
+            ) {
+                j++;
+            }
+            putVarInt(buf, j - i);
+            buf.putLong(attrs[i]);
+            if (foreColorRGB != null) {
+                putVarInt(buf, foreColorRGB[i] + 1);
+                putVarInt(buf, backColorRGB[i] + 1);
+            }
+            i = j;
+        }
+    }
+
+    /**
+     * Read a line that was written by write().
+     *
+     * @param buf the buffer, positioned at the start of the line
+     * @return a new (not frozen) line
+     */
+    static DisplayLine read(final ByteBuffer buf) {
+        int n = getVarInt(buf);
+        int flags = buf.get();
+        CellAttributes lineAttr = new CellAttributes();
+        long packed = buf.getLong();
+        int fore = getVarInt(buf) - 1;
+        int back = getVarInt(buf) - 1;
+        lineAttr.setPackedAttributes(packed, fore, back);
+
+        DisplayLine line = new DisplayLine(lineAttr);
+        line.doubleWidth = ((flags & 0x01) != 0);
+        line.reverseColor = ((flags & 0x02) != 0);
+        line.doubleHeight = (flags >> 3) & 0x03;
+        line.ensureCapacity(n);
+
+        for (int i = 0; i < n; i++) {
+            int ch = getVarInt(buf);
+            if (ch > 0) {
+                line.codePoints[i] = ch - 1;
+            } else {
+                int [] cluster = new int[getVarInt(buf)];
+                for (int j = 0; j < cluster.length; j++) {
+                    cluster[j] = getVarInt(buf);
+                }
+                if (line.clusters == null) {
+                    line.clusters = new ArrayList<int []>();
+                }
+                line.clusters.add(cluster);
+                line.codePoints[i] = -line.clusters.size();
+            }
+        }
+
+        if ((flags & 0x04) != 0) {
+            line.allocateRGB();
+        }
+        for (int i = 0; i < n;) {
+            int run = getVarInt(buf);
+            Arrays.fill(line.attrs, i, i + run, buf.getLong());
+            if (line.foreColorRGB != null) {
+                Arrays.fill(line.foreColorRGB, i, i + run, getVarInt(buf) - 1);
+                Arrays.fill(line.backColorRGB, i, i + run, getVarInt(buf) - 1);
+            }
+            i += run;
+        }
+        line.length = n;
+        return line;
+    }
+
+    /**
+     * Write a non-negative int using 7 bits per byte.
+     *
+     * @param buf the buffer
+     * @param value the value
+     */
+    private static void putVarInt(final ByteBuffer buf, final int value) {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            buf.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buf.put((byte) v);
+    }
+
+    /**
+     * Read an int written by putVarInt().
+     *
+     * @param buf the buffer
+     * @return the value
+     */
+    private static int getVarInt(final ByteBuffer buf) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buf.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Pack a cell's attributes and width into a long.
+     *
+     * @param cell the cell
+     * @return the packed attributes
+     */
+    private static long pack(final Cell cell) {
+        return cell.getPackedAttributes()
+            | ((long) cell.getWidth().ordinal() << WIDTH_SHIFT);
+    }
+
+    /**
+     * Make sure there are at least n cells of storage.
+     *
+     * @param n the number of cells
+     */
+    private void ensureCapacity(final int n) {
+        if (n <= codePoints.length) {
+            return;
+        }
+        int capacity = Math.max(n, Math.max(MIN_CAPACITY,
+                codePoints.length + (codePoints.length >> 1)));
+        codePoints = Arrays.copyOf(codePoints, capacity);
+        attrs = Arrays.copyOf(attrs, capacity);
+        if (foreColorRGB != null) {
+            foreColorRGB = Arrays.copyOf(foreColorRGB, capacity);
+            backColorRGB = Arrays.copyOf(backColorRGB, capacity);
+        }
+    }
+
+    /**
+     * Extend the line with blank cells so that idx is a valid index.
+     *
+     * @param idx the character index
+     * @param fillAttr the attributes of the new cells
+     */
+    private void grow(final int idx, final CellAttributes fillAttr) {
+        if (idx < length) {
+            return;
+        }
+        ensureCapacity(idx + 1);
+        long fill = packedAttr;
+        if (fillAttr != attr) {
+            fill = fillAttr.getPackedAttributes();
+        }
+        Arrays.fill(codePoints, length, idx + 1, ' ');
+        Arrays.fill(attrs, length, idx + 1, fill);
+        int fore = fillAttr.getForeColorRGB();
+        int back = fillAttr.getBackColorRGB();
+        if ((foreColorRGB == null) && ((fore >= 0) || (back >= 0))) {
+            allocateRGB();
+        }
+        if (foreColorRGB != null) {
+            Arrays.fill(foreColorRGB, length, idx + 1, fore);
+            Arrays.fill(backColorRGB, length, idx + 1, back);
+        }
+        length = idx + 1;
+    }
+
+    /**
+     * Allocate the RGB arrays, with every existing cell set to no RGB.
+     */
+    private void allocateRGB() {
+        foreColorRGB = new int[codePoints.length];
+        backColorRGB = new int[codePoints.length];
+        Arrays.fill(foreColorRGB, -1);
+        Arrays.fill(backColorRGB, -1);
+    }
+
+    /**
+     * Set the RGB colors of a cell.
+     *
+     * @param idx the character index
+     * @param fore the foreground RGB, or -1
+     * @param back the background RGB, or -1
+     */
+    private void setRGB(final int idx, final int fore, final int back) {
+        if (foreColorRGB == null) {
+            if ((fore < 0) && (back < 0)) {
+                return;
+            }
+            allocateRGB();
+        }
+        foreColorRGB[idx] = fore;
+        backColorRGB[idx] = back;
+    }
+
+    /**
+     * Set the codepoint of a cell to a single codepoint.
+     *
+     * @param idx the character index
+     * @param ch the codepoint
+     */
+    private void setCodePoint(final int idx, final int ch) {
+        releaseCluster(idx);
+        codePoints[idx] = ch;
+    }
+
+    /**
+     * Set everything about a cell.
+     *
+     * @param idx the character index
+     * @param cell the new cell contents
+     */
+    private void set(final int idx, final ComplexCell cell) {
+        if (cell.getCodePointCount() == 1) {
+            setCodePoint(idx, cell.getChar());
+        } else {
+            releaseCluster(idx);
+            if (clusters == null) {
+                clusters = new ArrayList<int []>();
+            }
+            clusters.add(cell.getCodePoints());
+            codePoints[idx] = -clusters.size();
+        }
+        attrs[idx] = pack(cell);
+        setRGB(idx, cell.getForeColorRGB(), cell.getBackColorRGB());
+    }
+
+    /**
+     * Called before a cell's codepoint is overwritten.  If the cell held
+     * the most recently added grapheme cluster, that entry is reused;
+     * otherwise the side table is compacted once it holds far more
+     * clusters than the line can show.
+     *
+     * @param idx the character index
+     */
+    private void releaseCluster(final int idx) {
+        if ((clusters == null) || (codePoints[idx] >= 0)) {
+            return;
+        }
+        if (codePoints[idx] == -clusters.size()) {
+            clusters.remove(clusters.size() - 1);
+            codePoints[idx] = ' ';
+            return;
+        }
+        if (clusters.size() > length + MIN_CAPACITY) {
+            codePoints[idx] = ' ';
+            ArrayList<int []> oldClusters = clusters;
+            clusters = new ArrayList<int []>();
+            for (int i = 0; i < length; i++) {
+                if (codePoints[i] < 0) {
+                    clusters.add(oldClusters.get(-codePoints[i] - 1));
+                    codePoints[i] = -clusters.size();
+                }
+            }
         }
-        chars.remove(idx);
     }
 
 }
@@ -20,7 +20,6 @@ import java.io.CharArrayWriter;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.IOException;
-import java.io.FileInputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -31,6 +30,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import casciian.TKeypress;
 import casciian.backend.Backend;
@@ -282,6 +283,18 @@ public class ECMA48 implements Runnable {
      */
     private Thread readerThread = null;
 
+    /**
+     * Incremented every time the listener is told about new state, and on
+     * resize.  A TerminalState captured at the current generation is up to
+     * date.
+     */
+    private volatile long generation = 0;
+
+    /**
+     * The thread that sends keyboard and mouse events to the remote side.
+     */
+    private Thread userThread = null;
+
     /**
      * The type of emulator to be.
      */
@@ -290,10 +303,12 @@ public class ECMA48 implements Runnable {
     /**
      * The scrollback buffer characters + attributes.
      */
-    private ArrayList<DisplayLine> scrollback;
+    private Scrollback scrollback;
 
     /**
-     * The raw display buffer characters + attributes.
+     * The raw display buffer characters + attributes.  Lines in here may be
+     * frozen because they are shared with a TerminalState; use
+     * getDisplayLine() to obtain a line that can be changed.
      */
     private ArrayList<DisplayLine> display;
 
@@ -547,11 +562,30 @@ public class ECMA48 implements Runnable {
      */
     private ArrayList<TInputEvent> userQueue = new ArrayList<TInputEvent>();
 
+    /**
+     * Lock held while writing to the remote side, so that the sequences
+     * written by the reader thread and the user queue thread are never
+     * interleaved.
+     */
+    private final Object writeRemoteLock = new Object();
+
     /**
      * Number of bytes/characters passed to consume().
      */
     private long readCount = 0;
 
+    /**
+     * Monitor used to signal waitForOutput() when the reader thread has
+     * consumed something or exited.
+     */
+    private final Object outputMonitor = new Object();
+
+    /**
+     * When true, the reader thread has consumed at least one character.
+     * Guarded by outputMonitor.
+     */
+    private boolean hasOutput = false;
+
     /**
      * DECSC/DECRC save/restore a subset of the total state.  This class
      * encapsulates those specific flags/modes.
@@ -698,15 +732,15 @@ public class ECMA48 implements Runnable {
 
         csiParams         = new ArrayList<Integer>();
         tabStops          = new ArrayList<Integer>();
-        scrollback        = new ArrayList<DisplayLine>();
+        scrollback        = new Scrollback(scrollbackMax);
         display           = new ArrayList<DisplayLine>();
 
         this.type         = type;
         if (inputStream instanceof TimeoutInputStream) {
             this.inputStream  = (TimeoutInputStream) inputStream;
         } else {
-            this.inputStream  = new TimeoutInputStream(inputStream,
-                ((inputStream instanceof FileInputStream) ? 0 : 2000));
+            // The reader thread blocks until data arrives, so no timeout.
+            this.inputStream  = new TimeoutInputStream(inputStream, 0);
         }
         if (type == DeviceType.XTERM) {
             this.input    = new InputStreamReader(new BufferedInputStream(
@@ -728,9 +762,12 @@ public class ECMA48 implements Runnable {
         assert (currentState.cursorY < height);
         assert (currentState.cursorX < width);
 
-        // Spin up the input reader
-        readerThread = new Thread(this);
-        readerThread.start();
+        // Spin up the input reader and the user event writer.  These spend
+        // nearly all of their time blocked, so virtual threads keep many
+        // idle terminals cheap.
+        readerThread = Thread.ofVirtual().name("ECMA48 reader").start(this);
+        userThread = Thread.ofVirtual().name("ECMA48 user").start(
+            this::runUserQueue);
     }
 
     // ------------------------------------------------------------------------
@@ -738,7 +775,8 @@ public class ECMA48 implements Runnable {
     // ------------------------------------------------------------------------
 
     /**
-     * Read function runs on a separate thread.
+     * Read function runs on a separate thread.  It blocks in read() until
+     * the remote side emits something or closes.
      */
     public final void run() {
         boolean utf8 = false;
@@ -748,56 +786,18 @@ public class ECMA48 implements Runnable {
             utf8 = true;
         }
 
-        // available() will often return > 1, so we need to read in chunks to
-        // stay caught up.
+        // read() returns whatever is ready up to the buffer size, so a
+        // large buffer means fewer state captures during bulk output.
         char [] readBufferUTF8 = null;
         byte [] readBuffer = null;
         if (utf8) {
-            readBufferUTF8 = new char[2048];
+            readBufferUTF8 = new char[16384];
         } else {
-            readBuffer = new byte[2048];
+            readBuffer = new byte[16384];
         }
 
         while (!done && !stopReaderThread) {
-            synchronized (userQueue) {
-                while (userQueue.size() > 0) {
-                    handleUserEvent(userQueue.remove(0));
-                }
-            }
-
             try {
-                int n = inputStream.available();
-
-                // System.err.printf("available() %d\n", n); System.err.flush();
-                if (utf8) {
-                    if (readBufferUTF8.length < n) {
-                        // The buffer wasn't big enough, make it huger
-                        int newSizeHalf = Math.max(readBufferUTF8.length, n);
-                        readBufferUTF8 = new char[newSizeHalf * 2];
-                    }
-                } else {
-                    if (readBuffer.length < n) {
-                        // The buffer wasn't big enough, make it huger
-                        int newSizeHalf = Math.max(readBuffer.length, n);
-                        readBuffer = new byte[newSizeHalf * 2];
-                    }
-                }
-                if (n == 0) {
-                    try {
-                        Thread.sleep(10);
-                    } catch (InterruptedException e) {
-                        // SQUASH
-                    }
-
-                    if (inputStream.getStream() instanceof FileInputStream) {
-                        // Special case: force a read of files in order
-                        // to see the EOF.
-                    } else {
-                        // Go back to waiting.
-                        continue;
-                    }
-                }
-
                 int rc = -1;
                 try {
                     if (utf8) {
@@ -816,11 +816,28 @@ public class ECMA48 implements Runnable {
                 if (rc == -1) {
                     // This is EOF
                     done = true;
-                } else {
+                } else if (rc > 0) {
                     if (utf8) {
                         // Don't step on UI events
                         synchronized (this) {
                             for (int i = 0; i < rc;) {
+                                if ((readBufferUTF8[i] >= 0x20)
+                                    && (readBufferUTF8[i] < 0x7F)
+                                    && canPrintAsciiRun()
+                                ) {
+                                    // Fast path: a run of plain text.
+                                    int end = i + 1;
+                                    while ((end < rc)
+                                        && (readBufferUTF8[end] >= 0x20)
+                                        && (readBufferUTF8[end] < 0x7F)
+                                    ) {
+                                        end++;
+                                    }
+                                    printAsciiRun(readBufferUTF8, i, end);
+                                    i = end;
+                                    continue;
+                                }
+
                                 int ch = Character.codePointAt(readBufferUTF8,
                                     i);
                                 i += Character.charCount(ch);
@@ -854,9 +871,11 @@ public class ECMA48 implements Runnable {
                             }
                         }
                     }
+                    signalOutput(true);
+
                     // Permit my enclosing UI to know that I updated.
                     if ((terminalListener != null) && !doNotUpdateDisplay) {
-                        terminalListener.postUpdate(captureState());
+                        postUpdate();
                         screenIsDirty = false;
                     }
                     doNotUpdateDisplay = false;
@@ -865,6 +884,10 @@ public class ECMA48 implements Runnable {
             } catch (IOException e) {
                 // System.err.println("IOException");
                 done = true;
+                if (stopReaderThread) {
+                    // close() closed the input to end a blocked read().
+                    break;
+                }
 
                 // This is an unusual case.  We want to see the stack trace,
                 // but it is related to the spawned process rather than the
@@ -881,11 +904,13 @@ public class ECMA48 implements Runnable {
                     // SQUASH
                 }
                 char [] stackTrace = writer.toCharArray();
-                for (int i = 0; i < stackTrace.length; i++) {
-                    if (stackTrace[i] == '\n') {
-                        consume('\r');
+                synchronized (this) {
+                    for (int i = 0; i < stackTrace.length; i++) {
+                        if (stackTrace[i] == '\n') {
+                            consume('\r');
+                        }
+                        consume(stackTrace[i]);
                     }
-                    consume(stackTrace[i]);
                 }
             }
 
@@ -893,6 +918,13 @@ public class ECMA48 implements Runnable {
 
         // Let the rest of the world know that I am done.
         stopReaderThread = true;
+        synchronized (this) {
+            scrollback.close();
+        }
+        signalOutput(false);
+        synchronized (userQueue) {
+            userQueue.notifyAll();
+        }
 
         try {
             inputStream.cancelRead();
@@ -910,7 +942,7 @@ public class ECMA48 implements Runnable {
 
         // Permit my enclosing UI to know that I updated.
         if (terminalListener != null) {
-            terminalListener.postUpdate(captureState());
+            postUpdate();
         }
 
         // System.err.println("*** run() exiting..."); System.err.flush();
@@ -922,6 +954,7 @@ public class ECMA48 implements Runnable {
 
     /**
      * Wait for a period of time to get output from the launched process.
+     * This also returns if the reader thread exits.
      *
      * @param millis millis to wait for, or 0 to wait forever
      * @return true if the launched process has emitted something
@@ -930,21 +963,58 @@ public class ECMA48 implements Runnable {
         if (millis < 0) {
             throw new IllegalArgumentException("timeout must be >= 0");
         }
-        int waitedMillis = millis;
-        final int pollTimeout = 5;
-        while (true) {
-            if (readCount != 0) {
-                return true;
+        long deadline = System.currentTimeMillis() + millis;
+        synchronized (outputMonitor) {
+            while (!hasOutput && !stopReaderThread) {
+                long remaining = deadline - System.currentTimeMillis();
+                if ((millis > 0) && (remaining <= 0)) {
+                    return false;
+                }
+                try {
+                    outputMonitor.wait(millis > 0 ? remaining : 0);
+                } catch (InterruptedException e) {
+                    // SQUASH
+                }
             }
-            if ((millis > 0) && (waitedMillis < 0)){
-                return false;
+            return hasOutput;
+        }
+    }
+
+    /**
+     * Wake up anyone in waitForOutput().
+     *
+     * @param consumed if true, the reader thread has consumed something
+     */
+    private void signalOutput(final boolean consumed) {
+        synchronized (outputMonitor) {
+            if (consumed) {
+                hasOutput = true;
             }
-            try {
-                Thread.sleep(pollTimeout);
-            } catch (InterruptedException e) {
-                // SQUASH
+            outputMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Send keyboard and mouse events to the remote side.  This runs on its
+     * own thread so that the reader thread can stay blocked in read().
+     */
+    private void runUserQueue() {
+        while (true) {
+            TInputEvent event = null;
+            synchronized (userQueue) {
+                while (userQueue.isEmpty() && !stopReaderThread) {
+                    try {
+                        userQueue.wait();
+                    } catch (InterruptedException e) {
+                        // SQUASH
+                    }
+                }
+                if (stopReaderThread) {
+                    return;
+                }
+                event = userQueue.remove(0);
             }
-            waitedMillis -= pollTimeout;
+            handleUserEvent(event);
         }
     }
 
@@ -954,11 +1024,21 @@ public class ECMA48 implements Runnable {
      * @param event the input event to consume
      */
     private void handleUserEvent(final TInputEvent event) {
-        if (event instanceof TKeypressEvent) {
-            keypress(((TKeypressEvent) event).getKey());
+        // Translating the event reads the terminal modes, and local echo
+        // draws on the display, so it is done under the same lock as
+        // consume().  The write is outside of it so that a slow remote
+        // side does not stall the reader thread.
+        String str = null;
+        synchronized (this) {
+            if (event instanceof TKeypressEvent) {
+                str = keypressToString(((TKeypressEvent) event).getKey());
+            }
+            if (event instanceof TMouseEvent) {
+                str = mouseToString((TMouseEvent) event);
+            }
         }
-        if (event instanceof TMouseEvent) {
-            mouse((TMouseEvent) event);
+        if (str != null) {
+            writeRemote(str);
         }
     }
 
@@ -970,6 +1050,7 @@ public class ECMA48 implements Runnable {
     public void addUserEvent(final TInputEvent event) {
         synchronized (userQueue) {
             userQueue.add(event);
+            userQueue.notifyAll();
         }
     }
 
@@ -979,13 +1060,200 @@ public class ECMA48 implements Runnable {
      * @return the terminal state that can be used by an external user
      * interface
      */
-    public TerminalState captureState() {
+    public synchronized TerminalState captureState() {
+        // The snapshot shares lines with the emulator.  Frozen lines will
+        // be copied by getDisplayLine() on the next write, so this costs
+        // one copy per line that actually changes.
+        for (DisplayLine line: display) {
+            line.freeze();
+        }
         return new TerminalState(currentState.attr, width, height,
-            scrollback, display, cursorVisible,
+            scrollback.snapshot(),
+            Collections.unmodifiableList(new ArrayList<DisplayLine>(display)),
+            cursorVisible,
             currentState.cursorX, currentState.cursorY,
             hideMousePointer, mouseProtocol, screenTitle,
             withinSynchronizedUpdate, lastVisibleDisplay,
-            lastVisibleUpdateTime);
+            lastVisibleUpdateTime, generation);
+    }
+
+    /**
+     * Get the generation number.  This increases every time the listener
+     * is notified of new state or the display is resized, so a listener
+     * can compare it to TerminalState.getGeneration() to see if it needs a
+     * new capture.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Search the scrollback and display for text.  Most scrollback lines
+     * are skipped by the signature index kept by the scrollback, without
+     * looking at their text.
+     *
+     * @param text the text to find
+     * @param fromLine the line to start at, numbered as in
+     * TerminalState.getLine()
+     * @param fromColumn searching forward, the first column a match can
+     * start at on fromLine; searching backward, matches on fromLine must
+     * start before this column
+     * @param forward if true, search toward the newest line
+     * @return the nearest match, or null if there is none
+     */
+    public synchronized SearchHit find(final String text, final int fromLine,
+        final int fromColumn, final boolean forward) {
+
+        if (text.length() == 0) {
+            return null;
+        }
+        return find(text, null, fromLine, fromColumn, forward);
+    }
+
+    /**
+     * Search the scrollback and display for a regular expression.
+     * Matches do not span lines.
+     *
+     * @param pattern the pattern to find
+     * @param fromLine the line to start at, numbered as in
+     * TerminalState.getLine()
+     * @param fromColumn searching forward, the first column a match can
+     * start at on fromLine; searching backward, matches on fromLine must
+     * start before this column
+     * @param forward if true, search toward the newest line
+     * @return the nearest match, or null if there is none
+     */
+    public synchronized SearchHit find(final Pattern pattern,
+        final int fromLine, final int fromColumn, final boolean forward) {
+
+        return find(null, pattern, fromLine, fromColumn, forward);
+    }
+
+    /**
+     * Search the scrollback and display for either text or a regular
+     * expression.
+     *
+     * @param needle the text to find, or null
+     * @param pattern the pattern to find if needle is null
+     * @param fromLine the line to start at
+     * @param fromColumn the column limit on fromLine
+     * @param forward if true, search toward the newest line
+     * @return the nearest match, or null if there is none
+     */
+    private SearchHit find(final String needle, final Pattern pattern,
+        final int fromLine, final int fromColumn, final boolean forward) {
+
+        int lineCount = scrollback.size() + display.size();
+        int row = fromLine;
+        boolean limitColumn = true;
+        if (forward && (row < 0)) {
+            row = 0;
+            limitColumn = false;
+        }
+        if (!forward && (row >= lineCount)) {
+            row = lineCount - 1;
+            limitColumn = false;
+        }
+        Matcher matcher = null;
+        long [] signature = null;
+        if (needle == null) {
+            matcher = pattern.matcher("");
+        } else {
+            signature = Scrollback.signature(needle);
+        }
+
+        for (; (row >= 0) && (row < lineCount); row += (forward ? 1 : -1)) {
+            if ((signature != null) && (row < scrollback.size())
+                && !scrollback.mightContain(row, signature)
+            ) {
+                limitColumn = false;
+                continue;
+            }
+            // The line is only needed to map between codepoints of the
+            // text, one per glyph, and columns.
+            String text;
+            DisplayLine line = null;
+            if (row < scrollback.size()) {
+                text = scrollback.getText(row);
+            } else {
+                line = display.get(row - scrollback.size());
+                text = line.getText();
+            }
+
+            int start = 0;
+            int limit = text.length();
+            if (limitColumn) {
+                if (line == null) {
+                    line = scrollback.get(row);
+                }
+                int index = Math.min(line.getTextIndex(Math.max(0,
+                            fromColumn)), text.codePointCount(0,
+                            text.length()));
+                if (forward) {
+                    start = text.offsetByCodePoints(0, index);
+                } else {
+                    limit = text.offsetByCodePoints(0, index);
+                }
+                limitColumn = false;
+            }
+
+            int matchStart = -1;
+            int matchEnd = -1;
+            if (needle != null) {
+                if (forward) {
+                    matchStart = text.indexOf(needle, start);
+                } else if (limit > 0) {
+                    matchStart = text.lastIndexOf(needle, limit - 1);
+                }
+                matchEnd = matchStart + needle.length();
+            } else {
+                matcher.reset(text);
+                if (forward) {
+                    if (matcher.find(start)) {
+                        matchStart = matcher.start();
+                        matchEnd = matcher.end();
+                    }
+                } else {
+                    // Walk forward through every start that matches, one
+                    // codepoint past the previous one so that a match
+                    // overlapping a later one is not skipped, and keep the
+                    // last one before the limit.
+                    int from = 0;
+                    while ((from < limit) && matcher.find(from)
+                        && (matcher.start() < limit)
+                    ) {
+                        matchStart = matcher.start();
+                        matchEnd = matcher.end();
+                        from = text.offsetByCodePoints(matchStart, 1);
+                    }
+                }
+            }
+            if (matchStart >= 0) {
+                if (line == null) {
+                    line = scrollback.get(row);
+                }
+                int column = line.getColumn(text.codePointCount(0,
+                        matchStart));
+                int endColumn = line.getColumn(text.codePointCount(0,
+                        matchEnd));
+                return new SearchHit(row, column, endColumn - column);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advance the generation and notify the listener.  The listener
+     * decides when (and if) to capture the state.
+     */
+    private void postUpdate() {
+        long newGeneration;
+        synchronized (this) {
+            newGeneration = ++generation;
+        }
+        terminalListener.postUpdate(this, newGeneration);
     }
 
     /**
@@ -1014,26 +1282,30 @@ public class ECMA48 implements Runnable {
             return lastVisibleDisplay;
         }
 
-        int visibleBottom = scrollback.size() + display.size() - scrollBottom;
+        int scrollbackSize = scrollback.size();
+        int lineCount = scrollbackSize + display.size();
+        int visibleBottom = lineCount - scrollBottom;
 
-        List<DisplayLine> preceedingBlankLines = new ArrayList<DisplayLine>();
+        List<DisplayLine> visibleLines;
+        visibleLines = new ArrayList<DisplayLine>(visibleHeight);
         int visibleTop = visibleBottom - visibleHeight;
         if (visibleTop < 0) {
             for (int i = visibleTop; i < 0; i++) {
-                preceedingBlankLines.add(getBlankDisplayLine());
+                visibleLines.add(getBlankDisplayLine());
             }
             visibleTop = 0;
         }
         assert (visibleTop >= 0);
 
-        List<DisplayLine> displayLines = new ArrayList<DisplayLine>();
-        displayLines.addAll(scrollback);
-        displayLines.addAll(display);
-
-        List<DisplayLine> visibleLines = new ArrayList<DisplayLine>();
-        visibleLines.addAll(preceedingBlankLines);
-        visibleLines.addAll(displayLines.subList(visibleTop,
-                Math.min(visibleBottom, displayLines.size())));
+        // Index the scrollback and display directly, only the visible rows
+        // are touched.
+        for (int i = visibleTop; i < Math.min(visibleBottom, lineCount); i++) {
+            if (i < scrollbackSize) {
+                visibleLines.add(scrollback.get(i));
+            } else {
+                visibleLines.add(display.get(i - scrollbackSize));
+            }
+        }
 
         // Fill in the blank lines on bottom
         int bottomBlankLines = visibleHeight - visibleLines.size();
@@ -1042,21 +1314,27 @@ public class ECMA48 implements Runnable {
             visibleLines.add(getBlankDisplayLine());
         }
 
-        return copyBuffer(visibleLines);
+        // Share rather than copy.
+        for (DisplayLine line: visibleLines) {
+            line.freeze();
+        }
+        return Collections.unmodifiableList(visibleLines);
     }
 
     /**
-     * Copy a display buffer.
+     * Get a display line that can be changed.  If the line is shared with a
+     * TerminalState, it is replaced with a private copy first.
      *
-     * @param buffer the buffer to copy
-     * @return a deep copy of the buffer's data
+     * @param y the row number
+     * @return the line at row y
      */
-    private List<DisplayLine> copyBuffer(final List<DisplayLine> buffer) {
-        List<DisplayLine> result = new ArrayList<DisplayLine>(buffer.size());
-        for (DisplayLine line: buffer) {
-            result.add(new DisplayLine(line));
+    private DisplayLine getDisplayLine(final int y) {
+        DisplayLine line = display.get(y);
+        if (line.isFrozen()) {
+            line = new DisplayLine(line);
+            display.set(y, line);
         }
-        return result;
+        return line;
     }
 
     /**
@@ -1159,39 +1437,45 @@ public class ECMA48 implements Runnable {
 
         // System.err.printf("writeRemote() '%s'\n", str);
 
-        switch (type) {
-        case VT100:
-        case VT102:
-        case VT220:
-            if (outputStream == null) {
-                return;
-            }
-            try {
-                outputStream.flush();
-                for (int i = 0; i < str.length(); i++) {
-                    outputStream.write(str.charAt(i));
+        synchronized (writeRemoteLock) {
+            switch (type) {
+            case VT100:
+            case VT102:
+            case VT220:
+                // close() may clear outputStream from another thread.
+                OutputStream stream = outputStream;
+                if (stream == null) {
+                    return;
                 }
-                outputStream.flush();
-            } catch (IOException e) {
-                // Assume EOF
-                close();
-            }
-            break;
-        case XTERM:
-            if (output == null) {
-                return;
-            }
-            try {
-                output.flush();
-                output.write(str);
-                output.flush();
-            } catch (IOException e) {
-                // Assume EOF
-                close();
+                try {
+                    stream.flush();
+                    for (int i = 0; i < str.length(); i++) {
+                        stream.write(str.charAt(i));
+                    }
+                    stream.flush();
+                } catch (IOException e) {
+                    // Assume EOF
+                    close();
+                }
+                break;
+            case XTERM:
+                Writer writer = output;
+                if (writer == null) {
+                    return;
+                }
+                try {
+                    writer.flush();
+                    writer.write(str);
+                    writer.flush();
+                } catch (IOException e) {
+                    // Assume EOF
+                    close();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid device type: " +
+                    type);
             }
-            break;
-        default:
-            throw new IllegalArgumentException("Invalid device type: " + type);
         }
     }
 
@@ -1207,6 +1491,27 @@ public class ECMA48 implements Runnable {
             stopReaderThread = true;
         }
 
+        // The reader thread blocks in read() with no timeout, so close the
+        // underlying stream to make that read() return.  Socket reads on a
+        // virtual thread also end when it is interrupted.
+        TimeoutInputStream stream = inputStream;
+        if (stream != null) {
+            stream.cancelRead();
+            try {
+                stream.close();
+            } catch (IOException e) {
+                // SQUASH
+            }
+        }
+        Thread thread = readerThread;
+        if ((thread != null) && (thread != Thread.currentThread())) {
+            thread.interrupt();
+        }
+        synchronized (userQueue) {
+            userQueue.notifyAll();
+        }
+        signalOutput(false);
+
         // Now close the output stream.
         switch (type) {
         case VT100:
@@ -1276,6 +1581,7 @@ public class ECMA48 implements Runnable {
         }
 
         screenIsDirty = true;
+        generation++;
         this.width = width;
         rightMargin = width - 1;
         if (currentState.cursorX >= width) {
@@ -1297,6 +1603,7 @@ public class ECMA48 implements Runnable {
         }
 
         screenIsDirty = true;
+        generation++;
         int delta = height - this.height;
         this.height = height;
         scrollRegionBottom += delta;
@@ -1324,9 +1631,10 @@ public class ECMA48 implements Runnable {
             if (scrollback.size() == 0) {
                 DisplayLine line = new DisplayLine(currentState.attr);
                 line.setReverseColor(reverseVideo);
-                scrollback.add(0, line);
+                display.add(0, line);
+            } else {
+                display.add(0, scrollback.removeLast());
             }
-            display.add(0, scrollback.remove(scrollback.size() - 1));
         }
         while (display.size() > height) {
             appendScrollbackLine(display.remove(0));
@@ -1339,8 +1647,28 @@ public class ECMA48 implements Runnable {
      * @param scrollbackMax the maximum number of lines for the scrollback
      * buffer
      */
-    public final void setScrollbackMax(final int scrollbackMax) {
+    public final synchronized void setScrollbackMax(final int scrollbackMax) {
         this.scrollbackMax = scrollbackMax;
+        scrollback.setMaxSize(scrollbackMax);
+        generation++;
+    }
+
+    /**
+     * Set whether scrollback lines past the maximum are spilled to a
+     * temporary file instead of being discarded.  This keeps up to a
+     * million more lines of history, while setScrollbackMax() still limits
+     * the number of lines kept in memory.  Spilled lines are read back when
+     * they are scrolled to or exported.
+     *
+     * @param spill if true, spill lines to disk; if false, discard any
+     * lines already spilled
+     * @throws IOException if the temporary file cannot be created
+     */
+    public final synchronized void setScrollbackSpill(final boolean spill)
+        throws IOException {
+
+        scrollback.setSpilling(spill);
+        generation++;
     }
 
     /**
@@ -1769,7 +2097,8 @@ public class ECMA48 implements Runnable {
     }
 
     /**
-     * Append a line to the scrollback buffer.
+     * Append a line to the scrollback buffer.  The line is frozen, and the
+     * oldest line is evicted if the scrollback is full.
      */
     private void appendScrollbackLine(DisplayLine line) {
         scrollback.add(line);
@@ -1789,13 +2118,10 @@ public class ECMA48 implements Runnable {
      */
     private void newDisplayLine() {
         // Scroll the top line off into the scrollback buffer
-        appendScrollbackLine(display.get(0));
-        while (scrollback.size() > scrollbackMax) {
-            scrollback.remove(0);
-            scrollback.trimToSize();
-        }
-        display.remove(0);
-        display.trimToSize();
+        // Both of these are constant-time with respect to the scrollback
+        // size: the scrollback is a ring, and the display only ever holds
+        // height lines.
+        appendScrollbackLine(display.remove(0));
         DisplayLine line = new DisplayLine(currentState.attr);
         line.setReverseColor(reverseVideo);
         display.add(line);
@@ -1827,7 +2153,8 @@ public class ECMA48 implements Runnable {
      * Reverse the color of the visible display.
      */
     private void invertDisplayColors() {
-        for (DisplayLine line: display) {
+        for (int i = 0; i < display.size(); i++) {
+            DisplayLine line = getDisplayLine(i);
             line.setReverseColor(!line.isReverseColor());
         }
         screenIsDirty = true;
@@ -1897,12 +2224,12 @@ public class ECMA48 implements Runnable {
         } else {
             cell.setWidth(Cell.Width.SINGLE);
         }
-        display.get(y).replace(x, cell);
+        getDisplayLine(y).replace(x, cell);
 
         if (wcWidth == 2) {
             ComplexCell right = new ComplexCell(cell);
             right.setWidth(Cell.Width.RIGHT);
-            display.get(y).replace(x + 1, right);
+            getDisplayLine(y).replace(x + 1, right);
         }
     }
 
@@ -2002,7 +2329,7 @@ public class ECMA48 implements Runnable {
         ComplexCell newCell = new ComplexCell(ch);
         CellAttributes newCellAttributes = (CellAttributes) newCell;
         newCellAttributes.setTo(currentState.attr);
-        DisplayLine line = display.get(currentState.cursorY);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
 
         if (StringUtils.width(ch) == 1) {
             // Insert mode special case
@@ -2026,12 +2353,90 @@ public class ECMA48 implements Runnable {
     }
 
     /**
-     * Translate the mouse event to a VT100, VT220, or XTERM sequence and
-     * send to the remote side.
+     * See if printable ASCII can go through printAsciiRun() rather than
+     * consume().  That is the case when consume() would print each
+     * character exactly as it arrived: in the ground state, with nothing
+     * to combine with, in replace mode, and with no character set mapping.
+     *
+     * @return true if the fast path can be used
+     */
+    private boolean canPrintAsciiRun() {
+        if ((scanState != ScanState.GROUND)
+            || (lastScanState != ScanState.GROUND)
+            || insertMode
+            || printerControllerMode
+            || vt52Mode
+            || shiftOut
+            || (singleshift != Singleshift.NONE)
+            || (currentState.g0Charset != CharacterSet.US)
+        ) {
+            return false;
+        }
+        if (((type == DeviceType.VT220) || (type == DeviceType.XTERM))
+            && (currentState.glLockshift != LockshiftMode.NONE)
+        ) {
+            return false;
+        }
+        // An ASCII character never combines with a preceding ASCII
+        // character, but might with anything else.
+        if (repCodePoints.size() != 1) {
+            return false;
+        }
+        int previous = repCodePoints.get(0);
+        return ((previous >= 0x20) && (previous < 0x7F));
+    }
+
+    /**
+     * Print a run of printable ASCII characters, with the same result as
+     * passing each one to consume() when canPrintAsciiRun() is true.  The
+     * characters between the cursor and the right margin are written to
+     * the line in one call; only the right margin itself is handled one
+     * character at a time.
+     *
+     * @param chars the buffer
+     * @param start the index of the first character to print
+     * @param end the index after the last character to print
+     */
+    private void printAsciiRun(final char [] chars, final int start,
+        final int end) {
+
+        screenIsDirty = true;
+        int i = start;
+        while (i < end) {
+            int rightMargin = this.rightMargin;
+            if (display.get(currentState.cursorY).isDoubleWidth()) {
+                rightMargin = ((rightMargin + 1) / 2) - 1;
+            }
+            if (currentState.cursorX >= rightMargin) {
+                // Wrapping (or not) at the margin.
+                printCharacter(chars[i]);
+                i++;
+                continue;
+            }
+
+            // Everything up to the right margin fits on this line.
+            int n = Math.min(end - i, rightMargin - currentState.cursorX);
+            wrapLineFlag = false;
+            getDisplayLine(currentState.cursorY).replace(currentState.cursorX,
+                chars, i, n, currentState.attr);
+            currentState.cursorX += n;
+            lastEmojiX = currentState.cursorX - 1;
+            lastEmojiY = currentState.cursorY;
+            i += n;
+        }
+        readCount += end - start;
+        repCodePoints.set(0, (int) chars[end - 1]);
+        lastScanState = ScanState.GROUND;
+    }
+
+    /**
+     * Translate the mouse event to a VT100, VT220, or XTERM sequence.
      *
      * @param mouse mouse event received from the local user
+     * @return string to transmit to the remote side, or null if the event
+     * is not reported
      */
-    private void mouse(final TMouseEvent mouse) {
+    private String mouseToString(final TMouseEvent mouse) {
 
         /*
         System.err.printf("mouse(): protocol %s encoding %s mouse %s\n",
@@ -2041,7 +2446,7 @@ public class ECMA48 implements Runnable {
         if (mouseEncoding == MouseEncoding.X10) {
             // We will support X10 but only for (160,94) and smaller.
             if ((mouse.getX() >= 160) || (mouse.getY() >= 94)) {
-                return;
+                return null;
             }
         }
 
@@ -2049,12 +2454,12 @@ public class ECMA48 implements Runnable {
 
         case OFF:
             // Do nothing
-            return;
+            return null;
 
         case X10:
             // Only report button presses
             if (mouse.getType() != TMouseEvent.Type.MOUSE_DOWN) {
-                return;
+                return null;
             }
             break;
 
@@ -2063,7 +2468,7 @@ public class ECMA48 implements Runnable {
             if ((mouse.getType() != TMouseEvent.Type.MOUSE_DOWN)
                 && (mouse.getType() != TMouseEvent.Type.MOUSE_UP)
             ) {
-                return;
+                return null;
             }
             break;
 
@@ -2079,7 +2484,7 @@ public class ECMA48 implements Runnable {
                     && !mouse.isMouseWheelUp()
                     && !mouse.isMouseWheelDown()
                 ) {
-                    return;
+                    return null;
                 }
             }
             break;
@@ -2192,17 +2597,7 @@ public class ECMA48 implements Runnable {
         }
 
         // System.err.printf("Would write: \'%s\'\n", sb.toString());
-        writeRemote(sb.toString());
-    }
-
-    /**
-     * Translate the keyboard press to a VT100, VT220, or XTERM sequence and
-     * send to the remote side.
-     *
-     * @param keypress keypress received from the local user
-     */
-    private void keypress(final TKeypress keypress) {
-        writeRemote(keypressToString(keypress));
+        return sb.toString();
     }
 
     /**
@@ -2266,7 +2661,7 @@ public class ECMA48 implements Runnable {
                 printCharacter(keypress.getChar());
             }
             if (terminalListener != null) {
-                terminalListener.postUpdate(captureState());
+                postUpdate();
                 screenIsDirty = false;
             }
         }
@@ -3734,7 +4129,7 @@ public class ECMA48 implements Runnable {
                             withinSynchronizedUpdate = false;
                             // Permit my enclosing UI to know that I updated.
                             if (terminalListener != null) {
-                                terminalListener.postUpdate(captureState());
+                                postUpdate();
                                 doNotUpdateDisplay = true;
                             }
                         }
@@ -4026,8 +4421,9 @@ public class ECMA48 implements Runnable {
      */
     private void decswl() {
         screenIsDirty = true;
-        display.get(currentState.cursorY).setDoubleWidth(false);
-        display.get(currentState.cursorY).setDoubleHeight(0);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
+        line.setDoubleWidth(false);
+        line.setDoubleHeight(0);
     }
 
     /**
@@ -4035,8 +4431,9 @@ public class ECMA48 implements Runnable {
      */
     private void decdwl() {
         screenIsDirty = true;
-        display.get(currentState.cursorY).setDoubleWidth(true);
-        display.get(currentState.cursorY).setDoubleHeight(0);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
+        line.setDoubleWidth(true);
+        line.setDoubleHeight(0);
     }
 
     /**
@@ -4047,11 +4444,12 @@ public class ECMA48 implements Runnable {
      */
     private void dechdl(final boolean topHalf) {
         screenIsDirty = true;
-        display.get(currentState.cursorY).setDoubleWidth(true);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
+        line.setDoubleWidth(true);
         if (topHalf == true) {
-            display.get(currentState.cursorY).setDoubleHeight(1);
+            line.setDoubleHeight(1);
         } else {
-            display.get(currentState.cursorY).setDoubleHeight(2);
+            line.setDoubleHeight(2);
         }
     }
 
@@ -4061,7 +4459,8 @@ public class ECMA48 implements Runnable {
     private void decaln() {
         screenIsDirty = true;
         ComplexCell newCell = new ComplexCell('E');
-        for (DisplayLine line: display) {
+        for (int y = 0; y < display.size(); y++) {
+            DisplayLine line = getDisplayLine(y);
             for (int i = 0; i < line.length(); i++) {
                 line.replace(i, newCell);
             }
@@ -4266,7 +4665,7 @@ public class ECMA48 implements Runnable {
     private void dch() {
         screenIsDirty = true;
         int n = getCsiParam(0, 1);
-        DisplayLine line = display.get(currentState.cursorY);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
         ComplexCell blank = new ComplexCell();
         for (int i = 0; i < n; i++) {
             line.delete(currentState.cursorX, blank);
@@ -4279,7 +4678,7 @@ public class ECMA48 implements Runnable {
     private void ich() {
         screenIsDirty = true;
         int n = getCsiParam(0, 1);
-        DisplayLine line = display.get(currentState.cursorY);
+        DisplayLine line = getDisplayLine(currentState.cursorY);
         ComplexCell blank = new ComplexCell();
         for (int i = 0; i < n; i++) {
             line.insert(currentState.cursorX, blank);
@@ -5161,7 +5560,7 @@ public class ECMA48 implements Runnable {
         }
 
         for (int i = start; i <= end; i++) {
-            DisplayLine line = display.get(currentState.cursorY);
+            DisplayLine line = getDisplayLine(currentState.cursorY);
             if ((!honorProtected)
                 || ((honorProtected) && (!line.charAt(i).isProtect()))) {
 
@@ -5224,8 +5623,9 @@ public class ECMA48 implements Runnable {
             eraseLine(startCol, endCol, honorProtected);
 
             // Erase display clears the double attributes
-            display.get(i).setDoubleWidth(false);
-            display.get(i).setDoubleHeight(0);
+            DisplayLine line = getDisplayLine(i);
+            line.setDoubleWidth(false);
+            line.setDoubleHeight(0);
         }
         currentState.cursorY = oldCursorY;
     }
@@ -7930,11 +8330,11 @@ public class ECMA48 implements Runnable {
         ComplexCell cell = new ComplexCell(ch, currentState.attr);
         ComplexCell left = new ComplexCell(cell);
         left.setWidth(Cell.Width.LEFT);
-        display.get(leftY).replace(leftX, left);
+        getDisplayLine(leftY).replace(leftX, left);
 
         ComplexCell right = new ComplexCell(cell);
         right.setWidth(Cell.Width.RIGHT);
-        display.get(rightY).replace(rightX, right);
+        getDisplayLine(rightY).replace(rightX, right);
     }
 
     /**
@@ -0,0 +1,595 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.terminal;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Scrollback is the bounded store of lines that have scrolled off the top
+ * of the display.
+ *
+ * <p>
+ * Lines are frozen as they are appended, and kept in fixed-size chunks
+ * arranged as a ring.  A snapshot only copies the chunk references, so
+ * TerminalState can share the lines with the emulator instead of making a
+ * deep copy of the entire history.  Chunks visible to a snapshot are never
+ * written to again: a slot below the snapshot's end is only reused after
+ * its chunk has been duplicated.
+ *
+ * <p>
+ * A small signature of the character pairs in each line is kept as a
+ * search index, so that most lines can be ruled out of a search without
+ * looking at their text.  The signatures are computed a chunk at a time, by
+ * the first search that needs them, and are kept current from then on.
+ * No copy of the text of a line is kept.  These chunks are private to this
+ * class and are never shared with a snapshot.
+ *
+ * <p>
+ * Optionally, lines evicted from memory are spilled to a ScrollbackStore
+ * instead of being discarded.  The spilled lines come before the in-memory
+ * lines: index 0 is always the oldest line, wherever it lives.  The store
+ * drops its own oldest lines once it is full.
+ */
+class Scrollback {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Number of bits in a line index that select the slot within a chunk.
+     */
+    private static final int CHUNK_SHIFT = 6;
+
+    /**
+     * Number of lines per chunk.
+     */
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    /**
+     * Mask to select the slot within a chunk.
+     */
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /**
+     * Number of longs in the character pair signature of one line.
+     */
+    private static final int SIGNATURE_LONGS = 4;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The chunks, used as a ring starting at headChunk.
+     */
+    private DisplayLine [][] chunks = new DisplayLine[4][];
+
+    /**
+     * The character pair signature of each line, SIGNATURE_LONGS per line,
+     * in chunks parallel to chunks.  A null chunk has not been indexed yet.
+     */
+    private long [][] signatureChunks = new long[4][];
+
+    /**
+     * The index in chunks of the oldest chunk.
+     */
+    private int headChunk = 0;
+
+    /**
+     * The number of chunks in use.
+     */
+    private int chunkCount = 0;
+
+    /**
+     * The slot of the oldest line within the oldest chunk.
+     */
+    private int headOffset = 0;
+
+    /**
+     * The number of lines in memory.
+     */
+    private int size = 0;
+
+    /**
+     * The maximum number of lines to retain in memory.
+     */
+    private int maxSize;
+
+    /**
+     * Where lines go when they are evicted from memory, or null to discard
+     * them.
+     */
+    private ScrollbackStore spill = null;
+
+    /**
+     * The lines spilled before close(), which can still be read, or null.
+     */
+    private ScrollbackStore.View spilled = null;
+
+    /**
+     * If true, close() was called, and lines are no longer spilled.
+     */
+    private boolean closed = false;
+
+    /**
+     * The absolute line number of the first slot of the oldest chunk.
+     * Absolute line numbers only ever grow as lines are evicted, and are
+     * used to tell if a slot might be visible to a snapshot.
+     */
+    private long base = 0;
+
+    /**
+     * Slots with an absolute line number below this value might be visible
+     * to a snapshot.
+     */
+    private long sharedLimit = 0;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxSize the maximum number of lines to retain
+     */
+    Scrollback(final int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    // ------------------------------------------------------------------------
+    // Scrollback -------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of lines.
+     *
+     * @return the number of lines, including those spilled to disk
+     */
+    public int size() {
+        return spilledSize() + size;
+    }
+
+    /**
+     * Get the number of lines that have been spilled to disk.
+     *
+     * @return the number of lines in the store
+     */
+    private int spilledSize() {
+        if (spill != null) {
+            return spill.size();
+        }
+        return (spilled == null ? 0 : spilled.size());
+    }
+
+    /**
+     * Get a line that has been spilled to disk.
+     *
+     * @param idx the line index, 0 is the oldest line
+     * @return the (frozen) line
+     */
+    private DisplayLine getSpilled(final int idx) {
+        if (spill != null) {
+            return spill.get(idx);
+        }
+        return spilled.get(idx);
+    }
+
+    /**
+     * Get a line.  Spilled lines are read back from disk.
+     *
+     * @param idx the line index, 0 is the oldest line
+     * @return the (frozen) line
+     */
+    public DisplayLine get(final int idx) {
+        int spilledCount = spilledSize();
+        if (idx < spilledCount) {
+            return getSpilled(idx);
+        }
+        return getInMemory(idx - spilledCount);
+    }
+
+    /**
+     * Get a line that is in memory.
+     *
+     * @param idx the line index, 0 is the oldest line in memory
+     * @return the (frozen) line
+     */
+    private DisplayLine getInMemory(final int idx) {
+        if ((idx < 0) || (idx >= size)) {
+            throw new IndexOutOfBoundsException("Index: " + idx + " Size: "
+                + size);
+        }
+        int rel = headOffset + idx;
+        return chunks[(headChunk + (rel >> CHUNK_SHIFT)) % chunks.length]
+            [rel & CHUNK_MASK];
+    }
+
+    /**
+     * Get the text of a line, as returned by DisplayLine.getText().
+     *
+     * @param idx the line index, 0 is the oldest line
+     * @return the text
+     */
+    public String getText(final int idx) {
+        return get(idx).getText();
+    }
+
+    /**
+     * See if a line might contain text.  A false result is definite, a true
+     * result means the text has to be checked.
+     *
+     * @param idx the line index, 0 is the oldest line
+     * @param signature the signature of the text, from signature()
+     * @return false if the line cannot contain the text
+     */
+    public boolean mightContain(final int idx, final long [] signature) {
+        int spilledCount = spilledSize();
+        if (idx < spilledCount) {
+            // Spilled lines do not keep a signature.
+            return true;
+        }
+        int rel = headOffset + idx - spilledCount;
+        int chunk = (headChunk + (rel >> CHUNK_SHIFT)) % chunks.length;
+        long [] lines = signatureChunks[chunk];
+        if (lines == null) {
+            lines = indexChunk(chunk);
+        }
+        int offset = (rel & CHUNK_MASK) * SIGNATURE_LONGS;
+        for (int i = 0; i < SIGNATURE_LONGS; i++) {
+            if ((lines[offset + i] & signature[i]) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compute the signatures of every line in a chunk.
+     *
+     * @param chunk the index in chunks of the chunk
+     * @return the signatures, SIGNATURE_LONGS per line
+     */
+    private long [] indexChunk(final int chunk) {
+        DisplayLine [] lines = chunks[chunk];
+        long [] signatures = new long[CHUNK_SIZE * SIGNATURE_LONGS];
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            if (lines[i] != null) {
+                addSignature(lines[i].getText(), signatures,
+                    i * SIGNATURE_LONGS);
+            }
+        }
+        signatureChunks[chunk] = signatures;
+        return signatures;
+    }
+
+    /**
+     * Compute the character pair signature of some text.
+     *
+     * @param text the text
+     * @return the signature
+     */
+    public static long [] signature(final String text) {
+        long [] signature = new long[SIGNATURE_LONGS];
+        addSignature(text, signature, 0);
+        return signature;
+    }
+
+    /**
+     * Set one bit for every pair of adjacent chars in some text.
+     *
+     * @param text the text
+     * @param signature the array to set the bits in
+     * @param offset the index of the first long of the signature
+     */
+    private static void addSignature(final String text,
+        final long [] signature, final int offset) {
+
+        for (int i = 0; i + 1 < text.length(); i++) {
+            int hash = ((text.charAt(i) * 0x9E3779B1) + text.charAt(i + 1))
+                * 0x85EBCA6B;
+            int bit = hash >>> 24;
+            signature[offset + (bit >>> 6)] |= 1L << (bit & 63);
+        }
+    }
+
+    /**
+     * Get the maximum number of lines to retain in memory.
+     *
+     * @return the maximum number of lines
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Set the maximum number of lines to retain in memory, evicting the
+     * oldest lines if necessary.
+     *
+     * @param maxSize the maximum number of lines
+     */
+    public void setMaxSize(final int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        while (size > this.maxSize) {
+            removeFirst();
+        }
+    }
+
+    /**
+     * Append a line to the end, evicting the oldest line if the scrollback
+     * is full.  The line is frozen.
+     *
+     * @param line the line to append
+     */
+    public void add(final DisplayLine line) {
+        line.freeze();
+
+        int rel = headOffset + size;
+        int chunk = rel >> CHUNK_SHIFT;
+        long chunkStart = base + ((long) chunk << CHUNK_SHIFT);
+        if (chunk == chunkCount) {
+            if (chunkCount == chunks.length) {
+                growChunks();
+            }
+            chunks[(headChunk + chunkCount) % chunks.length] =
+                new DisplayLine[CHUNK_SIZE];
+            chunkCount++;
+            sharedLimit = Math.min(sharedLimit, chunkStart);
+        } else if (base + rel < sharedLimit) {
+            // A snapshot can still see this slot: duplicate the chunk.
+            int idx = (headChunk + chunk) % chunks.length;
+            chunks[idx] = Arrays.copyOf(chunks[idx], CHUNK_SIZE);
+            sharedLimit = chunkStart;
+        }
+        chunks[(headChunk + chunk) % chunks.length][rel & CHUNK_MASK] = line;
+        long [] signatures = signatureChunks[(headChunk + chunk)
+            % chunks.length];
+        if (signatures != null) {
+            // A search has already indexed this chunk, keep it current.
+            int offset = (rel & CHUNK_MASK) * SIGNATURE_LONGS;
+            Arrays.fill(signatures, offset, offset + SIGNATURE_LONGS, 0);
+            addSignature(line.getText(), signatures, offset);
+        }
+        size++;
+
+        while (size > maxSize) {
+            removeFirst();
+        }
+    }
+
+    /**
+     * See if lines evicted from memory are spilled to disk.
+     *
+     * @return true if lines are spilled
+     */
+    public boolean isSpilling() {
+        return (spill != null);
+    }
+
+    /**
+     * Set whether lines evicted from memory are spilled to disk.  Turning
+     * this off discards the lines already spilled.  After close(), lines
+     * cannot be spilled again.
+     *
+     * @param spilling if true, spill lines to disk
+     * @throws IOException if the disk store cannot be created
+     */
+    public void setSpilling(final boolean spilling) throws IOException {
+        if (spilling && (spill == null) && !closed) {
+            spill = new ScrollbackStore();
+        } else if (!spilling) {
+            if (spill != null) {
+                spill.close();
+                spill = null;
+            }
+            spilled = null;
+        }
+    }
+
+    /**
+     * Release the disk store, if there is one.  Lines already spilled can
+     * still be read, but further evicted lines are discarded.
+     */
+    public void close() {
+        closed = true;
+        if (spill != null) {
+            spilled = spill.snapshot();
+            spill.close();
+            spill = null;
+        }
+    }
+
+    /**
+     * Remove the newest line.
+     *
+     * @return the line that was removed
+     */
+    public DisplayLine removeLast() {
+        if (size == 0) {
+            if ((spill != null) && (spill.size() > 0)) {
+                return spill.removeLast();
+            }
+            int spilledCount = spilledSize();
+            if (spilledCount > 0) {
+                DisplayLine line = spilled.get(spilledCount - 1);
+                spilled = spilled.head(spilledCount - 1);
+                return line;
+            }
+            throw new IndexOutOfBoundsException("Scrollback is empty");
+        }
+        DisplayLine line = getInMemory(size - 1);
+        size--;
+        int rel = headOffset + size;
+        if ((rel & CHUNK_MASK) == 0) {
+            // That was the last line in the newest chunk.
+            chunkCount--;
+            chunks[(headChunk + chunkCount) % chunks.length] = null;
+            signatureChunks[(headChunk + chunkCount) % chunks.length] = null;
+            if (chunkCount == 0) {
+                headOffset = 0;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Remove the oldest line.
+     */
+    private void removeFirst() {
+        assert (size > 0);
+        if (spill != null) {
+            try {
+                spill.add(getInMemory(0));
+            } catch (IOException e) {
+                // The line is lost, just as if we were not spilling.
+            }
+        }
+        size--;
+        headOffset++;
+        if ((headOffset == CHUNK_SIZE) || (size == 0)) {
+            // The oldest chunk is no longer needed.  Snapshots may still
+            // hold it.
+            chunks[headChunk] = null;
+            signatureChunks[headChunk] = null;
+            headChunk = (headChunk + 1) % chunks.length;
+            chunkCount--;
+            base += CHUNK_SIZE;
+            headOffset = 0;
+            if (size == 0) {
+                // An empty ring starts fresh with the next add().
+                headChunk = 0;
+                sharedLimit = base;
+            }
+        }
+    }
+
+    /**
+     * Double the number of chunk slots in the ring.
+     */
+    private void growChunks() {
+        DisplayLine [][] newChunks = new DisplayLine[chunks.length * 2][];
+        long [][] newSignatureChunks = new long[chunks.length * 2][];
+        for (int i = 0; i < chunkCount; i++) {
+            newChunks[i] = chunks[(headChunk + i) % chunks.length];
+            newSignatureChunks[i] = signatureChunks[(headChunk + i)
+                % chunks.length];
+        }
+        chunks = newChunks;
+        signatureChunks = newSignatureChunks;
+        headChunk = 0;
+    }
+
+    /**
+     * Obtain an immutable view of the current lines.  This costs one
+     * reference per chunk, not one copy per line.
+     *
+     * @return the lines, oldest first
+     */
+    public List<DisplayLine> snapshot() {
+        DisplayLine [][] snapChunks = new DisplayLine[chunkCount][];
+        for (int i = 0; i < chunkCount; i++) {
+            snapChunks[i] = chunks[(headChunk + i) % chunks.length];
+        }
+        sharedLimit = Math.max(sharedLimit, base + headOffset + size);
+        return new Snapshot(spill == null ? spilled : spill.snapshot(),
+            snapChunks, headOffset, size);
+    }
+
+    /**
+     * An immutable view of the scrollback at one point in time.
+     */
+    private static final class Snapshot extends AbstractList<DisplayLine>
+                                        implements RandomAccess {
+
+        /**
+         * The spilled lines, or null.
+         */
+        private final ScrollbackStore.View spilled;
+
+        /**
+         * The number of spilled lines.
+         */
+        private final int spilledSize;
+
+        /**
+         * The chunks, oldest first.
+         */
+        private final DisplayLine [][] chunks;
+
+        /**
+         * The slot of the oldest line within the oldest chunk.
+         */
+        private final int offset;
+
+        /**
+         * The number of lines in memory.
+         */
+        private final int size;
+
+        /**
+         * Private constructor.
+         *
+         * @param spilled the spilled lines, or null
+         * @param chunks the chunks, oldest first
+         * @param offset the slot of the oldest line within the oldest chunk
+         * @param size the number of lines in memory
+         */
+        private Snapshot(final ScrollbackStore.View spilled,
+            final DisplayLine [][] chunks, final int offset, final int size) {
+
+            this.spilled = spilled;
+            this.spilledSize = (spilled == null ? 0 : spilled.size());
+            this.chunks = chunks;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        /**
+         * Get a line.
+         *
+         * @param idx the line index, 0 is the oldest line
+         * @return the line
+         */
+        @Override
+        public DisplayLine get(final int idx) {
+            if (idx < spilledSize) {
+                return spilled.get(idx);
+            }
+            int memIdx = idx - spilledSize;
+            if ((memIdx < 0) || (memIdx >= size)) {
+                throw new IndexOutOfBoundsException("Index: " + idx
+                    + " Size: " + size());
+            }
+            int rel = offset + memIdx;
+            return chunks[rel >> CHUNK_SHIFT][rel & CHUNK_MASK];
+        }
+
+        /**
+         * Get the number of lines.
+         *
+         * @return the number of lines
+         */
+        @Override
+        public int size() {
+            return spilledSize + size;
+        }
+    }
+
+}
@@ -0,0 +1,446 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.terminal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ScrollbackStore is the on-disk tier of the scrollback: lines that fall
+ * out of the in-memory scrollback are written in DisplayLine's compact
+ * binary form to temporary files, and read back when they are needed.
+ *
+ * <p>
+ * Lines are appended to fixed-size pages, each one a mapped temporary file,
+ * so a record never changes once it is written.  A View can therefore keep
+ * reading the lines it was created with while more are appended.  Each
+ * file is deleted as soon as it is mapped, and its disk space is released
+ * when nothing maps it any more.
+ *
+ * <p>
+ * The store holds at most a fixed number of lines.  Past that the oldest
+ * lines are dropped, and a page is let go once all of its lines are gone.
+ */
+class ScrollbackStore {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Number of bits in a file offset that select the position within a
+     * page.
+     */
+    private static final int PAGE_SHIFT = 22;
+
+    /**
+     * The size of one mapped page.
+     */
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+
+    /**
+     * Mask to select the position within a page.
+     */
+    private static final long PAGE_MASK = PAGE_SIZE - 1;
+
+    /**
+     * The number of decoded lines to keep.
+     */
+    private static final int CACHE_SIZE = 512;
+
+    /**
+     * The default maximum number of lines to hold.
+     */
+    private static final int DEFAULT_MAX_LINES = 1000000;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The mapped pages, by page number.  Pages before firstPage have been
+     * let go and are null.
+     */
+    private MappedByteBuffer [] pages = new MappedByteBuffer[4];
+
+    /**
+     * The number of pages created.
+     */
+    private int pageCount = 0;
+
+    /**
+     * The oldest page still held.
+     */
+    private int firstPage = 0;
+
+    /**
+     * The maximum number of lines to hold.
+     */
+    private final int maxLines;
+
+    /**
+     * If true, no more lines can be added.
+     */
+    private boolean closed = false;
+
+    /**
+     * The file offset where the next line will be written.
+     */
+    private long position = 0;
+
+    /**
+     * The file offset of each line, from offsets[head] for the oldest line
+     * to offsets[count - 1] for the newest.  The page number is in the high
+     * bits.
+     */
+    private long [] offsets = new long[1024];
+
+    /**
+     * The index in offsets of the oldest line.
+     */
+    private int head = 0;
+
+    /**
+     * The index in offsets after the newest line.
+     */
+    private int count = 0;
+
+    /**
+     * The number of entries of offsets that views can see.  Views share the
+     * array, so it is copied before one of these entries is overwritten.
+     */
+    private int sharedCount = 0;
+
+    /**
+     * Recently decoded lines, by file offset.  Shared with all views, and
+     * guarded by itself.
+     */
+    private final Map<Long, DisplayLine> cache;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Package private constructor.
+     */
+    ScrollbackStore() {
+        this(DEFAULT_MAX_LINES);
+    }
+
+    /**
+     * Package private constructor.
+     *
+     * @param maxLines the maximum number of lines to hold
+     */
+    ScrollbackStore(final int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+
+        cache = new LinkedHashMap<Long, DisplayLine>(CACHE_SIZE, 0.75f,
+            true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Long,
+                DisplayLine> eldest) {
+
+                return (size() > CACHE_SIZE);
+            }
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // ScrollbackStore --------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of lines.
+     *
+     * @return the number of lines
+     */
+    public int size() {
+        return count - head;
+    }
+
+    /**
+     * Get the number of pages still held.  Note package private access.
+     *
+     * @return the number of pages
+     */
+    int getPageCount() {
+        return pageCount - firstPage;
+    }
+
+    /**
+     * Get a line.
+     *
+     * @param idx the line index, 0 is the oldest line
+     * @return the (frozen) line
+     */
+    public DisplayLine get(final int idx) {
+        if ((idx < 0) || (idx >= count - head)) {
+            throw new IndexOutOfBoundsException("Index: " + idx + " Size: "
+                + (count - head));
+        }
+        return read(pages, offsets[head + idx], cache);
+    }
+
+    /**
+     * Append a line to the end, dropping the oldest line if the store is
+     * full.
+     *
+     * @param line the line to append
+     * @throws IOException if the store is closed, or the line is too long
+     * or cannot be written
+     */
+    public void add(final DisplayLine line) throws IOException {
+        if (closed) {
+            throw new IOException("Scrollback store is closed");
+        }
+        int limit = line.getEncodedSizeLimit();
+        if (limit > PAGE_SIZE) {
+            throw new IOException("Line too long to store: " + limit
+                + " bytes");
+        }
+        if ((pageCount == 0) || (PAGE_SIZE - (position & PAGE_MASK) < limit)) {
+            // Start a new page.
+            MappedByteBuffer page = mapPage();
+            if (pageCount == pages.length) {
+                pages = Arrays.copyOf(pages, pages.length * 2);
+            }
+            position = (long) pageCount << PAGE_SHIFT;
+            pages[pageCount] = page;
+            pageCount++;
+        }
+
+        ByteBuffer buf = pages[pageCount - 1].duplicate();
+        buf.position((int) (position & PAGE_MASK));
+        line.write(buf);
+
+        if (count == offsets.length) {
+            // Drop the entries of lines that are gone while growing.
+            int size = count - head;
+            long [] newOffsets = new long[Math.max(1024, size * 2)];
+            System.arraycopy(offsets, head, newOffsets, 0, size);
+            offsets = newOffsets;
+            head = 0;
+            count = size;
+            sharedCount = 0;
+        } else if (count < sharedCount) {
+            // A line was removed since the last view, which can still see
+            // this entry.
+            offsets = Arrays.copyOf(offsets, offsets.length);
+            sharedCount = 0;
+        }
+        offsets[count] = position;
+        count++;
+        position = ((long) (pageCount - 1) << PAGE_SHIFT) + buf.position();
+
+        if (count - head > maxLines) {
+            removeFirst();
+        }
+    }
+
+    /**
+     * Drop the oldest line, and let go of its page if that was the page's
+     * last line.  Views keep their own reference to the page.
+     */
+    private void removeFirst() {
+        head++;
+        int page = (int) (offsets[head] >>> PAGE_SHIFT);
+        if (page > firstPage) {
+            // Views share pages, so do not change the array they see.
+            pages = Arrays.copyOf(pages, pages.length);
+            while (firstPage < page) {
+                pages[firstPage] = null;
+                firstPage++;
+            }
+        }
+    }
+
+    /**
+     * Create a page: a temporary file, mapped and then deleted.  The
+     * mapping stays valid after the file is closed.
+     *
+     * @return the mapped page
+     * @throws IOException if the file cannot be created or mapped
+     */
+    private MappedByteBuffer mapPage() throws IOException {
+        Path path = Files.createTempFile("casciian-scrollback", ".bin");
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)
+        ) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Remove the newest line.  Its record stays in the file, since a view
+     * might still refer to it.
+     *
+     * @return the line that was removed
+     */
+    public DisplayLine removeLast() {
+        if (count == head) {
+            throw new IndexOutOfBoundsException("Store is empty");
+        }
+        DisplayLine line = get(count - head - 1);
+        // Views keep the entry; add() copies offsets before reusing it.
+        count--;
+        return line;
+    }
+
+    /**
+     * Obtain an immutable view of the current lines.
+     *
+     * @return the view
+     */
+    public View snapshot() {
+        sharedCount = Math.max(sharedCount, count);
+        return new View(pages, offsets, head, count, cache);
+    }
+
+    /**
+     * Close the store.  Existing views, and this store, can still read
+     * lines, but no more lines can be added.  The pages are released when
+     * nothing refers to them any more.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Decode a line, or find it in the cache.
+     *
+     * @param pages the mapped pages
+     * @param offset the file offset of the line
+     * @param cache the decoded lines cache
+     * @return the (frozen) line
+     */
+    private static DisplayLine read(final MappedByteBuffer [] pages,
+        final long offset, final Map<Long, DisplayLine> cache) {
+
+        Long key = offset;
+        synchronized (cache) {
+            DisplayLine line = cache.get(key);
+            if (line != null) {
+                return line;
+            }
+        }
+        ByteBuffer buf = pages[(int) (offset >>> PAGE_SHIFT)].duplicate();
+        buf.position((int) (offset & PAGE_MASK));
+        DisplayLine line = DisplayLine.read(buf);
+        line.freeze();
+        synchronized (cache) {
+            cache.put(key, line);
+        }
+        return line;
+    }
+
+    /**
+     * An immutable view of the store at one point in time.
+     */
+    static final class View {
+
+        /**
+         * The mapped pages.
+         */
+        private final MappedByteBuffer [] pages;
+
+        /**
+         * The file offset of each line.
+         */
+        private final long [] offsets;
+
+        /**
+         * The index in offsets of the oldest line.
+         */
+        private final int head;
+
+        /**
+         * The index in offsets after the newest line.
+         */
+        private final int count;
+
+        /**
+         * The decoded lines cache.
+         */
+        private final Map<Long, DisplayLine> cache;
+
+        /**
+         * Private constructor.
+         *
+         * @param pages the mapped pages
+         * @param offsets the file offset of each line
+         * @param head the index in offsets of the oldest line
+         * @param count the index in offsets after the newest line
+         * @param cache the decoded lines cache
+         */
+        private View(final MappedByteBuffer [] pages, final long [] offsets,
+            final int head, final int count,
+            final Map<Long, DisplayLine> cache) {
+
+            this.pages   = pages;
+            this.offsets = offsets;
+            this.head    = head;
+            this.count   = count;
+            this.cache   = cache;
+        }
+
+        /**
+         * Get the number of lines.
+         *
+         * @return the number of lines
+         */
+        public int size() {
+            return count - head;
+        }
+
+        /**
+         * Get a view of the oldest lines of this one.
+         *
+         * @param size the number of lines to keep
+         * @return the view
+         */
+        public View head(final int size) {
+            return new View(pages, offsets, head, head + size, cache);
+        }
+
+        /**
+         * Get a line.
+         *
+         * @param idx the line index, 0 is the oldest line
+         * @return the (frozen) line
+         */
+        public DisplayLine get(final int idx) {
+            if ((idx < 0) || (idx >= count - head)) {
+                throw new IndexOutOfBoundsException("Index: " + idx
+                    + " Size: " + (count - head));
+            }
+            return read(pages, offsets[head + idx], cache);
+        }
+    }
+
+}
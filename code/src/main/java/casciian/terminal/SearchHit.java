@@ -0,0 +1,101 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.terminal;
+
+/**
+ * SearchHit is the location of a match returned by ECMA48.find().
+ */
+public final class SearchHit {
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The line number.
+     */
+    private final int line;
+
+    /**
+     * The column the match starts at.
+     */
+    private final int column;
+
+    /**
+     * The number of columns matched.
+     */
+    private final int length;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Package private constructor.
+     *
+     * @param line the line number
+     * @param column the column the match starts at
+     * @param length the number of columns matched
+     */
+    SearchHit(final int line, final int column, final int length) {
+        this.line   = line;
+        this.column = column;
+        this.length = length;
+    }
+
+    // ------------------------------------------------------------------------
+    // SearchHit --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the line number.  Line 0 is the oldest line of the scrollback,
+     * the same numbering as TerminalState.getLine().
+     *
+     * @return the line number
+     */
+    public int getLine() {
+        return line;
+    }
+
+    /**
+     * Get the column the match starts at.
+     *
+     * @return the column
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the number of columns matched.
+     *
+     * @return the length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Make human-readable description of this SearchHit.
+     *
+     * @return displayable String
+     */
+    @Override
+    public String toString() {
+        return String.format("SearchHit line %d column %d length %d", line,
+            column, length);
+    }
+
+}
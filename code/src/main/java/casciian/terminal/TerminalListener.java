@@ -31,6 +31,22 @@ public interface TerminalListener {
      */
     public void postUpdate(final TerminalState terminalState);
 
+    /**
+     * Function to call when the emulator has new output.  The listener may
+     * capture the state right away, or wait until it is next drawn and
+     * only call emulator.captureState() if emulator.getGeneration() has
+     * moved past the generation of the state it already has.  By default
+     * this captures immediately and calls postUpdate(TerminalState).
+     *
+     * @param emulator the emulator that was updated
+     * @param generation the emulator generation after the update
+     */
+    public default void postUpdate(final ECMA48 emulator,
+        final long generation) {
+
+        postUpdate(emulator.captureState());
+    }
+
     /**
      * Function to call to obtain the external UI display width.
      *
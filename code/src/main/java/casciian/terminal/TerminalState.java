@@ -16,10 +16,16 @@ package casciian.terminal;
 
 import casciian.bits.CellAttributes;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 /**
  * This represents the full displayable state of the ECMA38 terminal.
+ *
+ * <p>
+ * A TerminalState is a snapshot: it shares frozen DisplayLines with the
+ * emulator rather than owning copies of them, so capturing one costs about
+ * the same regardless of the size of the scrollback.
  */
 public class TerminalState {
 
@@ -103,12 +109,18 @@ public class TerminalState {
      */
     private long lastVisibleUpdateTime;
 
+    /**
+     * The emulator generation this state was captured at.
+     */
+    private long generation;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-     * Package private constructor.
+     * Package private constructor.  The buffers are retained, not copied:
+     * they must be immutable lists of frozen lines.
      *
      * @param attr current text attributes
      * @param width the display width
@@ -130,6 +142,7 @@ public class TerminalState {
      * getVisibleDisplay()
      * @param lastVisibleUpdateTime the last time we returned
      * lastVisibleDisplay
+     * @param generation the emulator generation at capture time
      */
     TerminalState(final CellAttributes attr, final int width, final int height,
         final List<DisplayLine> scrollbackBuffer,
@@ -138,13 +151,13 @@ public class TerminalState {
         final ECMA48.MouseProtocol mouseProtocol, final String screenTitle,
         final boolean withinSynchronizedUpdate,
         final List<DisplayLine> lastVisibleDisplay,
-        final long lastVisibleUpdateTime) {
+        final long lastVisibleUpdateTime, final long generation) {
 
         this.attr             = new CellAttributes(attr);
         this.width            = width;
         this.height           = height;
-        this.scrollback       = copyBuffer(scrollbackBuffer);
-        this.display          = copyBuffer(displayBuffer);
+        this.scrollback       = scrollbackBuffer;
+        this.display          = displayBuffer;
         this.cursorVisible    = cursorVisible;
         this.cursorX          = cursorX;
         this.cursorY          = cursorY;
@@ -152,8 +165,9 @@ public class TerminalState {
         this.mouseProtocol    = mouseProtocol;
         this.screenTitle      = screenTitle;
         this.withinSynchronizedUpdate = withinSynchronizedUpdate;
-        this.lastVisibleDisplay       = copyBuffer(lastVisibleDisplay);
+        this.lastVisibleDisplay       = lastVisibleDisplay;
         this.lastVisibleUpdateTime    = lastVisibleUpdateTime;
+        this.generation               = generation;
     }
 
     // ------------------------------------------------------------------------
@@ -205,13 +219,36 @@ public class TerminalState {
         return display;
     }
 
+    /**
+     * Get the total number of lines in the scrollback and display buffers.
+     *
+     * @return the number of lines
+     */
+    public final int getLineCount() {
+        return scrollback.size() + display.size();
+    }
+
+    /**
+     * Get one line from the scrollback + display buffers.
+     *
+     * @param row the line number, 0 is the oldest line in the scrollback
+     * @return the line, which is shared and must not be modified
+     */
+    public final DisplayLine getLine(final int row) {
+        if (row < scrollback.size()) {
+            return scrollback.get(row);
+        }
+        return display.get(row - scrollback.size());
+    }
+
     /**
      * Get the visible display + scrollback buffer, offset by a specified
      * number of rows from the bottom.
      *
      * @param visibleHeight the total height of the display to show
      * @param scrollBottom the number of rows from the bottom to scroll back
-     * @return a copy of the display + scrollback buffers
+     * @return the display + scrollback lines, which are shared and must not
+     * be modified
      */
     public final List<DisplayLine> getVisibleDisplay(final int visibleHeight,
         final int scrollBottom) {
@@ -231,26 +268,23 @@ public class TerminalState {
             return lastVisibleDisplay;
         }
 
-        int visibleBottom = scrollback.size() + display.size() - scrollBottom;
+        int lineCount = getLineCount();
+        int visibleBottom = lineCount - scrollBottom;
 
-        List<DisplayLine> preceedingBlankLines = new ArrayList<DisplayLine>();
+        List<DisplayLine> visibleLines;
+        visibleLines = new ArrayList<DisplayLine>(visibleHeight);
         int visibleTop = visibleBottom - visibleHeight;
         if (visibleTop < 0) {
             for (int i = visibleTop; i < 0; i++) {
-                preceedingBlankLines.add(getBlankDisplayLine());
+                visibleLines.add(getBlankDisplayLine());
             }
             visibleTop = 0;
         }
         assert (visibleTop >= 0);
 
-        List<DisplayLine> displayLines = new ArrayList<DisplayLine>();
-        displayLines.addAll(scrollback);
-        displayLines.addAll(display);
-
-        List<DisplayLine> visibleLines = new ArrayList<DisplayLine>();
-        visibleLines.addAll(preceedingBlankLines);
-        visibleLines.addAll(displayLines.subList(visibleTop,
-                Math.min(visibleBottom, displayLines.size())));
+        for (int i = visibleTop; i < Math.min(visibleBottom, lineCount); i++) {
+            visibleLines.add(getLine(i));
+        }
 
         // Fill in the blank lines on bottom
         int bottomBlankLines = visibleHeight - visibleLines.size();
@@ -262,23 +296,6 @@ public class TerminalState {
         return visibleLines;
     }
 
-    /**
-     * Copy a display buffer.
-     *
-     * @param buffer the buffer to copy
-     * @return a deep copy of the buffer's data
-     */
-    private List<DisplayLine> copyBuffer(final List<DisplayLine> buffer) {
-        if (buffer == null) {
-            return null;
-        }
-        List<DisplayLine> result = new ArrayList<DisplayLine>(buffer.size());
-        for (DisplayLine line: buffer) {
-            result.add(new DisplayLine(line));
-        }
-        return result;
-    }
-
     /**
      * Expose current cursor X to outside world.
      *
@@ -328,6 +345,52 @@ public class TerminalState {
         return screenTitle;
     }
 
+    /**
+     * Check if this state was captured while the remote side was in a
+     * synchronized update.
+     *
+     * @return true if the remote side has requested a synchronized update
+     */
+    public boolean isWithinSynchronizedUpdate() {
+        return withinSynchronizedUpdate;
+    }
+
+    /**
+     * Get the emulator generation this state was captured at.  If
+     * ECMA48.getGeneration() still returns this value, then this state is
+     * current.
+     *
+     * @return the generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Find the display rows that changed since an earlier state.  Lines are
+     * shared between states until the emulator writes to them, so a row is
+     * unchanged exactly when both states hold the same line object.
+     *
+     * @param previous an earlier state from the same emulator, or null
+     * @return the display rows that differ; every row if previous is null
+     * or had a different height
+     */
+    public BitSet getDirtyRows(final TerminalState previous) {
+        BitSet dirty = new BitSet(display.size());
+        if ((previous == null)
+            || (previous.display.size() != display.size())
+        ) {
+            dirty.set(0, display.size());
+            return dirty;
+        }
+        for (int i = 0; i < display.size(); i++) {
+            if (display.get(i) != previous.display.get(i)) {
+                dirty.set(i);
+            }
+        }
+        return dirty;
+    }
+
     /**
      * Obtain a new blank display line for an external user
      * (e.g. TTerminalWindow).
@@ -14,27 +14,117 @@
  */
 package casciian.texteditor;
 
+import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import casciian.bits.CellAttributes;
+import casciian.bits.StringUtils;
 
 /**
- * A Document represents a text file, as a collection of lines.
+ * A Document represents a text file, as a collection of lines.  The text
+ * is stored in a PieceTable; Line objects are only made for the lines that
+ * are being looked at or edited.
  */
 public class Document {
 
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * An edit that is never merged with its neighbors.
+     */
+    private static final int EDIT_OTHER = 0;
+
+    /**
+     * An edit from addChar().
+     */
+    private static final int EDIT_TYPE = 1;
+
+    /**
+     * An edit from backspace().
+     */
+    private static final int EDIT_BACKSPACE = 2;
+
+    /**
+     * An edit from del().
+     */
+    private static final int EDIT_DELETE = 3;
+
+    /**
+     * The most Line objects to keep at once.  TEditor asks for the lines on
+     * screen every time it draws.
+     */
+    private static final int MAX_CACHED_LINES = 512;
+
+    /**
+     * When a line is looked at far past the lines whose lexer states are
+     * known, lexing starts over this many lines before it, as if no comment
+     * or text block is open there.
+     */
+    private static final int LEX_SYNC_LINES = 1000;
+
+    /**
+     * The most lines that one edit will lex again while waiting for the
+     * lexer states to match the old states.  The rest are lexed when they
+     * are looked at.
+     */
+    private static final int MAX_RELEX_LINES = 1000;
+
     // ------------------------------------------------------------------------
     // Variables --------------------------------------------------------------
     // ------------------------------------------------------------------------
 
     /**
-     * The list of lines.
+     * The text of the lines.
      */
-    private ArrayList<Line> lines = new ArrayList<Line>();
+    private PieceTable pieceTable;
+
+    /**
+     * The Line objects made so far, by line number.
+     */
+    private HashMap<Integer, Line> lineCache = new HashMap<Integer, Line>();
+
+    /**
+     * The display length of the longest line, or -1 if it has not been
+     * computed yet.
+     */
+    private int lineLengthMax = -1;
+
+    /**
+     * If true, the text was loaded from a memory-mapped file, which must
+     * not be overwritten while it is still being read.
+     */
+    private boolean mapped = false;
+
+    /**
+     * The lexer state at the start of each line, starting at lexFirst.
+     */
+    private int [] lexStates = new int[64];
+
+    /**
+     * The first line number in lexStates.
+     */
+    private int lexFirst = 0;
+
+    /**
+     * The number of lines in lexStates whose lexer state is known.  This is
+     * always at least one.
+     */
+    private int lexCount = 1;
 
     /**
      * The current line number being edited.  Note that this is 0-based, the
@@ -79,6 +169,104 @@ public class Document {
      */
     private boolean saveWithTabs = false;
 
+    /**
+     * The edits that can be undone, oldest first.  The edits at undoListI
+     * and after it have been undone, and can be redone.
+     */
+    private ArrayList<Edit> undoList = new ArrayList<Edit>();
+
+    /**
+     * The number of edits in undoList that are currently applied.
+     */
+    private int undoListI = 0;
+
+    /**
+     * The maximum size of the undo list, or 0 for no limit.
+     */
+    private int undoLevel = 50;
+
+    /**
+     * The edit being recorded, or null if no edit is in progress.
+     */
+    private Edit edit = null;
+
+    /**
+     * The number of beginEdit() calls not yet matched by endEdit().
+     */
+    private int editDepth = 0;
+
+    /**
+     * The number of lines in the document when the edit in progress began.
+     */
+    private int editLineCount = 0;
+
+    /**
+     * One undoable edit: the lines starting at line were replaced.  Only the
+     * text of the replaced lines is kept, so an edit costs memory in
+     * proportion to the lines it touched rather than the whole document.
+     * An edit that changed lines far apart is a chain of Edits linked by
+     * next.
+     */
+    private static class Edit {
+        /**
+         * The first line number that was changed.
+         */
+        public int line;
+
+        /**
+         * The raw text of the changed lines before the edit.
+         */
+        public List<String> before;
+
+        /**
+         * The raw text of the changed lines after the edit.
+         */
+        public List<String> after;
+
+        /**
+         * The editing line number before the edit.
+         */
+        public int lineBefore;
+
+        /**
+         * The cursor position before the edit.
+         */
+        public int cursorBefore;
+
+        /**
+         * The editing line number after the edit.
+         */
+        public int lineAfter;
+
+        /**
+         * The cursor position after the edit.
+         */
+        public int cursorAfter;
+
+        /**
+         * The kind of edit, one of the EDIT_* constants.
+         */
+        public int kind = EDIT_OTHER;
+
+        /**
+         * More lines changed by the same edit, further down, or null.  Only
+         * the first Edit of a chain is in the undo list, and its line and
+         * cursor positions are for the whole chain.  Each line is where the
+         * lines are once the Edits before it in the chain have been made.
+         */
+        public Edit next = null;
+
+        /**
+         * See if this edit changed exactly one line into one line.
+         *
+         * @return true if the edit was within one line
+         */
+        public boolean isOneLine() {
+            return ((before.size() == 1) && (after.size() == 1)
+                && (next == null));
+        }
+    }
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -97,7 +285,47 @@ public class Document {
         // language keywords.
         highlighter.setJavaColors();
 
-        setText(str);
+        splitText(str);
+    }
+
+    /**
+     * Construct a new Document from a file.  The file is memory-mapped and
+     * read lazily: the lines are found by a background thread, and only the
+     * lines that are looked at are decoded.  Only the lines that have been
+     * looked at are measured by getLineLengthMax().  If the file is
+     * truncated while it is open, reading the lost text throws
+     * UncheckedIOException.
+     *
+     * @param file the file, encoded as UTF-8
+     * @param defaultColor the color for unhighlighted text
+     * @throws IOException if a java.io operation throws
+     */
+    public Document(final File file,
+        final CellAttributes defaultColor) throws IOException {
+
+        this.defaultColor = defaultColor;
+        highlighter.setJavaColors();
+
+        FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("File is too large: " + file);
+            }
+            // The channel stays open so that the piece table can see if the
+            // file is truncated under the mapping.
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                channel.size());
+            pieceTable = new PieceTable(buffer, true, channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        mapped = true;
+        lineLengthMax = 0;
     }
 
     /**
@@ -117,23 +345,35 @@ public class Document {
      * @param text the new contents
      */
     public void setText(final String text) {
-        lines.clear();
-        String [] rawLines = text.split("\n");
-        for (int i = 0; i < rawLines.length; i++) {
-            lines.add(new Line(rawLines[i], defaultColor, highlighter));
+        Edit newEdit = beginTextEdit(text);
+        splitText(text);
+        if (lineNumber > pieceTable.getLineCount() - 1) {
+            lineNumber = Math.max(pieceTable.getLineCount() - 1, 0);
         }
+        endTextEdit(newEdit);
     }
 
     /**
-     * Create a duplicate instance.
+     * Replace the lines with the lines of one string.
+     *
+     * @param text the new contents
+     */
+    private void splitText(final String text) {
+        pieceTable = new PieceTable(text);
+        lineCache.clear();
+        lineLengthMax = -1;
+        mapped = false;
+        resetLexStates();
+    }
+
+    /**
+     * Create a duplicate instance.  The undo history is not copied.
      *
      * @return duplicate intance
      */
     public Document dup() {
         Document other = new Document();
-        for (Line line: lines) {
-            other.lines.add(line.dup());
-        }
+        other.splitText(getText());
         other.lineNumber = lineNumber;
         other.overwrite = overwrite;
         other.dirty = dirty;
@@ -179,29 +419,64 @@ public class Document {
      * Save contents to file.
      *
      * @param filename file to save to
-     * @throws IOException if a java.io operation throws
+     * @throws IOException if a java.io operation throws, or if the
+     * memory-mapped file was truncated and the text cannot be read
      */
     public void saveToFilename(final String filename) throws IOException {
+        try {
+            writeFile(filename);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Save contents to file.
+     *
+     * @param filename file to save to
+     * @throws IOException if a java.io operation throws
+     */
+    private void writeFile(final String filename) throws IOException {
+        pieceTable.finishIndex();
+
+        // A memory-mapped file might be the one being saved to, so write a
+        // new file and then replace it.
+        File file = new File(filename);
+        File outputFile = file;
+        if (mapped) {
+            outputFile = File.createTempFile(file.getName(), ".tmp",
+                file.getAbsoluteFile().getParentFile());
+        }
+
         OutputStreamWriter output = null;
         try {
-            output = new OutputStreamWriter(new FileOutputStream(filename),
+            output = new OutputStreamWriter(new FileOutputStream(outputFile),
                 "UTF-8");
 
-            for (Line line: lines) {
+            for (int i = 0; i < pieceTable.getLineCount(); i++) {
                 if (saveWithTabs) {
-                    output.write(convertSpacesToTabs(line.getRawString()));
+                    output.write(convertSpacesToTabs(getRawLine(i)));
                 } else {
-                    output.write(line.getRawString());
+                    output.write(getRawLine(i));
                 }
                 output.write("\n");
             }
 
+            output.close();
+            output = null;
+            if (outputFile != file) {
+                Files.move(outputFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
             dirty = false;
         }
         finally {
             if (output != null) {
                 output.close();
             }
+            if ((outputFile != file) && outputFile.exists()) {
+                outputFile.delete();
+            }
         }
     }
 
@@ -231,7 +506,7 @@ public class Document {
      * @return the line
      */
     public Line getCurrentLine() {
-        return lines.get(lineNumber);
+        return getLine(lineNumber);
     }
 
     /**
@@ -242,7 +517,164 @@ public class Document {
      * @return the line
      */
     public Line getLine(final int lineNumber) {
-        return lines.get(lineNumber);
+        if ((lineNumber < 0) || (lineNumber >= pieceTable.getLineCount())) {
+            throw new IndexOutOfBoundsException("Lines array size is " +
+                pieceTable.getLineCount() + ", requested index " + lineNumber);
+        }
+        Line line = lineCache.get(lineNumber);
+        if ((line != null) && isLexing()) {
+            // An edit above this line may have opened or closed a comment.
+            line.setStartState(getLexState(lineNumber));
+        }
+        if (line == null) {
+            if (lineCache.size() >= MAX_CACHED_LINES) {
+                Line currentLine = lineCache.get(this.lineNumber);
+                lineCache.clear();
+                if (currentLine != null) {
+                    lineCache.put(this.lineNumber, currentLine);
+                }
+            }
+            line = new Line(pieceTable.getLine(lineNumber), defaultColor,
+                highlighter, getLexState(lineNumber));
+            lineCache.put(lineNumber, line);
+            if (isLexing() && (lineNumber == lexFirst + lexCount - 1)) {
+                // Scrolling down: the next line starts where this one ends.
+                addLexState(line.getEndState());
+            }
+            if (lineLengthMax >= 0) {
+                lineLengthMax = Math.max(lineLengthMax,
+                    line.getDisplayLength());
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Get the raw string of a specific line by number, without making a
+     * Line for it.
+     *
+     * @param lineNumber the line number.  Note that this is 0-based: 0 is
+     * the first line.
+     * @return the string
+     */
+    private String getRawLine(final int lineNumber) {
+        Line line = lineCache.get(lineNumber);
+        if (line != null) {
+            return line.getRawString();
+        }
+        return Line.toRawString(pieceTable.getLine(lineNumber));
+    }
+
+    /**
+     * Replace the text of a line.  Only the characters that differ from the
+     * line's current text are changed in the piece table, so typing one
+     * character inserts one character.
+     *
+     * @param lineNumber the line number
+     * @param rawLine the new raw string
+     */
+    private void setRawLine(final int lineNumber, final String rawLine) {
+        pieceTable.setLine(lineNumber, rawLine);
+        relex(lineNumber, 1, 1);
+        if (lineLengthMax >= 0) {
+            lineLengthMax = Math.max(lineLengthMax,
+                lineDisplayLength(rawLine));
+        }
+    }
+
+    /**
+     * Save the text of a Line that was edited in place back to the piece
+     * table.
+     *
+     * @param lineNumber the line number
+     */
+    private void commitLine(final int lineNumber) {
+        setRawLine(lineNumber, getLine(lineNumber).getRawString());
+    }
+
+    /**
+     * Replace a line with a new Line.
+     *
+     * @param lineNumber the line number
+     * @param line the new line
+     */
+    private void setLine(final int lineNumber, final Line line) {
+        setRawLine(lineNumber, line.getRawString());
+        lineCache.put(lineNumber, line);
+    }
+
+    /**
+     * Insert a new Line.
+     *
+     * @param lineNumber the line number of the new line
+     * @param line the new line
+     */
+    private void insertLine(final int lineNumber, final Line line) {
+        if (lineNumber < pieceTable.getLineCount()) {
+            pieceTable.insert(pieceTable.getLineStart(lineNumber),
+                line.getRawString() + "\n");
+        } else {
+            pieceTable.insert(pieceTable.length(), "\n" + line.getRawString());
+        }
+        relex(lineNumber, 0, 1);
+        shiftLineCache(lineNumber, 1);
+        lineCache.put(lineNumber, line);
+        if (lineLengthMax >= 0) {
+            lineLengthMax = Math.max(lineLengthMax, line.getDisplayLength());
+        }
+    }
+
+    /**
+     * Remove a line.  There is always at least one line left.
+     *
+     * @param lineNumber the line number
+     */
+    private void removeLine(final int lineNumber) {
+        int lineCount = pieceTable.getLineCount();
+        if (lineNumber < lineCount - 1) {
+            pieceTable.delete(pieceTable.getLineStart(lineNumber),
+                pieceTable.getLineStart(lineNumber + 1));
+        } else if (lineNumber > 0) {
+            pieceTable.delete(pieceTable.getLineEnd(lineNumber - 1),
+                pieceTable.length());
+        } else {
+            pieceTable.delete(0, pieceTable.length());
+        }
+        // Removing the only line leaves one empty line.
+        relex(lineNumber, 1, 1 - (lineCount - pieceTable.getLineCount()));
+        lineCache.remove(lineNumber);
+        shiftLineCache(lineNumber + 1, -1);
+    }
+
+    /**
+     * Renumber the cached Lines after lines were inserted or removed.
+     *
+     * @param lineNumber the first line number to renumber
+     * @param delta the number of lines inserted (positive) or removed
+     * (negative)
+     */
+    private void shiftLineCache(final int lineNumber, final int delta) {
+        HashMap<Integer, Line> shifted = new HashMap<Integer, Line>();
+        for (Map.Entry<Integer, Line> entry: lineCache.entrySet()) {
+            int n = entry.getKey();
+            shifted.put((n >= lineNumber ? n + delta : n), entry.getValue());
+        }
+        lineCache = shifted;
+    }
+
+    /**
+     * Compute the display length of a raw string, the same as
+     * Line.getDisplayLength().
+     *
+     * @param rawLine the raw string
+     * @return the number of cells needed to display the line
+     */
+    private static int lineDisplayLength(final String rawLine) {
+        int n = StringUtils.width(rawLine);
+        if (n > 0) {
+            return n + 1;
+        }
+        return n;
     }
 
     /**
@@ -252,9 +684,9 @@ public class Document {
      * line.
      */
     public void setLineNumber(final int n) {
-        if ((n < 0) || (n > lines.size())) {
+        if ((n < 0) || (n > pieceTable.getLineCount())) {
             throw new IndexOutOfBoundsException("Lines array size is " +
-                lines.size() + ", requested index " + n);
+                pieceTable.getLineCount() + ", requested index " + n);
         }
         lineNumber = n;
     }
@@ -265,7 +697,7 @@ public class Document {
      * @return the cursor position
      */
     public int getCursor() {
-        return lines.get(lineNumber).getCursor();
+        return getLine(lineNumber).getCursor();
     }
 
     /**
@@ -274,7 +706,7 @@ public class Document {
      * @return the character, or -1 if the cursor is at the end of the line
      */
     public int getChar() {
-        return lines.get(lineNumber).getChar();
+        return getLine(lineNumber).getChar();
     }
 
     /**
@@ -283,10 +715,10 @@ public class Document {
      * @param cursor the new cursor position
      */
     public void setCursor(final int cursor) {
-        if (cursor >= lines.get(lineNumber).getDisplayLength()) {
-            lines.get(lineNumber).end();
+        if (cursor >= getLine(lineNumber).getDisplayLength()) {
+            getLine(lineNumber).end();
         } else {
-            lines.get(lineNumber).setCursor(cursor);
+            getLine(lineNumber).setCursor(cursor);
         }
     }
 
@@ -296,13 +728,13 @@ public class Document {
      * @return true if the editing line changed
      */
     public boolean down() {
-        if (lineNumber < lines.size() - 1) {
-            int x = lines.get(lineNumber).getCursor();
+        if (lineNumber < pieceTable.getLineCount() - 1) {
+            int x = getLine(lineNumber).getCursor();
             lineNumber++;
-            if (x >= lines.get(lineNumber).getDisplayLength()) {
-                lines.get(lineNumber).end();
+            if (x >= getLine(lineNumber).getDisplayLength()) {
+                getLine(lineNumber).end();
             } else {
-                lines.get(lineNumber).setCursor(x);
+                getLine(lineNumber).setCursor(x);
             }
             return true;
         }
@@ -319,16 +751,16 @@ public class Document {
      * @return true if the editing line changed
      */
     public boolean down(final int n) {
-        if (lineNumber < lines.size() - 1) {
-            int x = lines.get(lineNumber).getCursor();
+        if (lineNumber < pieceTable.getLineCount() - 1) {
+            int x = getLine(lineNumber).getCursor();
             lineNumber += n;
-            if (lineNumber > lines.size() - 1) {
-                lineNumber = lines.size() - 1;
+            if (lineNumber > pieceTable.getLineCount() - 1) {
+                lineNumber = pieceTable.getLineCount() - 1;
             }
-            if (x >= lines.get(lineNumber).getDisplayLength()) {
-                lines.get(lineNumber).end();
+            if (x >= getLine(lineNumber).getDisplayLength()) {
+                getLine(lineNumber).end();
             } else {
-                lines.get(lineNumber).setCursor(x);
+                getLine(lineNumber).setCursor(x);
             }
             return true;
         }
@@ -342,12 +774,12 @@ public class Document {
      */
     public boolean up() {
         if (lineNumber > 0) {
-            int x = lines.get(lineNumber).getCursor();
+            int x = getLine(lineNumber).getCursor();
             lineNumber--;
-            if (x >= lines.get(lineNumber).getDisplayLength()) {
-                lines.get(lineNumber).end();
+            if (x >= getLine(lineNumber).getDisplayLength()) {
+                getLine(lineNumber).end();
             } else {
-                lines.get(lineNumber).setCursor(x);
+                getLine(lineNumber).setCursor(x);
             }
             return true;
         }
@@ -365,15 +797,15 @@ public class Document {
      */
     public boolean up(final int n) {
         if (lineNumber > 0) {
-            int x = lines.get(lineNumber).getCursor();
+            int x = getLine(lineNumber).getCursor();
             lineNumber -= n;
             if (lineNumber < 0) {
                 lineNumber = 0;
             }
-            if (x >= lines.get(lineNumber).getDisplayLength()) {
-                lines.get(lineNumber).end();
+            if (x >= getLine(lineNumber).getDisplayLength()) {
+                getLine(lineNumber).end();
             } else {
-                lines.get(lineNumber).setCursor(x);
+                getLine(lineNumber).setCursor(x);
             }
             return true;
         }
@@ -387,7 +819,7 @@ public class Document {
      * @return true if the cursor position changed
      */
     public boolean left() {
-        if (!lines.get(lineNumber).left()) {
+        if (!getLine(lineNumber).left()) {
             // We are on the leftmost column, wrap
             if (up()) {
                 end();
@@ -405,7 +837,7 @@ public class Document {
      * @return true if the cursor position changed
      */
     public boolean right() {
-        if (!lines.get(lineNumber).right()) {
+        if (!getLine(lineNumber).right()) {
             // We are on the rightmost column, wrap
             if (down()) {
                 home();
@@ -558,7 +990,7 @@ public class Document {
      * @return the string
      */
     public String getRawLine() {
-        return lines.get(lineNumber).getRawString();
+        return getLine(lineNumber).getRawString();
     }
 
     /**
@@ -567,7 +999,7 @@ public class Document {
      * @return true if the cursor position changed
      */
     public boolean home() {
-        return lines.get(lineNumber).home();
+        return getLine(lineNumber).home();
     }
 
     /**
@@ -576,7 +1008,7 @@ public class Document {
      * @return true if the cursor position changed
      */
     public boolean end() {
-        return lines.get(lineNumber).end();
+        return getLine(lineNumber).end();
     }
 
     /**
@@ -584,19 +1016,24 @@ public class Document {
      */
     public void del() {
         dirty = true;
-        int cursor = lines.get(lineNumber).getCursor();
-        if (cursor < lines.get(lineNumber).getDisplayLength() - 1) {
-            lines.get(lineNumber).del();
-        } else if (lineNumber < lines.size() - 2) {
+        int cursor = getLine(lineNumber).getCursor();
+        if (cursor < getLine(lineNumber).getDisplayLength() - 1) {
+            beginEdit(lineNumber, 1);
+            getLine(lineNumber).del();
+            commitLine(lineNumber);
+        } else if (lineNumber < pieceTable.getLineCount() - 2) {
             // Join two lines
-            StringBuilder newLine = new StringBuilder(lines.
-                get(lineNumber).getRawString());
-            newLine.append(lines.get(lineNumber + 1).getRawString());
-            lines.set(lineNumber, new Line(newLine.toString(),
-                    defaultColor, highlighter));
-            lines.get(lineNumber).setCursor(cursor);
-            lines.remove(lineNumber + 1);
+            beginEdit(lineNumber, 2);
+            StringBuilder newLine = new StringBuilder(getRawLine());
+            newLine.append(getRawLine(lineNumber + 1));
+            removeLine(lineNumber + 1);
+            setLine(lineNumber, new Line(newLine.toString(),
+                    defaultColor, highlighter, getLexState(lineNumber)));
+            getLine(lineNumber).setCursor(cursor);
+        } else {
+            return;
         }
+        endEdit(EDIT_DELETE);
     }
 
     /**
@@ -604,27 +1041,33 @@ public class Document {
      */
     public void backspace() {
         dirty = true;
-        int cursor = lines.get(lineNumber).getCursor();
+        int cursor = getLine(lineNumber).getCursor();
         if (cursor > 0) {
-            lines.get(lineNumber).backspace(tabSize, backspaceUnindents);
+            beginEdit(lineNumber, 1);
+            getLine(lineNumber).backspace(tabSize, backspaceUnindents);
+            commitLine(lineNumber);
         } else if (lineNumber > 0) {
             // Join two lines
+            beginEdit(lineNumber - 1, 2);
             lineNumber--;
-            String firstLine = lines.get(lineNumber).getRawString();
+            String firstLine = getLine(lineNumber).getRawString();
             if (firstLine.length() > 0) {
                 // Backspacing combining two lines
                 StringBuilder newLine = new StringBuilder(firstLine);
-                newLine.append(lines.get(lineNumber + 1).getRawString());
-                lines.set(lineNumber, new Line(newLine.toString(),
-                        defaultColor, highlighter));
-                lines.get(lineNumber).setCursor(firstLine.length());
-                lines.remove(lineNumber + 1);
+                newLine.append(getRawLine(lineNumber + 1));
+                removeLine(lineNumber + 1);
+                setLine(lineNumber, new Line(newLine.toString(),
+                        defaultColor, highlighter, getLexState(lineNumber)));
+                getLine(lineNumber).setCursor(firstLine.length());
             } else {
                 // Backspacing an empty line
-                lines.remove(lineNumber);
-                lines.get(lineNumber).setCursor(0);
+                removeLine(lineNumber);
+                getLine(lineNumber).setCursor(0);
             }
+        } else {
+            return;
         }
+        endEdit(EDIT_BACKSPACE);
     }
 
     /**
@@ -632,15 +1075,18 @@ public class Document {
      */
     public void enter() {
         dirty = true;
-        int cursor = lines.get(lineNumber).getRawCursor();
-        String original = lines.get(lineNumber).getRawString();
+        beginEdit(lineNumber, 1);
+        int cursor = getLine(lineNumber).getRawCursor();
+        String original = getLine(lineNumber).getRawString();
         String firstLine = original.substring(0, cursor);
         String secondLine = original.substring(cursor);
-        lines.add(lineNumber + 1, new Line(secondLine, defaultColor,
+        insertLine(lineNumber + 1, new Line(secondLine, defaultColor,
                 highlighter));
-        lines.set(lineNumber, new Line(firstLine, defaultColor, highlighter));
+        setLine(lineNumber, new Line(firstLine, defaultColor, highlighter,
+                getLexState(lineNumber)));
         lineNumber++;
-        lines.get(lineNumber).home();
+        getLine(lineNumber).home();
+        endEdit();
     }
 
     /**
@@ -651,11 +1097,14 @@ public class Document {
      */
     public void addChar(final int ch) {
         dirty = true;
+        beginEdit(lineNumber, 1);
         if (overwrite) {
-            lines.get(lineNumber).replaceChar(ch);
+            getLine(lineNumber).replaceChar(ch);
         } else {
-            lines.get(lineNumber).addChar(ch);
+            getLine(lineNumber).addChar(ch);
         }
+        commitLine(lineNumber);
+        endEdit(EDIT_TYPE);
     }
 
     /**
@@ -701,50 +1150,104 @@ public class Document {
      * Handle the tab character.
      */
     public void tab() {
+        beginEdit(lineNumber, 1);
         if (overwrite) {
             del();
         }
-        lines.get(lineNumber).tab(tabSize);
+        getLine(lineNumber).tab(tabSize);
+        commitLine(lineNumber);
+        endEdit();
     }
 
     /**
      * Handle the backtab (shift-tab) character.
      */
     public void backTab() {
-        lines.get(lineNumber).backTab(tabSize);
+        beginEdit(lineNumber, 1);
+        getLine(lineNumber).backTab(tabSize);
+        commitLine(lineNumber);
+        endEdit();
     }
 
     /**
-     * Get a (shallow) copy of the list of lines.
+     * Get a list of all of the lines.  Note that this makes a Line for
+     * every line in the document, which is expensive for large documents.
      *
      * @return the list of lines
      */
     public List<Line> getLines() {
-        return new ArrayList<Line>(lines);
+        pieceTable.finishIndex();
+        List<Line> lines = new ArrayList<Line>(pieceTable.getLineCount());
+        for (int i = 0; i < pieceTable.getLineCount(); i++) {
+            lines.add(getLine(i));
+        }
+        return lines;
     }
 
     /**
-     * Get the number of lines.
+     * Get the number of lines.  For a document loaded from a file, this is
+     * the number of lines found so far until the whole file has been read.
      *
      * @return the number of lines
      */
     public int getLineCount() {
-        return lines.size();
+        return pieceTable.getLineCount();
+    }
+
+    /**
+     * See if the whole file has been read.
+     *
+     * @return true if getLineCount() is final
+     */
+    public boolean isIndexed() {
+        return pieceTable.isIndexed();
+    }
+
+    /**
+     * See if the document was loaded from a memory-mapped file.
+     *
+     * @return true if the text is read from a mapped file as needed
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * See if the memory-mapped file has been truncated since it was loaded,
+     * for example by log rotation.  The lines past its new end can no
+     * longer be read, and the document cannot be saved.
+     *
+     * @return true if the file was truncated
+     */
+    public boolean isTruncated() {
+        return (mapped && pieceTable.isTruncated());
     }
 
     /**
-     * Compute the maximum line length for this document.
+     * Stop reading the file in the background and close it.  The document
+     * can still be used, and reads whatever it needs as it is looked at.
+     */
+    public void close() {
+        pieceTable.close();
+    }
+
+    /**
+     * Compute the maximum line length for this document.  The whole
+     * document is measured once; after that edits can only make the result
+     * larger, so it may be more than the longest line after lines are
+     * shortened.
      *
      * @return the number of cells needed to display the longest line
      */
     public int getLineLengthMax() {
-        int n = 0;
-        for (Line line : lines) {
-            if (line.getDisplayLength() > n) {
-                n = line.getDisplayLength();
+        if (lineLengthMax < 0) {
+            int n = 0;
+            for (int i = 0; i < pieceTable.getLineCount(); i++) {
+                n = Math.max(n, lineDisplayLength(getRawLine(i)));
             }
+            lineLengthMax = n;
         }
-        return n;
+        return lineLengthMax;
     }
 
     /**
@@ -753,7 +1256,7 @@ public class Document {
      * @return the number of cells needed to display the current line
      */
     public int getLineLength() {
-        return lines.get(lineNumber).getDisplayLength();
+        return getLine(lineNumber).getDisplayLength();
     }
 
     /**
@@ -762,9 +1265,10 @@ public class Document {
      * @return the document contents
      */
     public String getText() {
-        StringBuilder sb = new StringBuilder();
-        for (Line line: getLines()) {
-            sb.append(line.getRawString());
+        pieceTable.finishIndex();
+        StringBuilder sb = new StringBuilder(pieceTable.length() + 1);
+        for (int i = 0; i < pieceTable.getLineCount(); i++) {
+            sb.append(getRawLine(i));
             sb.append("\n");
         }
         return sb.toString();
@@ -775,20 +1279,93 @@ public class Document {
      * lines from the document.
      */
     public void cleanWhitespace() {
-        for (Line line: getLines()) {
-            line.trimRight();
+        pieceTable.finishIndex();
+        boolean nested = (edit != null);
+        Edit newEdit = null;
+        if (nested) {
+            beginEdit(0, pieceTable.getLineCount());
+        } else {
+            newEdit = new Edit();
+            newEdit.lineBefore = lineNumber;
+            newEdit.cursorBefore = getEditCursor();
         }
-        if (lines.size() == 0) {
-            return;
+        int cursor = getCursor();
+
+        // Rebuild the whole text at once rather than editing every line in
+        // the piece table, but record only the lines that change.
+        StringBuilder sb = new StringBuilder(pieceTable.length());
+        int n = 0;
+        int lineCount = pieceTable.getLineCount();
+        int keepLines = 1;
+        Edit hunk = null;
+        for (int i = 0; i < lineCount; i++) {
+            String rawLine = getRawLine(i);
+            int end = rawLine.length();
+            while ((end > 0)
+                && Character.isWhitespace(rawLine.charAt(end - 1))
+            ) {
+                end--;
+            }
+            sb.append(rawLine, 0, end);
+            sb.append('\n');
+            if (end > 0) {
+                // Trailing empty lines are dropped.
+                n = sb.length();
+                keepLines = i + 1;
+            }
+            if (nested || (end == rawLine.length())) {
+                continue;
+            }
+            if ((hunk == null)
+                || (hunk.line + hunk.before.size() != i)
+            ) {
+                hunk = addHunk(newEdit, hunk, i);
+            }
+            hunk.before.add(rawLine);
+            hunk.after.add(rawLine.substring(0, end));
         }
-        while (lines.get(lines.size() - 1).length() == 0) {
-            lines.remove(lines.size() - 1);
+        if (!nested && (keepLines < lineCount)) {
+            // The trimmed lines past the last text are removed.
+            hunk = addHunk(newEdit, hunk, keepLines);
+            for (int i = keepLines; i < lineCount; i++) {
+                hunk.before.add("");
+            }
         }
-        if (lineNumber > lines.size() - 1) {
-            lineNumber = lines.size() - 1;
+        splitText(sb.substring(0, n));
+
+        if (lineNumber > pieceTable.getLineCount() - 1) {
+            lineNumber = pieceTable.getLineCount() - 1;
+        } else {
+            setCursor(cursor);
+        }
+        if (nested) {
+            endEdit();
+        } else if (hunk != null) {
+            endTextEdit(newEdit);
         }
     }
 
+    /**
+     * Add the next lines changed to an edit that is a chain of Edits.
+     *
+     * @param head the first Edit of the chain.  If it has no lines yet, it
+     * is used for these lines.
+     * @param tail the last Edit of the chain, or null if it has no lines
+     * @param line the line number of the first line changed
+     * @return the Edit to add the lines to
+     */
+    private Edit addHunk(final Edit head, final Edit tail, final int line) {
+        Edit hunk = head;
+        if (tail != null) {
+            hunk = new Edit();
+            tail.next = hunk;
+        }
+        hunk.line = line;
+        hunk.before = new ArrayList<String>();
+        hunk.after = new ArrayList<String>();
+        return hunk;
+    }
+
     /**
      * Set keyword highlighting.
      *
@@ -796,7 +1373,8 @@ public class Document {
      */
     public void setHighlighting(final boolean enabled) {
         highlighter.setEnabled(enabled);
-        for (Line line: getLines()) {
+        resetLexStates();
+        for (Line line: lineCache.values()) {
             line.scanLine();
         }
     }
@@ -847,11 +1425,6 @@ public class Document {
          * This is hideously inefficient, but it works.
          */
 
-        int N = 0;
-        while (left()) {
-            N++;
-        }
-
         String text = getText();
         String parBreakToken = "$$$PARAGRAPH$BREAK$$$";
         text = text.replace("\n\n", parBreakToken);
@@ -869,13 +1442,472 @@ public class Document {
             newText.append(line);
             newText.append("\n");
         }
-        setText(newText.toString());
+        text = newText.toString();
+        Edit newEdit = beginTextEdit(text);
+        int N = 0;
+        while (left()) {
+            N++;
+        }
+        splitText(text);
 
         setLineNumber(0);
         home();
         for (int i = 0; i < N; i++) {
             right();
         }
+        endTextEdit(newEdit);
+    }
+
+    /**
+     * Begin an edit that replaces the whole text.  Only the lines that
+     * differ from the new text are recorded.  Inside another edit, every
+     * line is recorded with beginEdit() instead.
+     *
+     * @param text the new text
+     * @return the edit to pass to endTextEdit(), or null if it is recorded
+     * by beginEdit() or no lines change
+     */
+    private Edit beginTextEdit(final String text) {
+        pieceTable.finishIndex();
+        int lineCount = pieceTable.getLineCount();
+        if (edit != null) {
+            beginEdit(0, lineCount);
+            return null;
+        }
+
+        // Split the text the way the piece table will.
+        int textEnd = text.length();
+        while ((textEnd > 0) && (text.charAt(textEnd - 1) == '\n')) {
+            textEnd--;
+        }
+        String [] lines = text.substring(0, textEnd).split("\n", -1);
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = Line.toRawString(lines[i]);
+        }
+
+        int n = Math.min(lineCount, lines.length);
+        int prefix = 0;
+        while ((prefix < n) && getRawLine(prefix).equals(lines[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while ((suffix < n - prefix)
+            && getRawLine(lineCount - 1 - suffix).equals(
+                lines[lines.length - 1 - suffix])
+        ) {
+            suffix++;
+        }
+        if ((prefix == lineCount) && (prefix == lines.length)) {
+            return null;
+        }
+
+        Edit newEdit = new Edit();
+        newEdit.line = prefix;
+        newEdit.before = getRawLines(prefix, lineCount - suffix);
+        newEdit.after = new ArrayList<String>(Arrays.asList(lines).
+            subList(prefix, lines.length - suffix));
+        newEdit.lineBefore = lineNumber;
+        newEdit.cursorBefore = getEditCursor();
+        return newEdit;
+    }
+
+    /**
+     * Finish an edit started by beginTextEdit().
+     *
+     * @param newEdit the edit returned by beginTextEdit()
+     */
+    private void endTextEdit(final Edit newEdit) {
+        if (editDepth > 0) {
+            endEdit();
+            return;
+        }
+        if (newEdit != null) {
+            newEdit.lineAfter = lineNumber;
+            newEdit.cursorAfter = getEditCursor();
+            addEdit(newEdit);
+        }
+    }
+
+    /**
+     * Begin recording an edit that will change the lines from first to
+     * first + count - 1.  Calls may nest: the edits made until the outermost
+     * endEdit() are undone and redone as one.  An inner call may name lines
+     * outside of the outer one.
+     *
+     * @param first the first line number that may change.  Note that this
+     * is 0-based: 0 is the first line.
+     * @param count the number of lines that may change
+     */
+    public void beginEdit(final int first, final int count) {
+        int start = Math.max(first, 0);
+        if (edit == null) {
+            // The line count must be final before the edit is measured.
+            pieceTable.finishIndex();
+        }
+        int end = Math.min(first + count, pieceTable.getLineCount());
+        editDepth++;
+
+        if (edit == null) {
+            edit = new Edit();
+            edit.line = start;
+            edit.before = getRawLines(start, end);
+            edit.lineBefore = lineNumber;
+            edit.cursorBefore = getEditCursor();
+            editLineCount = pieceTable.getLineCount();
+            return;
+        }
+
+        // Widen the edit in progress.  The lines outside of it have not been
+        // changed yet, so their text now is their text before the edit.
+        if (start < edit.line) {
+            edit.before.addAll(0, getRawLines(start, edit.line));
+            edit.line = start;
+        }
+        int editEnd = edit.line + edit.before.size() + pieceTable.getLineCount()
+            - editLineCount;
+        if (end > editEnd) {
+            edit.before.addAll(getRawLines(editEnd, end));
+        }
+    }
+
+    /**
+     * Finish recording an edit started by beginEdit().
+     */
+    public void endEdit() {
+        endEdit(EDIT_OTHER);
+    }
+
+    /**
+     * Finish recording an edit started by beginEdit().  Consecutive one-line
+     * edits of the same kind, such as typing a word, are merged into one
+     * undo.
+     *
+     * @param kind one of the EDIT_* constants
+     */
+    private void endEdit(final int kind) {
+        assert (editDepth > 0);
+        editDepth--;
+        if (editDepth > 0) {
+            return;
+        }
+
+        Edit newEdit = edit;
+        edit = null;
+        int count = newEdit.before.size() + pieceTable.getLineCount() - editLineCount;
+        newEdit.after = getRawLines(newEdit.line, newEdit.line + count);
+        newEdit.lineAfter = lineNumber;
+        newEdit.cursorAfter = getEditCursor();
+        newEdit.kind = kind;
+        if (newEdit.before.equals(newEdit.after)) {
+            // Nothing changed, e.g. backspace on the first column.
+            return;
+        }
+        addEdit(newEdit);
+    }
+
+    /**
+     * Add a finished edit to the undo list, or merge it into the last one.
+     *
+     * @param newEdit the edit
+     */
+    private void addEdit(final Edit newEdit) {
+        int kind = newEdit.kind;
+        if ((kind != EDIT_OTHER)
+            && (undoListI > 0)
+            && (undoListI == undoList.size())
+        ) {
+            Edit last = undoList.get(undoListI - 1);
+            if ((last.kind == kind)
+                && (last.line == newEdit.line)
+                && last.isOneLine()
+                && newEdit.isOneLine()
+                && (last.lineAfter == newEdit.lineBefore)
+                && (last.cursorAfter == newEdit.cursorBefore)
+            ) {
+                last.after = newEdit.after;
+                last.lineAfter = newEdit.lineAfter;
+                last.cursorAfter = newEdit.cursorAfter;
+                return;
+            }
+        }
+
+        // A new edit discards the edits that could have been redone.
+        undoList.subList(undoListI, undoList.size()).clear();
+        undoList.add(newEdit);
+        if (undoLevel > 0) {
+            while (undoList.size() > undoLevel) {
+                undoList.remove(0);
+            }
+        }
+        undoListI = undoList.size();
+    }
+
+    /**
+     * Undo the most recent edit.
+     *
+     * @return true if there was an edit to undo
+     */
+    public boolean undo() {
+        if (undoListI == 0) {
+            return false;
+        }
+        undoListI--;
+        Edit undoEdit = undoList.get(undoListI);
+        List<Edit> hunks = new ArrayList<Edit>();
+        for (Edit hunk = undoEdit; hunk != null; hunk = hunk.next) {
+            hunks.add(hunk);
+        }
+        for (int i = hunks.size() - 1; i >= 0; i--) {
+            Edit hunk = hunks.get(i);
+            replaceLines(hunk.line, hunk.after.size(), hunk.before);
+        }
+        restoreCursor(undoEdit.lineBefore, undoEdit.cursorBefore);
+        return true;
+    }
+
+    /**
+     * Redo the most recently undone edit.
+     *
+     * @return true if there was an edit to redo
+     */
+    public boolean redo() {
+        if (undoListI == undoList.size()) {
+            return false;
+        }
+        Edit redoEdit = undoList.get(undoListI);
+        undoListI++;
+        for (Edit hunk = redoEdit; hunk != null; hunk = hunk.next) {
+            replaceLines(hunk.line, hunk.before.size(), hunk.after);
+        }
+        restoreCursor(redoEdit.lineAfter, redoEdit.cursorAfter);
+        return true;
+    }
+
+    /**
+     * Set the undo level.
+     *
+     * @param undoLevel the maximum number of undo operations, or 0 for no
+     * limit
+     */
+    public void setUndoLevel(final int undoLevel) {
+        this.undoLevel = undoLevel;
+    }
+
+    /**
+     * Get the raw text of a range of lines.
+     *
+     * @param start the first line number
+     * @param end one past the last line number
+     * @return the raw strings
+     */
+    private List<String> getRawLines(final int start, final int end) {
+        List<String> rawLines = new ArrayList<String>(Math.max(end - start,
+                0));
+        for (int i = start; i < end; i++) {
+            rawLines.add(getRawLine(i));
+        }
+        return rawLines;
+    }
+
+    /**
+     * Replace a range of lines with new lines, as one change to the piece
+     * table.
+     *
+     * @param first the first line number to replace
+     * @param count the number of lines to replace
+     * @param rawLines the raw text of the new lines
+     */
+    private void replaceLines(final int first, final int count,
+        final List<String> rawLines) {
+
+        dirty = true;
+        int lineCount = pieceTable.getLineCount();
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < rawLines.size(); i++) {
+            String rawLine = rawLines.get(i);
+            if (i > 0) {
+                sb.append('\n');
+            }
+            sb.append(rawLine);
+            if (lineLengthMax >= 0) {
+                lineLengthMax = Math.max(lineLengthMax,
+                    lineDisplayLength(rawLine));
+            }
+        }
+        if ((count > 0) && (rawLines.size() > 0)) {
+            pieceTable.replace(pieceTable.getLineStart(first),
+                pieceTable.getLineEnd(first + count - 1), sb);
+            relex(first, count, count + pieceTable.getLineCount() - lineCount);
+        } else if (count > 0) {
+            for (int i = 0; i < count; i++) {
+                removeLine(first);
+            }
+        } else if (rawLines.size() > 0) {
+            if (first < pieceTable.getLineCount()) {
+                pieceTable.insert(pieceTable.getLineStart(first),
+                    sb.append('\n'));
+            } else {
+                pieceTable.insert(pieceTable.length(), "\n" + sb);
+            }
+            relex(first, 0, pieceTable.getLineCount() - lineCount);
+        }
+        lineCache.clear();
+    }
+
+    /**
+     * Get the cursor position to record with an edit.
+     *
+     * @return the cursor position, or 0 if the document has no lines
+     */
+    private int getEditCursor() {
+        if ((lineNumber >= 0) && (lineNumber < pieceTable.getLineCount())) {
+            return getLine(lineNumber).getCursor();
+        }
+        return 0;
+    }
+
+    /**
+     * Move to a line and cursor position recorded with an edit.
+     *
+     * @param line the line number
+     * @param cursor the cursor position
+     */
+    private void restoreCursor(final int line, final int cursor) {
+        lineNumber = Math.max(Math.min(line, pieceTable.getLineCount() - 1),
+            0);
+        setCursor(cursor);
+    }
+
+    /**
+     * See if lines are being lexed for highlighting.
+     *
+     * @return true if the highlighter is enabled
+     */
+    private boolean isLexing() {
+        return ((highlighter != null) && highlighter.isEnabled());
+    }
+
+    /**
+     * Forget the lexer states of every line but the first.
+     */
+    private void resetLexStates() {
+        lexFirst = 0;
+        lexCount = 1;
+        lexStates[0] = Lexer.INITIAL;
+    }
+
+    /**
+     * Append the lexer state at the start of line lexFirst + lexCount.
+     *
+     * @param state the state
+     */
+    private void addLexState(final int state) {
+        if (lexCount == lexStates.length) {
+            lexStates = Arrays.copyOf(lexStates, lexCount * 2);
+        }
+        lexStates[lexCount] = state;
+        lexCount++;
+    }
+
+    /**
+     * Lex a line from the piece table.  The line cache is not used, because
+     * an edited line is saved to the piece table before its Line is cached.
+     *
+     * @param lineNumber the line number
+     * @param state the lexer state at the start of the line
+     * @return the lexer state at the end of the line
+     */
+    private int lexLine(final int lineNumber, final int state) {
+        return highlighter.scanState(Line.toRawString(pieceTable.getLine(
+            lineNumber)), state);
+    }
+
+    /**
+     * Get the lexer state at the start of a line, lexing the lines before
+     * it that have not been lexed yet.
+     *
+     * @param lineNumber the line number
+     * @return the state
+     */
+    private int getLexState(final int lineNumber) {
+        if (!isLexing()) {
+            return Lexer.INITIAL;
+        }
+        if ((lineNumber < lexFirst)
+            || (lineNumber >= lexFirst + lexCount + LEX_SYNC_LINES)
+        ) {
+            lexFirst = Math.max(lineNumber - LEX_SYNC_LINES, 0);
+            lexCount = 1;
+            lexStates[0] = Lexer.INITIAL;
+        }
+        while (lexFirst + lexCount <= lineNumber) {
+            addLexState(lexLine(lexFirst + lexCount - 1,
+                    lexStates[lexCount - 1]));
+        }
+        return lexStates[lineNumber - lexFirst];
+    }
+
+    /**
+     * Update the lexer states after lines were replaced.  The lines are
+     * lexed again from the first changed line until the state at the start
+     * of a line after the change is the same as it was before, because
+     * from there on nothing else can have changed.
+     *
+     * @param first the first line number that was replaced
+     * @param removed the number of lines that were replaced
+     * @param added the number of lines that replaced them
+     */
+    private void relex(final int first, final int removed, final int added) {
+        if (!isLexing()) {
+            return;
+        }
+        if (first < lexFirst) {
+            resetLexStates();
+            return;
+        }
+        int i = first - lexFirst;
+        if (i >= lexCount) {
+            // No known state is affected.
+            return;
+        }
+        int state = lexStates[i];
+        int tail = i + removed;
+        if (tail >= lexCount) {
+            // No known state after the change to compare against.
+            lexCount = i + 1;
+            return;
+        }
+
+        // Move the old states of the lines after the change to their new
+        // line numbers.
+        int delta = added - removed;
+        if (lexCount + delta > lexStates.length) {
+            lexStates = Arrays.copyOf(lexStates,
+                Math.max(lexStates.length * 2, lexCount + delta));
+        }
+        System.arraycopy(lexStates, tail, lexStates, tail + delta,
+            lexCount - tail);
+        lexCount += delta;
+        lexStates[i] = state;
+
+        int lineCount = pieceTable.getLineCount();
+        for (int j = i; lexFirst + j < lineCount - 1; j++) {
+            state = lexLine(lexFirst + j, state);
+            if (j + 1 == lexCount) {
+                addLexState(state);
+                return;
+            }
+            if ((j + 1 >= i + added) && (lexStates[j + 1] == state)) {
+                // Converged.
+                return;
+            }
+            lexStates[j + 1] = state;
+            if (j + 1 - i >= MAX_RELEX_LINES) {
+                lexCount = j + 2;
+                return;
+            }
+        }
+        lexCount = Math.max(Math.min(lexCount, lineCount - lexFirst), 1);
     }
 
 }
@@ -14,14 +14,18 @@
  */
 package casciian.texteditor;
 
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import casciian.bits.CellAttributes;
 import casciian.bits.Color;
 
 /**
- * Highlighter provides color choices for certain text strings.
+ * Highlighter provides color choices for certain text strings.  A Lexer
+ * splits each line into tokens; identifiers and punctuation are colored by
+ * looking them up in a keyword table, and comments, strings, and numbers
+ * are colored by their kind.
  */
 public class Highlighter {
 
@@ -30,9 +34,21 @@ public class Highlighter {
     // ------------------------------------------------------------------------
 
     /**
-     * The highlighter colors.
+     * The keyword colors, or null if highlighting is disabled.  The table
+     * is never changed once it is built, so copies of this Highlighter
+     * share it.
      */
-    private SortedMap<String, CellAttributes> colors;
+    private KeywordTable<CellAttributes> colors;
+
+    /**
+     * The colors for each token kind, or null for the default color.
+     */
+    private CellAttributes [] kindColors = new CellAttributes[Lexer.KINDS];
+
+    /**
+     * The lexer that splits lines into tokens.
+     */
+    private Lexer lexer = new JavaLexer();
 
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
@@ -68,12 +84,37 @@ public class Highlighter {
      * @param rhs an instance of Highlighter
      */
     public void setTo(final Highlighter rhs) {
-        if (rhs.colors != null) {
-            colors = new TreeMap<String, CellAttributes>();
-            colors.putAll(rhs.colors);
-        } else {
-            colors = null;
-        }
+        colors = rhs.colors;
+        kindColors = rhs.kindColors.clone();
+        lexer = rhs.lexer;
+    }
+
+    /**
+     * Get keyword highlighting.
+     *
+     * @return true if keyword highlighting is enabled
+     */
+    public boolean isEnabled() {
+        return (colors != null);
+    }
+
+    /**
+     * Get the lexer.
+     *
+     * @return the lexer
+     */
+    public Lexer getLexer() {
+        return lexer;
+    }
+
+    /**
+     * Set the lexer.  Documents that use this Highlighter must be told with
+     * setHighlighting() to scan their lines again.
+     *
+     * @param lexer the lexer
+     */
+    public void setLexer(final Lexer lexer) {
+        this.lexer = lexer;
     }
 
     /**
@@ -107,11 +148,60 @@ public class Highlighter {
         return attr;
     }
 
+    /**
+     * Split a line into words, one word for each token, and color them.
+     * Note package private access: this is only called by Line.
+     *
+     * @param text the raw text of the line
+     * @param state the lexer state at the start of the line
+     * @param words the list to add the words to
+     * @param defaultColor the color for unhighlighted text
+     * @return the lexer state at the end of the line
+     */
+    int scanLine(final CharSequence text, final int state,
+        final List<Word> words, final CellAttributes defaultColor) {
+
+        if (colors == null) {
+            words.add(new Word(text, 0, text.length(), defaultColor));
+            return Lexer.INITIAL;
+        }
+        return lexer.scanLine(text, state, new Lexer.TokenHandler() {
+            public void token(final int start, final int end,
+                final int kind) {
+
+                CellAttributes color = kindColors[kind];
+                if ((kind == Lexer.IDENTIFIER) || (kind == Lexer.OPERATOR)) {
+                    color = colors.get(text, start, end);
+                }
+                if (color == null) {
+                    color = defaultColor;
+                }
+                words.add(new Word(text, start, end, color));
+            }
+        });
+    }
+
+    /**
+     * Find the lexer state at the end of a line without making words for
+     * it.  Note package private access: this is only called by Document.
+     *
+     * @param text the raw text of the line
+     * @param state the lexer state at the start of the line
+     * @return the lexer state at the end of the line
+     */
+    int scanState(final CharSequence text, final int state) {
+        if (colors == null) {
+            return Lexer.INITIAL;
+        }
+        return lexer.scanLine(text, state, null);
+    }
+
     /**
      * Sets to defaults that resemble the Borland IDE colors.
      */
     public void setJavaColors() {
-        colors = new TreeMap<String, CellAttributes>();
+        Map<String, CellAttributes> table =
+            new HashMap<String, CellAttributes>();
 
         CellAttributes color;
 
@@ -124,7 +214,7 @@ public class Highlighter {
         color.setBackColor(Color.BLUE);
         color.setBold(true);
         for (String str: types) {
-            colors.put(str, color);
+            table.put(str, color);
         }
 
         String [] modifiers = {
@@ -136,7 +226,7 @@ public class Highlighter {
         color.setBackColor(Color.BLUE);
         color.setBold(true);
         for (String str: modifiers) {
-            colors.put(str, color);
+            table.put(str, color);
         }
 
         String [] keywords = {
@@ -149,15 +239,17 @@ public class Highlighter {
         color.setBackColor(Color.BLUE);
         color.setBold(true);
         for (String str: keywords) {
-            colors.put(str, color);
+            table.put(str, color);
         }
 
         String [] operators = {
             "[", "]", "(", ")", "{", "}",
             "*", "-", "+", "/", "=", "%",
-            "^", "&", "!", "<<", ">>", "<<<", ">>>",
+            "^", "&", "!", "<<", ">>", ">>>",
             "&&", "||",
             ">", "<", ">=", "<=", "!=", "==",
+            "++", "--", "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=",
+            "<<=", ">>=", ">>>=", "->", "::", "...",
             ",", ";", ".", "?", ":",
         };
         color = new CellAttributes();
@@ -165,7 +257,7 @@ public class Highlighter {
         color.setBackColor(Color.BLUE);
         color.setBold(true);
         for (String str: operators) {
-            colors.put(str, color);
+            table.put(str, color);
         }
 
         String [] packageKeywords = {
@@ -176,9 +268,24 @@ public class Highlighter {
         color.setBackColor(Color.BLUE);
         color.setBold(true);
         for (String str: packageKeywords) {
-            colors.put(str, color);
+            table.put(str, color);
         }
 
+        colors = new KeywordTable<CellAttributes>(table);
+
+        kindColors = new CellAttributes[Lexer.KINDS];
+        color = new CellAttributes();
+        color.setForeColor(Color.CYAN);
+        color.setBackColor(Color.BLUE);
+        color.setBold(false);
+        kindColors[Lexer.COMMENT] = color;
+
+        color = new CellAttributes();
+        color.setForeColor(Color.MAGENTA);
+        color.setBackColor(Color.BLUE);
+        color.setBold(true);
+        kindColors[Lexer.STRING] = color;
+        kindColors[Lexer.NUMBER] = color;
     }
 
 }
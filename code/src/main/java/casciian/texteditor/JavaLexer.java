@@ -0,0 +1,319 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.texteditor;
+
+/**
+ * JavaLexer splits lines of Java source into tokens.  Block comments and
+ * text blocks can span lines; everything else ends at the end of the line.
+ */
+public class JavaLexer implements Lexer {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The line starts inside a block comment.
+     */
+    private static final int BLOCK_COMMENT = 1;
+
+    /**
+     * The line starts inside a text block.
+     */
+    private static final int TEXT_BLOCK = 2;
+
+    /**
+     * The operators that are more than one character, longest first.
+     */
+    private static final String [] OPERATORS = {
+        ">>>=",
+        "<<=", ">>=", ">>>", "...",
+        "<<", ">>", "&&", "||", "==", "!=", "<=", ">=", "++", "--",
+        "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^=", "->", "::",
+    };
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     */
+    public JavaLexer() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // Lexer ------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Split one line into tokens.
+     *
+     * @param line the text of the line, with tabs already expanded
+     * @param state the lexer state at the start of the line
+     * @param handler the handler for the tokens, or null if only the state
+     * at the end of the line is needed
+     * @return the lexer state at the end of the line
+     */
+    public int scanLine(final CharSequence line, final int state,
+        final TokenHandler handler) {
+
+        int length = line.length();
+        int i = 0;
+
+        if (state == BLOCK_COMMENT) {
+            i = indexOf(line, "*/", 0);
+            if (i == -1) {
+                token(handler, 0, length, COMMENT);
+                return BLOCK_COMMENT;
+            }
+            i += 2;
+            token(handler, 0, i, COMMENT);
+        } else if (state == TEXT_BLOCK) {
+            i = textBlockEnd(line, 0);
+            if (i == -1) {
+                token(handler, 0, length, STRING);
+                return TEXT_BLOCK;
+            }
+            token(handler, 0, i, STRING);
+        }
+
+        while (i < length) {
+            int start = i;
+            int ch = Character.codePointAt(line, i);
+            int kind;
+
+            if (Character.isWhitespace(ch)) {
+                do {
+                    i += Character.charCount(ch);
+                    if (i == length) {
+                        break;
+                    }
+                    ch = Character.codePointAt(line, i);
+                } while (Character.isWhitespace(ch));
+                kind = WHITESPACE;
+            } else if (Character.isJavaIdentifierStart(ch)) {
+                do {
+                    i += Character.charCount(ch);
+                    if (i == length) {
+                        break;
+                    }
+                    ch = Character.codePointAt(line, i);
+                } while (Character.isJavaIdentifierPart(ch));
+                kind = IDENTIFIER;
+            } else if (isDigit(line, i)
+                || ((ch == '.') && isDigit(line, i + 1))
+            ) {
+                i = numberEnd(line, i);
+                kind = NUMBER;
+            } else if (startsWith(line, i, "//")) {
+                i = length;
+                kind = COMMENT;
+            } else if (startsWith(line, i, "/*")) {
+                i = indexOf(line, "*/", i + 2);
+                if (i == -1) {
+                    token(handler, start, length, COMMENT);
+                    return BLOCK_COMMENT;
+                }
+                i += 2;
+                kind = COMMENT;
+            } else if (startsWith(line, i, "\"\"\"")) {
+                i = textBlockEnd(line, i + 3);
+                if (i == -1) {
+                    token(handler, start, length, STRING);
+                    return TEXT_BLOCK;
+                }
+                kind = STRING;
+            } else if ((ch == '"') || (ch == '\'')) {
+                i = quoteEnd(line, i + 1, (char) ch);
+                kind = STRING;
+            } else {
+                i = operatorEnd(line, i);
+                kind = OPERATOR;
+            }
+            token(handler, start, i, kind);
+        }
+        return INITIAL;
+    }
+
+    // ------------------------------------------------------------------------
+    // JavaLexer --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Pass a token to the handler, if there is one.
+     *
+     * @param handler the handler, or null
+     * @param start the index of the first character of the token
+     * @param end the index after the last character of the token
+     * @param kind the token kind
+     */
+    private static void token(final TokenHandler handler, final int start,
+        final int end, final int kind) {
+
+        if (handler != null) {
+            handler.token(start, end, kind);
+        }
+    }
+
+    /**
+     * See if a string appears at a position.
+     *
+     * @param line the text
+     * @param i the position
+     * @param str the string to look for
+     * @return true if line contains str at i
+     */
+    private static boolean startsWith(final CharSequence line, final int i,
+        final String str) {
+
+        if (i + str.length() > line.length()) {
+            return false;
+        }
+        for (int j = 0; j < str.length(); j++) {
+            if (line.charAt(i + j) != str.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find a string.
+     *
+     * @param line the text
+     * @param from the position to start looking at
+     * @param str the string to look for
+     * @return the position of str, or -1 if it is not found
+     */
+    private static int indexOf(final CharSequence line, final String str,
+        final int from) {
+
+        for (int i = from; i + str.length() <= line.length(); i++) {
+            if (startsWith(line, i, str)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * See if there is an ASCII digit at a position.
+     *
+     * @param line the text
+     * @param i the position
+     * @return true if line has a digit at i
+     */
+    private static boolean isDigit(final CharSequence line, final int i) {
+        if (i >= line.length()) {
+            return false;
+        }
+        char ch = line.charAt(i);
+        return ((ch >= '0') && (ch <= '9'));
+    }
+
+    /**
+     * Find the end of an operator or other punctuation.  The longest
+     * operator at the position is one token, so that "&&" can be told from
+     * "&".
+     *
+     * @param line the text
+     * @param i the position of the first character
+     * @return the position after the operator
+     */
+    private static int operatorEnd(final CharSequence line, final int i) {
+        for (String operator: OPERATORS) {
+            if (startsWith(line, i, operator)) {
+                return i + operator.length();
+            }
+        }
+        return i + Character.charCount(Character.codePointAt(line, i));
+    }
+
+    /**
+     * Find the end of a number: digits, letters for the radix, suffix, and
+     * exponent, underscores, a decimal point, and the sign of an exponent.
+     *
+     * @param line the text
+     * @param i the position of the first character of the number
+     * @return the position after the number
+     */
+    private static int numberEnd(final CharSequence line, final int i) {
+        int j = i + 1;
+        while (j < line.length()) {
+            char ch = line.charAt(j);
+            if (Character.isLetterOrDigit(ch) || (ch == '_') || (ch == '.')) {
+                j++;
+            } else if (((ch == '+') || (ch == '-'))
+                && ("eEpP".indexOf(line.charAt(j - 1)) != -1)
+            ) {
+                j++;
+            } else {
+                break;
+            }
+        }
+        return j;
+    }
+
+    /**
+     * Find the end of a string or character literal.  An unterminated
+     * literal ends at the end of the line.
+     *
+     * @param line the text
+     * @param i the position after the opening quote
+     * @param quote the quote character
+     * @return the position after the closing quote
+     */
+    private static int quoteEnd(final CharSequence line, final int i,
+        final char quote) {
+
+        int j = i;
+        while (j < line.length()) {
+            char ch = line.charAt(j);
+            if (ch == '\\') {
+                j += 2;
+            } else if (ch == quote) {
+                return j + 1;
+            } else {
+                j++;
+            }
+        }
+        return line.length();
+    }
+
+    /**
+     * Find the end of a text block.
+     *
+     * @param line the text
+     * @param i the position to start looking at
+     * @return the position after the closing quotes, or -1 if the text block
+     * does not end on this line
+     */
+    private static int textBlockEnd(final CharSequence line, final int i) {
+        int j = i;
+        while (j < line.length()) {
+            if (line.charAt(j) == '\\') {
+                j += 2;
+            } else if (startsWith(line, j, "\"\"\"")) {
+                return j + 3;
+            } else {
+                j++;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.texteditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * KeywordTable is a read-only map from strings to values, built as a
+ * perfect hash: every key has a slot of its own, so a lookup hashes the
+ * characters twice and compares one key, and it can look up a range of a
+ * CharSequence without making a String of it.
+ *
+ * The keys are first hashed into buckets.  Each bucket has a seed, chosen
+ * when the table is built, that hashes all of its keys into empty slots.
+ *
+ * @param <V> the type of the values
+ */
+class KeywordTable<V> {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The most seeds to try for one bucket before making the table bigger.
+     */
+    private static final int MAX_SEEDS = 1 << 16;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The seed for each bucket.
+     */
+    private int [] seeds;
+
+    /**
+     * The keys, by slot.  Empty slots are null.
+     */
+    private String [] keys;
+
+    /**
+     * The values, by slot.
+     */
+    private Object [] values;
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Public constructor.
+     *
+     * @param map the keys and values
+     */
+    public KeywordTable(final Map<String, V> map) {
+        // At most half of the slots are used.
+        int slotCount = Integer.highestOneBit(Math.max(map.size(), 1)) * 4;
+        while (!build(map, slotCount)) {
+            slotCount *= 2;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // KeywordTable -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Try to place every key in a slot.
+     *
+     * @param map the keys and values
+     * @param slotCount the number of slots, a power of two
+     * @return true if a seed was found for every bucket
+     */
+    private boolean build(final Map<String, V> map, final int slotCount) {
+        int bucketCount = slotCount / 2;
+        seeds = new int[bucketCount];
+        keys = new String[slotCount];
+        values = new Object[slotCount];
+
+        List<List<String>> buckets = new ArrayList<List<String>>();
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<String>());
+        }
+        for (String key: map.keySet()) {
+            buckets.get(hash(key, 0, key.length(), 0) & (bucketCount - 1)).
+                add(key);
+        }
+
+        // Place the biggest buckets first, while most slots are free.
+        Integer [] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(final Integer a, final Integer b) {
+                return buckets.get(b).size() - buckets.get(a).size();
+            }
+        });
+
+        int [] slots = new int[map.size()];
+        for (int b: order) {
+            List<String> bucket = buckets.get(b);
+            if (bucket.size() == 0) {
+                break;
+            }
+            int seed = 1;
+            while (!fits(bucket, seed, slots)) {
+                seed++;
+                if (seed == MAX_SEEDS) {
+                    return false;
+                }
+            }
+            seeds[b] = seed;
+            for (int i = 0; i < bucket.size(); i++) {
+                keys[slots[i]] = bucket.get(i);
+                values[slots[i]] = map.get(bucket.get(i));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * See if a seed hashes all of the keys of a bucket into different empty
+     * slots.
+     *
+     * @param bucket the keys
+     * @param seed the seed
+     * @param slots the slot of each key, if the seed fits
+     * @return true if the seed fits
+     */
+    private boolean fits(final List<String> bucket, final int seed,
+        final int [] slots) {
+
+        for (int i = 0; i < bucket.size(); i++) {
+            String key = bucket.get(i);
+            slots[i] = hash(key, 0, key.length(), seed) & (keys.length - 1);
+            if (keys[slots[i]] != null) {
+                return false;
+            }
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slots[i]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hash a range of characters: FNV-1a, then a final mix so that the low
+     * bits depend on every character.
+     *
+     * @param text the text
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @param seed the seed
+     * @return the hash
+     */
+    private static int hash(final CharSequence text, final int start,
+        final int end, final int seed) {
+
+        int h = 0x811C9DC5 ^ (seed * 0x9E3779B9);
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    /**
+     * Look up a range of characters.
+     *
+     * @param text the text
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @return the value, or null if the characters are not a key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(final CharSequence text, final int start, final int end) {
+        int seed = seeds[hash(text, start, end, 0) & (seeds.length - 1)];
+        if (seed == 0) {
+            // An empty bucket.
+            return null;
+        }
+        int slot = hash(text, start, end, seed) & (keys.length - 1);
+        String key = keys[slot];
+        if ((key == null) || (key.length() != end - start)) {
+            return null;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) {
+                return null;
+            }
+        }
+        return (V) values[slot];
+    }
+
+    /**
+     * Look up a string.
+     *
+     * @param key the string
+     * @return the value, or null if the string is not a key
+     */
+    public V get(final String key) {
+        return get(key, 0, key.length());
+    }
+
+}
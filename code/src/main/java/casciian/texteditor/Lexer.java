@@ -0,0 +1,116 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.texteditor;
+
+/**
+ * A Lexer splits a line of text into tokens for Highlighter.  Constructs
+ * that span lines, such as block comments, are carried from one line to
+ * the next as an int state: the state at the end of one line is the state
+ * at the start of the next.  A lexer must not keep any other state between
+ * calls, so that Document can re-lex any line given only the state before
+ * it.
+ */
+public interface Lexer {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The lexer state at the start of a document.
+     */
+    public static final int INITIAL = 0;
+
+    /**
+     * A token that is not highlighted.
+     */
+    public static final int TEXT = 0;
+
+    /**
+     * A run of whitespace.
+     */
+    public static final int WHITESPACE = 1;
+
+    /**
+     * An identifier or keyword.  Highlighter looks these up in its keyword
+     * table.
+     */
+    public static final int IDENTIFIER = 2;
+
+    /**
+     * Punctuation.  Highlighter looks these up in its keyword table.
+     */
+    public static final int OPERATOR = 3;
+
+    /**
+     * A comment.
+     */
+    public static final int COMMENT = 4;
+
+    /**
+     * A string or character literal.
+     */
+    public static final int STRING = 5;
+
+    /**
+     * A number.
+     */
+    public static final int NUMBER = 6;
+
+    /**
+     * The number of token kinds.
+     */
+    public static final int KINDS = 7;
+
+    // ------------------------------------------------------------------------
+    // TokenHandler -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * A TokenHandler receives the tokens of a line from scanLine().
+     */
+    public interface TokenHandler {
+
+        /**
+         * Function to call for each token.
+         *
+         * @param start the index of the first character of the token
+         * @param end the index after the last character of the token
+         * @param kind the token kind, e.g. Lexer.COMMENT
+         */
+        public void token(final int start, final int end, final int kind);
+
+    }
+
+    // ------------------------------------------------------------------------
+    // Lexer ------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Split one line into tokens.  Every character of the line is in
+     * exactly one token, and the tokens are reported in order.
+     *
+     * @param line the text of the line, with tabs already expanded
+     * @param state the lexer state at the start of the line: INITIAL for the
+     * first line, otherwise the value scanLine() returned for the line
+     * before it
+     * @param handler the handler for the tokens, or null if only the state
+     * at the end of the line is needed
+     * @return the lexer state at the end of the line
+     */
+    public int scanLine(final CharSequence line, final int state,
+        final TokenHandler handler);
+
+}
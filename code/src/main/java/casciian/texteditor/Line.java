@@ -62,6 +62,16 @@ public class Line {
      */
     private StringBuilder rawText;
 
+    /**
+     * The lexer state at the start of this line.
+     */
+    private int startState = Lexer.INITIAL;
+
+    /**
+     * The lexer state at the end of this line.
+     */
+    private int endState = Lexer.INITIAL;
+
     // ------------------------------------------------------------------------
     // Constructors -----------------------------------------------------------
     // ------------------------------------------------------------------------
@@ -73,15 +83,88 @@ public class Line {
      * @param str the text string
      * @param defaultColor the color for unhighlighted text
      * @param highlighter the highlighter to use
+     * @param state the lexer state at the start of the line
      */
     @SuppressWarnings("this-escape")
     public Line(final String str, final CellAttributes defaultColor,
-        final Highlighter highlighter) {
+        final Highlighter highlighter, final int state) {
 
         this.defaultColor = defaultColor;
         this.highlighter = highlighter;
+        this.startState = state;
+
+        this.rawText = new StringBuilder(str.length());
+        appendRawText(rawText, str);
+
+        scanLine();
+    }
+
+    /**
+     * Construct a new Line from an existing text string, and highlight
+     * certain strings.  The line is lexed as if it is the first line of
+     * the document.
+     *
+     * @param str the text string
+     * @param defaultColor the color for unhighlighted text
+     * @param highlighter the highlighter to use
+     */
+    public Line(final String str, final CellAttributes defaultColor,
+        final Highlighter highlighter) {
+
+        this(str, defaultColor, highlighter, Lexer.INITIAL);
+    }
+
+    /**
+     * Construct a new Line from an existing text string.
+     *
+     * @param str the text string
+     * @param defaultColor the color for unhighlighted text
+     */
+    public Line(final String str, final CellAttributes defaultColor) {
+        this(str, defaultColor, null);
+    }
+
+    /**
+     * Private constructor used by dup().
+     */
+    private Line() {
+        // NOP
+    }
+
+    // ------------------------------------------------------------------------
+    // Line -------------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Convert a text string to the raw string that a Line constructed from
+     * it would have, without constructing the Line.  Note package private
+     * access.
+     *
+     * @param str the text string
+     * @return the raw string, which is str itself if it needs no changes
+     */
+    static String toRawString(final String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            if ((ch < 0x20) || (ch == 0x7F)) {
+                StringBuilder sb = new StringBuilder(str.length() + 8);
+                appendRawText(sb, str);
+                return sb.toString();
+            }
+        }
+        return str;
+    }
+
+    /**
+     * Append a text string to a raw string: strip carriage returns, expand
+     * tabs, and replace other C0 bytes with CP437 glyphs.
+     *
+     * @param sb the raw string to append to
+     * @param str the text string
+     */
+    private static void appendRawText(final StringBuilder sb,
+        final String str) {
 
-        this.rawText = new StringBuilder();
         int col = 0;
         for (int i = 0; i < str.length(); i++) {
             char ch = str.charAt(i);
@@ -94,61 +177,74 @@ public class Line {
                 // Expand tabs
                 int j = col % 8;
                 do {
-                    rawText.append(' ');
+                    sb.append(' ');
                     j++;
                     col++;
                 } while ((j % 8) != 0);
                 continue;
             }
-            if ((ch <= 0x20) || (ch == 0x7F)) {
+            if ((ch < 0x20) || (ch == 0x7F)) {
                 // Replace all other C0 bytes with CP437 glyphs.
-                rawText.append(GraphicsChars.CP437[(int) ch]);
+                sb.append(GraphicsChars.CP437[(int) ch]);
                 col++;
                 continue;
             }
 
-            rawText.append(ch);
+            sb.append(ch);
             col++;
         }
-
-        scanLine();
     }
 
     /**
-     * Construct a new Line from an existing text string.
+     * Create a duplicate instance.  The words are shared rather than
+     * scanned again: they are never changed once scanLine() makes them.
      *
-     * @param str the text string
-     * @param defaultColor the color for unhighlighted text
+     * @return duplicate intance
      */
-    public Line(final String str, final CellAttributes defaultColor) {
-        this(str, defaultColor, null);
+    public Line dup() {
+        Line other = new Line();
+        other.defaultColor = defaultColor;
+        other.highlighter = highlighter;
+        other.position = position;
+        other.screenPosition = screenPosition;
+        other.rawText = new StringBuilder(rawText);
+        other.startState = startState;
+        other.endState = endState;
+        other.words.addAll(words);
+        return other;
     }
 
     /**
-     * Private constructor used by dup().
+     * Get the lexer state at the start of this line.  Note package private
+     * access.
+     *
+     * @return the state
      */
-    private Line() {
-        // NOP
+    int getStartState() {
+        return startState;
     }
 
-    // ------------------------------------------------------------------------
-    // Line -------------------------------------------------------------------
-    // ------------------------------------------------------------------------
+    /**
+     * Set the lexer state at the start of this line, and scan the line
+     * again if it changed.  Note package private access.
+     *
+     * @param state the state
+     */
+    void setStartState(final int state) {
+        if (state != startState) {
+            startState = state;
+            scanLine();
+        }
+    }
 
     /**
-     * Create a duplicate instance.
+     * Get the lexer state at the end of this line.  Note package private
+     * access.
      *
-     * @return duplicate intance
+     * @return the state
      */
-    public Line dup() {
-        Line other = new Line();
-        other.defaultColor = defaultColor;
-        other.highlighter = highlighter;
-        other.position = position;
-        other.screenPosition = screenPosition;
-        other.rawText = new StringBuilder(rawText);
-        other.scanLine();
-        return other;
+    int getEndState() {
+        return endState;
     }
 
     /**
@@ -247,6 +343,17 @@ public class Line {
      */
     void scanLine() {
         words.clear();
+        if (highlighter != null) {
+            endState = highlighter.scanLine(rawText, startState, words,
+                defaultColor);
+            if (words.size() == 0) {
+                words.add(new Word(rawText, 0, 0, defaultColor));
+            }
+            return;
+        }
+
+        // Without a highlighter, split at whitespace.
+        endState = startState;
         Word word = new Word(this.defaultColor, this.highlighter);
         words.add(word);
         for (int i = 0; i < rawText.length();) {
@@ -399,10 +506,8 @@ public class Line {
     public void replaceChar(final int ch) {
         if (screenPosition < getDisplayLength() - 1) {
             // Replace character
-            String oldText = rawText.toString();
-            rawText = new StringBuilder(oldText.substring(0, position));
-            rawText.append(Character.toChars(ch));
-            rawText.append(oldText.substring(position + 1));
+            rawText.replace(position, position + 1,
+                new String(Character.toChars(ch)));
             screenPosition += StringUtils.width(rawText.codePointAt(position));
             position += Character.charCount(ch);
         } else {
@@ -0,0 +1,838 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Written 2013-2025 by Autumn Lamonte
+ *
+ * To the extent possible under law, the author(s) have dedicated all
+ * copyright and related and neighboring rights to this software to the
+ * public domain worldwide. This software is distributed without any
+ * warranty.
+ *
+ * You should have received a copy of the CC0 Public Domain Dedication along
+ * with this software. If not, see
+ * <http://creativecommons.org/publicdomain/zero/1.0/>.
+ */
+package casciian.texteditor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * PieceTable stores the text of a Document as UTF-8, in a sequence of
+ * pieces, each of which is a span of either the original (never modified)
+ * text or of an append-only buffer of inserted text.  Both buffers keep a
+ * sorted index of their newline positions, so that finding the start of a
+ * line is a walk over the pieces plus a binary search, rather than a scan
+ * of the text.  The number of pieces grows with the number of edits, not
+ * with the size of the text.
+ *
+ * The original text may be a memory-mapped file.  Its newline index is
+ * then built by a background thread, and by any lookup that gets ahead of
+ * it.  Until the index is complete, only the lines found so far are
+ * counted, and the first edit waits for the index to finish.
+ *
+ * If a memory-mapped file is truncated while it is open, for example by
+ * log rotation, touching the lost pages would crash with SIGBUS, so the
+ * file's size is checked before each read.  Reading the lost part throws
+ * UncheckedIOException instead, and the index ends where the text could no
+ * longer be read.
+ *
+ * Offsets are in bytes.  Lines are separated by '\n', which never appears
+ * inside a multi-byte UTF-8 sequence.  There is always at least one line.
+ */
+class PieceTable {
+
+    // ------------------------------------------------------------------------
+    // Constants --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The number of bytes of the original text to index at a time.
+     */
+    private static final int INDEX_CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * The number of lines to index before the constructor returns, enough
+     * for the first screen.
+     */
+    private static final int INDEX_FIRST_LINES = 1000;
+
+    // ------------------------------------------------------------------------
+    // Variables --------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * The original text.
+     */
+    private ByteBuffer original;
+
+    /**
+     * The file that original is mapped from, or null.
+     */
+    private FileChannel originalFile = null;
+
+    /**
+     * If true, reading original failed because the file was truncated.
+     */
+    private boolean originalLost = false;
+
+    /**
+     * The number of bytes of original that are part of the text.
+     */
+    private int originalLength;
+
+    /**
+     * The positions of '\n' in original.  It grows as the text is indexed.
+     */
+    private int [] originalBreaks = new int[16];
+
+    /**
+     * The number of entries used in originalBreaks.
+     */
+    private int originalBreaksN = 0;
+
+    /**
+     * The number of bytes of original that have been indexed.
+     */
+    private int indexed = 0;
+
+    /**
+     * A buffer to copy original into while indexing it.
+     */
+    private byte [] indexChunk = null;
+
+    /**
+     * If true, the background thread stops indexing.
+     */
+    private volatile boolean indexCancelled = false;
+
+    /**
+     * The inserted text.  Text is only ever appended to this.
+     */
+    private byte [] added = new byte[1024];
+
+    /**
+     * The number of bytes used in added.
+     */
+    private int addedLength = 0;
+
+    /**
+     * The positions of '\n' in added.
+     */
+    private int [] addedBreaks = new int[16];
+
+    /**
+     * The number of entries used in addedBreaks.
+     */
+    private int addedBreaksN = 0;
+
+    /**
+     * The pieces, in text order.
+     */
+    private ArrayList<Piece> pieces = new ArrayList<Piece>();
+
+    /**
+     * The total number of bytes.
+     */
+    private int length = 0;
+
+    /**
+     * The total number of '\n' bytes.
+     */
+    private int breaks = 0;
+
+    /**
+     * The index of the piece most recently found by a lookup.  Lookups
+     * start here instead of at the first piece, and edits keep it valid, so
+     * reading or editing near the last place costs a few steps however many
+     * pieces there are.
+     */
+    private int finger = 0;
+
+    /**
+     * The text offset of the start of pieces[finger].
+     */
+    private int fingerOffset = 0;
+
+    /**
+     * The number of '\n' bytes before pieces[finger].
+     */
+    private int fingerBreaks = 0;
+
+    /**
+     * One span of text from either the original or the added buffer.
+     */
+    private static class Piece {
+        /**
+         * If true, this piece is in the added buffer.
+         */
+        public boolean added;
+
+        /**
+         * The position in the buffer.
+         */
+        public int start;
+
+        /**
+         * The number of bytes.
+         */
+        public int length;
+
+        /**
+         * The number of '\n' bytes.
+         */
+        public int breaks;
+
+        /**
+         * The index into the buffer's newline positions of this piece's
+         * first '\n'.
+         */
+        public int firstBreak;
+    }
+
+    // ------------------------------------------------------------------------
+    // Constructors -----------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Package private constructor.  Trailing newlines are not part of the
+     * text, matching how Document has always split a file into lines.
+     *
+     * @param text the original text
+     */
+    PieceTable(final CharSequence text) {
+        this(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)),
+            false);
+    }
+
+    /**
+     * Package private constructor.  Trailing newlines are not part of the
+     * text.
+     *
+     * @param text the original text as UTF-8, usually a memory-mapped file.
+     * It is read but never modified.
+     * @param background if true, index the text in a background thread
+     * after indexing enough of it for the first screen.  If false, index all
+     * of it now.
+     */
+    PieceTable(final ByteBuffer text, final boolean background) {
+        this(text, background, null);
+    }
+
+    /**
+     * Package private constructor.  Trailing newlines are not part of the
+     * text.
+     *
+     * @param text the original text as UTF-8, usually a memory-mapped file.
+     * It is read but never modified.
+     * @param background if true, index the text in a background thread
+     * after indexing enough of it for the first screen.  If false, index all
+     * of it now.
+     * @param file the open file that text is mapped from, or null.  It is
+     * closed by close().
+     */
+    @SuppressWarnings("this-escape")
+    PieceTable(final ByteBuffer text, final boolean background,
+        final FileChannel file) {
+
+        original = text;
+        originalFile = file;
+        originalLength = text.limit();
+        while ((originalLength > 0)
+            && (text.get(originalLength - 1) == '\n')
+        ) {
+            originalLength--;
+        }
+        if (originalLength > 0) {
+            pieces.add(newPiece(false, 0, originalLength));
+        }
+        length = originalLength;
+
+        if (!background) {
+            finishIndex();
+            return;
+        }
+        while (!isIndexed() && (originalBreaksN < INDEX_FIRST_LINES)) {
+            indexNextChunk();
+        }
+        if (!isIndexed()) {
+            Thread.ofVirtual().name("PieceTable index").start(new Runnable() {
+                public void run() {
+                    try {
+                        while (indexInBackground()) {
+                            Thread.yield();
+                        }
+                    } catch (UncheckedIOException e) {
+                        // SQUASH: the file was truncated.  The index ends
+                        // here, and lookups report the lost text.
+                    }
+                }
+            });
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // PieceTable -------------------------------------------------------------
+    // ------------------------------------------------------------------------
+
+    /**
+     * Get the number of bytes.
+     *
+     * @return the length
+     */
+    public synchronized int length() {
+        return length;
+    }
+
+    /**
+     * Get the number of lines.  If the original text is still being
+     * indexed, this is the number of lines found so far.
+     *
+     * @return the number of lines, at least 1
+     */
+    public synchronized int getLineCount() {
+        if (isIndexed()) {
+            return breaks + 1;
+        }
+        return Math.max(breaks, 1);
+    }
+
+    /**
+     * See if the whole original text has been indexed.
+     *
+     * @return true if the line count is final
+     */
+    public synchronized boolean isIndexed() {
+        return (indexed == originalLength);
+    }
+
+    /**
+     * Index the rest of the original text now.
+     */
+    public synchronized void finishIndex() {
+        while (!isIndexed()) {
+            indexNextChunk();
+        }
+        indexChunk = null;
+    }
+
+    /**
+     * Stop the background thread and close the mapped file.  The text can
+     * still be read, but is no longer checked for truncation.  This does
+     * not wait for the chunk being indexed.
+     */
+    public void close() {
+        indexCancelled = true;
+        FileChannel file = originalFile;
+        originalFile = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                // SQUASH
+            }
+        }
+    }
+
+    /**
+     * See if the mapped file has been truncated since it was mapped.  Some
+     * of the text might no longer be readable.
+     *
+     * @return true if the file is shorter than it was, or could not be read
+     */
+    public synchronized boolean isTruncated() {
+        if (originalLost) {
+            return true;
+        }
+        FileChannel file = originalFile;
+        if (file == null) {
+            return false;
+        }
+        try {
+            return (file.size() < original.limit());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Get the offset of the first byte of a line.
+     *
+     * @param line the line number, 0-based
+     * @return the offset
+     */
+    public synchronized int getLineStart(final int line) {
+        if (line == 0) {
+            return 0;
+        }
+        return findBreak(line - 1) + 1;
+    }
+
+    /**
+     * Get the offset just past the last byte of a line, which is either a
+     * '\n' or the end of the text.
+     *
+     * @param line the line number, 0-based
+     * @return the offset
+     */
+    public synchronized int getLineEnd(final int line) {
+        while (!isIndexed() && (line >= breaks)) {
+            indexNextChunk();
+        }
+        if (line == breaks) {
+            return length;
+        }
+        return findBreak(line);
+    }
+
+    /**
+     * Get the text of one line, without its '\n'.
+     *
+     * @param line the line number, 0-based
+     * @return the text
+     */
+    public synchronized String getLine(final int line) {
+        return substring(getLineStart(line), getLineEnd(line));
+    }
+
+    /**
+     * Get a range of the text.
+     *
+     * @param start the first offset
+     * @param end one past the last offset
+     * @return the text
+     */
+    public synchronized String substring(final int start, final int end) {
+        byte [] bytes = getBytes(start, end);
+        return new String(bytes, 0, bytes.length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Insert text.
+     *
+     * @param offset the offset to insert at
+     * @param text the text to insert
+     */
+    public synchronized void insert(final int offset,
+        final CharSequence text) {
+
+        byte [] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        insert(offset, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Delete a range of text.
+     *
+     * @param start the first offset
+     * @param end one past the last offset
+     */
+    public synchronized void delete(final int start, final int end) {
+        if (start >= end) {
+            return;
+        }
+        finishIndex();
+        int first = split(start);
+        int last = split(end);
+        int removedLength = 0;
+        int removedBreaks = 0;
+        for (int i = first; i < last; i++) {
+            if (i == finger) {
+                // The finger's piece is going away, so move it to where the
+                // deleted range starts.
+                finger = first;
+                fingerOffset -= removedLength;
+                fingerBreaks -= removedBreaks;
+            }
+            removedLength += pieces.get(i).length;
+            removedBreaks += pieces.get(i).breaks;
+        }
+        if (finger >= last) {
+            finger -= last - first;
+            fingerOffset -= removedLength;
+            fingerBreaks -= removedBreaks;
+        }
+        length -= removedLength;
+        breaks -= removedBreaks;
+        pieces.subList(first, last).clear();
+        if ((finger == pieces.size()) && (finger > 0)) {
+            // The text after the finger was deleted.
+            finger--;
+            fingerOffset -= pieces.get(finger).length;
+            fingerBreaks -= pieces.get(finger).breaks;
+        }
+    }
+
+    /**
+     * Replace a range of text.
+     *
+     * @param start the first offset
+     * @param end one past the last offset
+     * @param text the new text
+     */
+    public synchronized void replace(final int start, final int end,
+        final CharSequence text) {
+
+        delete(start, end);
+        insert(start, text);
+    }
+
+    /**
+     * Replace the text of one line.  Only the bytes that differ from the
+     * line's current text are changed, so typing one character inserts one
+     * character.
+     *
+     * @param line the line number, 0-based
+     * @param text the new text, without a '\n'
+     */
+    public synchronized void setLine(final int line, final String text) {
+        int start = getLineStart(line);
+        int end = getLineEnd(line);
+        byte [] oldBytes = getBytes(start, end);
+        byte [] newBytes = text.getBytes(StandardCharsets.UTF_8);
+
+        int n = Math.min(oldBytes.length, newBytes.length);
+        int prefix = 0;
+        while ((prefix < n) && (oldBytes[prefix] == newBytes[prefix])) {
+            prefix++;
+        }
+        int suffix = 0;
+        while ((suffix < n - prefix)
+            && (oldBytes[oldBytes.length - 1 - suffix] ==
+                newBytes[newBytes.length - 1 - suffix])
+        ) {
+            suffix++;
+        }
+        delete(start + prefix, end - suffix);
+        insert(start + prefix, newBytes, prefix,
+            newBytes.length - suffix - prefix);
+    }
+
+    /**
+     * Insert UTF-8 bytes.
+     *
+     * @param offset the offset to insert at
+     * @param bytes the bytes to insert
+     * @param off the first byte to insert
+     * @param len the number of bytes to insert
+     */
+    private void insert(final int offset, final byte [] bytes, final int off,
+        final int len) {
+
+        if (len == 0) {
+            return;
+        }
+        finishIndex();
+
+        int start = addedLength;
+        int firstBreak = addedBreaksN;
+        if (addedLength + len > added.length) {
+            added = Arrays.copyOf(added, Math.max(added.length * 2,
+                    addedLength + len));
+        }
+        System.arraycopy(bytes, off, added, addedLength, len);
+        addedLength += len;
+        for (int i = 0; i < len; i++) {
+            if (bytes[off + i] == '\n') {
+                if (addedBreaksN == addedBreaks.length) {
+                    addedBreaks = Arrays.copyOf(addedBreaks, addedBreaksN * 2);
+                }
+                addedBreaks[addedBreaksN++] = start + i;
+            }
+        }
+        int newBreaks = addedBreaksN - firstBreak;
+
+        int i = split(offset);
+        length += len;
+        breaks += newBreaks;
+        if (i > 0) {
+            Piece previous = pieces.get(i - 1);
+            if (previous.added && (previous.start + previous.length == start)) {
+                // Typing: extend the piece that was just inserted.
+                previous.length += len;
+                previous.breaks += newBreaks;
+                if (finger >= i) {
+                    fingerOffset += len;
+                    fingerBreaks += newBreaks;
+                }
+                return;
+            }
+        }
+        pieces.add(i, newPiece(true, start, len));
+        // A finger on piece i now points at the new piece, which starts at
+        // the same place.
+        if (finger > i) {
+            finger++;
+            fingerOffset += len;
+            fingerBreaks += newBreaks;
+        }
+    }
+
+    /**
+     * Get a range of the text as UTF-8.
+     *
+     * @param start the first offset
+     * @param end one past the last offset
+     * @return the bytes
+     */
+    private byte [] getBytes(final int start, final int end) {
+        byte [] bytes = new byte[end - start];
+        if (start == end) {
+            return bytes;
+        }
+        int i = findPiece(start);
+        int pieceOffset = fingerOffset;
+        int offset = start;
+        while (offset < end) {
+            Piece piece = pieces.get(i);
+            int from = piece.start + offset - pieceOffset;
+            int to = piece.start + Math.min(end - pieceOffset, piece.length);
+            if (piece.added) {
+                System.arraycopy(added, from, bytes, offset - start,
+                    to - from);
+            } else {
+                readOriginal(from, bytes, offset - start, to - from);
+            }
+            offset += to - from;
+            pieceOffset += piece.length;
+            i++;
+        }
+        return bytes;
+    }
+
+    /**
+     * Index the next chunk of the original text, if the index is not done.
+     * This is called by the background thread, one chunk at a time so that
+     * lookups can get in between.
+     *
+     * @return true if there is more to index
+     */
+    private synchronized boolean indexInBackground() {
+        if (indexCancelled) {
+            indexChunk = null;
+            return false;
+        }
+        if (!isIndexed()) {
+            indexNextChunk();
+        }
+        if (isIndexed()) {
+            indexChunk = null;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Index the next chunk of the original text.  Until the index is done
+     * there have been no edits, so the original text is the only piece.
+     */
+    private void indexNextChunk() {
+        if (indexChunk == null) {
+            indexChunk = new byte[INDEX_CHUNK_SIZE];
+        }
+        int n = Math.min(INDEX_CHUNK_SIZE, originalLength - indexed);
+        try {
+            readOriginal(indexed, indexChunk, 0, n);
+        } catch (UncheckedIOException e) {
+            // End the text where it could no longer be read, so that
+            // lookups do not try to index the rest again.
+            originalLength = indexed;
+            length = indexed;
+            if (indexed == 0) {
+                pieces.clear();
+            } else {
+                pieces.get(0).length = indexed;
+            }
+            breaks = originalBreaksN;
+            resetFinger();
+            throw e;
+        }
+        for (int i = 0; i < n; i++) {
+            if (indexChunk[i] == '\n') {
+                if (originalBreaksN == originalBreaks.length) {
+                    originalBreaks = Arrays.copyOf(originalBreaks,
+                        originalBreaksN * 2);
+                }
+                originalBreaks[originalBreaksN++] = indexed + i;
+            }
+        }
+        indexed += n;
+        breaks = originalBreaksN;
+        if (pieces.size() > 0) {
+            pieces.get(0).breaks = originalBreaksN;
+        }
+    }
+
+    /**
+     * Copy bytes out of the original text.  A memory-mapped file that was
+     * truncated after it was mapped faults on the lost pages, which the JVM
+     * reports as an InternalError at some later point, so the size of the
+     * open file is checked first.
+     *
+     * @param from the first offset in original
+     * @param bytes the array to copy into
+     * @param off the first index of bytes to copy into
+     * @param len the number of bytes
+     * @throws UncheckedIOException if the bytes can no longer be read
+     */
+    private void readOriginal(final int from, final byte [] bytes,
+        final int off, final int len) {
+
+        FileChannel file = originalFile;
+        if (file != null) {
+            long size;
+            try {
+                size = file.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (size < from + len) {
+                originalLost = true;
+                throw new UncheckedIOException(new IOException("The file " +
+                        "was truncated while it was open"));
+            }
+        }
+        original.get(from, bytes, off, len);
+    }
+
+    /**
+     * Create a piece, counting its newlines.
+     *
+     * @param inAdded if true, the piece is in the added buffer
+     * @param start the position in the buffer
+     * @param pieceLength the number of bytes
+     * @return the new piece
+     */
+    private Piece newPiece(final boolean inAdded, final int start,
+        final int pieceLength) {
+
+        Piece piece = new Piece();
+        piece.added = inAdded;
+        piece.start = start;
+        piece.length = pieceLength;
+        int [] bufferBreaks = (inAdded ? addedBreaks : originalBreaks);
+        int n = (inAdded ? addedBreaksN : originalBreaksN);
+        piece.firstBreak = lowerBound(bufferBreaks, n, start);
+        piece.breaks = lowerBound(bufferBreaks, n, start + pieceLength)
+            - piece.firstBreak;
+        return piece;
+    }
+
+    /**
+     * Make sure a piece starts at an offset, splitting a piece in two if
+     * needed.
+     *
+     * @param offset the offset
+     * @return the index of the piece that starts at offset, or the number of
+     * pieces if offset is the end of the text
+     */
+    private int split(final int offset) {
+        if (offset == length) {
+            return pieces.size();
+        }
+        int i = findPiece(offset);
+        if (offset == fingerOffset) {
+            return i;
+        }
+        // The finger stays on piece i, which still starts at fingerOffset.
+        Piece piece = pieces.get(i);
+        int n = offset - fingerOffset;
+        pieces.set(i, newPiece(piece.added, piece.start, n));
+        pieces.add(i + 1, newPiece(piece.added, piece.start + n,
+                piece.length - n));
+        return i + 1;
+    }
+
+    /**
+     * Find the piece that contains an offset, and leave the finger on it.
+     *
+     * @param offset the offset, less than length
+     * @return the index of the piece
+     */
+    private int findPiece(final int offset) {
+        if (offset < fingerOffset - offset) {
+            // Closer to the start than to the finger.
+            resetFinger();
+        }
+        while (offset < fingerOffset) {
+            finger--;
+            fingerOffset -= pieces.get(finger).length;
+            fingerBreaks -= pieces.get(finger).breaks;
+        }
+        while (offset >= fingerOffset + pieces.get(finger).length) {
+            fingerOffset += pieces.get(finger).length;
+            fingerBreaks += pieces.get(finger).breaks;
+            finger++;
+        }
+        return finger;
+    }
+
+    /**
+     * Find the offset of a '\n', and leave the finger on its piece.
+     *
+     * @param n which '\n' to find, 0-based
+     * @return the offset
+     */
+    private int findBreak(final int n) {
+        while (!isIndexed() && (n >= breaks)) {
+            indexNextChunk();
+        }
+        if (n < fingerBreaks - n) {
+            // Closer to the start than to the finger.
+            resetFinger();
+        }
+        while (n < fingerBreaks) {
+            finger--;
+            fingerOffset -= pieces.get(finger).length;
+            fingerBreaks -= pieces.get(finger).breaks;
+        }
+        while (n >= fingerBreaks + pieces.get(finger).breaks) {
+            fingerOffset += pieces.get(finger).length;
+            fingerBreaks += pieces.get(finger).breaks;
+            finger++;
+        }
+        Piece piece = pieces.get(finger);
+        int [] bufferBreaks = (piece.added ? addedBreaks : originalBreaks);
+        return fingerOffset + bufferBreaks[piece.firstBreak + n - fingerBreaks]
+            - piece.start;
+    }
+
+    /**
+     * Move the finger back to the first piece.
+     */
+    private void resetFinger() {
+        finger = 0;
+        fingerOffset = 0;
+        fingerBreaks = 0;
+    }
+
+    /**
+     * Find the first index in a sorted array whose value is not less than a
+     * key.
+     *
+     * @param array the sorted array
+     * @param n the number of entries used in array
+     * @param key the key
+     * @return the index, or n if every value is less than key
+     */
+    private static int lowerBound(final int [] array, final int n,
+        final int key) {
+
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (array[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
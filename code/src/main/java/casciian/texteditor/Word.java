@@ -21,9 +21,8 @@ import casciian.bits.StringUtils;
  * A Word represents text that was entered by the user.  It can be either
  * whitespace or non-whitespace.
  *
- * Very dumb highlighting is supported, it has no sense of parsing (not even
- * comments).  For now this only highlights some Java keywords and
- * puctuation.
+ * Highlighting is done by Highlighter, which makes one word for each token
+ * that its Lexer finds.
  */
 public class Word {
 
@@ -71,6 +70,24 @@ public class Word {
         text.append(Character.toChars(ch));
     }
 
+    /**
+     * Construct a word from a range of characters, with a color already
+     * chosen.  Note package private access: this is only called by
+     * Highlighter.
+     *
+     * @param text the text
+     * @param start the index of the first character of the word
+     * @param end the index after the last character of the word
+     * @param color the color for this word
+     */
+    Word(final CharSequence text, final int start, final int end,
+        final CellAttributes color) {
+
+        this.defaultColor = color;
+        this.color.setTo(color);
+        this.text.append(text, start, end);
+    }
+
     /**
      * Construct a word with an empty string.
      *
@@ -14,10 +14,10 @@
  */
 package demo;
 
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.text.MessageFormat;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 
 import casciian.net.TelnetServerSocket;
 
@@ -52,7 +52,7 @@ public class Demo2 {
      * @param args Command line arguments
      */
     public static void main(final String [] args) {
-        ServerSocket server = null;
+        TelnetServerSocket server = null;
         try {
             if (args.length == 0) {
                 System.err.println(i18n.getString("usageString"));
@@ -61,27 +61,39 @@ public class Demo2 {
 
             int port = Integer.parseInt(args[0]);
             server = new TelnetServerSocket(port);
-            while (true) {
-                Socket socket = server.accept();
-                System.out.println(MessageFormat.
-                    format(i18n.getString("newConnection"), socket));
-                DemoApplication app = new DemoApplication(socket.getInputStream(),
-                    socket.getOutputStream());
-                (new Thread(app)).start();
-                Thread.sleep(500);
-                System.out.println(MessageFormat.
-                    format(i18n.getString("terminal"),
-                    ((casciian.net.TelnetInputStream) socket.getInputStream()).
-                        getTerminalType()));
-                System.out.println(MessageFormat.
-                    format(i18n.getString("username"),
-                    ((casciian.net.TelnetInputStream) socket.getInputStream()).
-                        getUsername()));
-                System.out.println(MessageFormat.
-                    format(i18n.getString("language"),
-                    ((casciian.net.TelnetInputStream) socket.getInputStream()).
-                        getLanguage()));
-            }
+
+            /*
+             * Each connection is handled on its own virtual thread.  The
+             * application itself gets a platform thread, because
+             * TApplication waits on monitors, which would pin a virtual
+             * thread to its carrier.
+             */
+            server.serve(new Consumer<Socket>() {
+                public void accept(final Socket socket) {
+                    try {
+                        System.out.println(MessageFormat.
+                            format(i18n.getString("newConnection"), socket));
+                        DemoApplication app = new DemoApplication(
+                            socket.getInputStream(), socket.getOutputStream());
+                        (new Thread(app)).start();
+                        Thread.sleep(500);
+                        System.out.println(MessageFormat.
+                            format(i18n.getString("terminal"),
+                            ((casciian.net.TelnetInputStream) socket.
+                                getInputStream()).getTerminalType()));
+                        System.out.println(MessageFormat.
+                            format(i18n.getString("username"),
+                            ((casciian.net.TelnetInputStream) socket.
+                                getInputStream()).getUsername()));
+                        System.out.println(MessageFormat.
+                            format(i18n.getString("language"),
+                            ((casciian.net.TelnetInputStream) socket.
+                                getInputStream()).getLanguage()));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -278,9 +278,12 @@ public class DemoMainWindow extends TWindow {
                         timer1.setRecurring(false);
                     }
                     progressBar1.setValue(timer1I);
+                    timerLabel.invalidate();
+                    progressBar1.invalidate();
                 }
             }
         );
+        timer1.setRepaint(false);
 
         row++;
         progressBar2 = addProgressBar(col + 13, row, 12, 0, true);
@@ -299,9 +302,11 @@ public class DemoMainWindow extends TWindow {
                         timer2.setRecurring(false);
                     }
                     progressBar2.setValue(timer2I);
+                    progressBar2.invalidate();
                 }
             }
         );
+        timer2.setRepaint(false);
 
         if (false) {
             addButton("Exception", col, row + 3,
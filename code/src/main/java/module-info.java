@@ -26,6 +26,8 @@
 module casciian {
     requires java.base;
     requires transitive java.xml;
+    // sun.misc.Signal, only reached by reflection in WindowChangeSignal.
+    requires jdk.unsupported;
 
     exports casciian;
     exports casciian.backend;
@@ -0,0 +1,123 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for TApplication
+ */
+package casciian;
+
+import java.util.List;
+
+import casciian.backend.HeadlessBackend;
+import casciian.bits.CellAttributes;
+import casciian.event.TKeypressEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for TApplication - validates that input handled by one window
+ * only redraws that window.
+ */
+@DisplayName("TApplication Tests")
+class TApplicationTest {
+
+    private HeadlessBackend backend;
+    private TApplication app;
+    private TWindow window;
+    private TField field;
+
+    @BeforeEach
+    void setUp() {
+        backend = new HeadlessBackend();
+        app = new TApplication(backend);
+        window = new TWindow(app, "Test", 10, 5, 30, 8);
+        field = window.addField(1, 1, 20, false);
+        field.activate();
+
+        // Start from a drawn screen.
+        app.repaint = false;
+        app.takeDamage();
+    }
+
+    private TKeypressEvent key(final char ch) {
+        return new TKeypressEvent(backend, false, 0, ch, false, false, false);
+    }
+
+    @Test
+    @DisplayName("A field edit damages its window, not the whole screen")
+    void testFieldEditDamagesWindow() {
+        app.dispatchInput(key('x'), true);
+        assertEquals("x", field.getText());
+        assertFalse(app.repaint);
+
+        List<int []> damage = app.takeDamage();
+        assertNotNull(damage);
+        int [] windowRect = null;
+        for (int [] rect: damage) {
+            if ((rect[0] == window.getX()) && (rect[1] == window.getY())) {
+                windowRect = rect;
+            }
+        }
+        assertNotNull(windowRect);
+        // The window and its shadow.
+        assertEquals(window.getWidth() + 2, windowRect[2]);
+        assertEquals(window.getHeight() + 1, windowRect[3]);
+        for (int [] rect: damage) {
+            assertTrue(rect[2] * rect[3]
+                < backend.getScreen().getWidth()
+                    * backend.getScreen().getHeight());
+        }
+    }
+
+    @Test
+    @DisplayName("Closing a window repaints the whole screen")
+    void testLayoutChangeRepaints() {
+        app.dispatchInput(new TKeypressEvent(backend, TKeypress.kbCtrlW),
+            true);
+        assertTrue(app.repaint);
+    }
+
+    @Test
+    @DisplayName("Widget damage is positioned when it is taken")
+    void testWidgetDamageFollowsWidget() {
+        field.invalidate();
+        window.setX(20);
+        List<int []> damage = app.takeDamage();
+        assertNotNull(damage);
+        assertEquals(1, damage.size());
+        assertEquals(field.getAbsoluteX(), damage.get(0)[0]);
+        assertEquals(field.getAbsoluteY(), damage.get(0)[1]);
+        assertEquals(field.getWidth(), damage.get(0)[2]);
+    }
+
+    @Test
+    @DisplayName("Animation ticks redraw only the cells that blink or pulse")
+    void testInvalidateAnimated() {
+        app.invalidateAnimated();
+        assertNull(app.takeDamage());
+
+        CellAttributes blink = new CellAttributes();
+        blink.setBlink(true);
+        backend.getScreen().putStringXY(5, 3, "blink", blink);
+        backend.getScreen().putCharXY(2, 20, 'x', new CellAttributes());
+        app.invalidateAnimated();
+        assertFalse(app.repaint);
+        List<int []> damage = app.takeDamage();
+        assertNotNull(damage);
+        assertEquals(1, damage.size());
+        assertArrayEquals(new int[] { 5, 3, 5, 1 }, damage.get(0));
+    }
+
+    @Test
+    @DisplayName("Timers repaint the screen unless told not to")
+    void testTimerRepaintDefault() {
+        TTimer timer = app.addTimer(1000, false, null);
+        assertTrue(timer.isRepaint());
+        timer.setRepaint(false);
+        assertFalse(timer.isRepaint());
+        app.removeTimer(timer);
+    }
+
+}
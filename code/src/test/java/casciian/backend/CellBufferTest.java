@@ -0,0 +1,141 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for CellBuffer
+ */
+package casciian.backend;
+
+import casciian.bits.Cell;
+import casciian.bits.CellAttributes;
+import casciian.bits.Color;
+import casciian.bits.ComplexCell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for CellBuffer - validates that cells read back the way
+ * ComplexCell would store them, and that comparisons and copies match
+ * ComplexCell.equals().
+ */
+@DisplayName("CellBuffer Tests")
+class CellBufferTest {
+
+    @Test
+    @DisplayName("Cells read back as they were written")
+    void testReadWrite() {
+        CellBuffer buffer = new CellBuffer(10, 3);
+        ComplexCell cell = new ComplexCell(new int [] { 'e', 0x301 });
+        cell.setForeColorRGB(0x123456);
+        cell.setBackColor(Color.BLUE);
+        cell.setBold(true);
+        cell.setWidth(Cell.Width.LEFT);
+        buffer.setCell(4, 2, cell);
+
+        ComplexCell read = buffer.readCell(4, 2, new ComplexCell());
+        assertEquals(cell, read);
+        assertEquals(2, read.getCodePointCount());
+        assertEquals(Cell.Width.LEFT, buffer.getCellWidth(4, 2));
+        assertTrue(buffer.readCell(3, 2, new ComplexCell()).isBlank());
+
+        // Attributes alone keep the cluster and width.
+        CellAttributes attr = new CellAttributes();
+        attr.setUnderline(true);
+        buffer.setAttr(4, 2, attr);
+        read = buffer.readCell(4, 2, read);
+        assertEquals(0x301, read.getCodePoints()[1]);
+        assertTrue(read.isUnderline());
+        assertFalse(read.isBold());
+        assertEquals(Cell.Width.LEFT, read.getWidth());
+
+        // Background color alone.
+        attr.setBackColorRGB(0xABCDEF);
+        buffer.setBackColor(4, 2, attr);
+        assertEquals(0xABCDEF, buffer.getBackColorRGB(4, 2));
+        attr.setBackColor(Color.RED);
+        buffer.setBackColor(4, 2, attr);
+        assertEquals(-1, buffer.getBackColorRGB(4, 2));
+        assertEquals(Color.RED, buffer.getBackColor(4, 2));
+
+        // A character releases the cluster.
+        buffer.setChar(4, 2, 'x');
+        read = buffer.readCell(4, 2, read);
+        assertEquals(1, read.getCodePointCount());
+        assertEquals('x', read.getChar());
+        assertTrue(read.isUnderline());
+    }
+
+    @Test
+    @DisplayName("Comparisons and copies match ComplexCell")
+    void testEqualsCopy() {
+        CellBuffer logical = new CellBuffer(5, 2);
+        CellBuffer physical = new CellBuffer(5, 2);
+        assertFalse(logical.isSpanChanged(1, physical));
+
+        CellAttributes attr = new CellAttributes();
+        attr.setForeColor(Color.GREEN);
+        logical.setCell(2, 1, 'q', attr);
+        assertFalse(logical.equals(2, 1, physical));
+        assertTrue(logical.isSpanChanged(1, physical));
+        assertFalse(logical.isSpanChanged(0, physical));
+
+        physical.copy(logical, 0, 1, 0, 1, 5, 1);
+        assertTrue(logical.equals(2, 1, physical));
+        assertFalse(logical.isSpanChanged(1, physical));
+
+        // Unset cells are never equal, even to themselves.
+        physical.unset(2, 1);
+        assertFalse(physical.equals(2, 1, physical));
+        assertTrue(logical.isSpanChanged(1, physical));
+        physical.unsetAll();
+        assertTrue(logical.isSpanChanged(0, physical));
+
+        // Blinking rows are always changed.
+        attr.setBlink(true);
+        logical.setAttr(0, 0, attr);
+        physical.copy(logical, 0, 0, 0, 0, 5, 2);
+        assertTrue(logical.isSpanChanged(0, physical));
+        assertTrue(logical.isSpanAnimated(0));
+        assertFalse(logical.isSpanChanged(1, physical));
+
+        logical.reset(0, 0, 5, 2);
+        for (int x = 0; x < 5; x++) {
+            assertTrue(logical.isBlank(x, 0));
+            assertTrue(logical.isBlank(x, 1));
+        }
+    }
+
+    @Test
+    @DisplayName("Writes mark dirty spans and advance the generation")
+    void testDirtySpans() {
+        CellBuffer buffer = new CellBuffer(10, 3);
+        assertTrue(buffer.isDirty());
+        buffer.clearAllDirty();
+        assertFalse(buffer.isDirty());
+        long generation = buffer.getGeneration();
+
+        buffer.setChar(6, 1, 'a');
+        buffer.setAttr(3, 1, new CellAttributes());
+        assertTrue(buffer.isDirty());
+        assertFalse(buffer.isRowDirty(0));
+        assertTrue(buffer.isRowDirty(1));
+        assertEquals(3, buffer.getDirtyLeft(1));
+        assertEquals(7, buffer.getDirtyRight(1));
+        assertTrue(buffer.getRowGeneration(1) > generation);
+        assertTrue(buffer.getRowGeneration(2) <= generation);
+
+        // Marking dirty is not a write.
+        generation = buffer.getGeneration();
+        buffer.markDirty(0, 2, 10, 3);
+        assertTrue(buffer.isRowDirty(2));
+        assertEquals(generation, buffer.getGeneration());
+
+        buffer.clearDirty(1);
+        assertFalse(buffer.isRowDirty(1));
+        assertEquals(10, buffer.getDirtyLeft(1));
+        buffer.clearDirty(2);
+        assertFalse(buffer.isDirty());
+    }
+
+}
@@ -317,4 +317,20 @@ class ECMA48BackendTest {
             backend.shutdown();
         });
     }
+
+    @Test
+    @DisplayName("Bytes written count the encoded output")
+    void testBytesWrittenEncoded() throws Exception {
+        backend = new ECMA48Backend(null, testInput, testOutput);
+        ECMA48Terminal terminal = (ECMA48Terminal) backend.getScreen();
+        backend.flushScreen();
+
+        int before = testOutput.size();
+        long written = terminal.getBytesWritten();
+        terminal.putStringXY(0, 0, "caf\u00e9 \u4e2d\u6587",
+            new CellAttributes());
+        backend.flushScreen();
+        assertEquals(testOutput.size() - before,
+            terminal.getBytesWritten() - written);
+    }
 }
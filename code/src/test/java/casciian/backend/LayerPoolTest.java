@@ -0,0 +1,61 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for LayerPool
+ */
+package casciian.backend;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LayerPool - validates that owners keep their layers, and that
+ * released layers are handed to the next owner.
+ */
+@DisplayName("LayerPool Tests")
+class LayerPoolTest {
+
+    @Test
+    @DisplayName("Owners keep their layers between frames")
+    void testOwnedLayers() {
+        LayerPool pool = new LayerPool();
+        Object owner = new Object();
+        LogicalScreen first = pool.getLayer(owner, 0, 20, 10);
+        LogicalScreen second = pool.getLayer(owner, 1, 20, 10);
+        assertNotSame(first, second);
+        assertSame(first, pool.getLayer(owner, 0, 20, 10));
+        assertSame(second, pool.getLayer(owner, 1, 20, 10));
+
+        // A resized owner keeps the same layer at its new size.
+        LogicalScreen resized = pool.getLayer(owner, 0, 30, 5);
+        assertSame(first, resized);
+        assertEquals(30, resized.getWidth());
+        assertEquals(5, resized.getHeight());
+    }
+
+    @Test
+    @DisplayName("Released layers go to the next owner")
+    void testRelease() {
+        LayerPool pool = new LayerPool();
+        Object owner = new Object();
+        LogicalScreen first = pool.getLayer(owner, 0, 20, 10);
+        LogicalScreen second = pool.getLayer(owner, 1, 8, 4);
+        pool.release(owner);
+        assertEquals(2, pool.getFreeLayerCount());
+
+        // The layer that is already the right size is preferred.
+        Object next = new Object();
+        assertSame(second, pool.getLayer(next, 0, 8, 4));
+        LogicalScreen other = pool.getLayer(next, 1, 6, 6);
+        assertSame(first, other);
+        assertEquals(6, other.getWidth());
+        assertEquals(0, pool.getFreeLayerCount());
+
+        // Releasing an unknown owner does nothing.
+        pool.release(new Object());
+        assertEquals(0, pool.getFreeLayerCount());
+    }
+
+}
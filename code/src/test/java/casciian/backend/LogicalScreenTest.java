@@ -468,4 +468,114 @@ class LogicalScreenTest {
         screen.putStringXY(5, 5, "Test", defaultAttr);
         assertDoesNotThrow(() -> screen.snapshot());
     }
+
+    // Damage tests
+
+    @Test
+    @DisplayName("Damage clip limits drawing and clearing")
+    void testDamageClip() {
+        screen.putStringXY(0, 0, "abcdef", defaultAttr);
+        screen.setDamageClip(2, 0, 2, 1);
+        assertTrue(screen.intersectsDamageClip(3, 0, 10, 10));
+        assertFalse(screen.intersectsDamageClip(4, 0, 10, 10));
+        screen.clear();
+        screen.putAttrXY(0, 0, defaultAttr, false);
+        screen.putStringXY(0, 0, "XXXXXX", defaultAttr);
+        screen.resetDamageClip();
+        assertEquals('a', screen.getCharXY(0, 0).getChar());
+        assertEquals('X', screen.getCharXY(2, 0).getChar());
+        assertEquals('X', screen.getCharXY(3, 0).getChar());
+        assertEquals('e', screen.getCharXY(4, 0).getChar());
+        assertTrue(screen.intersectsDamageClip(79, 23, 1, 1));
+    }
+
+    @Test
+    @DisplayName("Only rows drawn to since the last flush are dirty")
+    void testDirtyRows() {
+        assertTrue(screen.isRowDirty(5));
+        screen.clearDirty();
+        assertFalse(screen.isRowDirty(5));
+        assertFalse(screen.isDirty());
+        screen.putStringXY(0, 3, "abc", defaultAttr);
+        assertTrue(screen.isRowDirty(3));
+        assertFalse(screen.isRowDirty(4));
+        assertTrue(screen.isDirty());
+        screen.addDamage(0, 4, 10, 1);
+        assertTrue(screen.isRowDirty(4));
+
+        // A clear inside the damage clip only dirties the clipped rows.
+        screen.clearDirty();
+        screen.setDamageClip(0, 10, 80, 1);
+        screen.clear();
+        screen.resetDamageClip();
+        assertTrue(screen.isRowDirty(10));
+        assertFalse(screen.isRowDirty(11));
+
+        // Rows that turn out to be unchanged are cleaned by isDirty().
+        assertFalse(screen.isDirty());
+        assertFalse(screen.isRowDirty(10));
+    }
+
+    @Test
+    @DisplayName("copyScreen() copies only the rows drawn to since last time")
+    void testCopyScreenGenerations() {
+        TestableLogicalScreen copy = new TestableLogicalScreen();
+        screen.putStringXY(0, 2, "one", defaultAttr);
+        copy.copyScreen(screen);
+        assertEquals('o', copy.getCharXY(0, 2).getChar());
+        copy.clearDirty();
+
+        screen.putStringXY(0, 7, "two", defaultAttr);
+        copy.copyScreen(screen);
+        assertEquals('t', copy.getCharXY(0, 7).getChar());
+        assertTrue(copy.isRowDirty(7));
+        assertFalse(copy.isRowDirty(2));
+
+        // Drawing to the copy makes the next copy a full one.
+        copy.putStringXY(0, 2, "xxx", defaultAttr);
+        copy.copyScreen(screen);
+        assertEquals('o', copy.getCharXY(0, 2).getChar());
+    }
+
+    @Test
+    @DisplayName("Snapshot into a layer resizes it and blanks cells off screen")
+    void testSnapshotIntoLayer() {
+        TestableLogicalScreen layer = new TestableLogicalScreen(3, 3);
+        layer.putStringXY(0, 0, "zzz", defaultAttr);
+        screen.putStringXY(78, 23, "ab", defaultAttr);
+
+        assertSame(layer, screen.snapshot(77, 22, 5, 4, layer));
+        assertEquals(5, layer.getWidth());
+        assertEquals(4, layer.getHeight());
+        assertEquals('a', layer.getCharXY(1, 1).getChar());
+        assertEquals('b', layer.getCharXY(2, 1).getChar());
+        assertTrue(layer.getCharXY(3, 1).isBlank());
+        assertTrue(layer.getCharXY(0, 3).isBlank());
+    }
+
+    @Test
+    @DisplayName("Blending a rectangle mixes its color into the cells")
+    void testBlendRectangle() {
+        CellAttributes attr = new CellAttributes();
+        attr.setForeColorRGB(0xFFFFFF);
+        attr.setBackColorRGB(0x000000);
+        screen.putStringXY(0, 0, "ab", attr);
+
+        screen.blendRectangle(0, 0, 1, 1, 0xFF0000, 128);
+        Cell cell = screen.getCharXY(0, 0);
+        assertEquals('a', cell.getChar());
+        int back = cell.getBackColorRGB();
+        assertEquals(0x80, (back >>> 16) & 0xFF, 1);
+        assertEquals(0x00, back & 0xFFFF);
+        int fore = cell.getForeColorRGB();
+        assertEquals(0xFF, (fore >>> 16) & 0xFF);
+        assertEquals(0x7F, (fore >>> 8) & 0xFF, 1);
+        assertEquals(0x7F, fore & 0xFF, 1);
+        assertEquals(0x000000, screen.getCharXY(1, 0).getBackColorRGB());
+
+        screen.blendRectangle(1, 0, 1, 1, 0x0000FF, 255);
+        cell = screen.getCharXY(1, 0);
+        assertTrue(cell.isSpaceChar());
+        assertEquals(0x0000FF, cell.getBackColorRGB());
+    }
 }
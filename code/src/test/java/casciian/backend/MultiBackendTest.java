@@ -5,14 +5,21 @@
  */
 package casciian.backend;
 
+import casciian.bits.CellAttributes;
 import casciian.event.TCommandEvent;
 import casciian.event.TInputEvent;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -186,6 +193,301 @@ class MultiBackendTest {
         });
     }
 
+    @Test
+    @DisplayName("A flush with no changes leaves the screen clean")
+    void testFlushClearsDirty() {
+        // Row 1 is away from the cursor, whose cell is always redrawn.
+        Screen screen = multiBackend.getScreen();
+        screen.putStringXY(0, 1, "hello", new CellAttributes());
+        assertTrue(screen.isDirty());
+        multiBackend.flushScreen();
+        assertFalse(screen.isDirty());
+
+        // Nothing changed, so the second flush has nothing to do.
+        multiBackend.flushScreen();
+        assertFalse(screen.isDirty());
+
+        // Drawing the same text again is not a change.
+        screen.putStringXY(0, 1, "hello", new CellAttributes());
+        assertFalse(screen.isDirty());
+        screen.putStringXY(0, 1, "world", new CellAttributes());
+        assertTrue(screen.isDirty());
+    }
+
+    @Test
+    @DisplayName("A slow backend skips to the latest frame")
+    void testFramesDropped() throws Exception {
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger flushes = new AtomicInteger();
+        HeadlessBackend slow = new HeadlessBackend() {
+            @Override
+            public void flushScreen() {
+                flushes.incrementAndGet();
+                flushing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        multiBackend.addBackend(slow);
+
+        multiBackend.flushScreen();
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            multiBackend.flushScreen();
+        }
+        assertEquals(4, multiBackend.getFramesDropped(slow));
+
+        release.countDown();
+        for (int i = 0; (i < 500) && (flushes.get() < 2); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, flushes.get());
+        assertEquals(0, multiBackend.getBytesSent(slow));
+        multiBackend.removeBackend(slow);
+        assertEquals(0, multiBackend.getFramesDropped(slow));
+    }
+
+    @Test
+    @DisplayName("A backend that fails to flush is removed")
+    void testFailedBackendRemoved() throws Exception {
+        AtomicInteger shutdowns = new AtomicInteger();
+        HeadlessBackend broken = new HeadlessBackend() {
+            @Override
+            public void flushScreen() {
+                throw new IllegalStateException("broken");
+            }
+
+            @Override
+            public void shutdown() {
+                shutdowns.incrementAndGet();
+            }
+        };
+        multiBackend.addBackend(broken);
+        assertFalse(multiBackend.hasEvents());
+
+        multiBackend.flushScreen();
+        for (int i = 0; (i < 500) && !multiBackend.hasEvents(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(multiBackend.hasEvents());
+
+        List<TInputEvent> queue = new ArrayList<TInputEvent>();
+        multiBackend.getEvents(queue);
+        assertEquals(1, shutdowns.get());
+        assertFalse(multiBackend.hasEvents());
+        assertTrue(queue.isEmpty());
+    }
+
+    // Share group tests
+
+    /**
+     * Create a terminal backend that writes to a buffer.
+     */
+    private ECMA48Backend newTerminal(final ByteArrayOutputStream output)
+        throws Exception {
+
+        return new ECMA48Backend(null, new ByteArrayInputStream(new byte[0]),
+            output);
+    }
+
+    /**
+     * Draw a frame that differs from the frames before it in every cell it
+     * touches, and flush it.
+     */
+    private String drawFrame(final MultiBackend multi, final int n) {
+        String text = String.valueOf((char) ('a' + n)).repeat(5);
+        multi.getScreen().putStringXY(0, 1, text, new CellAttributes());
+        multi.flushScreen();
+        return text;
+    }
+
+    /**
+     * Wait until a buffer contains some text.
+     */
+    private boolean waitFor(final ByteArrayOutputStream output,
+        final String text) throws InterruptedException {
+
+        for (int i = 0; i < 500; i++) {
+            if (output.toString().contains(text)) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    @Test
+    @DisplayName("Terminals with the same profile share frames")
+    void testJoinGroup() throws Exception {
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+        ECMA48Backend terminal1 = newTerminal(output1);
+        ECMA48Backend terminal2 = newTerminal(output2);
+        MultiBackend multi = new MultiBackend(terminal1);
+        multi.addBackend(terminal2);
+
+        String text = drawFrame(multi, 0);
+        assertTrue(waitFor(output1, text));
+        assertTrue(waitFor(output2, text));
+        text = drawFrame(multi, 1);
+        assertTrue(waitFor(output1, text));
+        assertTrue(waitFor(output2, text));
+
+        // One encodes, the other follows.
+        assertTrue(multi.isFollowing(terminal1) != multi.isFollowing(terminal2));
+        assertEquals(0, multi.getFramesDropped(terminal1));
+        assertEquals(0, multi.getFramesDropped(terminal2));
+        multi.shutdown();
+    }
+
+    @Test
+    @DisplayName("A terminal that joins late is repainted, then follows")
+    void testFollowerResync() throws Exception {
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+        ECMA48Backend terminal1 = newTerminal(output1);
+        MultiBackend multi = new MultiBackend(terminal1);
+        String first = drawFrame(multi, 0);
+        assertTrue(waitFor(output1, first));
+
+        // The new terminal gets the whole screen, not just the change.
+        ECMA48Backend terminal2 = newTerminal(output2);
+        multi.addBackend(terminal2);
+        multi.getScreen().putStringXY(0, 2, "late", new CellAttributes());
+        multi.flushScreen();
+        assertTrue(waitFor(output2, first));
+        assertTrue(waitFor(output2, "late"));
+
+        String text = drawFrame(multi, 1);
+        assertTrue(waitFor(output2, text));
+        assertTrue(multi.isFollowing(terminal2));
+        assertFalse(multi.isFollowing(terminal1));
+        assertEquals(0, multi.getFramesDropped(terminal2));
+        multi.shutdown();
+    }
+
+    @Test
+    @DisplayName("A follower takes over when the leader leaves")
+    void testLeaderHandoff() throws Exception {
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+        ECMA48Backend terminal1 = newTerminal(output1);
+        MultiBackend multi = new MultiBackend(terminal1);
+        assertTrue(waitFor(output1, drawFrame(multi, 0)));
+        ECMA48Backend terminal2 = newTerminal(output2);
+        multi.addBackend(terminal2);
+        assertTrue(waitFor(output2, drawFrame(multi, 1)));
+        assertTrue(multi.isFollowing(terminal2));
+
+        multi.removeBackend(terminal1);
+        String text = drawFrame(multi, 2);
+        assertTrue(waitFor(output2, text));
+        assertFalse(multi.isFollowing(terminal2));
+        assertFalse(output1.toString().contains(text));
+
+        // The new leader still publishes, so a new terminal follows it.
+        ByteArrayOutputStream output3 = new ByteArrayOutputStream();
+        ECMA48Backend terminal3 = newTerminal(output3);
+        multi.addBackend(terminal3);
+        text = drawFrame(multi, 3);
+        assertTrue(waitFor(output2, text));
+        assertTrue(waitFor(output3, text));
+        assertTrue(multi.isFollowing(terminal3));
+        multi.shutdown();
+    }
+
+    @Test
+    @DisplayName("A slow follower does not hold up its leader, and repaints")
+    void testSlowFollower() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blocked = new AtomicBoolean(false);
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream();
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                if (blocked.get()) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        ECMA48Backend terminal1 = newTerminal(output1);
+        MultiBackend multi = new MultiBackend(terminal1);
+        assertTrue(waitFor(output1, drawFrame(multi, 0)));
+        ECMA48Backend slow = newTerminal(output2);
+        multi.addBackend(slow);
+        assertTrue(waitFor(output2, drawFrame(multi, 1)));
+        assertTrue(multi.isFollowing(slow));
+
+        blocked.set(true);
+        drawFrame(multi, 2);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // The leader keeps going while the follower is stuck.
+        String text = null;
+        for (int i = 3; i < 26; i++) {
+            text = drawFrame(multi, i);
+            assertTrue(waitFor(output1, text));
+        }
+        assertFalse(output2.toString().contains(text));
+
+        // Too many frames went by, so the follower repaints.
+        blocked.set(false);
+        release.countDown();
+        assertTrue(waitFor(output2, text));
+        assertTrue(multi.getFramesDropped(slow) > 0);
+        assertEquals(0, multi.getFramesDropped(terminal1));
+        multi.shutdown();
+    }
+
+    @Test
+    @DisplayName("A slow leader publishes each frame before writing it")
+    void testSlowLeader() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blocked = new AtomicBoolean(false);
+        ByteArrayOutputStream output1 = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                if (blocked.get()) {
+                    writing.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        ByteArrayOutputStream output2 = new ByteArrayOutputStream();
+        ECMA48Backend slow = newTerminal(output1);
+        MultiBackend multi = new MultiBackend(slow);
+        assertTrue(waitFor(output1, drawFrame(multi, 0)));
+        ECMA48Backend terminal2 = newTerminal(output2);
+        multi.addBackend(terminal2);
+        assertTrue(waitFor(output2, drawFrame(multi, 1)));
+        assertTrue(multi.isFollowing(terminal2));
+
+        blocked.set(true);
+        String text = drawFrame(multi, 2);
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        assertTrue(waitFor(output2, text));
+
+        blocked.set(false);
+        release.countDown();
+        assertTrue(waitFor(output1, text));
+        multi.shutdown();
+    }
+
     // Title operations tests
 
     @Test
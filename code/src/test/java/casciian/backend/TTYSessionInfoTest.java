@@ -5,6 +5,9 @@
  */
 package casciian.backend;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -187,6 +190,60 @@ class TTYSessionInfoTest {
         assertDoesNotThrow(() -> sessionInfo.queryWindowSize());
     }
 
+    @Test
+    @DisplayName("Window size is not queried again until SIGWINCH")
+    void testWindowChanges() throws InterruptedException {
+        if (TTYSessionInfo.windowChanges < 0) {
+            // No SIGWINCH on this platform, the window size is polled.
+            return;
+        }
+        StringWriter writer = new StringWriter();
+        sessionInfo.output = new PrintWriter(writer);
+
+        // Skip the one-second limit between queries.
+        sessionInfo.lastQueryWindowTime = 1;
+        sessionInfo.queryWindowSize();
+        assertEquals("", writer.toString());
+
+        int changes = TTYSessionInfo.windowChanges;
+        assertTrue(WindowChangeSignal.raise());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (TTYSessionInfo.windowChanges == changes) {
+            assertTrue(System.currentTimeMillis() < deadline,
+                "SIGWINCH was not delivered");
+            Thread.sleep(10);
+        }
+        sessionInfo.queryWindowSize();
+        assertEquals(ECMA48Terminal.xtermQueryWindowSize(),
+            writer.toString());
+    }
+
+    @Test
+    @DisplayName("An earlier SIGWINCH handler is still called")
+    void testWindowChangesChained() throws InterruptedException {
+        if (TTYSessionInfo.windowChanges < 0) {
+            // No SIGWINCH on this platform.
+            return;
+        }
+        final int [] calls = new int[1];
+        assertTrue(WindowChangeSignal.install(new Runnable() {
+            public void run() {
+                calls[0]++;
+            }
+        }));
+
+        // The handler installed by TTYSessionInfo runs after this one.
+        int changes = TTYSessionInfo.windowChanges;
+        assertTrue(WindowChangeSignal.raise());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (TTYSessionInfo.windowChanges == changes) {
+            assertTrue(System.currentTimeMillis() < deadline,
+                "SIGWINCH was not chained");
+            Thread.sleep(10);
+        }
+        assertEquals(1, calls[0]);
+    }
+
     // Idle time tests
 
     @Test
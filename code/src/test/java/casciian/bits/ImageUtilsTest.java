@@ -0,0 +1,128 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for ImageUtils
+ */
+package casciian.bits;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ImageUtils - validates that the fixed point row blend agrees
+ * with the floating point blend it replaced.
+ */
+@DisplayName("ImageUtils Tests")
+class ImageUtilsTest {
+
+    /**
+     * The blend as it was done in LogicalScreen before alphaBlendRow().
+     */
+    private static int floatBlend(final int underRGB, final int overRGB,
+        final int alpha) {
+
+        double fraction = (float) (alpha / 255.0);
+        int red = (int) ((((underRGB >>> 16) & 0xFF) * (1.0 - fraction))
+            + (((overRGB >>> 16) & 0xFF) * fraction));
+        int green = (int) ((((underRGB >>> 8) & 0xFF) * (1.0 - fraction))
+            + (((overRGB >>> 8) & 0xFF) * fraction));
+        int blue = (int) (((underRGB & 0xFF) * (1.0 - fraction))
+            + ((overRGB & 0xFF) * fraction));
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    private static int [] row(final int... colors) {
+        return colors;
+    }
+
+    private static int [] blend(final int [] under, final int [] over,
+        final int alpha) {
+
+        int [] dest = new int[under.length];
+        ImageUtils.alphaBlendRow(under, over, dest, under.length, alpha);
+        return dest;
+    }
+
+    @Test
+    @DisplayName("Alpha 0 keeps the colors underneath")
+    void testAlphaZero() {
+        int [] under = row(0x000000, 0xFFFFFF, 0x123456, 0xFF00FF);
+        int [] over = row(0xFFFFFF, 0x000000, 0xABCDEF, 0x00FF00);
+        assertArrayEquals(under, blend(under, over, 0));
+    }
+
+    @Test
+    @DisplayName("Alpha 255 gives the colors on top")
+    void testAlphaOpaque() {
+        int [] under = row(0x000000, 0xFFFFFF, 0x123456, 0xFF00FF);
+        int [] over = row(0xFFFFFF, 0x000000, 0xABCDEF, 0x00FF00);
+        assertArrayEquals(over, blend(under, over, 255));
+    }
+
+    @Test
+    @DisplayName("Every alpha and channel value is within one of the float blend")
+    void testMatchesFloatBlend() {
+        int [] under = new int[256 * 256];
+        int [] over = new int[256 * 256];
+        for (int u = 0; u < 256; u++) {
+            for (int o = 0; o < 256; o++) {
+                // Different values in each channel, so that a carry from
+                // one channel into the next shows up.
+                under[(u * 256) + o] = (u << 16) | ((255 - u) << 8)
+                    | (u ^ 0x5A);
+                over[(u * 256) + o] = (o << 16) | ((255 - o) << 8)
+                    | (o ^ 0xA5);
+            }
+        }
+        for (int alpha = 0; alpha < 256; alpha++) {
+            int [] dest = blend(under, over, alpha);
+            for (int i = 0; i < dest.length; i++) {
+                int expected = floatBlend(under[i], over[i], alpha);
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int diff = ((dest[i] >>> shift) & 0xFF)
+                        - ((expected >>> shift) & 0xFF);
+                    if ((diff < -1) || (diff > 1)) {
+                        fail(String.format("alpha %d under %06x over %06x:"
+                                + " got %06x expected %06x", alpha, under[i],
+                                over[i], dest[i], expected));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Rounding edges stay inside each channel")
+    void testRoundingEdges() {
+        int [] under = row(0xFFFFFF, 0x000000, 0xFF00FF, 0x00FF00, 0x010101);
+        int [] over = row(0xFFFFFF, 0x000000, 0x00FF00, 0xFF00FF, 0xFEFEFE);
+        int lastGreen = 0;
+        for (int alpha = 0; alpha < 256; alpha++) {
+            int [] dest = blend(under, over, alpha);
+            assertEquals(0xFFFFFF, dest[0]);
+            assertEquals(0x000000, dest[1]);
+            for (int i = 0; i < dest.length; i++) {
+                assertEquals(0, dest[i] & 0xFF000000);
+            }
+            // More alpha never moves a channel back toward the colors
+            // underneath.
+            int green = (dest[2] >>> 8) & 0xFF;
+            assertTrue(green >= lastGreen, "alpha " + alpha);
+            lastGreen = green;
+        }
+        assertEquals(0xFF, lastGreen);
+    }
+
+    @Test
+    @DisplayName("The destination may be one of the sources")
+    void testInPlace() {
+        int [] under = row(0x102030, 0x405060);
+        int [] over = row(0x908070, 0x605040);
+        int [] expected = blend(under, over, 100);
+        ImageUtils.alphaBlendRow(under, over, under, under.length, 100);
+        assertArrayEquals(expected, under);
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for TelnetInputStream
+ */
+package casciian.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static casciian.net.TelnetSocket.*;
+
+/**
+ * Tests for TelnetInputStream - validates that the telnet protocol decoder
+ * can be stopped and resumed at any byte.
+ */
+@DisplayName("TelnetInputStream Tests")
+class TelnetInputStreamTest {
+
+    /**
+     * A client that agrees to send its terminal type, then sends its window
+     * size, terminal type, and some text.
+     */
+    private static final byte [] WIRE = {
+        (byte) TELNET_IAC, (byte) TELNET_WILL, 24,
+        (byte) TELNET_IAC, (byte) TELNET_SB, 31, 0, 100, 0, 40,
+        (byte) TELNET_IAC, (byte) TELNET_SE,
+        (byte) TELNET_IAC, (byte) TELNET_SB, 24, 0, 'x', 't', 'e', 'r', 'm',
+        (byte) TELNET_IAC, (byte) TELNET_SE,
+        'h', 'i', C_CR, C_LF,
+    };
+
+    private static TelnetInputStream newStream(final byte [] wire,
+        final ByteArrayOutputStream replies) throws IOException {
+
+        TelnetSocket socket = new TelnetSocket();
+        TelnetOutputStream output = new TelnetOutputStream(socket, replies);
+        return new TelnetInputStream(socket, new ByteArrayInputStream(wire),
+            output);
+    }
+
+    @Test
+    @DisplayName("Negotiation split at any byte decodes the same")
+    void testDecodeChunks() throws IOException {
+        for (int chunk = 1; chunk <= WIRE.length; chunk++) {
+            ByteArrayOutputStream replies = new ByteArrayOutputStream();
+            TelnetInputStream input = newStream(new byte[0], replies);
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte [] buf = new byte[64];
+            for (int i = 0; i < WIRE.length; i += chunk) {
+                ByteBuffer raw = ByteBuffer.wrap(WIRE, i,
+                    Math.min(chunk, WIRE.length - i));
+                int n = input.decode(raw, buf, 0, buf.length);
+                assertFalse(raw.hasRemaining());
+                data.write(buf, 0, n);
+            }
+            assertEquals("hi\r\n", data.toString("US-ASCII"));
+            assertEquals(100, input.getWindowWidth());
+            assertEquals(40, input.getWindowHeight());
+            assertEquals("xterm", input.getTerminalType());
+            assertArrayEquals(new byte [] { (byte) TELNET_IAC,
+                    (byte) TELNET_SB, 24, 1, (byte) TELNET_IAC,
+                    (byte) TELNET_SE }, replies.toByteArray());
+        }
+    }
+
+    @Test
+    @DisplayName("Two bytes decoded from one fit a one-byte buffer")
+    void testDecodePending() throws IOException {
+        byte [] wire = { 'a', C_CR, C_CR, C_LF, 'b', C_CR, 'c' };
+        TelnetInputStream input = newStream(new byte[0],
+            new ByteArrayOutputStream());
+        ByteBuffer raw = ByteBuffer.wrap(wire);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte [] buf = new byte[1];
+        int n = 0;
+        do {
+            n = input.decode(raw, buf, 0, 1);
+            data.write(buf, 0, n);
+        } while (raw.hasRemaining() || (n > 0));
+        assertArrayEquals(new byte [] { 'a', C_CR, C_NUL, C_CR, C_LF, 'b',
+                C_CR, 'c' }, data.toByteArray());
+    }
+
+    @Test
+    @DisplayName("read() decodes the underlying stream until EOF")
+    void testRead() throws IOException {
+        TelnetInputStream input = newStream(WIRE,
+            new ByteArrayOutputStream());
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        byte [] buf = new byte[64];
+        int n = input.read(buf);
+        while (n != -1) {
+            data.write(buf, 0, n);
+            n = input.read(buf);
+        }
+        assertEquals("hi\r\n", data.toString("US-ASCII"));
+        assertEquals(100, input.getWindowWidth());
+    }
+
+    @Test
+    @DisplayName("read() and read(byte[]) can be mixed without losing data")
+    void testReadMixed() throws IOException {
+        // IAC IAC, then every other byte value.
+        byte [] wire = new byte[3000];
+        byte [] expect = new byte[2999];
+        wire[0] = (byte) TELNET_IAC;
+        wire[1] = (byte) TELNET_IAC;
+        expect[0] = (byte) TELNET_IAC;
+        for (int i = 2; i < wire.length; i++) {
+            wire[i] = (byte) (i % 255);
+            expect[i - 1] = wire[i];
+        }
+        TelnetInputStream input = newStream(wire,
+            new ByteArrayOutputStream());
+        input.getSocket().binaryMode = true;
+
+        // The first byte is 0xFF, which is not EOF.
+        assertEquals(0xFF, input.read());
+
+        // The rest of the bytes that read() decoded, and the bytes still
+        // waiting to be decoded, come back in one call.
+        byte [] buf = new byte[4096];
+        assertEquals(expect.length - 1, input.read(buf, 10, 4000));
+        for (int i = 1; i < expect.length; i++) {
+            assertEquals(expect[i], buf[i + 9]);
+        }
+        assertEquals(-1, input.read(buf));
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for TelnetOutputStream
+ */
+package casciian.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static casciian.net.TelnetSocket.*;
+
+/**
+ * Tests for TelnetOutputStream - validates the IAC and NVT ASCII encoding.
+ */
+@DisplayName("TelnetOutputStream Tests")
+class TelnetOutputStreamTest {
+
+    private static byte [] encode(final boolean binaryMode,
+        final byte [] data) throws IOException {
+
+        TelnetSocket socket = new TelnetSocket();
+        socket.binaryMode = binaryMode;
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        TelnetOutputStream output = new TelnetOutputStream(socket, wire);
+        output.write(data, 1, data.length - 2);
+        output.flush();
+        return wire.toByteArray();
+    }
+
+    @Test
+    @DisplayName("Binary mode doubles IAC and passes everything else")
+    void testBinary() throws IOException {
+        byte [] data = { 'x', (byte) TELNET_IAC, 'a', C_CR, (byte) TELNET_IAC,
+                         (byte) TELNET_IAC, 'b', (byte) TELNET_IAC, 'x' };
+        assertArrayEquals(new byte [] { (byte) TELNET_IAC, (byte) TELNET_IAC,
+                'a', C_CR, (byte) TELNET_IAC, (byte) TELNET_IAC,
+                (byte) TELNET_IAC, (byte) TELNET_IAC, 'b', (byte) TELNET_IAC,
+                (byte) TELNET_IAC }, encode(true, data));
+    }
+
+    @Test
+    @DisplayName("ASCII mode encodes CR and IAC as RFC 854 says")
+    void testAscii() throws IOException {
+        byte [] data = { 'x', 'a', C_CR, 'b', C_CR, C_LF, (byte) TELNET_IAC,
+                         C_CR, 'x' };
+        assertArrayEquals(new byte [] { 'a', C_CR, C_NUL, 'b', C_CR, C_LF,
+                (byte) TELNET_IAC, (byte) TELNET_IAC, C_CR, C_NUL },
+            encode(false, data));
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for DisplayLine
+ */
+package casciian.terminal;
+
+import java.nio.ByteBuffer;
+
+import casciian.backend.LogicalScreen;
+import casciian.bits.Cell;
+import casciian.bits.CellAttributes;
+import casciian.bits.Color;
+import casciian.bits.ComplexCell;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for DisplayLine - validates that cells survive the packed storage
+ * unchanged, and that insert/delete/erase behave as before.
+ */
+@DisplayName("DisplayLine Tests")
+class DisplayLineTest {
+
+    private CellAttributes lineAttr;
+    private DisplayLine line;
+
+    @BeforeEach
+    void setUp() {
+        lineAttr = new CellAttributes();
+        lineAttr.setForeColor(Color.GREEN);
+        lineAttr.setBackColor(Color.BLUE);
+        line = new DisplayLine(lineAttr);
+    }
+
+    private static String text(final DisplayLine line) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            sb.appendCodePoint(line.charAt(i).getChar());
+        }
+        return sb.toString();
+    }
+
+    @Test
+    @DisplayName("Reading past the end extends with the line attributes")
+    void testCharAtGrows() {
+        ComplexCell cell = line.charAt(5);
+        assertEquals(6, line.length());
+        assertEquals(' ', cell.getChar());
+        assertEquals(Color.GREEN, cell.getForeColor());
+        assertEquals(Color.BLUE, cell.getBackColor());
+    }
+
+    @Test
+    @DisplayName("Replaced cells keep all attributes")
+    void testReplaceRoundTrip() {
+        ComplexCell cell = new ComplexCell('x');
+        cell.setBold(true);
+        cell.setUnderline(true);
+        cell.setForeColor(Color.RED);
+        cell.setBackColor(Color.CYAN);
+        cell.setPulse(true, false, 3);
+        cell.setWidth(Cell.Width.LEFT);
+        line.replace(2, cell);
+        assertEquals(cell, line.charAt(2));
+
+        ComplexCell rgb = new ComplexCell('y');
+        rgb.setForeColorRGB(0x123456);
+        rgb.setBackColorRGB(0xABCDEF);
+        line.replace(3, rgb);
+        assertEquals(rgb, line.charAt(3));
+        assertEquals(-1, line.charAt(2).getForeColorRGB());
+    }
+
+    @Test
+    @DisplayName("Grapheme clusters are kept whole")
+    void testClusters() {
+        int [] family = { 0x1F468, 0x200D, 0x1F469, 0x200D, 0x1F467 };
+        ComplexCell cell = new ComplexCell(family);
+        for (int i = 0; i < 100; i++) {
+            line.replace(i % 4, cell);
+        }
+        assertArrayEquals(family, line.charAt(0).getCodePoints());
+        assertArrayEquals(family, line.charAt(3).getCodePoints());
+
+        DisplayLine copy = new DisplayLine(line);
+        line.replace(0, new ComplexCell('a'));
+        assertArrayEquals(family, copy.charAt(0).getCodePoints());
+        assertEquals('a', line.charAt(0).getChar());
+    }
+
+    @Test
+    @DisplayName("Insert and delete shift the cells")
+    void testInsertDelete() {
+        for (int i = 0; i < 5; i++) {
+            line.replace(i, new ComplexCell('a' + i));
+        }
+        line.insert(1, new ComplexCell('X'));
+        assertEquals("aXbcde", text(line));
+        line.delete(0, new ComplexCell());
+        line.delete(0, new ComplexCell());
+        assertEquals("bcde", text(line));
+        line.insert(6, new ComplexCell('Z'));
+        assertEquals("bcde  Z ", text(line));
+    }
+
+    @Test
+    @DisplayName("Bulk replace matches replacing one cell at a time")
+    void testReplaceRun() {
+        int [] family = { 0x1F468, 0x200D, 0x1F469 };
+        line.replace(1, new ComplexCell(family));
+        line.replace(4, new ComplexCell(family));
+
+        CellAttributes attr = new CellAttributes();
+        attr.setBold(true);
+        attr.setForeColorRGB(0x102030);
+        line.replace(2, "xhellox".toCharArray(), 1, 5, attr);
+        assertEquals("hello", text(line).substring(3));
+        assertArrayEquals(family, line.charAt(1).getCodePoints());
+        assertEquals(1, line.charAt(4).getCodePoints().length);
+        assertTrue(line.charAt(4).isBold());
+        assertEquals(0x102030, line.charAt(4).getForeColorRGB());
+        assertEquals(Cell.Width.SINGLE, line.charAt(4).getWidth());
+        assertEquals(7, line.length());
+    }
+
+    @Test
+    @DisplayName("Blank and attribute-only changes")
+    void testSetBlankAndAttr() {
+        ComplexCell cell = new ComplexCell('q');
+        cell.setBold(true);
+        cell.setWidth(Cell.Width.RIGHT);
+        line.replace(0, cell);
+
+        CellAttributes attr = new CellAttributes();
+        attr.setBackColorRGB(0x000080);
+        line.setAttr(0, attr);
+        ComplexCell result = line.charAt(0);
+        assertEquals('q', result.getChar());
+        assertFalse(result.isBold());
+        assertEquals(0x000080, result.getBackColorRGB());
+        assertEquals(Cell.Width.RIGHT, result.getWidth());
+
+        line.setChar(0, 'r');
+        assertEquals('r', line.charAt(0).getChar());
+        assertEquals(0x000080, line.charAt(0).getBackColorRGB());
+
+        line.setBlank(0);
+        assertTrue(line.charAt(0).isBlank());
+    }
+
+    @Test
+    @DisplayName("readCell() and getChar() do not extend the line")
+    void testReadCell() {
+        ComplexCell cell = new ComplexCell('x');
+        cell.setBold(true);
+        cell.setForeColorRGB(0x102030);
+        line.replace(1, cell);
+
+        ComplexCell scratch = new ComplexCell();
+        assertSame(scratch, line.readCell(1, scratch));
+        assertEquals(cell, scratch);
+        line.readCell(10, scratch);
+        assertEquals(' ', scratch.getChar());
+        assertFalse(scratch.isBold());
+        assertEquals(Color.GREEN, scratch.getForeColor());
+        assertEquals(-1, scratch.getForeColorRGB());
+        assertEquals('x', line.getChar(1));
+        assertEquals(' ', line.getChar(10));
+        assertEquals(2, line.length());
+    }
+
+    @Test
+    @DisplayName("drawTo() resolves reverse video and double width")
+    void testDrawTo() {
+        LogicalScreen screen = new LogicalScreen(20, 2) {
+            @Override
+            public void flushPhysical() {}
+        };
+        ComplexCell cell = new ComplexCell('r');
+        cell.setReverse(true);
+        cell.setForeColor(Color.RED);
+        cell.setBackColorRGB(0x000080);
+        line.replace(0, cell);
+        line.replace(1, new ComplexCell('n'));
+
+        ComplexCell scratch = new ComplexCell();
+        line.drawTo(screen, 0, 0, 3, scratch);
+        Cell drawn = screen.getCharXY(0, 0);
+        assertEquals('r', drawn.getChar());
+        assertFalse(drawn.isReverse());
+        assertEquals(Color.RED, drawn.getBackColor());
+        assertEquals(0x000080, drawn.getForeColorRGB());
+        assertEquals(Color.GREEN, screen.getCharXY(2, 0).getForeColor());
+        assertEquals(Color.BLUE, screen.getCharXY(2, 0).getBackColor());
+
+        line.setDoubleWidth(true);
+        line.drawTo(screen, 1, 1, 2, scratch);
+        assertEquals('n', screen.getCharXY(0, 1).getChar());
+        assertEquals(' ', screen.getCharXY(1, 1).getChar());
+        assertEquals(' ', screen.getCharXY(2, 1).getChar());
+        assertEquals(2, line.length());
+    }
+
+    @Test
+    @DisplayName("write() and read() round-trip every cell and flag")
+    void testWriteRead() {
+        ComplexCell cell = new ComplexCell('x');
+        cell.setBold(true);
+        cell.setBackColorRGB(0x123456);
+        cell.setWidth(Cell.Width.LEFT);
+        line.replace(2, cell);
+        line.replace(3, new ComplexCell(new int [] { 0x1F468, 0x200D,
+            0x1F469 }));
+        line.replace(5, new ComplexCell(0x10FFFF));
+        line.setDoubleWidth(true);
+        line.setReverseColor(true);
+        line.setDoubleHeight(2);
+
+        ByteBuffer buf = ByteBuffer.allocate(line.getEncodedSizeLimit());
+        line.write(buf);
+        buf.flip();
+        DisplayLine copy = DisplayLine.read(buf);
+        assertFalse(buf.hasRemaining());
+        assertEquals(line.length(), copy.length());
+        for (int i = 0; i < line.length(); i++) {
+            assertEquals(line.charAt(i), copy.charAt(i));
+            assertArrayEquals(line.charAt(i).getCodePoints(),
+                copy.charAt(i).getCodePoints());
+        }
+        assertTrue(copy.isDoubleWidth());
+        assertTrue(copy.isReverseColor());
+        assertEquals(2, copy.getDoubleHeight());
+        assertEquals(Color.GREEN, copy.charAt(10).getForeColor());
+    }
+
+}
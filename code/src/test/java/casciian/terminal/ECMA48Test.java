@@ -0,0 +1,133 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for ECMA48
+ */
+package casciian.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+import casciian.backend.HeadlessBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for ECMA48 - validates searching the display for text and
+ * regular expressions.
+ */
+@DisplayName("ECMA48 Tests")
+class ECMA48Test {
+
+    private PipedOutputStream remote;
+    private ECMA48 emulator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        PipedInputStream input = new PipedInputStream(4096);
+        remote = new PipedOutputStream(input);
+        emulator = new ECMA48(ECMA48.DeviceType.XTERM, input,
+            new ByteArrayOutputStream(), null, new HeadlessBackend());
+    }
+
+    @AfterEach
+    void tearDown() {
+        emulator.close();
+    }
+
+    /**
+     * Write text at the start of a display row and wait until
+     * the emulator shows it.
+     */
+    private void show(final int row, final String text) throws IOException {
+        remote.write(("\033[" + (row + 1) + ";1H" + text).
+            getBytes(StandardCharsets.UTF_8));
+        remote.flush();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            TerminalState state = emulator.captureState();
+            if (state.getDisplayBuffer().get(row).getText().startsWith(text)) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+        fail("emulator did not show " + text);
+    }
+
+    @Test
+    @DisplayName("Wide glyphs are found by text at their columns")
+    void testFindWideText() throws IOException {
+        show(0, "ab\u4e2d\u6587cd");
+
+        SearchHit hit = emulator.find("\u4e2d\u6587", 0, 0, true);
+        assertNotNull(hit);
+        assertEquals(0, hit.getLine());
+        assertEquals(2, hit.getColumn());
+        assertEquals(4, hit.getLength());
+
+        hit = emulator.find("cd", 0, 0, true);
+        assertNotNull(hit);
+        assertEquals(6, hit.getColumn());
+        assertEquals(2, hit.getLength());
+
+        // Backward from column 6 only sees the wide glyphs and before.
+        hit = emulator.find("\u6587", 0, 6, false);
+        assertNotNull(hit);
+        assertEquals(4, hit.getColumn());
+        assertNull(emulator.find("cd", 0, 6, false));
+    }
+
+    @Test
+    @DisplayName("Backward regex search finds overlapping matches")
+    void testFindRegexBackwardOverlapping() throws IOException {
+        show(1, "ababa");
+
+        SearchHit hit = emulator.find(Pattern.compile("aba"), 1, 5, false);
+        assertNotNull(hit);
+        assertEquals(1, hit.getLine());
+        assertEquals(2, hit.getColumn());
+        assertEquals(3, hit.getLength());
+
+        hit = emulator.find(Pattern.compile("aba"), 1, 2, false);
+        assertNotNull(hit);
+        assertEquals(0, hit.getColumn());
+    }
+
+    @Test
+    @DisplayName("Backward regex search keeps line anchors")
+    void testFindRegexBackwardAnchored() throws IOException {
+        show(2, "xyxy");
+
+        SearchHit hit = emulator.find(Pattern.compile("^xy"), 2, 4, false);
+        assertNotNull(hit);
+        assertEquals(0, hit.getColumn());
+    }
+
+    @Test
+    @DisplayName("Close ends a read that is blocked waiting for input")
+    void testCloseEndsBlockedRead() throws Exception {
+        show(0, "open");
+
+        // The reader is now blocked in read() with nothing to read.
+        emulator.close();
+        assertThrows(IOException.class, () -> {
+            remote.write('x');
+        });
+        assertFalse(emulator.isReading());
+
+        // Closing is not an error to report on the display.
+        Thread.sleep(100);
+        TerminalState state = emulator.captureState();
+        assertTrue(state.getDisplayBuffer().get(0).getText().
+            startsWith("open"));
+    }
+
+}
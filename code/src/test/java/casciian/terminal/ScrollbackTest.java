@@ -0,0 +1,311 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for Scrollback
+ */
+package casciian.terminal;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import casciian.bits.CellAttributes;
+import casciian.bits.ComplexCell;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Scrollback - validates eviction, indexed access, and that
+ * snapshots are not disturbed by later changes.
+ */
+@DisplayName("Scrollback Tests")
+class ScrollbackTest {
+
+    private Scrollback scrollback;
+
+    @BeforeEach
+    void setUp() {
+        scrollback = new Scrollback(100);
+    }
+
+    private static DisplayLine line(final int n) {
+        DisplayLine line = new DisplayLine(new CellAttributes());
+        line.replace(0, new ComplexCell(n));
+        return line;
+    }
+
+    private static DisplayLine pair(final int first, final int second) {
+        DisplayLine line = new DisplayLine(new CellAttributes());
+        line.replace(0, new ComplexCell(first));
+        line.replace(1, new ComplexCell(second));
+        return line;
+    }
+
+    private static int id(final DisplayLine line) {
+        return line.charAt(0).getChar();
+    }
+
+    @Test
+    @DisplayName("Appended lines are frozen and kept in order")
+    void testAppend() {
+        for (int i = 0; i < 70; i++) {
+            scrollback.add(line(i));
+        }
+        assertEquals(70, scrollback.size());
+        for (int i = 0; i < 70; i++) {
+            assertEquals(i, id(scrollback.get(i)));
+            assertTrue(scrollback.get(i).isFrozen());
+        }
+    }
+
+    @Test
+    @DisplayName("Oldest lines are evicted past the maximum")
+    void testEviction() {
+        for (int i = 0; i < 1000; i++) {
+            scrollback.add(line(i));
+        }
+        assertEquals(100, scrollback.size());
+        assertEquals(900, id(scrollback.get(0)));
+        assertEquals(999, id(scrollback.get(99)));
+    }
+
+    @Test
+    @DisplayName("Lowering the maximum evicts immediately")
+    void testSetMaxSize() {
+        for (int i = 0; i < 50; i++) {
+            scrollback.add(line(i));
+        }
+        scrollback.setMaxSize(10);
+        assertEquals(10, scrollback.size());
+        assertEquals(40, id(scrollback.get(0)));
+        scrollback.setMaxSize(0);
+        assertEquals(0, scrollback.size());
+        scrollback.setMaxSize(5);
+        scrollback.add(line(7));
+        assertEquals(7, id(scrollback.get(0)));
+    }
+
+    @Test
+    @DisplayName("Snapshots are unchanged by later appends and evictions")
+    void testSnapshotAppend() {
+        for (int i = 0; i < 100; i++) {
+            scrollback.add(line(i));
+        }
+        List<DisplayLine> snapshot = scrollback.snapshot();
+        for (int i = 100; i < 300; i++) {
+            scrollback.add(line(i));
+        }
+        assertEquals(100, snapshot.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, id(snapshot.get(i)));
+        }
+        assertEquals(200, id(scrollback.get(0)));
+    }
+
+    @Test
+    @DisplayName("Snapshots are unchanged when lines are removed and replaced")
+    void testSnapshotRemoveLast() {
+        for (int i = 0; i < 130; i++) {
+            scrollback.add(line(i));
+        }
+        List<DisplayLine> snapshot = scrollback.snapshot();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(129 - i, id(scrollback.removeLast()));
+        }
+        for (int i = 0; i < 10; i++) {
+            scrollback.add(line(1000 + i));
+        }
+        assertEquals(100, snapshot.size());
+        assertEquals(30, id(snapshot.get(0)));
+        assertEquals(129, id(snapshot.get(99)));
+        assertEquals(1009, id(scrollback.get(99)));
+    }
+
+    @Test
+    @DisplayName("Removing every line leaves an empty, usable scrollback")
+    void testRemoveAll() {
+        for (int i = 0; i < 65; i++) {
+            scrollback.add(line(i));
+        }
+        for (int i = 0; i < 65; i++) {
+            scrollback.removeLast();
+        }
+        assertEquals(0, scrollback.size());
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> scrollback.removeLast());
+        scrollback.add(line(5));
+        assertEquals(5, id(scrollback.get(0)));
+    }
+
+    @Test
+    @DisplayName("Frozen lines cannot be changed")
+    void testFrozen() {
+        DisplayLine line = line(1);
+        scrollback.add(line);
+        assertThrows(IllegalStateException.class,
+            () -> line.replace(0, new ComplexCell('x')));
+        DisplayLine copy = new DisplayLine(line);
+        assertFalse(copy.isFrozen());
+        copy.replace(0, new ComplexCell('x'));
+        assertEquals(1, id(line));
+    }
+
+    @Test
+    @DisplayName("Line text follows the lines")
+    void testText() {
+        for (int i = 0; i < 150; i++) {
+            scrollback.add(line('a' + (i % 26)));
+        }
+        assertEquals("y", scrollback.getText(0));
+        assertEquals("t", scrollback.getText(99));
+        scrollback.removeLast();
+        scrollback.add(line('Z'));
+        assertEquals("Z", scrollback.getText(99));
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> scrollback.getText(100));
+    }
+
+    @Test
+    @DisplayName("Signatures are indexed on demand and kept current")
+    void testSignature() {
+        for (int i = 0; i < 10; i++) {
+            scrollback.add(pair('a' + i, 'a' + i + 1));
+        }
+        long [] bc = Scrollback.signature("bc");
+        long [] xy = Scrollback.signature("xy");
+        assertTrue(scrollback.mightContain(1, bc));
+        assertFalse(scrollback.mightContain(9, xy));
+
+        // This chunk is indexed now, later lines must still be found.
+        scrollback.removeLast();
+        scrollback.add(pair('x', 'y'));
+        assertTrue(scrollback.mightContain(9, xy));
+        assertEquals("xy", scrollback.getText(9));
+    }
+
+    @Test
+    @DisplayName("Spilled lines are kept on disk and read back")
+    void testSpill() throws Exception {
+        scrollback.setSpilling(true);
+        for (int i = 0; i < 1000; i++) {
+            scrollback.add(line(i));
+        }
+        assertEquals(1000, scrollback.size());
+        List<DisplayLine> snapshot = scrollback.snapshot();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, id(scrollback.get(i)));
+            assertTrue(scrollback.get(i).isFrozen());
+        }
+        assertEquals(new String(Character.toChars(5)), scrollback.getText(5));
+
+        scrollback.setMaxSize(0);
+        assertEquals(999, id(scrollback.removeLast()));
+        scrollback.add(line(5000));
+        assertEquals(1000, snapshot.size());
+        assertEquals(999, id(snapshot.get(999)));
+        assertEquals(5000, id(scrollback.get(999)));
+
+        scrollback.close();
+        assertEquals(0, id(snapshot.get(0)));
+        scrollback.setSpilling(false);
+        assertEquals(0, scrollback.size());
+    }
+
+    @Test
+    @DisplayName("Closing stops spilling, and spilled lines stay readable")
+    void testCloseStopsSpilling() throws Exception {
+        scrollback.setSpilling(true);
+        for (int i = 0; i < 200; i++) {
+            scrollback.add(line(i));
+        }
+        scrollback.close();
+        assertFalse(scrollback.isSpilling());
+        assertEquals(200, scrollback.size());
+        assertEquals(0, id(scrollback.get(0)));
+        assertEquals(99, id(scrollback.get(99)));
+
+        // Lines evicted after close() are discarded, not lost in the store.
+        for (int i = 200; i < 210; i++) {
+            scrollback.add(line(i));
+        }
+        assertEquals(200, scrollback.size());
+        assertEquals(99, id(scrollback.get(99)));
+        assertEquals(110, id(scrollback.get(100)));
+        assertEquals(209, id(scrollback.get(199)));
+
+        // The spilled lines can still be taken back.
+        scrollback.setMaxSize(0);
+        assertEquals(100, scrollback.size());
+        assertEquals(99, id(scrollback.removeLast()));
+        assertEquals(99, scrollback.size());
+        assertEquals(99, scrollback.snapshot().size());
+        scrollback.setSpilling(true);
+        assertFalse(scrollback.isSpilling());
+    }
+
+    @Test
+    @DisplayName("The store drops its oldest lines and pages when full")
+    void testStoreLimit() throws Exception {
+        char [] text = new char[1000];
+        Arrays.fill(text, 'x');
+        ScrollbackStore store = new ScrollbackStore(100);
+        try {
+            store.add(line(0));
+            ScrollbackStore.View view = store.snapshot();
+            for (int i = 1; i < 10000; i++) {
+                DisplayLine line = line(i);
+                line.replace(1, text, 0, text.length, new CellAttributes());
+                store.add(line);
+            }
+            assertEquals(100, store.size());
+            assertEquals(9900, id(store.get(0)));
+            assertEquals(9999, id(store.get(99)));
+            assertTrue(store.getPageCount() <= 2);
+
+            // A view keeps its page.
+            assertEquals(1, view.size());
+            assertEquals(0, id(view.get(0)));
+        } finally {
+            store.close();
+        }
+        assertThrows(IOException.class, () -> {
+            store.add(line(1));
+        });
+    }
+
+    @Test
+    @DisplayName("Store views keep lines that are removed and replaced")
+    void testStoreRemoveLast() throws Exception {
+        ScrollbackStore store = new ScrollbackStore();
+        try {
+            for (int i = 0; i < 10; i++) {
+                store.add(line(i));
+            }
+            ScrollbackStore.View view = store.snapshot();
+            for (int i = 0; i < 3; i++) {
+                assertEquals(9 - i, id(store.removeLast()));
+            }
+            store.add(line(100));
+            store.add(line(101));
+            assertEquals(9, store.size());
+            assertEquals(101, id(store.get(8)));
+            assertEquals(10, view.size());
+            assertEquals(7, id(view.get(7)));
+            assertEquals(8, id(view.get(8)));
+
+            // Popping and pushing with no view in between.
+            for (int i = 0; i < 100; i++) {
+                store.removeLast();
+                store.add(line(200 + i));
+            }
+            assertEquals(299, id(store.get(8)));
+            assertEquals(8, id(view.get(8)));
+        } finally {
+            store.close();
+        }
+    }
+
+}
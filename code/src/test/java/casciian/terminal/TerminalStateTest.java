@@ -0,0 +1,92 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for TerminalState
+ */
+package casciian.terminal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+import casciian.backend.HeadlessBackend;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for TerminalState - validates that the rows reported as changed
+ * between two captures are exactly the rows the emulator wrote to.
+ */
+@DisplayName("TerminalState Tests")
+class TerminalStateTest {
+
+    private PipedOutputStream remote;
+    private ECMA48 emulator;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        PipedInputStream input = new PipedInputStream(4096);
+        remote = new PipedOutputStream(input);
+        emulator = new ECMA48(ECMA48.DeviceType.VT102, input,
+            new ByteArrayOutputStream(), null, new HeadlessBackend());
+    }
+
+    @AfterEach
+    void tearDown() {
+        emulator.close();
+    }
+
+    /**
+     * Send text to the emulator and wait until a cell shows it.
+     */
+    private TerminalState send(final String text, final int row,
+        final int column, final char ch) throws IOException {
+
+        remote.write(text.getBytes(StandardCharsets.US_ASCII));
+        remote.flush();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            TerminalState state = emulator.captureState();
+            if (state.getDisplayBuffer().get(row).getChar(column) == ch) {
+                return state;
+            }
+            Thread.onSpinWait();
+        }
+        fail("emulator did not draw " + ch);
+        return null;
+    }
+
+    @Test
+    @DisplayName("Without an earlier state every row is dirty")
+    void testDirtyRowsNoPrevious() {
+        TerminalState state = emulator.captureState();
+        BitSet dirty = state.getDirtyRows(null);
+        assertEquals(state.getHeight(), dirty.cardinality());
+    }
+
+    @Test
+    @DisplayName("Only the row written to is dirty")
+    void testDirtyRowsOneRow() throws IOException {
+        TerminalState before = send("\033[2;1HA", 1, 0, 'A');
+        TerminalState after = send("\033[5;3HX", 4, 2, 'X');
+        BitSet dirty = after.getDirtyRows(before);
+        assertEquals(1, dirty.cardinality());
+        assertTrue(dirty.get(4));
+    }
+
+    @Test
+    @DisplayName("No rows are dirty between two captures with no output")
+    void testDirtyRowsUnchanged() throws IOException {
+        TerminalState before = send("\033[3;1HB", 2, 0, 'B');
+        TerminalState after = emulator.captureState();
+        assertTrue(after.getDirtyRows(before).isEmpty());
+    }
+
+}
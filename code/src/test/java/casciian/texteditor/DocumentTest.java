@@ -0,0 +1,231 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for Document
+ */
+package casciian.texteditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import casciian.bits.CellAttributes;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Document - validates that undo and redo restore the text and
+ * the cursor.
+ */
+@DisplayName("Document Tests")
+class DocumentTest {
+
+    private static Document newDocument(final String text) {
+        return new Document(text, new CellAttributes());
+    }
+
+    private static void type(final Document document, final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            document.addChar(text.charAt(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Consecutive keystrokes are undone as one edit")
+    void testUndoTyping() {
+        Document document = newDocument("one\ntwo\nthree");
+        document.setLineNumber(1);
+        document.end();
+        type(document, " and a half");
+        assertEquals("one\ntwo and a half\nthree\n", document.getText());
+
+        assertTrue(document.undo());
+        assertEquals("one\ntwo\nthree\n", document.getText());
+        assertEquals(1, document.getLineNumber());
+        assertEquals(3, document.getCursor());
+        assertFalse(document.undo());
+
+        assertTrue(document.redo());
+        assertEquals("one\ntwo and a half\nthree\n", document.getText());
+        assertEquals(14, document.getCursor());
+        assertFalse(document.redo());
+    }
+
+    @Test
+    @DisplayName("Line splits and joins undo and redo in order")
+    void testUndoLines() {
+        Document document = newDocument("abcdef\nxyz");
+        document.setCursor(3);
+        document.enter();
+        type(document, "12");
+        document.backspace();
+        document.backspace();
+        document.backspace();
+        assertEquals("abcdef\nxyz\n", document.getText());
+        assertEquals(0, document.getLineNumber());
+        assertEquals(3, document.getCursor());
+
+        // Join, backspaces, typing, enter.
+        for (int i = 0; i < 4; i++) {
+            assertTrue(document.undo());
+        }
+        assertEquals("abcdef\nxyz\n", document.getText());
+        assertFalse(document.undo());
+
+        document.redo();
+        assertEquals("abc\ndef\nxyz\n", document.getText());
+        document.redo();
+        assertEquals("abc\n12def\nxyz\n", document.getText());
+        assertEquals(2, document.getCursor());
+
+        // A new edit discards the redo list.
+        document.addChar('!');
+        assertFalse(document.redo());
+        assertEquals("abc\n12!def\nxyz\n", document.getText());
+    }
+
+    @Test
+    @DisplayName("Nested edits are undone as one")
+    void testUndoNested() {
+        Document document = newDocument("a\nb\nc\nd");
+        document.setLineNumber(1);
+        document.beginEdit(1, 1);
+        document.end();
+        document.del();
+        document.enter();
+        document.setLineNumber(3);
+        document.home();
+        document.backspace();
+        document.endEdit();
+        assertEquals("a\nb\ncd\n", document.getText());
+
+        assertTrue(document.undo());
+        assertEquals("a\nb\nc\nd\n", document.getText());
+        assertEquals(1, document.getLineNumber());
+        assertFalse(document.undo());
+    }
+
+    @Test
+    @DisplayName("The undo level limits the number of edits kept")
+    void testUndoLevel() {
+        Document document = newDocument("");
+        document.setUndoLevel(2);
+        for (int i = 0; i < 3; i++) {
+            document.addChar('x');
+            document.enter();
+        }
+        int undos = 0;
+        while (document.undo()) {
+            undos++;
+        }
+        assertEquals(2, undos);
+        assertEquals("x\nx\n\n", document.getText());
+    }
+
+    @Test
+    @DisplayName("Cleaning whitespace undoes and redoes the changed lines")
+    void testUndoCleanWhitespace() {
+        String text = "a  \nb\nc\t\nd\ne \n  \n\n \n";
+        Document document = newDocument(text);
+        String before = document.getText();
+        document.setLineNumber(3);
+        document.setCursor(1);
+        document.cleanWhitespace();
+        String after = document.getText();
+        assertEquals("a\nb\nc\nd\ne\n", after);
+
+        assertTrue(document.undo());
+        assertEquals(before, document.getText());
+        assertEquals(3, document.getLineNumber());
+        assertEquals(1, document.getCursor());
+        assertFalse(document.undo());
+
+        assertTrue(document.redo());
+        assertEquals(after, document.getText());
+
+        document = newDocument("   \n \n");
+        before = document.getText();
+        document.cleanWhitespace();
+        assertEquals("\n", document.getText());
+        assertTrue(document.undo());
+        assertEquals(before, document.getText());
+
+        document = newDocument("clean\ntext");
+        document.cleanWhitespace();
+        assertFalse(document.undo());
+    }
+
+    @Test
+    @DisplayName("Setting and wrapping the text undo as one edit")
+    void testUndoSetText() {
+        Document document = newDocument("one\ntwo\nthree\nfour");
+        document.setLineNumber(2);
+        document.setCursor(2);
+        document.setText("one\n2\n3\nfour");
+        assertEquals("one\n2\n3\nfour\n", document.getText());
+        document.setText("one\n2\n3\nfour");
+        assertTrue(document.undo());
+        assertEquals("one\ntwo\nthree\nfour\n", document.getText());
+        assertEquals(2, document.getLineNumber());
+        assertEquals(2, document.getCursor());
+        assertFalse(document.undo());
+        assertTrue(document.redo());
+        assertEquals("one\n2\n3\nfour\n", document.getText());
+
+        document = newDocument("aaa bbb ccc\n\nddd");
+        document.setLineNumber(2);
+        document.setCursor(1);
+        document.wrapText(6);
+        assertTrue(document.getText().startsWith("aaa\nbbb\nccc\n\nddd"));
+        assertTrue(document.undo());
+        assertEquals("aaa bbb ccc\n\nddd\n", document.getText());
+        assertEquals(2, document.getLineNumber());
+        assertEquals(1, document.getCursor());
+    }
+
+    @Test
+    @DisplayName("Saving a mapped file is not a truncation, truncating it is")
+    void testMappedTruncated() throws IOException {
+        File file = File.createTempFile("casciian", ".txt");
+        try {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 1000; i++) {
+                text.append("line ").append(i).append('\n');
+            }
+            Files.write(file.toPath(), text.toString().
+                getBytes(StandardCharsets.UTF_8));
+            Document document = new Document(file, new CellAttributes());
+            assertTrue(document.isMapped());
+            assertFalse(document.isTruncated());
+
+            // Saving a shorter text replaces the file.
+            document.setLineNumber(0);
+            document.del();
+            document.saveToFilename(file.getPath());
+            assertTrue(file.length() < text.length());
+            assertFalse(document.isTruncated());
+
+            document.close();
+            final Document truncated = new Document(file,
+                new CellAttributes());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(10);
+            }
+            assertTrue(truncated.isTruncated());
+            truncated.setLineNumber(0);
+            truncated.addChar('x');
+            assertThrows(IOException.class,
+                () -> truncated.saveToFilename(file.getPath()));
+            assertEquals(10, file.length());
+            truncated.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for Highlighter
+ */
+package casciian.texteditor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import casciian.bits.CellAttributes;
+import casciian.bits.Color;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for Highlighter - validates the keyword table, the Java lexer, and
+ * that Document carries lexer states across lines as they are edited.
+ */
+@DisplayName("Highlighter Tests")
+class HighlighterTest {
+
+    /**
+     * The default text color.
+     */
+    private static final CellAttributes DEFAULT = new CellAttributes();
+
+    /**
+     * Get the color of a word on a line.
+     *
+     * @param document the document
+     * @param lineNumber the line number
+     * @param text the text of the word
+     * @return the word's color
+     */
+    private static CellAttributes colorOf(final Document document,
+        final int lineNumber, final String text) {
+
+        for (Word word: document.getLine(lineNumber).getWords()) {
+            if (word.getText().equals(text)) {
+                return word.getColor();
+            }
+        }
+        fail("No word \"" + text + "\" on line " + lineNumber);
+        return null;
+    }
+
+    private static boolean isComment(final Document document,
+        final int lineNumber, final String text) {
+
+        return colorOf(document, lineNumber, text).getForeColor() ==
+            Color.CYAN && !colorOf(document, lineNumber, text).isBold();
+    }
+
+    @Test
+    @DisplayName("KeywordTable finds every key and nothing else")
+    void testKeywordTable() {
+        Map<String, Integer> map = new HashMap<String, Integer>();
+        for (int i = 0; i < 500; i++) {
+            map.put("k" + i, i);
+        }
+        KeywordTable<Integer> table = new KeywordTable<Integer>(map);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, table.get("k" + i));
+            String key = "k" + i;
+            assertEquals(i, table.get("(" + key + ")", 1, key.length() + 1));
+        }
+        assertNull(table.get("k500"));
+        assertNull(table.get("k"));
+        assertNull(table.get(""));
+        assertNull(new KeywordTable<Integer>(new HashMap<String, Integer>()).
+            get("k0"));
+    }
+
+    @Test
+    @DisplayName("JavaLexer tokens cover the line and carry comments over")
+    void testJavaLexer() {
+        final StringBuilder kinds = new StringBuilder();
+        Lexer.TokenHandler handler = new Lexer.TokenHandler() {
+            public void token(final int start, final int end,
+                final int kind) {
+
+                assertEquals(kinds.length(), start);
+                for (int i = start; i < end; i++) {
+                    kinds.append((char) ('0' + kind));
+                }
+            }
+        };
+        JavaLexer lexer = new JavaLexer();
+        String line = "int x = 0x1F; // \"no\" /*";
+        assertEquals(Lexer.INITIAL, lexer.scanLine(line, Lexer.INITIAL,
+                handler));
+        assertEquals("22212131666631" + "4444444444", kinds.toString());
+
+        kinds.setLength(0);
+        int state = lexer.scanLine("a /* b", Lexer.INITIAL, handler);
+        assertNotEquals(Lexer.INITIAL, state);
+        assertEquals("214444", kinds.toString());
+        kinds.setLength(0);
+        assertEquals(state, lexer.scanLine("still", state, handler));
+        assertEquals("44444", kinds.toString());
+        kinds.setLength(0);
+        assertEquals(Lexer.INITIAL, lexer.scanLine("*/ 'c'", state, handler));
+        assertEquals("441555", kinds.toString());
+    }
+
+    @Test
+    @DisplayName("JavaLexer makes one token of a multi-character operator")
+    void testJavaLexerOperators() {
+        final List<String> tokens = new ArrayList<String>();
+        final String line = "a>>>=b&&c->d<<1!=x...y:: -=&";
+        Lexer.TokenHandler handler = new Lexer.TokenHandler() {
+            public void token(final int start, final int end,
+                final int kind) {
+
+                if (kind == Lexer.OPERATOR) {
+                    tokens.add(line.substring(start, end));
+                }
+            }
+        };
+        new JavaLexer().scanLine(line, Lexer.INITIAL, handler);
+        assertEquals(List.of(">>>=", "&&", "->", "<<", "!=", "...", "::",
+                "-=", "&"), tokens);
+
+        Document document = new Document("if (a && b) {", DEFAULT);
+        assertEquals(Color.CYAN, colorOf(document, 0, "&&").getForeColor());
+    }
+
+    @Test
+    @DisplayName("Opening and closing a comment recolors the lines after it")
+    void testDocumentComment() {
+        Document document = new Document("int a;\nint b;\nint c;\nint d;",
+            DEFAULT);
+        assertFalse(isComment(document, 2, "int"));
+        assertTrue(colorOf(document, 2, "int").isBold());
+
+        // Open a block comment on the first line.
+        document.end();
+        document.addChar('/');
+        document.addChar('*');
+        assertTrue(isComment(document, 1, "int b;"));
+        assertTrue(isComment(document, 3, "int d;"));
+
+        // Close it on the third line.
+        document.setLineNumber(2);
+        document.home();
+        document.addChar('*');
+        document.addChar('/');
+        assertTrue(isComment(document, 2, "*/"));
+        assertFalse(isComment(document, 2, "int"));
+        assertFalse(isComment(document, 3, "int"));
+
+        // Undo everything.
+        while (document.undo()) {
+            // NOP
+        }
+        for (int i = 0; i < 4; i++) {
+            assertFalse(isComment(document, i, "int"));
+        }
+    }
+
+    @Test
+    @DisplayName("Line states survive inserted and removed lines")
+    void testDocumentLines() {
+        StringBuilder sb = new StringBuilder("/*\n");
+        for (int i = 0; i < 50; i++) {
+            sb.append("x\n");
+        }
+        sb.append("*/\nint y;");
+        Document document = new Document(sb.toString(), DEFAULT);
+        assertTrue(isComment(document, 51, "*/"));
+        assertFalse(isComment(document, 52, "int"));
+
+        // Split the opening line, then join it back.
+        document.setCursor(1);
+        document.enter();
+        assertFalse(isComment(document, 10, "x"));
+        assertFalse(isComment(document, 52, "*"));
+        assertFalse(isComment(document, 53, "int"));
+        document.backspace();
+        assertTrue(isComment(document, 10, "x"));
+        assertTrue(isComment(document, 51, "*/"));
+        assertFalse(isComment(document, 52, "int"));
+
+        // Remove the closing comment.
+        document.setLineNumber(52);
+        document.home();
+        for (int i = 0; i < 3; i++) {
+            document.backspace();
+        }
+        assertTrue(isComment(document, 51, "int y;"));
+
+        // Turning highlighting off and on again lexes from the top.
+        document.setHighlighting(false);
+        assertFalse(isComment(document, 51, "int y;"));
+        document.setHighlighting(true);
+        assertTrue(isComment(document, 51, "int y;"));
+        List<Word> words = document.getLine(51).dup().getWords();
+        assertEquals("int y;", words.get(0).getText());
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Casciian - Java Text User Interface
+ *
+ * Unit tests for PieceTable
+ */
+package casciian.texteditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.DisplayName;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for PieceTable - validates the text and line index against a plain
+ * StringBuilder after many edits.
+ */
+@DisplayName("PieceTable Tests")
+class PieceTableTest {
+
+    private static void assertTableEquals(final StringBuilder expect,
+        final PieceTable table) {
+
+        assertEquals(expect.length(), table.length());
+        assertEquals(expect.toString(), table.substring(0, table.length()));
+        String [] lines = expect.toString().split("\n", -1);
+        assertEquals(lines.length, table.getLineCount());
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(lines[i], table.getLine(i));
+        }
+    }
+
+    @Test
+    @DisplayName("Trailing newlines are not part of the text")
+    void testLoad() {
+        PieceTable table = new PieceTable("one\n\ntwo\n\n\n");
+        assertEquals(3, table.getLineCount());
+        assertEquals("", table.getLine(1));
+        assertEquals("two", table.getLine(2));
+        assertEquals(1, new PieceTable("").getLineCount());
+        assertEquals(1, new PieceTable("\n\n").getLineCount());
+    }
+
+    @Test
+    @DisplayName("Lines are counted as they are indexed in the background")
+    void testBackground() {
+        StringBuilder expect = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            expect.append("line \u00e9 ").append(i).append('\n');
+        }
+        PieceTable table = new PieceTable(ByteBuffer.wrap(expect.toString().
+                getBytes(StandardCharsets.UTF_8)), true);
+        assertTrue(table.getLineCount() >= 1000);
+        assertEquals("line \u00e9 99999", table.getLine(99999));
+        table.insert(table.getLineStart(2), "new\n");
+        assertTrue(table.isIndexed());
+        assertEquals(100001, table.getLineCount());
+        assertEquals("new", table.getLine(2));
+        assertEquals("line \u00e9 2", table.getLine(3));
+    }
+
+    @Test
+    @DisplayName("setLine() keeps multi-byte characters intact")
+    void testSetLine() {
+        PieceTable table = new PieceTable("one\nx\u00a9y\nthree");
+        table.setLine(1, "x\u00e9\u00a9y");
+        table.setLine(1, table.getLine(1) + "!");
+        assertEquals("x\u00e9\u00a9y!", table.getLine(1));
+        table.setLine(1, "\u00a9");
+        assertEquals("one\n\u00a9\nthree", table.substring(0, table.length()));
+    }
+
+    @Test
+    @DisplayName("Random inserts and deletes match a StringBuilder")
+    void testRandomEdits() {
+        Random random = new Random(1);
+        StringBuilder expect = new StringBuilder("first line\nsecond\n\nlast");
+        PieceTable table = new PieceTable(expect.toString());
+        String alphabet = "ab\n";
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(expect.length() + 1);
+            if (random.nextBoolean() || (expect.length() == 0)) {
+                StringBuilder text = new StringBuilder();
+                int n = 1 + random.nextInt(4);
+                for (int j = 0; j < n; j++) {
+                    text.append(alphabet.charAt(random.nextInt(3)));
+                }
+                expect.insert(start, text);
+                table.insert(start, text);
+            } else {
+                int end = Math.min(expect.length(),
+                    start + random.nextInt(6));
+                expect.delete(start, end);
+                table.delete(start, end);
+            }
+            if ((i % 50) == 0) {
+                assertTableEquals(expect, table);
+            }
+        }
+        assertTableEquals(expect, table);
+    }
+
+    @Test
+    @DisplayName("Lookups between local edits match a StringBuilder")
+    void testEditsNearLookups() {
+        Random random = new Random(2);
+        StringBuilder expect = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            expect.append("line ").append(i).append('\n');
+        }
+        PieceTable table = new PieceTable(expect.toString());
+        expect.setLength(expect.length() - 1);
+        int cursor = expect.length() / 2;
+        for (int i = 0; i < 5000; i++) {
+            // Wander like a cursor, with an occasional jump.
+            if (random.nextInt(50) == 0) {
+                cursor = random.nextInt(expect.length() + 1);
+            } else {
+                cursor += random.nextInt(21) - 10;
+            }
+            cursor = Math.max(0, Math.min(expect.length(), cursor));
+            if (random.nextBoolean() || (cursor == expect.length())) {
+                String text = (random.nextInt(5) == 0 ? "\n" : "x");
+                expect.insert(cursor, text);
+                table.insert(cursor, text);
+            } else {
+                int end = Math.min(expect.length(),
+                    cursor + 1 + random.nextInt(3));
+                expect.delete(cursor, end);
+                table.delete(cursor, end);
+            }
+
+            String [] lines = expect.toString().split("\n", -1);
+            int line = random.nextInt(lines.length);
+            assertEquals(lines[line], table.getLine(line));
+            assertEquals(lines.length, table.getLineCount());
+        }
+        assertTableEquals(expect, table);
+    }
+
+    @Test
+    @DisplayName("A mapped file truncated under the table fails cleanly")
+    void testTruncated() throws IOException {
+        File file = File.createTempFile("casciian", ".txt");
+        try {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 10000; i++) {
+                text.append("line ").append(i).append('\n');
+            }
+            Files.write(file.toPath(), text.toString().
+                getBytes(StandardCharsets.UTF_8));
+            FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+            PieceTable table = new PieceTable(channel.map(
+                FileChannel.MapMode.READ_ONLY, 0, channel.size()), false,
+                channel);
+            assertEquals("line 10", table.getLine(10));
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(0);
+            }
+            assertThrows(UncheckedIOException.class,
+                () -> table.getLine(9000));
+            table.close();
+            assertFalse(channel.isOpen());
+        } finally {
+            file.delete();
+        }
+    }
+
+}